@@ -0,0 +1,248 @@
+package com.cm4j.dao.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.cm4j.dao.datasource.DataSourceHolder;
+import com.cm4j.dao.exception.Cm4jDataAccessException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * <p>
+ * 异步DAO执行器：在独立的有界线程池中执行DAO调用，返回可组合的{@link ListenableFuture}
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 线程数应与连接池最大连接数一致，多了只会在连接池上等待；队列满时拒绝执行，submit和invokeAll抛出{@link Cm4jDataAccessException}，
+ * 不会在调用线程上执行而超出invokeAll的超时时间
+ * <p>
+ * 调用线程的{@link DataSourceHolder}数据源标识会传递到工作线程。工作线程上没有调用方的Spring事务，
+ * 因此只适合互不依赖的只读查询
+ * <p>
+ * 并行查询总数和分页数据：
+ *
+ * <pre>
+ * List&lt;Object&gt; result = asyncDaoExecutor.invokeAll(2, TimeUnit.SECONDS, new Callable&lt;Integer&gt;() {
+ * 	public Integer call() {
+ * 		return dao.count(countSql, params);
+ * 	}
+ * }, new Callable&lt;List&lt;?&gt;&gt;() {
+ * 	public List&lt;?&gt; call() {
+ * 		return dao.page(sql, params, firstRowNum, pageRowCount);
+ * 	}
+ * });
+ * </pre>
+ * <p>
+ * Spring配置如下：
+ *
+ * <pre>
+ * &lt;bean id=&quot;asyncDaoExecutor&quot; class=&quot;com.cm4j.dao.async.AsyncDaoExecutor&quot;&gt;
+ * 	&lt;property name=&quot;poolSize&quot; value=&quot;${jdbc.maxActive}&quot; /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class AsyncDaoExecutor implements InitializingBean, DisposableBean {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private int poolSize = 10;
+	private int queueCapacity = 1000;
+	private String threadNamePrefix = "async-dao";
+
+	private ThreadPoolExecutor threadPool;
+	private ListeningExecutorService executor;
+
+	public AsyncDaoExecutor() {
+	}
+
+	public AsyncDaoExecutor(int poolSize, int queueCapacity) {
+		this.poolSize = poolSize;
+		this.queueCapacity = queueCapacity;
+		afterPropertiesSet();
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (executor != null) {
+			return;
+		}
+		threadPool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactoryBuilder()
+						.setNameFormat(threadNamePrefix + "-%d").setDaemon(true).build(),
+				new ThreadPoolExecutor.AbortPolicy());
+		threadPool.allowCoreThreadTimeOut(true);
+		executor = MoreExecutors.listeningDecorator(threadPool);
+		logger.debug("AsyncDaoExecutor启动，线程数：{}，队列长度：{}", poolSize, queueCapacity);
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * 异步执行DAO调用
+	 *
+	 * @throws Cm4jDataAccessException
+	 *             队列已满或执行器已关闭
+	 */
+	public <T> ListenableFuture<T> submit(Callable<T> task) {
+		try {
+			return executor.submit(new DataSourceAwareCallable<T>(task, DataSourceHolder.getDataSourceType()));
+		} catch (RejectedExecutionException e) {
+			throw new Cm4jDataAccessException("异步DAO调用被拒绝，队列已满或执行器已关闭，队列长度：" + queueCapacity, e);
+		}
+	}
+
+	/**
+	 * 并行执行多个互不依赖的DAO调用，所有调用共用一个超时时间
+	 * <p>
+	 * 超时后取消所有未完成的调用，任一调用异常则抛出该异常；任一调用被拒绝时取消已提交的调用
+	 *
+	 * @return 与tasks顺序一致的结果
+	 */
+	public List<Object> invokeAll(long timeout, TimeUnit unit, Callable<?>... tasks) {
+		List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>(tasks.length);
+		try {
+			for (Callable<?> task : tasks) {
+				futures.add(submit(task));
+			}
+		} catch (Cm4jDataAccessException e) {
+			cancel(futures);
+			throw e;
+		}
+		return getAll(futures, timeout, unit);
+	}
+
+	/**
+	 * 等待已提交的多个调用完成，所有调用共用一个超时时间
+	 *
+	 * @see #invokeAll(long, TimeUnit, Callable...)
+	 */
+	public List<Object> getAll(List<? extends ListenableFuture<?>> futures, long timeout, TimeUnit unit) {
+		ListenableFuture<List<Object>> all = Futures.allAsList(futures);
+		try {
+			return all.get(timeout, unit);
+		} catch (TimeoutException e) {
+			cancel(futures);
+			throw new Cm4jDataAccessException("异步DAO调用超时：" + unit.toMillis(timeout) + "ms", e);
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new Cm4jDataAccessException("异步DAO调用被中断", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * 等待单个调用完成
+	 */
+	public <T> T get(ListenableFuture<T> future, long timeout, TimeUnit unit) {
+		try {
+			return future.get(timeout, unit);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new Cm4jDataAccessException("异步DAO调用超时：" + unit.toMillis(timeout) + "ms", e);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new Cm4jDataAccessException("异步DAO调用被中断", e);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static void cancel(List<? extends ListenableFuture<?>> futures) {
+		for (ListenableFuture<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private static RuntimeException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new Cm4jDataAccessException("异步DAO调用异常", cause);
+	}
+
+	/**
+	 * 当前排队等待执行的调用数
+	 */
+	public int getQueueSize() {
+		return threadPool == null ? 0 : threadPool.getQueue().size();
+	}
+
+	/**
+	 * 当前正在执行的调用数
+	 */
+	public int getActiveCount() {
+		return threadPool == null ? 0 : threadPool.getActiveCount();
+	}
+
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		this.threadNamePrefix = threadNamePrefix;
+	}
+
+	/**
+	 * 在工作线程上设置调用方的数据源标识，执行完后清除
+	 */
+	private static class DataSourceAwareCallable<T> implements Callable<T> {
+		private final Callable<T> task;
+		private final String dataSourceType;
+
+		private DataSourceAwareCallable(Callable<T> task, String dataSourceType) {
+			this.task = task;
+			this.dataSourceType = dataSourceType;
+		}
+
+		@Override
+		public T call() throws Exception {
+			String previous = DataSourceHolder.getDataSourceType();
+			DataSourceHolder.setDataSourceType(dataSourceType);
+			try {
+				return task.call();
+			} finally {
+				// 工作线程会被复用，需要还原
+				if (previous == null) {
+					DataSourceHolder.clearDataSourceType();
+				} else {
+					DataSourceHolder.setDataSourceType(previous);
+				}
+			}
+		}
+	}
+}
@@ -10,32 +10,61 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 
+import com.cm4j.dao.monitor.DaoMonitor;
+
 public class BatchDao {
 
     protected SimpleJdbcTemplate jdbcTemplate;
 
+    protected DaoMonitor daoMonitor = DaoMonitor.getDefault();
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     public void batchUpdate(String sql, List<Object[]> batchArgs) {
+        long start = System.nanoTime();
         try {
-            jdbcTemplate.batchUpdate(sql, batchArgs);
+            int[] counts = jdbcTemplate.batchUpdate(sql, batchArgs);
+            daoMonitor.recordBatch(sql, batchArgs.size(), sum(counts), start);
         } catch (Exception e) {
+            daoMonitor.recordBatchError(sql, batchArgs.size(), start);
             // 其他异常
             for (Object[] arg : batchArgs) {
+                long rowStart = System.nanoTime();
                 try {
-                    jdbcTemplate.update(sql, arg);
+                    int count = jdbcTemplate.update(sql, arg);
+                    daoMonitor.record(sql, arg, count, rowStart);
                 } catch (DuplicateKeyException e1) {
+                    daoMonitor.recordError(sql, arg, rowStart);
                     logger.warn("重复插入,params:{}", arg);
                 } catch (Exception e2) {
+                    daoMonitor.recordError(sql, arg, rowStart);
                     logger.error("插入失败,params:{}" + arg, e2);
                 }
             }
         }
     }
 
+    private static int sum(int[] counts) {
+        int total = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                // Statement.SUCCESS_NO_INFO(-2)等不计入
+                if (count > 0) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
     @Autowired
     public void setDataSource(DataSource dataSource) {
         this.jdbcTemplate = new SimpleJdbcTemplate(dataSource);
     }
 
+    @Autowired(required = false)
+    public void setDaoMonitor(DaoMonitor daoMonitor) {
+        this.daoMonitor = daoMonitor;
+    }
+
 }
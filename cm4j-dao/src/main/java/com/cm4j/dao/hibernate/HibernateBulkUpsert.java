@@ -0,0 +1,388 @@
+package com.cm4j.dao.hibernate;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.EntityMode;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.Oracle9Dialect;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cm4j.dao.exception.Cm4jDataAccessException;
+
+/**
+ * <p>
+ * 绕过session.merge()的批量保存/删除：按实体类型生成数据库方言相关的多行语句，直接通过JDBC执行，不再逐条SELECT
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * MySQL：INSERT INTO t (...) VALUES (...),(...) ON DUPLICATE KEY UPDATE ...
+ * <p>
+ * H2：MERGE INTO t (...) KEY (id) VALUES (...),(...)
+ * <p>
+ * Oracle：MERGE INTO t USING (SELECT ... FROM dual UNION ALL ...) ON (...) WHEN MATCHED ... WHEN NOT MATCHED ...
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * <b><font color="red">仅支持单表、单列主键、无version、属性均为单列基本类型的实体，且主键必须已赋值；
+ * 其他实体{@link #supports(Class)}返回false，调用方需退回merge方式</font></b>
+ * <p>
+ * 语句直接写库，不经过session缓存：执行前先flush session中待执行的语句，执行后从session和二级缓存中清除对应实体，
+ * 之后再读取或merge时从数据库加载
+ */
+public class HibernateBulkUpsert {
+
+	public static final int DIALECT_UNSUPPORTED = 0, DIALECT_MYSQL = 1, DIALECT_H2 = 2, DIALECT_ORACLE = 3;
+
+	// 单条语句最多绑定的参数个数，避免超出驱动限制
+	private static final int MAX_PARAMS_PER_STATEMENT = 10000;
+
+	private static final EntityMapping UNSUPPORTED = new EntityMapping();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final SessionFactoryImplementor sessionFactory;
+	private final int dialect;
+	private final ConcurrentMap<Class<?>, EntityMapping> mappings = new ConcurrentHashMap<Class<?>, EntityMapping>();
+
+	public HibernateBulkUpsert(SessionFactoryImplementor sessionFactory) {
+		this.sessionFactory = sessionFactory;
+		this.dialect = dialectOf(sessionFactory.getDialect());
+	}
+
+	private static int dialectOf(Dialect dialect) {
+		if (dialect instanceof MySQLDialect) {
+			return DIALECT_MYSQL;
+		} else if (dialect instanceof H2Dialect) {
+			return DIALECT_H2;
+		} else if (dialect instanceof Oracle8iDialect || dialect instanceof Oracle9Dialect) {
+			return DIALECT_ORACLE;
+		}
+		return DIALECT_UNSUPPORTED;
+	}
+
+	public boolean isDialectSupported() {
+		return dialect != DIALECT_UNSUPPORTED;
+	}
+
+	/**
+	 * 实体映射是否支持批量upsert
+	 */
+	public boolean supports(Class<?> clazz) {
+		return isDialectSupported() && getMapping(clazz) != UNSUPPORTED;
+	}
+
+	/**
+	 * 主键是否已赋值，未赋值的实体无法upsert
+	 */
+	public boolean hasIdentifier(Class<?> clazz, Object entity) {
+		EntityMapping mapping = getMapping(clazz);
+		return mapping != UNSUPPORTED && mapping.persister.getIdentifier(entity, EntityMode.POJO) != null;
+	}
+
+	/**
+	 * 批量保存或更新
+	 *
+	 * @param session
+	 *            当前session，语句在其连接和事务上执行
+	 * @param clazz
+	 *            实体类型，entities必须均为此类型
+	 * @param entities
+	 * @param rowsPerStatement
+	 *            每条语句包含的行数
+	 * @return 数据库返回的影响行数
+	 */
+	public int upsert(Session session, Class<?> clazz, final List<?> entities, int rowsPerStatement) {
+		final EntityMapping mapping = getSupportedMapping(clazz);
+		final SessionImplementor implementor = (SessionImplementor) session;
+		final int rows = rowsPerStatement(mapping.columns.length + 1, rowsPerStatement);
+		final int[] result = new int[1];
+		session.flush();
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				for (int from = 0; from < entities.size(); from += rows) {
+					int to = Math.min(from + rows, entities.size());
+					PreparedStatement ps = connection.prepareStatement(mapping.getUpsertSql(dialect, to - from));
+					try {
+						int index = 1;
+						for (int i = from; i < to; i++) {
+							index = mapping.bindRow(ps, entities.get(i), index, implementor);
+						}
+						result[0] += ps.executeUpdate();
+					} finally {
+						ps.close();
+					}
+				}
+			}
+		});
+		evict(implementor, mapping, clazz, entities);
+		return result[0];
+	}
+
+	/**
+	 * 批量按主键删除
+	 *
+	 * @see #upsert(Session, Class, List, int)
+	 */
+	public int delete(Session session, Class<?> clazz, final List<?> entities, int rowsPerStatement) {
+		final EntityMapping mapping = getSupportedMapping(clazz);
+		final SessionImplementor implementor = (SessionImplementor) session;
+		final int rows = rowsPerStatement(1, rowsPerStatement);
+		final int[] result = new int[1];
+		session.flush();
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				for (int from = 0; from < entities.size(); from += rows) {
+					int to = Math.min(from + rows, entities.size());
+					PreparedStatement ps = connection.prepareStatement(mapping.getDeleteSql(to - from));
+					try {
+						int index = 1;
+						for (int i = from; i < to; i++) {
+							mapping.idType.nullSafeSet(ps, mapping.persister.getIdentifier(entities.get(i), EntityMode.POJO),
+									index++, implementor);
+						}
+						result[0] += ps.executeUpdate();
+					} finally {
+						ps.close();
+					}
+				}
+			}
+		});
+		evict(implementor, mapping, clazz, entities);
+		return result[0];
+	}
+
+	private static int rowsPerStatement(int paramsPerRow, int rowsPerStatement) {
+		return Math.max(1, Math.min(rowsPerStatement, MAX_PARAMS_PER_STATEMENT / paramsPerRow));
+	}
+
+	/**
+	 * 清除session中同一主键的实体(如之前merge返回的对象)及二级缓存
+	 */
+	private void evict(SessionImplementor session, EntityMapping mapping, Class<?> clazz, List<?> entities) {
+		boolean hasCache = mapping.persister.hasCache();
+		for (Object entity : entities) {
+			Serializable id = mapping.persister.getIdentifier(entity, EntityMode.POJO);
+			Object managed = session.getPersistenceContext().getEntity(
+					new EntityKey(id, mapping.persister, EntityMode.POJO));
+			if (managed != null) {
+				((Session) session).evict(managed);
+			}
+			if (hasCache) {
+				sessionFactory.evict(clazz, id);
+			}
+		}
+	}
+
+	private EntityMapping getSupportedMapping(Class<?> clazz) {
+		EntityMapping mapping = getMapping(clazz);
+		if (mapping == UNSUPPORTED || !isDialectSupported()) {
+			throw new Cm4jDataAccessException("实体不支持批量upsert：" + clazz.getName());
+		}
+		return mapping;
+	}
+
+	private EntityMapping getMapping(Class<?> clazz) {
+		EntityMapping mapping = mappings.get(clazz);
+		if (mapping == null) {
+			mapping = createMapping(clazz);
+			mappings.putIfAbsent(clazz, mapping);
+		}
+		return mapping;
+	}
+
+	private EntityMapping createMapping(Class<?> clazz) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata(clazz);
+		if (!(metadata instanceof AbstractEntityPersister)) {
+			logger.debug("批量upsert不支持{}：非实体或非默认持久化方式", clazz.getName());
+			return UNSUPPORTED;
+		}
+		AbstractEntityPersister persister = (AbstractEntityPersister) metadata;
+		if (!persister.hasIdentifierProperty() || persister.isVersioned() || persister.isInherited()
+				|| persister.hasSubclasses() || persister.getIdentifierColumnNames().length != 1) {
+			logger.debug("批量upsert不支持{}：复合主键、version或继承映射", clazz.getName());
+			return UNSUPPORTED;
+		}
+
+		Type[] types = persister.getPropertyTypes();
+		boolean[] insertable = persister.getPropertyInsertability();
+		boolean[] updateable = persister.getPropertyUpdateability();
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<String> columns = new ArrayList<String>();
+		List<Boolean> updates = new ArrayList<Boolean>();
+		for (int i = 0; i < types.length; i++) {
+			Type type = types[i];
+			if (type.isAssociationType() || type.isComponentType() || type.isCollectionType()) {
+				logger.debug("批量upsert不支持{}：属性{}为关联或组件", clazz.getName(), persister.getPropertyNames()[i]);
+				return UNSUPPORTED;
+			}
+			if (!insertable[i]) {
+				continue;
+			}
+			String[] propertyColumns = persister.getPropertyColumnNames(i);
+			if (propertyColumns.length != 1 || propertyColumns[0] == null) {
+				logger.debug("批量upsert不支持{}：属性{}非单列", clazz.getName(), persister.getPropertyNames()[i]);
+				return UNSUPPORTED;
+			}
+			indexes.add(i);
+			columns.add(propertyColumns[0]);
+			updates.add(updateable[i]);
+		}
+
+		EntityMapping mapping = new EntityMapping();
+		mapping.persister = persister;
+		mapping.table = persister.getTableName();
+		mapping.idColumn = persister.getIdentifierColumnNames()[0];
+		mapping.idType = persister.getIdentifierType();
+		mapping.types = types;
+		mapping.propertyIndexes = new int[indexes.size()];
+		mapping.columns = columns.toArray(new String[columns.size()]);
+		mapping.updateable = new boolean[updates.size()];
+		for (int i = 0; i < mapping.propertyIndexes.length; i++) {
+			mapping.propertyIndexes[i] = indexes.get(i);
+			mapping.updateable[i] = updates.get(i);
+		}
+		return mapping;
+	}
+
+	/**
+	 * 实体的表结构及按行数缓存的SQL
+	 */
+	private static class EntityMapping {
+		private AbstractEntityPersister persister;
+		private String table;
+		private String idColumn;
+		private Type idType;
+		private Type[] types;
+		private int[] propertyIndexes;
+		private String[] columns;
+		private boolean[] updateable;
+
+		private final ConcurrentMap<Integer, String> upsertSql = new ConcurrentHashMap<Integer, String>();
+		private final ConcurrentMap<Integer, String> deleteSql = new ConcurrentHashMap<Integer, String>();
+
+		/**
+		 * 按顺序绑定一行：主键，属性...
+		 *
+		 * @return 下一个参数位置
+		 */
+		private int bindRow(PreparedStatement ps, Object entity, int index, SessionImplementor session)
+				throws SQLException {
+			idType.nullSafeSet(ps, persister.getIdentifier(entity, EntityMode.POJO), index++, session);
+			Object[] values = persister.getPropertyValues(entity, EntityMode.POJO);
+			for (int i = 0; i < propertyIndexes.length; i++) {
+				int property = propertyIndexes[i];
+				types[property].nullSafeSet(ps, values[property], index++, session);
+			}
+			return index;
+		}
+
+		private String getUpsertSql(int dialect, int rows) {
+			String sql = upsertSql.get(rows);
+			if (sql == null) {
+				sql = dialect == DIALECT_ORACLE ? buildOracleMerge(rows) : buildMultiRowUpsert(dialect, rows);
+				upsertSql.putIfAbsent(rows, sql);
+			}
+			return sql;
+		}
+
+		private String getDeleteSql(int rows) {
+			String sql = deleteSql.get(rows);
+			if (sql == null) {
+				StringBuilder sb = new StringBuilder("DELETE FROM ").append(table).append(" WHERE ").append(idColumn)
+						.append(" IN (");
+				for (int i = 0; i < rows; i++) {
+					sb.append(i == 0 ? "?" : ", ?");
+				}
+				sql = sb.append(")").toString();
+				deleteSql.putIfAbsent(rows, sql);
+			}
+			return sql;
+		}
+
+		private String buildMultiRowUpsert(int dialect, int rows) {
+			StringBuilder sb = new StringBuilder(dialect == DIALECT_H2 ? "MERGE INTO " : "INSERT INTO ").append(table)
+					.append(" (").append(idColumn);
+			for (String column : columns) {
+				sb.append(", ").append(column);
+			}
+			sb.append(")");
+			if (dialect == DIALECT_H2) {
+				sb.append(" KEY (").append(idColumn).append(")");
+			}
+			sb.append(" VALUES ");
+			for (int row = 0; row < rows; row++) {
+				sb.append(row == 0 ? "(?" : ", (?");
+				for (int i = 0; i < columns.length; i++) {
+					sb.append(", ?");
+				}
+				sb.append(")");
+			}
+			if (dialect == DIALECT_MYSQL) {
+				sb.append(" ON DUPLICATE KEY UPDATE ");
+				boolean first = true;
+				for (int i = 0; i < columns.length; i++) {
+					if (updateable[i]) {
+						sb.append(first ? "" : ", ").append(columns[i]).append(" = VALUES(").append(columns[i])
+								.append(")");
+						first = false;
+					}
+				}
+				if (first) {
+					sb.append(idColumn).append(" = ").append(idColumn);
+				}
+			}
+			return sb.toString();
+		}
+
+		private String buildOracleMerge(int rows) {
+			StringBuilder sb = new StringBuilder("MERGE INTO ").append(table).append(" d USING (");
+			for (int row = 0; row < rows; row++) {
+				sb.append(row == 0 ? "SELECT ? " : " UNION ALL SELECT ? ").append(idColumn);
+				for (String column : columns) {
+					sb.append(", ? ").append(column);
+				}
+				sb.append(" FROM dual");
+			}
+			sb.append(") s ON (d.").append(idColumn).append(" = s.").append(idColumn).append(")");
+
+			boolean first = true;
+			for (int i = 0; i < columns.length; i++) {
+				if (updateable[i]) {
+					sb.append(first ? " WHEN MATCHED THEN UPDATE SET " : ", ").append("d.").append(columns[i])
+							.append(" = s.").append(columns[i]);
+					first = false;
+				}
+			}
+			sb.append(" WHEN NOT MATCHED THEN INSERT (").append(idColumn);
+			for (String column : columns) {
+				sb.append(", ").append(column);
+			}
+			sb.append(") VALUES (s.").append(idColumn);
+			for (String column : columns) {
+				sb.append(", s.").append(column);
+			}
+			return sb.append(")").toString();
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.cm4j.dao.hibernate;
 
 import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -10,11 +11,13 @@ import java.util.Map;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -25,6 +28,7 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
 import org.springframework.orm.hibernate3.SessionFactoryUtils;
 
 import com.cm4j.dao.exception.Cm4jDataAccessException;
+import com.cm4j.dao.monitor.DaoMonitor;
 
 /**
  * <p>
@@ -110,6 +114,19 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 
 	private HibernateTemplate hibernateTemplate;
 
+	protected DaoMonitor daoMonitor = DaoMonitor.getDefault();
+
+	/**
+	 * 未配置hibernate.jdbc.batch_size时批处理的默认条数
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 50;
+
+	// 批处理每批条数，<=0时使用hibernate.jdbc.batch_size
+	private int batchSize;
+	// 批量保存是否使用JDBC多行upsert代替merge
+	private boolean bulkUpsert;
+	private volatile HibernateBulkUpsert hibernateBulkUpsert;
+
 	// 持久化对象：E
 	private Class<E> persistentClass;
 
@@ -276,22 +293,54 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 	public List<?> findAllWithHql(String hql, Object[] values) throws DataAccessException {
 		logger.debug("查询语句：{}", hql);
 		logger.debug("查询参数：{}", ArrayUtils.toString(values));
-		return hibernateTemplate.find(hql, values);
+		long start = System.nanoTime();
+		try {
+			List<?> list = hibernateTemplate.find(hql, values);
+			daoMonitor.record(hql, values, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(hql, values, start);
+			throw e;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<E> findAll(String hql) throws DataAccessException {
-		return hibernateTemplate.find(hql);
+		long start = System.nanoTime();
+		try {
+			List<E> list = hibernateTemplate.find(hql);
+			daoMonitor.record(hql, null, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(hql, null, start);
+			throw e;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<E> findAll(String hql, Object param) throws DataAccessException {
-		return hibernateTemplate.find(hql, param);
+		long start = System.nanoTime();
+		try {
+			List<E> list = hibernateTemplate.find(hql, param);
+			daoMonitor.record(hql, param, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(hql, param, start);
+			throw e;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<E> findAll(String hql, Object[] params) throws DataAccessException {
-		return hibernateTemplate.find(hql, params);
+		long start = System.nanoTime();
+		try {
+			List<E> list = hibernateTemplate.find(hql, params);
+			daoMonitor.record(hql, params, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(hql, params, start);
+			throw e;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -308,17 +357,17 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		}
 		logger.debug("查询语句：{}", queryString);
 		logger.debug("参数键值对：{}", paramValues);
-		return hibernateTemplate.findByNamedParam(queryString, params, values);
+		return findByNamedParam(queryString, params, values);
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<E> findAll(String queryString, String paramName, Object value) throws DataAccessException {
-		return hibernateTemplate.findByNamedParam(queryString, paramName, value);
+		return findByNamedParam(queryString, new String[] { paramName }, new Object[] { value });
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<E> findAll(String queryString, String[] paramNames, Object[] values) throws DataAccessException {
-		return hibernateTemplate.findByNamedParam(queryString, paramNames, values);
+		return findByNamedParam(queryString, paramNames, values);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -331,7 +380,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		logger.debug("查询语句：{}", hql);
 		logger.debug("参数名称：{}", property);
 		logger.debug("参数值：{}", value);
-		return hibernateTemplate.findByNamedParam(hql.toString(), property, value);
+		return findByNamedParam(hql.toString(), new String[] { property }, new Object[] { value });
 	}
 
 	@SuppressWarnings("unchecked")
@@ -346,7 +395,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		logger.debug("查询语句：{}", hql);
 		logger.debug("参数名：{}", property);
 		logger.debug("参数值：{}", value);
-		return hibernateTemplate.findByNamedParam(hql.toString(), property, value);
+		return findByNamedParam(hql.toString(), new String[] { property }, new Object[] { value });
 	}
 
 	@SuppressWarnings("unchecked")
@@ -367,7 +416,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		for (int i = 0; i < properties.length; i++) {
 			logger.debug("参数名[第{}个]：{}，参数值：{}", new Object[] { i + 1, properties[i], values[i] });
 		}
-		return hibernateTemplate.findByNamedParam(queryString, properties, values);
+		return findByNamedParam(queryString, properties, values);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -392,10 +441,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		Session session = getSession();
 		Query query = session.createQuery(queryString.toString());
 		query.setProperties(paramValues);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, paramValues);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -413,10 +463,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		query.setFirstResult((pageNo - 1) * pageSize);
 		query.setMaxResults(pageSize);
 		query.setProperties(paramValues);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, paramValues);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	public List<E> findAllByPropertyLike(String property, String value) throws DataAccessException {
@@ -459,10 +510,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		Session session = this.getSession();
 		Query query = session.createQuery(hql.toString());
 		query.setProperties(otherValues);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, otherValues);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -488,10 +540,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		query.setFirstResult((pageNo - 1) * pageSize);
 		query.setMaxResults(pageSize);
 		query.setParameter(property, value);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, value);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -523,10 +576,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		query.setFirstResult((pageNo - 1) * pageSize);
 		query.setMaxResults(pageSize);
 		query.setProperties(paramValues);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, paramValues);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -560,10 +614,11 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		query.setFirstResult((pageNo - 1) * pageSize);
 		query.setMaxResults(pageSize);
 		query.setProperties(propertyValues);
-		List<E> list = null;
-		list = query.list();
-		releaseSession(session);
-		return list;
+		try {
+			return list(query, propertyValues);
+		} finally {
+			releaseSession(session);
+		}
 	}
 
 	public int count(String queryString, Map<String, Object> paramValues) throws DataAccessException {
@@ -579,7 +634,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 
 		int result = 0;
 		try {
-			result = Integer.parseInt(q.iterate().next().toString());
+			result = Integer.parseInt(first(q, paramValues).toString());
 		} catch (NumberFormatException e) {
 			logger.error("数字转换错误{}", e);
 		} catch (HibernateException e) {
@@ -615,7 +670,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 
 		int result = 0;
 		try {
-			result = Integer.parseInt(q.iterate().next().toString());
+			result = Integer.parseInt(first(q, paramValues).toString());
 		} catch (NumberFormatException e) {
 			logger.error("数字转换错误", e);
 		} catch (HibernateException e) {
@@ -651,7 +706,7 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 
 		int result = 0;
 		try {
-			result = Integer.parseInt(query.iterate().next().toString());
+			result = Integer.parseInt(first(query, propertyValues).toString());
 		} catch (NumberFormatException e) {
 			logger.error("数字转换错误", e);
 		} catch (HibernateException e) {
@@ -661,6 +716,47 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		return result;
 	}
 
+	@SuppressWarnings("unchecked")
+	private List<E> findByNamedParam(String queryString, String[] paramNames, Object[] values) {
+		long start = System.nanoTime();
+		try {
+			List<E> list = hibernateTemplate.findByNamedParam(queryString, paramNames, values);
+			daoMonitor.record(queryString, values, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, values, start);
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<E> list(Query query, Object params) {
+		long start = System.nanoTime();
+		try {
+			List<E> list = query.list();
+			daoMonitor.record(query.getQueryString(), params, DaoMonitor.rowsOf(list), start);
+			return list;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(query.getQueryString(), params, start);
+			throw e;
+		}
+	}
+
+	/**
+	 * 查询第一条记录，用于count
+	 */
+	private Object first(Query query, Object params) {
+		long start = System.nanoTime();
+		try {
+			Object result = query.iterate().next();
+			daoMonitor.record(query.getQueryString(), params, 1, start);
+			return result;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(query.getQueryString(), params, start);
+			throw e;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public Iterator<E> iterate(String queryString) throws DataAccessException {
 		return hibernateTemplate.iterate(queryString);
@@ -722,15 +818,39 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 	}
 
 	public int update(String queryString) throws DataAccessException {
-		return hibernateTemplate.bulkUpdate(queryString);
+		long start = System.nanoTime();
+		try {
+			int rows = hibernateTemplate.bulkUpdate(queryString);
+			daoMonitor.record(queryString, null, rows, start);
+			return rows;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, null, start);
+			throw e;
+		}
 	}
 
 	public int update(String queryString, Object value) throws DataAccessException {
-		return hibernateTemplate.bulkUpdate(queryString, value);
+		long start = System.nanoTime();
+		try {
+			int rows = hibernateTemplate.bulkUpdate(queryString, value);
+			daoMonitor.record(queryString, value, rows, start);
+			return rows;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, value, start);
+			throw e;
+		}
 	}
 
 	public int update(String queryString, Object[] values) throws DataAccessException {
-		return hibernateTemplate.bulkUpdate(queryString, values);
+		long start = System.nanoTime();
+		try {
+			int rows = hibernateTemplate.bulkUpdate(queryString, values);
+			daoMonitor.record(queryString, values, rows, start);
+			return rows;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, values, start);
+			throw e;
+		}
 	}
 
 	public void saveOrUpdate(E entity) throws DataAccessException {
@@ -769,6 +889,9 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 
 	/**
 	 * 批量保存/更新
+	 * <p>
+	 * 开启{@link #setBulkUpsert(boolean)}且数据库方言支持时，连续的同操作、同类型实体合为一组，以多行upsert/delete语句直接写库；
+	 * 映射不支持或主键未赋值的实体仍使用merge，各组和merge按传入顺序执行
 	 * 
 	 * @param entities
 	 */
@@ -776,20 +899,12 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		Session session = getSession();
 		Transaction tx = session.beginTransaction();
 		try {
-			int idx = 0;
-			for (BatchWrapper<E> entry : entities) {
-				E e = entry.getE();
-				int type = entry.getType();
-
-				if (BatchWrapper.UPDATE == type) {
-					session.merge(e);
-				} else if (BatchWrapper.DELETE == type) {
-					session.delete(e);
-				}
-				if ((++idx) % 50 == 0) {
-					session.flush(); // 清理缓存，执行批量插入20条记录的SQL insert语句
-					session.clear(); // 清空缓存中的Customer对象
-				}
+			int batchSize = getBatchSize();
+			HibernateBulkUpsert bulk = bulkUpsert ? getHibernateBulkUpsert() : null;
+			if (bulk != null && bulk.isDialectSupported()) {
+				bulkSaveOrUpdate(session, bulk, entities, batchSize);
+			} else {
+				mergeAll(session, entities, batchSize);
 			}
 			tx.commit();
 			if (callback != null) {
@@ -826,6 +941,131 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		}
 	}
 
+	private void mergeAll(Session session, Collection<BatchWrapper<E>> entities, int batchSize) {
+		int idx = 0;
+		for (BatchWrapper<E> entry : entities) {
+			E e = entry.getE();
+			int type = entry.getType();
+
+			if (BatchWrapper.UPDATE == type) {
+				session.merge(e);
+			} else if (BatchWrapper.DELETE == type) {
+				session.delete(e);
+			}
+			if ((++idx) % batchSize == 0) {
+				session.flush(); // 清理缓存，执行批量SQL语句
+				session.clear(); // 清空缓存中的对象
+			}
+		}
+	}
+
+	private void bulkSaveOrUpdate(Session session, HibernateBulkUpsert bulk, Collection<BatchWrapper<E>> entities,
+			int batchSize) {
+		// 按传入顺序执行：类型或操作变化、遇到需要merge的实体时，先写出当前组
+		List<E> group = new ArrayList<E>();
+		Class<?> groupClass = null;
+		int groupType = 0;
+		int groups = 0, merged = 0;
+		for (BatchWrapper<E> entry : entities) {
+			E e = entry.getE();
+			int type = entry.getType();
+			Class<?> clazz = Hibernate.getClass(e);
+			if ((BatchWrapper.UPDATE != type && BatchWrapper.DELETE != type) || !bulk.supports(clazz)
+					|| !bulk.hasIdentifier(clazz, e)) {
+				groups += bulkWrite(session, bulk, groupType, groupClass, group, batchSize);
+				if (BatchWrapper.UPDATE == type) {
+					session.merge(e);
+				} else if (BatchWrapper.DELETE == type) {
+					session.delete(e);
+				}
+				if ((++merged) % batchSize == 0) {
+					session.flush();
+					session.clear();
+				}
+				continue;
+			}
+			if (type != groupType || clazz != groupClass) {
+				groups += bulkWrite(session, bulk, groupType, groupClass, group, batchSize);
+				groupType = type;
+				groupClass = clazz;
+			}
+			group.add(e);
+		}
+		groups += bulkWrite(session, bulk, groupType, groupClass, group, batchSize);
+		logger.debug("批量保存完成，批量{}组，merge{}条", groups, merged);
+	}
+
+	/**
+	 * 写出一组实体并清空group，group为空时不执行
+	 * 
+	 * @return 执行的组数
+	 */
+	private int bulkWrite(Session session, HibernateBulkUpsert bulk, int type, Class<?> clazz, List<E> group,
+			int batchSize) {
+		if (group.isEmpty()) {
+			return 0;
+		}
+		boolean delete = BatchWrapper.DELETE == type;
+		String statement = (delete ? "bulk delete " : "bulk upsert ") + clazz.getName();
+		long start = System.nanoTime();
+		try {
+			int rows = delete ? bulk.delete(session, clazz, group, batchSize) : bulk.upsert(session, clazz, group,
+					batchSize);
+			daoMonitor.record(statement, group.size() + " entities", rows, start);
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(statement, group.size() + " entities", start);
+			throw e;
+		}
+		group.clear();
+		return 1;
+	}
+
+	/**
+	 * 批处理每批条数：优先使用{@link #setBatchSize(int)}，其次hibernate.jdbc.batch_size，最后
+	 * {@link #DEFAULT_BATCH_SIZE}
+	 */
+	public int getBatchSize() {
+		if (batchSize > 0) {
+			return batchSize;
+		}
+		SessionFactory sessionFactory = getSessionFactory();
+		if (sessionFactory instanceof SessionFactoryImplementor) {
+			int jdbcBatchSize = ((SessionFactoryImplementor) sessionFactory).getSettings().getJdbcBatchSize();
+			if (jdbcBatchSize > 0) {
+				return jdbcBatchSize;
+			}
+		}
+		return DEFAULT_BATCH_SIZE;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isBulkUpsert() {
+		return bulkUpsert;
+	}
+
+	/**
+	 * 批量保存是否使用JDBC多行upsert，详见{@link HibernateBulkUpsert}
+	 */
+	public void setBulkUpsert(boolean bulkUpsert) {
+		this.bulkUpsert = bulkUpsert;
+	}
+
+	protected HibernateBulkUpsert getHibernateBulkUpsert() {
+		SessionFactory sessionFactory = getSessionFactory();
+		if (!(sessionFactory instanceof SessionFactoryImplementor)) {
+			return null;
+		}
+		HibernateBulkUpsert bulk = hibernateBulkUpsert;
+		if (bulk == null) {
+			bulk = new HibernateBulkUpsert((SessionFactoryImplementor) sessionFactory);
+			hibernateBulkUpsert = bulk;
+		}
+		return bulk;
+	}
+
 	public interface BatchCallback<E> {
 		/**
 		 * 更新成功后回调
@@ -867,9 +1107,20 @@ public class HibernateDao<E, ID extends Serializable> implements InitializingBea
 		// 首先，检查原来的hibernateTemplate实例是否还存在
 		if (this.hibernateTemplate == null || sessionFactory != this.hibernateTemplate.getSessionFactory()) {
 			this.hibernateTemplate = new HibernateTemplate(sessionFactory);
+			this.hibernateBulkUpsert = null;
 		}
 	}
 
+	/**
+	 * 注入DAO监控，未配置时使用{@link DaoMonitor#getDefault()}
+	 * 
+	 * @param daoMonitor
+	 */
+	@Autowired(required = false)
+	public void setDaoMonitor(DaoMonitor daoMonitor) {
+		this.daoMonitor = daoMonitor;
+	}
+
 	/**
 	 * Return the Hibernate SessionFactory used by this DAO.
 	 */
@@ -1,15 +1,8 @@
 package com.cm4j.dao.jdbc;
 
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.Date;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 import javax.sql.DataSource;
@@ -26,6 +19,7 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 
 import com.cm4j.dao.exception.Cm4jDataAccessException;
+import com.cm4j.dao.monitor.DaoMonitor;
 
 /**
  * <p>
@@ -51,6 +45,8 @@ public class SessionDao {
 	protected JdbcTemplate jdbcTemplate;
 	protected SimpleJdbcTemplate simpleJdbcTemplate;
 	protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+	protected StoredProcedureExecutor storedProcedureExecutor;
+	protected DaoMonitor daoMonitor = DaoMonitor.getDefault();
 
 	// ***************************************************************************
 	// * ------------------------------具体实现方法------------------------------ *
@@ -61,10 +57,17 @@ public class SessionDao {
 	 */
 	public List<Map<String, Object>> findAll(String queryString, Map<String, Object> paramValues)
 			throws DataAccessException {
-		List<Map<String, Object>> result = this.namedParameterJdbcTemplate.queryForList(queryString, paramValues);
-		logger.debug("传入sql：" + queryString);
-		logger.debug("传入键值对参数：" + paramValues);
-		return result;
+		logger.debug("传入sql：{}", queryString);
+		logger.debug("传入键值对参数：{}", paramValues);
+		long start = System.nanoTime();
+		try {
+			List<Map<String, Object>> result = this.namedParameterJdbcTemplate.queryForList(queryString, paramValues);
+			daoMonitor.record(queryString, paramValues, DaoMonitor.rowsOf(result), start);
+			return result;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, paramValues, start);
+			throw e;
+		}
 	}
 
 	public List<?> page(String queryString, Map<String, Object> paramValues, int firstRowNum, int pageRowCount)
@@ -76,9 +79,7 @@ public class SessionDao {
 				queryString).append(") row_ where rownum <= :maxRowNum) where rownum_> :firstRowNum");
 		paramValues.put("firstRowNum", firstRowNum);
 		paramValues.put("maxRowNum", firstRowNum + pageRowCount);
-		logger.debug("传入sql：" + sqlBuilder.toString());
-		logger.debug("传入键值对参数：" + paramValues);
-		return this.simpleJdbcTemplate.queryForList(sqlBuilder.toString(), paramValues);
+		return queryForPage(sqlBuilder.toString(), paramValues);
 	}
 
 	public List<?> page(String queryString, Map<String, Object> paramValues, int firstRowNum, int pageRowCount,
@@ -91,153 +92,92 @@ public class SessionDao {
 		sqlBuilder.append(" ORDER BY ").append(orderBy).append(isAsc ? " ASC" : " DESC");
 		paramValues.put("firstRowNum", firstRowNum);
 		paramValues.put("maxRowNum", firstRowNum + pageRowCount);
-
-		logger.debug("传入sql：" + sqlBuilder.toString());
-		logger.debug("传入键值对参数：" + paramValues);
-		return this.simpleJdbcTemplate.queryForList(sqlBuilder.toString(), paramValues);
+		return queryForPage(sqlBuilder.toString(), paramValues);
 	}
 
 	public int count(String queryString, Map<String, Object> paramValues) throws DataAccessException {
 		int result = 0;
+		long start = System.nanoTime();
 		try {
 			result = this.namedParameterJdbcTemplate.queryForInt(queryString, paramValues);
 		} catch (IncorrectResultSizeDataAccessException e) {
 			logger.debug("查询记录数为0");
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(queryString, paramValues, start);
+			throw e;
 		}
+		daoMonitor.record(queryString, paramValues, 1, start);
 		return result;
 	}
 
+	private List<Map<String, Object>> queryForPage(String sql, Map<String, Object> paramValues) {
+		logger.debug("传入sql：{}", sql);
+		logger.debug("传入键值对参数：{}", paramValues);
+		long start = System.nanoTime();
+		try {
+			List<Map<String, Object>> result = this.simpleJdbcTemplate.queryForList(sql, paramValues);
+			daoMonitor.record(sql, paramValues, DaoMonitor.rowsOf(result), start);
+			return result;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(sql, paramValues, start);
+			throw e;
+		}
+	}
+
+	/**
+	 * 调用存储过程，返回的第一条记录为输出参数，其后为游标数据
+	 * <p>
+	 * 必须注册输出参数piResult，未注册时抛出异常；piResult不为1且注册了psErrDesc时抛出异常
+	 * 
+	 * @see StoredProcedureExecutor
+	 */
 	public List<Map<String, Object>> executeWithResult(String spName, Map<String, Object> parameters,
 			Map<String, Integer> outParams, String cursorName) throws DataAccessException {
-
-		List<Map<String, Object>> data = new ArrayList<Map<String, Object>>();
-
 		if (spName == null) {
 			throw new Cm4jDataAccessException("存储过程名称不能为空");
 		}
 
-		if (logger.isDebugEnabled()) {
-			logger.debug("调用存储过程: " + spName);
-			logger.debug("过程输入参数=" + parameters);
-			logger.debug("过程输出参数=" + outParams);
-		}
-
-		CallableStatement cmt = null;
-		Connection conn = null;
-		ResultSet rs = null;
-		try {
-			conn = jdbcTemplate.getDataSource().getConnection();
-		} catch (SQLException e) {
-			throw new Cm4jDataAccessException("打开数据库连接异常", e);
-		}
-		int pCount = ((parameters == null) ? 0 : parameters.size()) + ((outParams == null) ? 0 : outParams.size());
-		StringBuilder sb = new StringBuilder(40);
+		logger.debug("调用存储过程: {}", spName);
+		logger.debug("过程输入参数={}", parameters);
+		logger.debug("过程输出参数={}", outParams);
 
-		sb.append("{call ").append(spName).append("(");
-		for (int i = 0; i < pCount; i++) {
-			if (i != 0)
-				sb.append(",");
-			sb.append("?");
+		// 调用前检查，避免过程已执行才报错
+		if (outParams == null || !outParams.containsKey("piResult")) {
+			throw new DataRetrievalFailureException("调用过程" + spName + "未注册输出参数piResult");
 		}
-		sb.append(")}");
-
-		String sql = sb.toString();
-		Map<String, Object> ret = new TreeMap<String, Object>();
-		try {
-			cmt = conn.prepareCall(sql);
-			if (parameters != null && parameters.size() > 0) {
-				Set<String> keys = parameters.keySet();
-				for (String key : keys) {
-					Object value = parameters.get(key);
-					if (value instanceof java.util.Date) {
-						cmt.setDate(key, new Date(((java.util.Date) value).getTime()));
-					} else {
-						cmt.setObject(key, value);
-					}
 
-				}
-			}
-			if (outParams != null && outParams.size() > 0) {
-				Set<String> keys = outParams.keySet();
-				for (String key : keys) {
-					Integer value = outParams.get(key);
-					cmt.registerOutParameter(key, value.intValue());
-				}
-			}
-			try {
-				cmt.execute();
-			} catch (RuntimeException e) {
-				logger.error(e.getMessage() + e.getStackTrace());
-				return null;
-			}
-			int resultCode = cmt.getInt("piResult");
-			if (resultCode != 1) {
-				ret.put("piResult", resultCode);
-				if (outParams.get("psErrDesc") != null) {
-					ret.put("psErrDesc", cmt.getString("psErrDesc"));
-					logger.error("调用过程" + spName + "报错，psErrDesc:" + cmt.getString("psErrDesc"));
-					throw new Cm4jDataAccessException("调用过程" + spName + "报错，psErrDesc:" + cmt.getString("psErrDesc"));
-				}
-			}
-			if (outParams != null && outParams.size() > 0) {
-				Set<String> keys = outParams.keySet();
-				for (String key : keys) {
-					if (key.equals(cursorName)) {
-						continue;
-					}
-					Object value = cmt.getObject(key);
-					if (value != null) {
-						ret.put(key, value);
-					}
-				}
-			}
-			// 将其他返回信息放入结果
-			data.add(ret);
-
-			// 将游标中数据放入结果
-			if (cursorName != null) {
-				try {
-					rs = (ResultSet) cmt.getObject(cursorName);
-				} catch (SQLException e) {
-					logger.warn("存储过程没有游标可以打开");
-					return data;
-				}
-				if (rs != null) {
-					while (rs.next()) {
-						Map<String, Object> row = new LinkedHashMap<String, Object>();
-						int n = rs.getMetaData().getColumnCount();
-						for (int i = 0; i < n; i++) {
-							row.put(rs.getMetaData().getColumnName(i + 1), rs.getObject(i + 1));
-						}
-						data.add(row);
-					}
-				}
-			}
-		} catch (Throwable e) {
-			throw new DataRetrievalFailureException("ERROR", e);
-		} finally {
-			try {
-				if (rs != null) {
-					rs.close();
-					rs = null;
-				}
-				if (cmt != null) {
-					cmt.close();
-					cmt = null;
-				}
-				if (conn != null) {
-					conn.close();
-					conn = null;
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();// 关闭异常
+		List<Map<String, Object>> data = new ArrayList<Map<String, Object>>();
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		Map<String, Object> out = storedProcedureExecutor.execute(spName, parameters, outParams, cursorName, rows);
+
+		Map<String, Object> ret = new TreeMap<String, Object>(out);
+		Object piResult = out.get("piResult");
+		int resultCode = piResult instanceof Number ? ((Number) piResult).intValue() : 0;
+		if (resultCode != 1) {
+			ret.put("piResult", resultCode);
+			if (outParams.get("psErrDesc") != null) {
+				Object errDesc = out.get("psErrDesc");
+				logger.error("调用过程" + spName + "报错，psErrDesc:" + errDesc);
+				throw new Cm4jDataAccessException("调用过程" + spName + "报错，psErrDesc:" + errDesc);
 			}
 		}
+		// 将其他返回信息放入结果
+		data.add(ret);
+		// 将游标中数据放入结果
+		data.addAll(rows);
 		return data;
 	}
 
 	public Long findForLong(String sql) throws DataAccessException {
-		return jdbcTemplate.queryForLong(sql);
+		long start = System.nanoTime();
+		try {
+			long result = jdbcTemplate.queryForLong(sql);
+			daoMonitor.record(sql, null, 1, start);
+			return result;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(sql, null, start);
+			throw e;
+		}
 	}
 
 	// ***************************************************************************
@@ -253,6 +193,8 @@ public class SessionDao {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 		this.simpleJdbcTemplate = new SimpleJdbcTemplate(dataSource);
 		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		this.storedProcedureExecutor = new StoredProcedureExecutor(jdbcTemplate);
+		this.storedProcedureExecutor.setDaoMonitor(daoMonitor);
 	}
 
 	public SimpleJdbcTemplate getSimpleJdbcTemplate() {
@@ -267,4 +209,21 @@ public class SessionDao {
 		return jdbcTemplate;
 	}
 
-}
\ No newline at end of file
+	public StoredProcedureExecutor getStoredProcedureExecutor() {
+		return storedProcedureExecutor;
+	}
+
+	/**
+	 * 注入DAO监控，未配置时使用{@link DaoMonitor#getDefault()}
+	 * 
+	 * @param daoMonitor
+	 */
+	@Autowired(required = false)
+	public void setDaoMonitor(DaoMonitor daoMonitor) {
+		this.daoMonitor = daoMonitor;
+		if (storedProcedureExecutor != null) {
+			storedProcedureExecutor.setDaoMonitor(daoMonitor);
+		}
+	}
+
+}
\ No newline at end of file
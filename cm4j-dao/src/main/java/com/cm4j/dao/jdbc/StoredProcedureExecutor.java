@@ -0,0 +1,454 @@
+package com.cm4j.dao.jdbc;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.cm4j.dao.exception.Cm4jDataAccessException;
+import com.cm4j.dao.monitor.DaoMonitor;
+
+/**
+ * <p>
+ * 存储过程执行器：按过程名缓存调用语句和参数元数据，按位置绑定参数，游标结果逐行回调
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 通过{@link JdbcTemplate}获取连接，参与Spring事务
+ * <p>
+ * 首次调用时通过{@link DatabaseMetaData#getProcedureColumns}读取参数列表(参数名不区分大小写)；
+ * 驱动不支持、存在重载或传入的参数名无法匹配时，退回按参数名绑定；
+ * 未传入全部输入参数时也按参数名绑定，未传入的参数使用过程声明的默认值
+ * <p>
+ * 语句或参数错误时清除元数据缓存，业务异常不清除
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class StoredProcedureExecutor {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final JdbcTemplate jdbcTemplate;
+	private DaoMonitor daoMonitor = DaoMonitor.getDefault();
+	// 游标fetchSize，<=0时使用驱动默认值
+	private int fetchSize;
+
+	private final ConcurrentMap<String, ProcedureMetadata> metadataCache = new ConcurrentHashMap<String, ProcedureMetadata>();
+	// 无元数据时按参数个数缓存的调用语句
+	private final ConcurrentMap<String, String> callStringCache = new ConcurrentHashMap<String, String>();
+
+	public StoredProcedureExecutor(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * 执行存储过程
+	 *
+	 * @param spName
+	 *            过程名，可带包名或schema，如pkg.sp_name
+	 * @param parameters
+	 *            输入参数，参数名 -> 值
+	 * @param outParams
+	 *            输出参数，参数名 -> {@link java.sql.Types}
+	 * @param cursorName
+	 *            游标输出参数名，可为null
+	 * @param cursorHandler
+	 *            游标逐行回调，cursorName不为null时有效
+	 * @return 除游标外的非空输出参数值
+	 */
+	public Map<String, Object> execute(final String spName, final Map<String, Object> parameters,
+			final Map<String, Integer> outParams, final String cursorName, final RowCallbackHandler cursorHandler)
+			throws DataAccessException {
+		if (spName == null) {
+			throw new Cm4jDataAccessException("存储过程名称不能为空");
+		}
+		final ProcedureMetadata metadata = getMetadata(spName);
+		final int[] inPositions = metadata == null ? null : metadata.positionsOf(parameters);
+		final int[] outPositions = metadata == null ? null : metadata.positionsOf(outParams);
+		final boolean byPosition = inPositions != null && outPositions != null
+				&& metadata.bindsAllInputs(inPositions);
+		final String callString = byPosition ? metadata.callString : getCallString(spName, parameters, outParams);
+
+		// 绑定参数时出错，元数据可能已过期
+		final boolean[] bindFailed = new boolean[1];
+		long start = System.nanoTime();
+		try {
+			Map<String, Object> result = jdbcTemplate.execute(callString,
+					new CallableStatementCallback<Map<String, Object>>() {
+						@Override
+						public Map<String, Object> doInCallableStatement(CallableStatement cs) throws SQLException {
+							bindFailed[0] = true;
+							if (byPosition) {
+								bindByPosition(cs, metadata, parameters, inPositions, outParams, outPositions);
+							} else {
+								bindByName(cs, parameters, outParams);
+							}
+							bindFailed[0] = false;
+							cs.execute();
+							Map<String, Object> out = readOutParams(cs, outParams, byPosition ? outPositions : null,
+									cursorName);
+							if (cursorName != null && cursorHandler != null) {
+								int cursorIndex = byPosition ? metadata.positionOf(cursorName) : -1;
+								readCursor(cs, cursorName, cursorIndex, cursorHandler);
+							}
+							return out;
+						}
+					});
+			daoMonitor.record(callString, parameters, -1, start);
+			return result;
+		} catch (RuntimeException e) {
+			daoMonitor.recordError(callString, parameters, start);
+			if (bindFailed[0] || e instanceof InvalidDataAccessResourceUsageException) {
+				// 过程可能已被修改，下次重新读取元数据
+				evict(spName);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 执行存储过程，游标数据以列名 -> 值的形式返回
+	 *
+	 * @param rows
+	 *            存放游标数据
+	 * @see #execute(String, Map, Map, String, RowCallbackHandler)
+	 */
+	public Map<String, Object> execute(String spName, Map<String, Object> parameters, Map<String, Integer> outParams,
+			String cursorName, List<Map<String, Object>> rows) throws DataAccessException {
+		return execute(spName, parameters, outParams, cursorName, new ColumnMapCollector(rows));
+	}
+
+	/**
+	 * 清除过程的元数据缓存
+	 */
+	public void evict(String spName) {
+		metadataCache.remove(spName);
+	}
+
+	private void bindByPosition(CallableStatement cs, ProcedureMetadata metadata, Map<String, Object> parameters,
+			int[] inPositions, Map<String, Integer> outParams, int[] outPositions) throws SQLException {
+		boolean[] bound = new boolean[metadata.names.length + 1];
+		if (parameters != null) {
+			int i = 0;
+			for (Object value : parameters.values()) {
+				int index = inPositions[i++];
+				setValue(cs, index, value, metadata.dataTypes[index - 1]);
+				bound[index] = true;
+			}
+		}
+		if (outParams != null) {
+			int i = 0;
+			for (Integer type : outParams.values()) {
+				int index = outPositions[i++];
+				cs.registerOutParameter(index, type.intValue());
+				bound[index] = true;
+			}
+		}
+		// 输入参数已全部传入，未传入的输出参数按声明类型注册
+		for (int index = 1; index < bound.length; index++) {
+			if (!bound[index]) {
+				cs.registerOutParameter(index, metadata.dataTypes[index - 1]);
+			}
+		}
+	}
+
+	private static void setValue(CallableStatement cs, int index, Object value, int sqlType) throws SQLException {
+		if (value == null) {
+			cs.setNull(index, sqlType);
+		} else if (value instanceof java.util.Date) {
+			cs.setDate(index, new Date(((java.util.Date) value).getTime()));
+		} else {
+			cs.setObject(index, value);
+		}
+	}
+
+	private static void bindByName(CallableStatement cs, Map<String, Object> parameters, Map<String, Integer> outParams)
+			throws SQLException {
+		if (parameters != null) {
+			for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+				Object value = entry.getValue();
+				if (value instanceof java.util.Date) {
+					cs.setDate(entry.getKey(), new Date(((java.util.Date) value).getTime()));
+				} else {
+					cs.setObject(entry.getKey(), value);
+				}
+			}
+		}
+		if (outParams != null) {
+			for (Map.Entry<String, Integer> entry : outParams.entrySet()) {
+				cs.registerOutParameter(entry.getKey(), entry.getValue().intValue());
+			}
+		}
+	}
+
+	private static Map<String, Object> readOutParams(CallableStatement cs, Map<String, Integer> outParams,
+			int[] outPositions, String cursorName) throws SQLException {
+		Map<String, Object> out = new LinkedHashMap<String, Object>();
+		if (outParams == null) {
+			return out;
+		}
+		int i = 0;
+		for (String key : outParams.keySet()) {
+			int index = outPositions == null ? -1 : outPositions[i];
+			i++;
+			if (key.equals(cursorName)) {
+				continue;
+			}
+			Object value = index > 0 ? cs.getObject(index) : cs.getObject(key);
+			if (value != null) {
+				out.put(key, value);
+			}
+		}
+		return out;
+	}
+
+	private void readCursor(CallableStatement cs, String cursorName, int cursorIndex, RowCallbackHandler handler)
+			throws SQLException {
+		ResultSet rs;
+		try {
+			rs = (ResultSet) (cursorIndex > 0 ? cs.getObject(cursorIndex) : cs.getObject(cursorName));
+		} catch (SQLException e) {
+			logger.warn("存储过程没有游标可以打开");
+			return;
+		}
+		if (rs == null) {
+			return;
+		}
+		try {
+			if (fetchSize > 0) {
+				rs.setFetchSize(fetchSize);
+			}
+			while (rs.next()) {
+				handler.processRow(rs);
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	private String getCallString(String spName, Map<String, Object> parameters, Map<String, Integer> outParams) {
+		int count = ((parameters == null) ? 0 : parameters.size()) + ((outParams == null) ? 0 : outParams.size());
+		String key = spName + "#" + count;
+		String callString = callStringCache.get(key);
+		if (callString == null) {
+			callString = buildCallString(spName, count);
+			callStringCache.putIfAbsent(key, callString);
+		}
+		return callString;
+	}
+
+	private static String buildCallString(String spName, int count) {
+		StringBuilder sb = new StringBuilder(spName.length() + 10 + count * 2);
+		sb.append("{call ").append(spName).append("(");
+		for (int i = 0; i < count; i++) {
+			if (i != 0)
+				sb.append(",");
+			sb.append("?");
+		}
+		return sb.append(")}").toString();
+	}
+
+	/**
+	 * 读取并缓存过程参数元数据，无法使用时返回null
+	 */
+	private ProcedureMetadata getMetadata(final String spName) {
+		ProcedureMetadata metadata = metadataCache.get(spName);
+		if (metadata == null) {
+			try {
+				metadata = jdbcTemplate.execute(new ConnectionCallback<ProcedureMetadata>() {
+					@Override
+					public ProcedureMetadata doInConnection(Connection con) throws SQLException {
+						return loadMetadata(con.getMetaData(), spName);
+					}
+				});
+			} catch (DataAccessException e) {
+				logger.warn("读取存储过程{}参数元数据异常，按参数名绑定：{}", spName, e.getMessage());
+				metadata = null;
+			}
+			if (metadata == null) {
+				metadata = ProcedureMetadata.UNAVAILABLE;
+			}
+			metadataCache.putIfAbsent(spName, metadata);
+		}
+		return metadata == ProcedureMetadata.UNAVAILABLE ? null : metadata;
+	}
+
+	private ProcedureMetadata loadMetadata(DatabaseMetaData meta, String spName) throws SQLException {
+		String prefix = null;
+		String name = spName;
+		int dot = spName.lastIndexOf('.');
+		if (dot > 0) {
+			prefix = spName.substring(0, dot);
+			name = spName.substring(dot + 1);
+		}
+		// 带前缀时依次当作catalog(Oracle包名/MySQL库名)和schema，数据库可能以大写存储
+		String[][] candidates = prefix == null ? new String[][] { { null, null, name },
+				{ null, null, name.toUpperCase() } } : new String[][] { { prefix, null, name },
+				{ prefix.toUpperCase(), null, name.toUpperCase() }, { null, prefix, name },
+				{ null, prefix.toUpperCase(), name.toUpperCase() } };
+		for (String[] candidate : candidates) {
+			ProcedureMetadata metadata = loadMetadata(meta, spName, candidate[0], candidate[1], candidate[2]);
+			if (metadata != null) {
+				logger.debug("存储过程{}参数：{}", spName, metadata.positions.keySet());
+				return metadata;
+			}
+		}
+		return null;
+	}
+
+	private static ProcedureMetadata loadMetadata(DatabaseMetaData meta, String spName, String catalog,
+			String schema, String name) throws SQLException {
+		List<String> names = new ArrayList<String>();
+		List<Integer> types = new ArrayList<Integer>();
+		List<Boolean> outs = new ArrayList<Boolean>();
+		ResultSet rs = meta.getProcedureColumns(catalog, schema, name, null);
+		try {
+			while (rs.next()) {
+				short columnType = rs.getShort("COLUMN_TYPE");
+				if (columnType == DatabaseMetaData.procedureColumnReturn
+						|| columnType == DatabaseMetaData.procedureColumnResult) {
+					// 函数返回值或结果集列，不支持
+					return null;
+				}
+				names.add(rs.getString("COLUMN_NAME"));
+				types.add(rs.getInt("DATA_TYPE"));
+				outs.add(columnType == DatabaseMetaData.procedureColumnOut
+						|| columnType == DatabaseMetaData.procedureColumnInOut);
+			}
+		} finally {
+			rs.close();
+		}
+		if (names.isEmpty()) {
+			return null;
+		}
+		return ProcedureMetadata.create(spName, names, types, outs);
+	}
+
+	public void setDaoMonitor(DaoMonitor daoMonitor) {
+		this.daoMonitor = daoMonitor;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * 过程参数元数据
+	 */
+	private static class ProcedureMetadata {
+		private static final ProcedureMetadata UNAVAILABLE = new ProcedureMetadata();
+
+		private String callString;
+		private String[] names;
+		private int[] dataTypes;
+		private boolean[] out;
+		// 大写参数名 -> 位置(从1开始)
+		private final Map<String, Integer> positions = new HashMap<String, Integer>();
+
+		private static ProcedureMetadata create(String spName, List<String> names, List<Integer> types,
+				List<Boolean> outs) {
+			ProcedureMetadata metadata = new ProcedureMetadata();
+			metadata.callString = buildCallString(spName, names.size());
+			metadata.names = names.toArray(new String[names.size()]);
+			metadata.dataTypes = new int[names.size()];
+			metadata.out = new boolean[names.size()];
+			for (int i = 0; i < metadata.names.length; i++) {
+				if (metadata.names[i] == null
+						|| metadata.positions.put(metadata.names[i].toUpperCase(), i + 1) != null) {
+					// 重载过程或无参数名
+					return null;
+				}
+				metadata.dataTypes[i] = types.get(i);
+				metadata.out[i] = outs.get(i);
+			}
+			return metadata;
+		}
+
+		private int positionOf(String name) {
+			Integer position = positions.get(name.toUpperCase());
+			return position == null ? -1 : position.intValue();
+		}
+
+		/**
+		 * 是否传入了全部输入参数，输入参数不能传null代替默认值
+		 */
+		private boolean bindsAllInputs(int[] inPositions) {
+			boolean[] bound = new boolean[names.length + 1];
+			for (int position : inPositions) {
+				bound[position] = true;
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (!out[i] && !bound[i + 1]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * 按map迭代顺序返回各参数位置，有参数无法匹配时返回null
+		 */
+		private int[] positionsOf(Map<String, ?> params) {
+			if (params == null) {
+				return new int[0];
+			}
+			int[] result = new int[params.size()];
+			int i = 0;
+			for (String key : params.keySet()) {
+				int position = positionOf(key);
+				if (position < 0) {
+					return null;
+				}
+				result[i++] = position;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 将游标数据转为 列名 -> 值，列信息只读取一次
+	 */
+	public static class ColumnMapCollector implements RowCallbackHandler {
+		private final List<Map<String, Object>> rows;
+		private String[] columnNames;
+
+		public ColumnMapCollector(List<Map<String, Object>> rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			if (columnNames == null) {
+				ResultSetMetaData meta = rs.getMetaData();
+				columnNames = new String[meta.getColumnCount()];
+				for (int i = 0; i < columnNames.length; i++) {
+					columnNames[i] = meta.getColumnName(i + 1);
+				}
+			}
+			Map<String, Object> row = new LinkedHashMap<String, Object>(columnNames.length * 2);
+			for (int i = 0; i < columnNames.length; i++) {
+				row.put(columnNames[i], rs.getObject(i + 1));
+			}
+			rows.add(row);
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package com.cm4j.dao.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * DAO层监控：按归一化后的SQL/HQL统计耗时直方图、返回行数、连接等待时间，并对慢查询采样记录绑定参数
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * DAO通过{@link #record(String, Object, int, long)}上报，连接等待时间由{@link MonitoredDataSource}上报
+ * <p>
+ * 统计数据通过JMX暴露，Spring配置如下：
+ *
+ * <pre>
+ * &lt;bean id=&quot;daoMonitor&quot; class=&quot;com.cm4j.dao.monitor.DaoMonitor&quot; factory-method=&quot;getDefault&quot;
+ * 	init-method=&quot;registerMBean&quot; destroy-method=&quot;unregisterMBean&quot;&gt;
+ * 	&lt;property name=&quot;slowThresholdMillis&quot; value=&quot;200&quot; /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class DaoMonitor implements DaoMonitorMBean {
+
+	public static final String DEFAULT_OBJECT_NAME = "com.cm4j.dao:type=DaoMonitor";
+
+	// 最多统计的语句数，超出后归入OTHER，防止拼接SQL导致内存无限增长
+	private static final int MAX_STATEMENTS = 1000;
+	private static final String OTHER = "<other>";
+	// 原始语句 -> 统计 的缓存上限，避免每次都做归一化
+	private static final int MAX_RAW_CACHE = 4000;
+	// 慢查询明细环形缓冲大小
+	private static final int SLOW_QUERY_RING_SIZE = 100;
+
+	private static final DaoMonitor DEFAULT = new DaoMonitor();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final ConcurrentMap<String, StatementStatistics> statistics = new ConcurrentHashMap<String, StatementStatistics>();
+	private final ConcurrentMap<String, StatementStatistics> rawCache = new ConcurrentHashMap<String, StatementStatistics>();
+	private volatile StatementStatistics connectionWait = new StatementStatistics("getConnection");
+
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong slowCount = new AtomicLong();
+
+	private final String[] slowQueries = new String[SLOW_QUERY_RING_SIZE];
+	private final AtomicInteger slowQueryIndex = new AtomicInteger();
+
+	private volatile boolean enabled = true;
+	private volatile long slowThresholdMillis = 500;
+	private volatile int slowSampleInterval = 1;
+	private String objectName = DEFAULT_OBJECT_NAME;
+
+	/**
+	 * 所有DAO默认共享的实例
+	 */
+	public static DaoMonitor getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * 计算集合结果的行数
+	 */
+	public static int rowsOf(Collection<?> result) {
+		return result == null ? 0 : result.size();
+	}
+
+	/**
+	 * 记录一次成功的执行
+	 *
+	 * @param statement
+	 *            原始SQL/HQL
+	 * @param params
+	 *            绑定参数，仅在慢查询采样时使用
+	 * @param rows
+	 *            返回/影响行数，未知时传-1
+	 * @param startNanos
+	 *            开始时间，{@link System#nanoTime()}
+	 */
+	public void record(String statement, Object params, int rows, long startNanos) {
+		record(statement, params, -1, rows, startNanos, false);
+	}
+
+	/**
+	 * 记录一次失败的执行
+	 */
+	public void recordError(String statement, Object params, long startNanos) {
+		record(statement, params, -1, -1, startNanos, true);
+	}
+
+	/**
+	 * 记录一次成功的批量执行，慢查询采样时参数记为批量行数
+	 *
+	 * @param batchSize
+	 *            批量的参数行数
+	 */
+	public void recordBatch(String statement, int batchSize, int rows, long startNanos) {
+		record(statement, null, batchSize, rows, startNanos, false);
+	}
+
+	/**
+	 * 记录一次失败的批量执行
+	 */
+	public void recordBatchError(String statement, int batchSize, long startNanos) {
+		record(statement, null, batchSize, -1, startNanos, true);
+	}
+
+	private void record(String statement, Object params, int batchSize, int rows, long startNanos, boolean error) {
+		if (!enabled) {
+			return;
+		}
+		long elapsed = System.nanoTime() - startNanos;
+		totalCount.incrementAndGet();
+		getStatistics(statement).record(elapsed, rows, error);
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+		if (millis >= slowThresholdMillis) {
+			long slow = slowCount.incrementAndGet();
+			if (slow % Math.max(1, slowSampleInterval) == 0) {
+				sampleSlowQuery(statement, params, batchSize, millis, rows, error);
+			}
+		}
+	}
+
+	/**
+	 * 记录获取连接的等待时间
+	 */
+	public void recordConnectionWait(long elapsedNanos, boolean error) {
+		if (enabled) {
+			connectionWait.record(elapsedNanos, -1, error);
+		}
+	}
+
+	private StatementStatistics getStatistics(String statement) {
+		String raw = statement == null ? "" : statement;
+		StatementStatistics stat = rawCache.get(raw);
+		if (stat != null) {
+			return stat;
+		}
+
+		String key = SqlNormalizer.normalize(raw);
+		stat = statistics.get(key);
+		if (stat == null) {
+			if (statistics.size() >= MAX_STATEMENTS) {
+				key = OTHER;
+			}
+			StatementStatistics created = new StatementStatistics(key);
+			stat = statistics.putIfAbsent(key, created);
+			if (stat == null) {
+				stat = created;
+			}
+		}
+		if (rawCache.size() < MAX_RAW_CACHE) {
+			rawCache.put(raw, stat);
+		}
+		return stat;
+	}
+
+	private void sampleSlowQuery(String statement, Object params, int batchSize, long millis, int rows,
+			boolean error) {
+		String paramString;
+		if (batchSize >= 0) {
+			paramString = batchSize + " rows";
+		} else {
+			paramString = params instanceof Object[] ? Arrays.deepToString((Object[]) params) : String
+					.valueOf(params);
+		}
+		String line = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + " " + millis + "ms rows="
+				+ rows + (error ? " ERROR" : "") + " | " + statement + " | params=" + paramString;
+		slowQueries[(slowQueryIndex.getAndIncrement() & Integer.MAX_VALUE) % SLOW_QUERY_RING_SIZE] = line;
+		logger.warn("慢查询：{}", line);
+	}
+
+	// ***************************************************************************
+	// * --------------------------------JMX----------------------------------- *
+	// **************************************************************************/
+
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, new ObjectName(objectName));
+			logger.debug("DaoMonitor注册JMX：{}", objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.warn("DaoMonitor已注册JMX：{}", objectName);
+		} catch (Exception e) {
+			logger.error("DaoMonitor注册JMX异常", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(objectName);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.error("DaoMonitor注销JMX异常", e);
+		}
+	}
+
+	@Override
+	public long getTotalStatementCount() {
+		return totalCount.get();
+	}
+
+	@Override
+	public long getSlowStatementCount() {
+		return slowCount.get();
+	}
+
+	@Override
+	public long getSlowThresholdMillis() {
+		return slowThresholdMillis;
+	}
+
+	@Override
+	public void setSlowThresholdMillis(long slowThresholdMillis) {
+		this.slowThresholdMillis = slowThresholdMillis;
+	}
+
+	@Override
+	public int getSlowSampleInterval() {
+		return slowSampleInterval;
+	}
+
+	@Override
+	public void setSlowSampleInterval(int slowSampleInterval) {
+		this.slowSampleInterval = slowSampleInterval;
+	}
+
+	@Override
+	public long getConnectionWaitCount() {
+		return connectionWait.getCount();
+	}
+
+	@Override
+	public double getConnectionWaitAvgMillis() {
+		return connectionWait.getAvgMillis();
+	}
+
+	@Override
+	public long getConnectionWaitMaxMillis() {
+		return connectionWait.getMaxMillis();
+	}
+
+	@Override
+	public String[] getStatementStatistics() {
+		List<StatementStatistics> list = new ArrayList<StatementStatistics>(statistics.values());
+		Collections.sort(list, new Comparator<StatementStatistics>() {
+			@Override
+			public int compare(StatementStatistics o1, StatementStatistics o2) {
+				long t1 = o1.getTotalMillis(), t2 = o2.getTotalMillis();
+				return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+			}
+		});
+		String[] result = new String[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i).toString();
+		}
+		return result;
+	}
+
+	@Override
+	public String[] getRecentSlowQueries() {
+		List<String> result = new ArrayList<String>(SLOW_QUERY_RING_SIZE);
+		int end = slowQueryIndex.get() & Integer.MAX_VALUE;
+		// 从最新的开始
+		for (int i = 1; i <= SLOW_QUERY_RING_SIZE; i++) {
+			String line = slowQueries[((end - i) % SLOW_QUERY_RING_SIZE + SLOW_QUERY_RING_SIZE) % SLOW_QUERY_RING_SIZE];
+			if (line != null) {
+				result.add(line);
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public void reset() {
+		statistics.clear();
+		rawCache.clear();
+		connectionWait = new StatementStatistics("getConnection");
+		totalCount.set(0);
+		slowCount.set(0);
+		Arrays.fill(slowQueries, null);
+	}
+
+	/**
+	 * 获取单条语句统计
+	 *
+	 * @param statement
+	 *            原始SQL/HQL
+	 */
+	public StatementStatistics getStatementStatistics(String statement) {
+		return statistics.get(SqlNormalizer.normalize(statement));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setObjectName(String objectName) {
+		this.objectName = objectName;
+	}
+}
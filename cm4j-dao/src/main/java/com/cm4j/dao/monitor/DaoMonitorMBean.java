@@ -0,0 +1,49 @@
+package com.cm4j.dao.monitor;
+
+/**
+ * {@link DaoMonitor}的JMX接口
+ */
+public interface DaoMonitorMBean {
+
+	/**
+	 * 所有语句执行总次数
+	 */
+	public long getTotalStatementCount();
+
+	/**
+	 * 慢查询次数
+	 */
+	public long getSlowStatementCount();
+
+	public long getSlowThresholdMillis();
+
+	public void setSlowThresholdMillis(long slowThresholdMillis);
+
+	/**
+	 * 慢查询采样间隔，每N次慢查询记录1次明细
+	 */
+	public int getSlowSampleInterval();
+
+	public void setSlowSampleInterval(int slowSampleInterval);
+
+	public long getConnectionWaitCount();
+
+	public double getConnectionWaitAvgMillis();
+
+	public long getConnectionWaitMaxMillis();
+
+	/**
+	 * 各语句统计，按总耗时倒序
+	 */
+	public String[] getStatementStatistics();
+
+	/**
+	 * 最近采样的慢查询(含绑定参数)
+	 */
+	public String[] getRecentSlowQueries();
+
+	/**
+	 * 清空统计
+	 */
+	public void reset();
+}
@@ -0,0 +1,62 @@
+package com.cm4j.dao.monitor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * <p>
+ * 统计获取连接等待时间的数据源代理
+ * <p>
+ * <b><font color="red">事务管理器与DAO必须使用同一个代理对象，否则Spring无法将连接绑定到当前事务</font></b>
+ *
+ * <pre>
+ * &lt;bean id=&quot;dataSource&quot; class=&quot;com.cm4j.dao.monitor.MonitoredDataSource&quot;&gt;
+ * 	&lt;constructor-arg ref=&quot;targetDataSource&quot; /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class MonitoredDataSource extends DelegatingDataSource {
+
+	private DaoMonitor daoMonitor = DaoMonitor.getDefault();
+
+	public MonitoredDataSource() {
+	}
+
+	public MonitoredDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Connection conn = getTargetDataSource().getConnection();
+			error = false;
+			return conn;
+		} finally {
+			daoMonitor.recordConnectionWait(System.nanoTime() - start, error);
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Connection conn = getTargetDataSource().getConnection(username, password);
+			error = false;
+			return conn;
+		} finally {
+			daoMonitor.recordConnectionWait(System.nanoTime() - start, error);
+		}
+	}
+
+	public void setDaoMonitor(DaoMonitor daoMonitor) {
+		this.daoMonitor = daoMonitor;
+	}
+}
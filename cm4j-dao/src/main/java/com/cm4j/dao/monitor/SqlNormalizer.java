@@ -0,0 +1,116 @@
+package com.cm4j.dao.monitor;
+
+/**
+ * SQL/HQL归一化：去掉字面量、合并空白、折叠IN列表，使同一语句的不同参数落在同一统计项下
+ *
+ * <pre>
+ * select * from t where id = 12 and name = 'a'  =>  select * from t where id = ? and name = ?
+ * where id in (?, ?, ?)                          =>  where id in (?)
+ * </pre>
+ */
+public class SqlNormalizer {
+
+	/**
+	 * 归一化后语句的最大长度，超出部分截断
+	 */
+	public static final int MAX_LENGTH = 512;
+
+	public static String normalize(String sql) {
+		if (sql == null) {
+			return "";
+		}
+		int length = sql.length();
+		StringBuilder sb = new StringBuilder(Math.min(length, MAX_LENGTH));
+		boolean lastSpace = true;
+		int i = 0;
+		while (i < length && sb.length() < MAX_LENGTH) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				// 字符串字面量，''为转义
+				i++;
+				while (i < length) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				i++;
+				sb.append('?');
+				lastSpace = false;
+			} else if (Character.isWhitespace(c)) {
+				if (!lastSpace) {
+					sb.append(' ');
+					lastSpace = true;
+				}
+				i++;
+			} else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+				// 数字字面量(不处理标识符中的数字，如t1)
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				sb.append('?');
+				lastSpace = false;
+			} else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+				// 命名参数 :name
+				i++;
+				while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+					i++;
+				}
+				sb.append('?');
+				lastSpace = false;
+			} else {
+				sb.append(Character.toLowerCase(c));
+				lastSpace = false;
+				i++;
+			}
+		}
+		return collapseInList(sb.toString().trim());
+	}
+
+	/**
+	 * (?, ?, ?) => (?)
+	 */
+	private static String collapseInList(String sql) {
+		if (sql.indexOf("?,") < 0 && sql.indexOf("? ,") < 0) {
+			return sql;
+		}
+		StringBuilder sb = new StringBuilder(sql.length());
+		int length = sql.length();
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+			sb.append(c);
+			if (c == '?') {
+				// 跳过连续的 ", ?"
+				int last = i;
+				int j = i + 1;
+				while (true) {
+					while (j < length && sql.charAt(j) == ' ') {
+						j++;
+					}
+					if (j >= length || sql.charAt(j) != ',') {
+						break;
+					}
+					j++;
+					while (j < length && sql.charAt(j) == ' ') {
+						j++;
+					}
+					if (j >= length || sql.charAt(j) != '?') {
+						break;
+					}
+					last = j;
+					j++;
+				}
+				i = last;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+	}
+}
@@ -0,0 +1,131 @@
+package com.cm4j.dao.monitor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单条语句的统计：次数、耗时直方图、返回行数、异常数
+ * <p>
+ * 直方图使用固定的毫秒分桶，记录时无锁
+ */
+public class StatementStatistics {
+
+	/**
+	 * 分桶上界(ms)，最后一个桶收集所有更大的值
+	 */
+	static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE };
+
+	private final String statement;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+
+	public StatementStatistics(String statement) {
+		this.statement = statement;
+	}
+
+	/**
+	 * 记录一次执行
+	 *
+	 * @param elapsedNanos
+	 *            耗时(纳秒)
+	 * @param rowCount
+	 *            返回/影响行数，未知时传-1
+	 * @param error
+	 *            是否异常
+	 */
+	public void record(long elapsedNanos, int rowCount, boolean error) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(elapsedNanos);
+		if (rowCount > 0) {
+			rows.addAndGet(rowCount);
+		}
+		if (error) {
+			errors.incrementAndGet();
+		}
+		long max;
+		while (elapsedNanos > (max = maxNanos.get())) {
+			if (maxNanos.compareAndSet(max, elapsedNanos)) {
+				break;
+			}
+		}
+		buckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+	}
+
+	static int bucketOf(long millis) {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			if (millis < BUCKET_BOUNDS[i]) {
+				return i;
+			}
+		}
+		return BUCKET_BOUNDS.length - 1;
+	}
+
+	/**
+	 * 按直方图估算百分位耗时(ms)，返回所在桶的上界
+	 *
+	 * @param percent
+	 *            0-100
+	 */
+	public long percentile(double percent) {
+		long total = 0;
+		long[] snapshot = new long[BUCKET_BOUNDS.length];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(total * percent / 100.0);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= threshold) {
+				return i == snapshot.length - 1 ? getMaxMillis() : BUCKET_BOUNDS[i];
+			}
+		}
+		return getMaxMillis();
+	}
+
+	public String getStatement() {
+		return statement;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getRows() {
+		return rows.get();
+	}
+
+	public long getTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+	}
+
+	public long getMaxMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+	}
+
+	public double getAvgMillis() {
+		long c = count.get();
+		return c == 0 ? 0 : totalNanos.get() / 1000000.0 / c;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d,avg=%.2fms,p50<%dms,p95<%dms,p99<%dms,max=%dms,rows=%d,errors=%d | %s",
+				getCount(), getAvgMillis(), percentile(50), percentile(95), percentile(99), getMaxMillis(), getRows(),
+				getErrors(), statement);
+	}
+}
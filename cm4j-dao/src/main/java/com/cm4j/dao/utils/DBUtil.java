@@ -1,22 +1,14 @@
 package com.cm4j.dao.utils;
 
 import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.sql.SQLException;
-import java.sql.Statement;
 
 import javax.sql.DataSource;
 
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.StatementCallback;
-
-import com.cm4j.core.utils.IOUtils;
 
 public class DBUtil {
-	String contents = null;
+
+	private final SqlScriptRunner scriptRunner = new SqlScriptRunner();
 
 	/**
 	 * 读取sql文件并执行
@@ -25,23 +17,25 @@ public class DBUtil {
 	 * @param schemaName
 	 * @throws DataAccessException
 	 * @throws FileNotFoundException
+	 * @see SqlScriptRunner
 	 */
 	public void loadDBSchema(DataSource dataSource, String schemaName) throws DataAccessException,
 			FileNotFoundException {
-		JdbcTemplate template = new JdbcTemplate(dataSource);
-		InputStream is = null;
-		try {
-			is = new ClassPathResource(schemaName).getInputStream();
-			contents = IOUtils.toString(is);
-		} catch (IOException e) {
-			throw new FileNotFoundException("schema[" + schemaName + "]" + "is not found");
-		}
+		scriptRunner.run(dataSource, schemaName);
+	}
 
-		template.execute(new StatementCallback<Boolean>() {
-			@Override
-			public Boolean doInStatement(Statement stmt) throws SQLException, DataAccessException {
-				return stmt.execute(contents);
-			}
-		});
+	/**
+	 * 并行执行多个互不依赖的sql文件，如各表的初始数据
+	 * 
+	 * @param dataSource
+	 * @param threads
+	 *            并行数，不应超过连接池大小
+	 * @param scriptNames
+	 * @throws DataAccessException
+	 * @throws FileNotFoundException
+	 */
+	public void loadDBData(DataSource dataSource, int threads, String... scriptNames) throws DataAccessException,
+			FileNotFoundException {
+		scriptRunner.runParallel(dataSource, threads, scriptNames);
 	}
 }
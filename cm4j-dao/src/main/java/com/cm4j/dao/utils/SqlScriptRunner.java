@@ -0,0 +1,269 @@
+package com.cm4j.dao.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import com.cm4j.dao.exception.Cm4jDataAccessException;
+
+/**
+ * <p>
+ * SQL脚本执行器：逐条读取脚本中的语句，按批提交，可将多个互不依赖的脚本(如各表数据)在多个连接上并行执行
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 驱动不支持批处理时逐条执行；连接不在Spring事务中时关闭自动提交，每批提交一次
+ *
+ * <pre>
+ * SqlScriptRunner runner = new SqlScriptRunner();
+ * runner.run(dataSource, &quot;sql/schema.sql&quot;);
+ * runner.runParallel(dataSource, 4, &quot;sql/data_user.sql&quot;, &quot;sql/data_order.sql&quot;);
+ * </pre>
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class SqlScriptRunner {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	// 每批语句数，1为逐条执行并提交
+	private int batchSize = 500;
+	// 每执行多少条语句打印一次进度，0为不打印
+	private int progressInterval = 100000;
+	private String encoding = "UTF-8";
+	// 引号内的反斜杠是否为转义符
+	private boolean backslashEscapes = true;
+
+	/**
+	 * 依次执行classpath下的脚本
+	 *
+	 * @return 执行的语句数
+	 */
+	public long run(DataSource dataSource, String... scripts) throws DataAccessException, FileNotFoundException {
+		long total = 0;
+		for (String script : scripts) {
+			total += runScript(dataSource, script);
+		}
+		return total;
+	}
+
+	/**
+	 * 并行执行classpath下互不依赖的脚本，每个脚本使用一个连接
+	 *
+	 * @param threads
+	 *            并行数，不应超过连接池大小
+	 * @return 执行的语句数
+	 */
+	public long runParallel(final DataSource dataSource, int threads, String... scripts) throws DataAccessException,
+			FileNotFoundException {
+		if (threads <= 1 || scripts.length <= 1) {
+			return run(dataSource, scripts);
+		}
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, scripts.length));
+		try {
+			List<Future<Long>> futures = new ArrayList<Future<Long>>(scripts.length);
+			for (final String script : scripts) {
+				futures.add(executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						return runScript(dataSource, script);
+					}
+				}));
+			}
+			long total = 0;
+			for (Future<Long> future : futures) {
+				total += getResult(future);
+			}
+			logThroughput("全部脚本", total, System.currentTimeMillis() - start);
+			return total;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long getResult(Future<Long> future) throws FileNotFoundException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Cm4jDataAccessException("执行脚本被中断", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof FileNotFoundException) {
+				throw (FileNotFoundException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new Cm4jDataAccessException("执行脚本异常", cause);
+		}
+	}
+
+	private long runScript(DataSource dataSource, String script) throws FileNotFoundException {
+		Reader reader;
+		try {
+			reader = new InputStreamReader(new ClassPathResource(script).getInputStream(), encoding);
+		} catch (IOException e) {
+			throw new FileNotFoundException("schema[" + script + "]" + "is not found");
+		}
+		try {
+			return run(dataSource, reader, script);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				logger.warn("关闭脚本文件异常：{}", script);
+			}
+		}
+	}
+
+	/**
+	 * 执行脚本
+	 *
+	 * @param name
+	 *            脚本名称，用于日志
+	 * @return 执行的语句数
+	 */
+	public long run(DataSource dataSource, Reader reader, String name) throws DataAccessException {
+		long start = System.currentTimeMillis();
+		Connection conn = DataSourceUtils.getConnection(dataSource);
+		boolean transactional = DataSourceUtils.isConnectionTransactional(conn, dataSource);
+		Boolean autoCommit = null;
+		Statement stmt = null;
+		SqlStatementReader statements = new SqlStatementReader(reader);
+		statements.setBackslashEscapes(backslashEscapes);
+		String sql = null;
+		long count = 0;
+		try {
+			if (!transactional && conn.getAutoCommit()) {
+				autoCommit = Boolean.TRUE;
+				conn.setAutoCommit(false);
+			}
+			boolean batch = batchSize > 1 && conn.getMetaData().supportsBatchUpdates();
+			stmt = conn.createStatement();
+			int pending = 0;
+			while ((sql = statements.next()) != null) {
+				if (batch) {
+					stmt.addBatch(sql);
+					pending++;
+				} else {
+					stmt.execute(sql);
+				}
+				count++;
+				if (pending >= batchSize || (!batch && count % batchSize == 0)) {
+					flush(conn, stmt, batch, transactional);
+					pending = 0;
+				}
+				if (progressInterval > 0 && count % progressInterval == 0) {
+					logThroughput(name, count, System.currentTimeMillis() - start);
+				}
+			}
+			sql = null;
+			flush(conn, stmt, batch && pending > 0, transactional);
+		} catch (SQLException e) {
+			rollback(conn, transactional);
+			throw new Cm4jDataAccessException("执行脚本[" + name + "]异常，第" + count + "条语句附近"
+					+ (sql == null ? "" : "：" + sql), e);
+		} catch (IOException e) {
+			rollback(conn, transactional);
+			throw new Cm4jDataAccessException("读取脚本[" + name + "]异常", e);
+		} finally {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					logger.warn("关闭Statement异常", e);
+				}
+			}
+			if (autoCommit != null) {
+				try {
+					conn.setAutoCommit(true);
+				} catch (SQLException e) {
+					logger.warn("恢复autoCommit异常", e);
+				}
+			}
+			DataSourceUtils.releaseConnection(conn, dataSource);
+		}
+		logThroughput(name, count, System.currentTimeMillis() - start);
+		return count;
+	}
+
+	private static void flush(Connection conn, Statement stmt, boolean batch, boolean transactional)
+			throws SQLException {
+		if (batch) {
+			stmt.executeBatch();
+			stmt.clearBatch();
+		}
+		if (!transactional) {
+			conn.commit();
+		}
+	}
+
+	private void rollback(Connection conn, boolean transactional) {
+		if (transactional) {
+			return;
+		}
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			logger.warn("回滚异常", e);
+		}
+	}
+
+	private void logThroughput(String name, long count, long millis) {
+		logger.info("脚本[{}]已执行{}条语句，耗时{}ms，{}条/秒", new Object[] { name, count, millis,
+				millis == 0 ? count : count * 1000 / millis });
+	}
+
+	/**
+	 * @param batchSize
+	 *            每批语句数，不能小于1
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize不能小于1：" + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param progressInterval
+	 *            每执行多少条语句打印一次进度，0为不打印，不能小于0
+	 */
+	public void setProgressInterval(int progressInterval) {
+		if (progressInterval < 0) {
+			throw new IllegalArgumentException("progressInterval不能小于0：" + progressInterval);
+		}
+		this.progressInterval = progressInterval;
+	}
+
+	public void setEncoding(String encoding) {
+		this.encoding = encoding;
+	}
+
+	/**
+	 * @see SqlStatementReader#setBackslashEscapes(boolean)
+	 */
+	public void setBackslashEscapes(boolean backslashEscapes) {
+		this.backslashEscapes = backslashEscapes;
+	}
+}
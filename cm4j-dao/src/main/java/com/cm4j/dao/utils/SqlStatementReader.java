@@ -0,0 +1,232 @@
+package com.cm4j.dao.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>
+ * 从SQL脚本中逐条读取语句，不需要将整个脚本读入内存
+ * <p>
+ * 语句以分号结束，字符串('...')和带引号的标识符("...")中的分号不作为结束符，--和/* *&#47;注释会被去掉；
+ * 引号内连续两个引号为转义，默认也按mysql的方式把反斜杠作为转义符(如'O\'Brien')，可通过{@link #setBackslashEscapes(boolean)}关闭
+ * <p>
+ * 存储过程、触发器等语句体中含有分号，可以像mysql客户端一样用单独一行的DELIMITER指令更换结束符，指令本身不作为语句返回：
+ *
+ * <pre>
+ * DELIMITER $$
+ * CREATE PROCEDURE p() BEGIN UPDATE t SET a = 1; UPDATE t SET b = 2; END$$
+ * DELIMITER ;
+ * </pre>
+ */
+public class SqlStatementReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final String DELIMITER_DIRECTIVE = "DELIMITER";
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	// 已读取但未处理的字符，最后一个最先读出
+	private final StringBuilder pushback = new StringBuilder();
+	private String delimiter = ";";
+	// 下一个字符位于行首
+	private boolean lineStart = true;
+	private boolean backslashEscapes = true;
+
+	public SqlStatementReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * 读取下一条语句
+	 *
+	 * @return 去掉首尾空白和结束符的语句，脚本结束时返回null
+	 */
+	public String next() throws IOException {
+		StringBuilder sb = new StringBuilder(128);
+		while (true) {
+			if (lineStart && isBlank(sb) && readDirective()) {
+				continue;
+			}
+			int c = read();
+			if (c == -1) {
+				break;
+			}
+			lineStart = false;
+			if (c == '\'' || c == '"') {
+				readQuoted(sb, (char) c);
+			} else if (c == '-' && readIf('-')) {
+				skipLine();
+				sb.append('\n');
+				lineStart = true;
+			} else if (c == '/' && readIf('*')) {
+				skipBlockComment();
+				sb.append(' ');
+			} else {
+				sb.append((char) c);
+				lineStart = c == '\n';
+				if (endsWithDelimiter(sb)) {
+					sb.setLength(sb.length() - delimiter.length());
+					String statement = sb.toString().trim();
+					if (statement.length() > 0) {
+						return statement;
+					}
+					sb.setLength(0);
+				}
+			}
+		}
+		// 最后一条语句可以没有分号
+		String statement = sb.toString().trim();
+		return statement.length() > 0 ? statement : null;
+	}
+
+	/**
+	 * 当前行是DELIMITER指令时读掉整行并更换结束符，否则只预读行首空白和指令长度内的字符并退回，不缓存整行
+	 */
+	private boolean readDirective() throws IOException {
+		StringBuilder peeked = new StringBuilder(16);
+		int c;
+		while ((c = read()) == ' ' || c == '\t') {
+			peeked.append((char) c);
+		}
+		int matched = 0;
+		while (matched < DELIMITER_DIRECTIVE.length()
+				&& Character.toUpperCase(c) == DELIMITER_DIRECTIVE.charAt(matched)) {
+			peeked.append((char) c);
+			matched++;
+			c = read();
+		}
+		if (matched < DELIMITER_DIRECTIVE.length() || (c != ' ' && c != '\t')) {
+			unread(c);
+			unread(peeked);
+			return false;
+		}
+
+		// 指令行剩余部分的第一个词为新的结束符
+		StringBuilder line = new StringBuilder(16);
+		while ((c = read()) != -1 && c != '\n') {
+			line.append((char) c);
+		}
+		String[] words = line.toString().trim().split("\\s+");
+		if (words[0].length() == 0) {
+			throw new IOException("DELIMITER指令缺少结束符");
+		}
+		delimiter = words[0];
+		return true;
+	}
+
+	private boolean endsWithDelimiter(StringBuilder sb) {
+		int start = sb.length() - delimiter.length();
+		if (start < 0) {
+			return false;
+		}
+		for (int i = 0; i < delimiter.length(); i++) {
+			if (sb.charAt(start + i) != delimiter.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isBlank(StringBuilder sb) {
+		for (int i = 0; i < sb.length(); i++) {
+			if (!Character.isWhitespace(sb.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 下一个字符为expected时读取它，否则不读取
+	 */
+	private boolean readIf(char expected) throws IOException {
+		int next = read();
+		if (next == expected) {
+			return true;
+		}
+		unread(next);
+		return false;
+	}
+
+	private void readQuoted(StringBuilder sb, char quote) throws IOException {
+		sb.append(quote);
+		int c;
+		while ((c = read()) != -1) {
+			sb.append((char) c);
+			if (c == '\\' && backslashEscapes) {
+				// 反斜杠转义下一个字符，包括引号和反斜杠本身
+				c = read();
+				if (c == -1) {
+					return;
+				}
+				sb.append((char) c);
+			} else if (c == quote) {
+				// 连续两个引号为转义
+				int next = read();
+				if (next != quote) {
+					unread(next);
+					return;
+				}
+				sb.append(quote);
+			}
+		}
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		while ((c = read()) != -1 && c != '\n') {
+		}
+	}
+
+	private void skipBlockComment() throws IOException {
+		int prev = -1;
+		int c;
+		while ((c = read()) != -1) {
+			if (prev == '*' && c == '/') {
+				return;
+			}
+			prev = c;
+		}
+	}
+
+	private int read() throws IOException {
+		int pending = pushback.length();
+		if (pending > 0) {
+			char c = pushback.charAt(pending - 1);
+			pushback.setLength(pending - 1);
+			return c;
+		}
+		if (position >= limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+
+	private void unread(int c) {
+		if (c != -1) {
+			pushback.append((char) c);
+		}
+	}
+
+	private void unread(CharSequence chars) {
+		for (int i = chars.length() - 1; i >= 0; i--) {
+			pushback.append(chars.charAt(i));
+		}
+	}
+
+	/**
+	 * @param backslashEscapes
+	 *            引号内的反斜杠是否为转义符，mysql默认为true，NO_BACKSLASH_ESCAPES模式或标准SQL的脚本设为false
+	 */
+	public void setBackslashEscapes(boolean backslashEscapes) {
+		this.backslashEscapes = backslashEscapes;
+	}
+}
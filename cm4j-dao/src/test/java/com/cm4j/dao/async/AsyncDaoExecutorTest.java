@@ -0,0 +1,131 @@
+package com.cm4j.dao.async;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cm4j.dao.datasource.DataSourceHolder;
+import com.cm4j.dao.exception.Cm4jDataAccessException;
+
+public class AsyncDaoExecutorTest {
+
+    @Test
+    public void invokeAll() {
+        AsyncDaoExecutor executor = new AsyncDaoExecutor(2, 10);
+        try {
+            List<Object> result = executor.invokeAll(1, TimeUnit.SECONDS, value(1), value("a"));
+            Assert.assertEquals(1, result.get(0));
+            Assert.assertEquals("a", result.get(1));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void timeout() {
+        AsyncDaoExecutor executor = new AsyncDaoExecutor(2, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        try {
+            executor.invokeAll(100, TimeUnit.MILLISECONDS, value(1), await(release, null));
+            Assert.fail();
+        } catch (Cm4jDataAccessException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        } finally {
+            release.countDown();
+            executor.destroy();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void rejectWhenQueueFull() throws InterruptedException {
+        AsyncDaoExecutor executor = new AsyncDaoExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            // 占住唯一的工作线程
+            CountDownLatch started = new CountDownLatch(1);
+            executor.submit(await(release, started));
+            Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            // 第一个进入队列，第二个被拒绝，不能在调用线程上执行
+            long start = System.currentTimeMillis();
+            try {
+                executor.invokeAll(1, TimeUnit.SECONDS, count(executed), count(executed));
+                Assert.fail();
+            } catch (Cm4jDataAccessException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 500);
+            Assert.assertEquals(0, executed.get());
+
+            // 已提交的调用被取消，工作线程空闲后也不会执行
+            release.countDown();
+            Assert.assertEquals(1, executor.invokeAll(1, TimeUnit.SECONDS, value(1)).get(0));
+            Assert.assertEquals(0, executed.get());
+            Assert.assertEquals(0, executor.getQueueSize());
+        } finally {
+            release.countDown();
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void dataSourceType() throws Exception {
+        AsyncDaoExecutor executor = new AsyncDaoExecutor(1, 10);
+        DataSourceHolder.setDataSourceType("slave");
+        try {
+            Callable<String> task = new Callable<String>() {
+                @Override
+                public String call() {
+                    return DataSourceHolder.getDataSourceType();
+                }
+            };
+            Assert.assertEquals("slave", executor.get(executor.submit(task), 1, TimeUnit.SECONDS));
+            DataSourceHolder.clearDataSourceType();
+            Assert.assertNull(executor.get(executor.submit(task), 1, TimeUnit.SECONDS));
+        } finally {
+            DataSourceHolder.clearDataSourceType();
+            executor.destroy();
+        }
+    }
+
+    private static Callable<Object> value(final Object value) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                return value;
+            }
+        };
+    }
+
+    private static Callable<Object> count(final AtomicInteger executed) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                return executed.incrementAndGet();
+            }
+        };
+    }
+
+    private static Callable<Object> await(final CountDownLatch release, final CountDownLatch started) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws InterruptedException {
+                if (started != null) {
+                    started.countDown();
+                }
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        };
+    }
+}
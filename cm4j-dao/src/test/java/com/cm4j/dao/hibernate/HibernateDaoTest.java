@@ -0,0 +1,147 @@
+package com.cm4j.dao.hibernate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cm4j.dao.hibernate.HibernateDao.BatchWrapper;
+
+public class HibernateDaoTest {
+
+    @Test
+    public void bulkKeepsOrder() {
+        final List<String> log = new ArrayList<String>();
+        final HibernateBulkUpsert bulk = new FakeBulkUpsert(log);
+        final Session session = proxy(Session.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("beginTransaction")) {
+                    return proxy(Transaction.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            log.add(method.getName());
+                            return null;
+                        }
+                    });
+                } else if (name.equals("merge") || name.equals("delete")) {
+                    log.add(name + " " + args[0]);
+                }
+                return null;
+            }
+        });
+        HibernateDao<Object, Long> dao = new HibernateDao<Object, Long>() {
+            @Override
+            public Session getSession() {
+                return session;
+            }
+
+            @Override
+            protected HibernateBulkUpsert getHibernateBulkUpsert() {
+                return bulk;
+            }
+        };
+        dao.setBulkUpsert(true);
+        dao.setBatchSize(50);
+
+        List<BatchWrapper<Object>> entities = new ArrayList<BatchWrapper<Object>>();
+        entities.add(new BatchWrapper<Object>(new Flat(1), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Flat(2), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Nested(1), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Flat(3), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Flat(2), BatchWrapper.DELETE));
+        entities.add(new BatchWrapper<Object>(new Other(1), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Other(2), BatchWrapper.UPDATE));
+        entities.add(new BatchWrapper<Object>(new Nested(2), BatchWrapper.DELETE));
+        dao.batchSaveOrUpdate(entities, null);
+
+        Assert.assertEquals(Arrays.asList("upsert [Flat1, Flat2]", "merge Nested1", "upsert [Flat3]",
+                "delete [Flat2]", "upsert [Other1, Other2]", "delete Nested2", "commit"), log);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(HibernateDaoTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Nested不支持批量写入，其他实体记录批量语句
+     */
+    private static class FakeBulkUpsert extends HibernateBulkUpsert {
+        private final List<String> log;
+
+        private FakeBulkUpsert(List<String> log) {
+            super(proxy(SessionFactoryImplementor.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return method.getReturnType() == Dialect.class ? new H2Dialect() : null;
+                }
+            }));
+            this.log = log;
+        }
+
+        @Override
+        public boolean supports(Class<?> clazz) {
+            return clazz != Nested.class;
+        }
+
+        @Override
+        public boolean hasIdentifier(Class<?> clazz, Object entity) {
+            return true;
+        }
+
+        @Override
+        public int upsert(Session session, Class<?> clazz, List<?> entities, int rowsPerStatement) {
+            log.add("upsert " + entities);
+            return entities.size();
+        }
+
+        @Override
+        public int delete(Session session, Class<?> clazz, List<?> entities, int rowsPerStatement) {
+            log.add("delete " + entities);
+            return entities.size();
+        }
+    }
+
+    private static class Entity {
+        private final int id;
+
+        private Entity(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + id;
+        }
+    }
+
+    private static class Flat extends Entity {
+        private Flat(int id) {
+            super(id);
+        }
+    }
+
+    private static class Other extends Entity {
+        private Other(int id) {
+            super(id);
+        }
+    }
+
+    private static class Nested extends Entity {
+        private Nested(int id) {
+            super(id);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.cm4j.dao.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class StoredProcedureExecutorTest {
+
+    @Test
+    public void bindByPosition() {
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+        StoredProcedureExecutor executor = new StoredProcedureExecutor(jdbcTemplate);
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("psName", "a");
+        parameters.put("PIID", 7);
+
+        Map<String, Object> out = executor.execute("sp_test", parameters, outParams("piResult"), null,
+                new ArrayList<Map<String, Object>>());
+        Assert.assertEquals("{call sp_test(?,?,?)}", jdbcTemplate.callString);
+        Assert.assertEquals(Arrays.asList("setObject(2,a)", "setObject(1,7)", "registerOutParameter(3,4)", "execute()",
+                "getObject(3)"), jdbcTemplate.statements);
+        Assert.assertEquals(1, out.get("piResult"));
+    }
+
+    @Test
+    public void registerOutByDeclaredType() {
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+        StoredProcedureExecutor executor = new StoredProcedureExecutor(jdbcTemplate);
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("piId", 7);
+        parameters.put("psName", null);
+
+        executor.execute("sp_test", parameters, null, null, new ArrayList<Map<String, Object>>());
+        Assert.assertEquals("{call sp_test(?,?,?)}", jdbcTemplate.callString);
+        // 显式传入的null仍按位置绑定
+        Assert.assertEquals(Arrays.asList("setObject(1,7)", "setNull(2,12)", "registerOutParameter(3,4)", "execute()"),
+                jdbcTemplate.statements);
+    }
+
+    @Test
+    public void missingInputKeepsDefault() {
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+        StoredProcedureExecutor executor = new StoredProcedureExecutor(jdbcTemplate);
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("piId", 7);
+
+        executor.execute("sp_test", parameters, outParams("piResult"), null, new ArrayList<Map<String, Object>>());
+        // psName未传入，按参数名绑定，由数据库使用默认值
+        Assert.assertEquals("{call sp_test(?,?)}", jdbcTemplate.callString);
+        Assert.assertEquals(Arrays.asList("setObject(piId,7)", "registerOutParameter(piResult,4)", "execute()",
+                "getObject(piResult)"), jdbcTemplate.statements);
+    }
+
+    @Test
+    public void evictOnStatementError() {
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+        StoredProcedureExecutor executor = new StoredProcedureExecutor(jdbcTemplate);
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("piId", 7);
+        parameters.put("psName", "a");
+
+        // 业务异常不清除元数据
+        jdbcTemplate.failure = new DataIntegrityViolationException("duplicate");
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.execute("sp_test", parameters, outParams("piResult"), null,
+                        new ArrayList<Map<String, Object>>());
+                Assert.fail();
+            } catch (DataIntegrityViolationException e) {
+            }
+        }
+        Assert.assertEquals(1, jdbcTemplate.metadataLoads);
+
+        // 参数个数或类型错误时重新读取
+        jdbcTemplate.failure = new BadSqlGrammarException("call", "sp_test", new SQLException("PLS-00306"));
+        try {
+            executor.execute("sp_test", parameters, outParams("piResult"), null, new ArrayList<Map<String, Object>>());
+            Assert.fail();
+        } catch (BadSqlGrammarException e) {
+        }
+        jdbcTemplate.failure = null;
+        executor.execute("sp_test", parameters, outParams("piResult"), null, new ArrayList<Map<String, Object>>());
+        Assert.assertEquals(2, jdbcTemplate.metadataLoads);
+    }
+
+    @Test
+    public void piResultRequired() {
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+        SessionDao dao = new SessionDao();
+        dao.storedProcedureExecutor = new StoredProcedureExecutor(jdbcTemplate);
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("piId", 7);
+        parameters.put("psName", "a");
+
+        try {
+            dao.executeWithResult("sp_test", parameters, new LinkedHashMap<String, Integer>(), null);
+            Assert.fail();
+        } catch (DataRetrievalFailureException e) {
+        }
+        // 未注册piResult时不调用过程
+        Assert.assertNull(jdbcTemplate.callString);
+        List<Map<String, Object>> data = dao.executeWithResult("sp_test", parameters, outParams("piResult"), null);
+        Assert.assertEquals(1, data.get(0).get("piResult"));
+    }
+
+    private static Map<String, Integer> outParams(String name) {
+        Map<String, Integer> outParams = new LinkedHashMap<String, Integer>();
+        outParams.put(name, Types.INTEGER);
+        return outParams;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StoredProcedureExecutorTest.class.getClassLoader(), new Class<?>[] { type },
+                handler);
+    }
+
+    /**
+     * 过程sp_test(piId in integer, psName in varchar default, piResult out integer)，记录对CallableStatement的调用
+     */
+    private static class FakeJdbcTemplate extends JdbcTemplate {
+        private static final Object[][] COLUMNS = { { "PIID", DatabaseMetaData.procedureColumnIn, Types.INTEGER },
+                { "PSNAME", DatabaseMetaData.procedureColumnIn, Types.VARCHAR },
+                { "PIRESULT", DatabaseMetaData.procedureColumnOut, Types.INTEGER } };
+
+        private int metadataLoads;
+        private String callString;
+        private List<String> statements;
+        private DataAccessException failure;
+
+        @Override
+        public <T> T execute(ConnectionCallback<T> action) throws DataAccessException {
+            final DatabaseMetaData meta = proxy(DatabaseMetaData.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    metadataLoads++;
+                    return columns();
+                }
+            });
+            Connection con = proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return meta;
+                }
+            });
+            try {
+                return action.doInConnection(con);
+            } catch (SQLException e) {
+                throw new DataRetrievalFailureException("metadata", e);
+            }
+        }
+
+        private ResultSet columns() {
+            return proxy(ResultSet.class, new InvocationHandler() {
+                private int row = -1;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("next")) {
+                        return ++row < COLUMNS.length;
+                    } else if (name.equals("getString")) {
+                        return COLUMNS[row][0];
+                    } else if (name.equals("getShort")) {
+                        return ((Integer) COLUMNS[row][1]).shortValue();
+                    } else if (name.equals("getInt")) {
+                        return COLUMNS[row][2];
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public <T> T execute(String callString, CallableStatementCallback<T> action) throws DataAccessException {
+            this.callString = callString;
+            this.statements = new ArrayList<String>();
+            CallableStatement cs = proxy(CallableStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    statements.add(name + "(" + (args == null ? "" : args[0] + (args.length > 1 ? "," + args[1] : ""))
+                            + ")");
+                    if (name.equals("execute") && failure != null) {
+                        throw new SQLException(failure.getMessage());
+                    } else if (name.equals("execute")) {
+                        return false;
+                    } else if (name.equals("getObject")) {
+                        return 1;
+                    }
+                    return null;
+                }
+            });
+            try {
+                return action.doInCallableStatement(cs);
+            } catch (SQLException e) {
+                // 模拟JdbcTemplate的异常转换
+                throw failure;
+            }
+        }
+    }
+}
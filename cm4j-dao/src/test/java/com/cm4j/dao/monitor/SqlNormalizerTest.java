@@ -0,0 +1,17 @@
+package com.cm4j.dao.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlNormalizerTest {
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("select * from t1 where id = ? and name = ?",
+                SqlNormalizer.normalize("SELECT *  FROM t1\n WHERE id = 12 AND name = 'a''b'"));
+        Assert.assertEquals("from user where id in (?) and name = ?",
+                SqlNormalizer.normalize("from User where id in (1, 2, 3) and name = :name"));
+        Assert.assertEquals("update t set a = ?, b = ? where id = ?",
+                SqlNormalizer.normalize("update t set a = ?, b = ? where id = ?"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.cm4j.dao.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlStatementReaderTest {
+
+    @Test
+    public void testNext() throws IOException {
+        SqlStatementReader reader = new SqlStatementReader(new StringReader("/* 注释; */ drop table t if exists;\n"
+                + "-- 注释;\ncreate table t(\n id int, -- 主键;\n s varchar(10) default 'a;''b'\n);;\n"
+                + "insert into \"t\" values (1, 'x');\n" + "select 1 - 1 / 2 from dual"));
+        Assert.assertEquals("drop table t if exists", reader.next());
+        Assert.assertEquals("create table t(\n id int, \n s varchar(10) default 'a;''b'\n)", reader.next());
+        Assert.assertEquals("insert into \"t\" values (1, 'x')", reader.next());
+        Assert.assertEquals("select 1 - 1 / 2 from dual", reader.next());
+        Assert.assertNull(reader.next());
+    }
+
+    @Test
+    public void testDelimiter() throws IOException {
+        SqlStatementReader reader = new SqlStatementReader(new StringReader("create table t(id int);\n"
+                + "DELIMITER $$\n"
+                + "CREATE PROCEDURE p()\nBEGIN\n  UPDATE t SET id = 1; -- 注释$$\n  UPDATE t SET id = ';$$';\nEND$$\n"
+                + "  delimiter ;\n" + "insert into t values (1); select 1"));
+        Assert.assertEquals("create table t(id int)", reader.next());
+        Assert.assertEquals("CREATE PROCEDURE p()\nBEGIN\n  UPDATE t SET id = 1; \n  UPDATE t SET id = ';$$';\nEND",
+                reader.next());
+        Assert.assertEquals("insert into t values (1)", reader.next());
+        Assert.assertEquals("select 1", reader.next());
+        Assert.assertNull(reader.next());
+    }
+
+    @Test
+    public void testBackslashEscapes() throws IOException {
+        String sql = "insert into t values ('O\\'Brien;', 'C:\\\\');\n"
+                + "insert into t values (\"a\\\";b\");\ndelimiter_table;";
+        SqlStatementReader reader = new SqlStatementReader(new StringReader(sql));
+        Assert.assertEquals("insert into t values ('O\\'Brien;', 'C:\\\\')", reader.next());
+        Assert.assertEquals("insert into t values (\"a\\\";b\")", reader.next());
+        // 以DELIMITER开头但不是指令的行按语句读取
+        Assert.assertEquals("delimiter_table", reader.next());
+        Assert.assertNull(reader.next());
+
+        reader = new SqlStatementReader(new StringReader("select 'C:\\';select 1"));
+        reader.setBackslashEscapes(false);
+        Assert.assertEquals("select 'C:\\'", reader.next());
+        Assert.assertEquals("select 1", reader.next());
+    }
+}
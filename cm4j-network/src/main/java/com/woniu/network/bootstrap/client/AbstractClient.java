@@ -1,12 +1,15 @@
 package com.woniu.network.bootstrap.client;
 
 import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelPipeline;
@@ -19,11 +22,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.buffer.PooledChannelBufferFactory;
+import com.woniu.network.capture.CaptureFile;
+import com.woniu.network.capture.CaptureHandler;
 import com.woniu.network.exception.ConnectException;
 import com.woniu.network.handler.client.ChannelWriteHandler;
+import com.woniu.network.handler.client.CircuitBreaker;
 import com.woniu.network.handler.client.ReconnectHandler;
-import com.woniu.network.handler.codec.ChannelBufferDealer;
+import com.woniu.network.handler.codec.BufferReleaseHandler;
 import com.woniu.network.handler.codec.LittleEndianCoder;
+import com.woniu.network.handler.codec.FrameCompressor;
 import com.woniu.network.handler.codec.ProtocolEncoder;
 import com.woniu.network.protocol.IProtocol;
 import com.woniu.network.util.SocketAddressConvertor;
@@ -34,17 +43,44 @@ public abstract class AbstractClient implements Client {
 
 	public static final int timeout = 1500;
 
-	final Timer timer = new HashedWheelTimer();
+	private static final BufferReleaseHandler BUFFER_RELEASE_HANDLER = new BufferReleaseHandler();
+
+	/**
+	 * 所有客户端共享的定时器，用于断线重连和请求超时，每个HashedWheelTimer都会占用一个线程
+	 */
+	static final Timer timer = new HashedWheelTimer(new ThreadFactoryBuilder().setDaemon(true)
+			.setNameFormat("client-timer-%d").build());
+
+	/**
+	 * 所有客户端共享的boss和worker线程，连接数再多也只有2倍CPU数的I/O线程
+	 */
+	static final ChannelFactory channelFactory = new NioClientSocketChannelFactory(
+			Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("client-boss-%d")
+					.build()), Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("client-worker-%d").build()), Runtime.getRuntime().availableProcessors() * 2);
 
 	private SocketAddress address;
+	// 多个地址时按顺序failover
+	private List<SocketAddress> addresses;
 	protected boolean reconnect;
 	private boolean closeChannelAfterWrite;
 	protected BlockingQueue<IProtocol> sendQueue = new LinkedBlockingQueue<IProtocol>(200);
 
 	private ClientBootstrap bootstrap;
+	private volatile ChannelWriteHandler writeHandler;
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+	private ReconnectHandler reconnectHandler;
+	private volatile FrameCompressor frameCompressor;
+	private volatile CaptureHandler captureHandler;
+	private volatile boolean closed;
 
+	/**
+	 * @param address
+	 *            ip:port，多个地址用逗号分隔，连接失败时依次切换
+	 */
 	public AbstractClient(String address) {
-		this.address = SocketAddressConvertor.convert(address);
+		this.addresses = SocketAddressConvertor.convertAll(address);
+		this.address = this.addresses.get(0);
 		this.bootstrap = bootstrap();
 	}
 
@@ -53,21 +89,31 @@ public abstract class AbstractClient implements Client {
 	private ClientBootstrap bootstrap() {
 		Preconditions.checkNotNull(this.address, "SocketAddress should not be null");
 
-		ChannelFactory factory = new NioClientSocketChannelFactory(Executors.newFixedThreadPool(1),
-				Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
-		final ClientBootstrap bootstrap = new ClientBootstrap(factory);
+		final ClientBootstrap bootstrap = new ClientBootstrap(channelFactory);
+		bootstrap.setOption("remoteAddress", this.address);
+		// 所有连接共享，以便累计重连次数
+		reconnectHandler = new ReconnectHandler(timer, bootstrap, reconnect, addresses, circuitBreaker);
 
 		ChannelPipelineFactory pipelineFactory = new ChannelPipelineFactory() {
 			@Override
 			public ChannelPipeline getPipeline() throws Exception {
 				ChannelPipeline pipeline = Channels.pipeline();
-				pipeline.addLast("channelBufferDealer", new ChannelBufferDealer());
-				pipeline.addLast("encoder", new ProtocolEncoder());
-				pipeline.addLast("channelWriteHandler", new ChannelWriteHandler(sendQueue, closeChannelAfterWrite));
+				pipeline.addLast("bufferRelease", BUFFER_RELEASE_HANDLER);
+				if (captureHandler != null) {
+					// 抓取写出到网络的frame(压缩后)
+					pipeline.addLast("capture", captureHandler);
+				}
+				if (frameCompressor != null) {
+					pipeline.addLast("frameCompressor", frameCompressor);
+				}
+				pipeline.addLast("encoder", new ProtocolEncoder(PooledChannelBufferFactory.getDefault()));
+				// 每次(重)连接新建，sendProtocol时通知当前连接写出
+				writeHandler = new ChannelWriteHandler(sendQueue, closeChannelAfterWrite);
+				pipeline.addLast("channelWriteHandler", writeHandler);
 				// todo 根据配置加判断
 				pipeline.addLast("littleEndianCoder", new LittleEndianCoder());
 
-				pipeline.addLast("reconnect", new ReconnectHandler(timer, bootstrap, reconnect));
+				pipeline.addLast("reconnect", reconnectHandler);
 
 				pipelinePostProcess(pipeline);
 				return pipeline;
@@ -75,45 +121,153 @@ public abstract class AbstractClient implements Client {
 		};
 
 		bootstrap.setPipelineFactory(pipelineFactory);
-		bootstrap.setOption("remoteAddress", this.address);
 		return bootstrap;
 	}
 
 	@Override
 	public void connect() {
-		// 建立连接
-		ChannelFuture connectionFuture = this.bootstrap.connect(this.address);
-
-		// 阻塞式的等待，直到ChannelFuture对象返回这个连接操作的成功或失败状态
-		connectionFuture.awaitUninterruptibly(timeout);
-		if (!connectionFuture.isSuccess()) {
-			// 连接失败，关闭资源
-			logger.error("client connect error", connectionFuture.getCause());
-			if (!reconnect) {
-				this.bootstrap.getFactory().releaseExternalResources();
+		ChannelFuture connectionFuture = null;
+		for (SocketAddress candidate : addresses) {
+			// 建立连接
+			this.bootstrap.setOption("remoteAddress", candidate);
+			connectionFuture = this.bootstrap.connect(candidate);
+
+			// 阻塞式的等待，直到ChannelFuture对象返回这个连接操作的成功或失败状态
+			connectionFuture.awaitUninterruptibly(timeout);
+			if (connectionFuture.isSuccess()) {
+				logger.debug("client connect success:{}", connectionFuture.getChannel());
+				return;
 			}
-			throw new ConnectException("client connect error", connectionFuture.getCause());
+			logger.warn("client connect to {} failed", candidate);
 		}
 
-		logger.debug("client connect success:{}", connectionFuture.getChannel());
+		// 连接失败，channelFactory为所有客户端共享，不能在此释放
+		logger.error("client connect error", connectionFuture.getCause());
+		throw new ConnectException("client connect error", connectionFuture.getCause());
 	}
 
+	/**
+	 * 连接断开期间(断路器打开)直接返回false，不等待队列
+	 */
 	@Override
 	public boolean sendProtocol(final IProtocol protocol) {
+		if (closed) {
+			return false;
+		}
+		if (!circuitBreaker.allowRequest()) {
+			logger.debug("circuit {}, reject protocol:{}", circuitBreaker.getState(), protocol.getMessageId());
+			return false;
+		}
 		boolean flag = false;
 		try {
 			flag = this.sendQueue.offer(protocol, timeout, TimeUnit.MILLISECONDS);
 		} catch (Exception e) {
 			logger.error("queue offer error", e);
 		}
+		ChannelWriteHandler handler = this.writeHandler;
+		if (flag && handler != null) {
+			handler.drain();
+		}
 		return flag;
 	}
 
+	/**
+	 * 当前是否有可写的连接
+	 *
+	 * @return
+	 */
+	public boolean isConnected() {
+		ChannelWriteHandler handler = this.writeHandler;
+		return handler != null && handler.isConnected();
+	}
+
+	/**
+	 * 等待发送的消息数
+	 *
+	 * @return
+	 */
+	public int getQueuedCount() {
+		return sendQueue.size();
+	}
+
+	/**
+	 * 取出所有待发送的消息，用于转发到其他连接
+	 *
+	 * @param target
+	 * @return 取出的条数
+	 */
+	public int drainQueued(Collection<IProtocol> target) {
+		return sendQueue.drainTo(target);
+	}
+
+	/**
+	 * 将消息放回队列，不检查断路器，不等待
+	 *
+	 * @param protocol
+	 * @return 队列已满时返回false
+	 */
+	public boolean requeue(IProtocol protocol) {
+		return sendQueue.offer(protocol);
+	}
+
+	/**
+	 * 关闭连接并停止重连，队列中未发出的消息丢弃；关闭后sendProtocol返回false<br>
+	 * I/O线程和定时器为所有客户端共享，不释放
+	 */
+	public void close() {
+		closed = true;
+		setReconnect(false);
+		ChannelWriteHandler handler = this.writeHandler;
+		Channel channel = handler == null ? null : handler.getChannel();
+		if (channel != null) {
+			channel.close().awaitUninterruptibly(timeout);
+		}
+		int dropped = sendQueue.size();
+		sendQueue.clear();
+		if (dropped > 0) {
+			logger.warn("client {} closed, {} queued messages dropped", address, dropped);
+		}
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public ReconnectHandler getReconnectHandler() {
+		return reconnectHandler;
+	}
+
+	public SocketAddress getAddress() {
+		return address;
+	}
+
 	public void setReconnect(boolean reconnect) {
 		this.reconnect = reconnect;
+		this.reconnectHandler.setReconnect(reconnect);
 	}
 
 	public void setCloseChannelAfterWrite(boolean closeChannelAfterWrite) {
 		this.closeChannelAfterWrite = closeChannelAfterWrite;
 	}
+
+	/**
+	 * 消息体不小于threshold的消息压缩发送，须在connect之前调用<br>
+	 * 对端pipeline中须有{@link com.woniu.network.handler.codec.FrameDecompressor}
+	 *
+	 * @param threshold
+	 *            0表示不压缩
+	 */
+	public void setCompressThreshold(int threshold) {
+		this.frameCompressor = threshold > 0 ? new FrameCompressor(threshold) : null;
+	}
+
+	/**
+	 * 抓取发出的frame，须在connect之前调用；抓包文件由调用方关闭
+	 *
+	 * @param captureFile
+	 *            null表示不抓包
+	 */
+	public void setCaptureFile(CaptureFile captureFile) {
+		this.captureHandler = captureFile == null ? null : new CaptureHandler(captureFile, false, true);
+	}
 }
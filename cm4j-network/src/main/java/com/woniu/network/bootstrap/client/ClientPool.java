@@ -0,0 +1,352 @@
+package com.woniu.network.bootstrap.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.exception.AccessException;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * <p>
+ * 客户端连接池
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 每个服务端(endpoint)保持connectionsPerEndpoint个{@link MultiplexClient}长连接，所有连接共享{@link AbstractClient}中的I/O线程和定时器
+ * <p>
+ * 选择连接时先在健康的endpoint之间按权重平滑轮询(smooth weighted round-robin)，再在该endpoint中选择负载(未完成请求数+待发送数)最小的已连接的连接
+ * <p>
+ * 健康检查定时执行：endpoint下没有可用连接时标记为不健康，不再参与轮询；断开的连接由{@link com.woniu.network.handler.client.ReconnectHandler}重连，
+ * 重连成功后下次检查恢复。断开连接队列中待发送的消息在单独的线程中转到其他可用连接，请求的future随消息转移；
+ * 已发出未响应的请求由{@link MultiplexClient}置为失败，不会转发
+ * <p>
+ * 使用示例：
+ *
+ * <pre>
+ * ClientPool pool = new ClientPool(4);
+ * pool.addEndpoint(&quot;192.168.0.1:2012&quot;, 2);
+ * pool.addEndpoint(&quot;192.168.0.2:2012&quot;, 1);
+ * pool.connect();
+ * ListenableFuture&lt;IProtocol&gt; future = pool.request(protocol);
+ * </pre>
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class ClientPool implements Client {
+
+	public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final int connectionsPerEndpoint;
+	private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+	private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+	/**
+	 * 单个连接未完成请求数达到此值时视为过载，不再分配请求，0为不限制
+	 */
+	private int maxPendingPerConnection;
+
+	private volatile boolean closed;
+
+	/**
+	 * 转发消息可能等待发送队列，不能占用共享的定时器线程
+	 */
+	private final ExecutorService failoverExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("client-pool-failover-%d").build());
+	private final AtomicBoolean failoverScheduled = new AtomicBoolean();
+
+	public ClientPool(int connectionsPerEndpoint) {
+		Preconditions.checkArgument(connectionsPerEndpoint > 0, "connectionsPerEndpoint should be positive");
+		this.connectionsPerEndpoint = connectionsPerEndpoint;
+	}
+
+	/**
+	 * 添加服务端，须在{@link #connect()}之前调用
+	 *
+	 * @param address
+	 *            ip:port
+	 * @param weight
+	 *            权重
+	 */
+	public synchronized void addEndpoint(String address, int weight) {
+		Preconditions.checkArgument(weight > 0, "weight should be positive");
+		List<MultiplexClient> clients = new ArrayList<MultiplexClient>(connectionsPerEndpoint);
+		for (int i = 0; i < connectionsPerEndpoint; i++) {
+			clients.add(new MultiplexClient(address));
+		}
+		endpoints.add(new Endpoint(address, weight, clients));
+	}
+
+	/**
+	 * 连接所有服务端，部分连接失败时由重连机制继续尝试，全部失败才抛出异常
+	 */
+	@Override
+	public void connect() throws ConnectException {
+		int connected = 0;
+		for (Endpoint endpoint : endpoints) {
+			for (MultiplexClient client : endpoint.clients) {
+				try {
+					client.connect();
+					connected++;
+				} catch (ConnectException e) {
+					logger.warn("pool connect to {} failed", endpoint.address);
+				}
+			}
+		}
+		checkHealth();
+		scheduleHealthCheck();
+
+		if (connected == 0) {
+			throw new ConnectException("no endpoint connected");
+		}
+	}
+
+	/**
+	 * 选中的连接拒绝时(刚断开，断路器已打开)换一个连接重试
+	 *
+	 * @return 没有可用连接或所有连接都拒绝时返回false，不抛出异常
+	 */
+	@Override
+	public boolean sendProtocol(IProtocol protocol) {
+		int retries = endpoints.size() * connectionsPerEndpoint;
+		for (int i = 0; i < retries; i++) {
+			MultiplexClient client;
+			try {
+				client = select();
+			} catch (ConnectException e) {
+				logger.debug("no healthy connection, reject protocol:{}", protocol.getMessageId());
+				return false;
+			}
+			if (client.sendProtocol(protocol)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 没有可用连接时返回已失败的future，异常为{@link ConnectException}
+	 */
+	public ListenableFuture<IProtocol> request(IProtocol request) {
+		return request(request, MultiplexClient.DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * @return 没有可用连接时返回已失败的future，异常为{@link ConnectException}
+	 */
+	public ListenableFuture<IProtocol> request(IProtocol request, long timeoutMillis) {
+		MultiplexClient client;
+		try {
+			client = select();
+		} catch (ConnectException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		return client.request(request, timeoutMillis);
+	}
+
+	/**
+	 * 停止健康检查，关闭所有连接且不再重连，未完成的请求置为失败
+	 */
+	public void close() {
+		closed = true;
+		failoverExecutor.shutdown();
+		for (Endpoint endpoint : endpoints) {
+			for (MultiplexClient client : endpoint.clients) {
+				client.close();
+			}
+		}
+	}
+
+	/**
+	 * 选择连接
+	 *
+	 * @return
+	 * @throws ConnectException
+	 *             没有可用连接
+	 */
+	MultiplexClient select() {
+		synchronized (this) {
+			// 选中的endpoint可能刚断开，最多尝试endpoint数次
+			for (int i = 0; i < endpoints.size(); i++) {
+				Endpoint endpoint = nextEndpoint();
+				if (endpoint == null) {
+					break;
+				}
+				MultiplexClient client = leastLoaded(endpoint);
+				if (client != null) {
+					return client;
+				}
+				endpoint.healthy = false;
+			}
+		}
+		throw new ConnectException("no healthy connection in pool");
+	}
+
+	/**
+	 * 平滑加权轮询：每次各endpoint的current加上权重，选current最大的，再将其current减去总权重
+	 */
+	private Endpoint nextEndpoint() {
+		Endpoint best = null;
+		int total = 0;
+		for (Endpoint endpoint : endpoints) {
+			if (!endpoint.healthy) {
+				continue;
+			}
+			endpoint.current += endpoint.weight;
+			total += endpoint.weight;
+			if (best == null || endpoint.current > best.current) {
+				best = endpoint;
+			}
+		}
+		if (best != null) {
+			best.current -= total;
+		}
+		return best;
+	}
+
+	private MultiplexClient leastLoaded(Endpoint endpoint) {
+		MultiplexClient best = null;
+		int bestLoad = Integer.MAX_VALUE;
+		for (MultiplexClient client : endpoint.clients) {
+			if (!isAvailable(client)) {
+				continue;
+			}
+			int load = client.getPendingCount() + client.getQueuedCount();
+			if (load < bestLoad) {
+				best = client;
+				bestLoad = load;
+			}
+		}
+		return best;
+	}
+
+	private boolean isAvailable(MultiplexClient client) {
+		return client.isConnected()
+				&& (maxPendingPerConnection <= 0 || client.getPendingCount() < maxPendingPerConnection);
+	}
+
+	private void checkHealth() {
+		synchronized (this) {
+			for (Endpoint endpoint : endpoints) {
+				boolean healthy = false;
+				for (MultiplexClient client : endpoint.clients) {
+					if (client.isConnected()) {
+						healthy = true;
+						break;
+					}
+				}
+				if (healthy != endpoint.healthy) {
+					logger.warn("endpoint {} health changed:{}", endpoint.address, healthy);
+					endpoint.healthy = healthy;
+					endpoint.current = 0;
+				}
+			}
+		}
+		scheduleFailover();
+	}
+
+	private void scheduleFailover() {
+		if (closed || !failoverScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		failoverExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					failover();
+				} catch (Exception e) {
+					logger.error("client pool failover error", e);
+				} finally {
+					failoverScheduled.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 将断开连接中待发送的消息转到其他可用连接
+	 */
+	private void failover() {
+		List<IProtocol> queued = new ArrayList<IProtocol>();
+		for (Endpoint endpoint : endpoints) {
+			for (MultiplexClient client : endpoint.clients) {
+				if (client.isConnected() || client.getQueuedCount() == 0) {
+					continue;
+				}
+				queued.clear();
+				client.drainQueued(queued);
+				int moved = 0;
+				for (IProtocol protocol : queued) {
+					MultiplexClient target = null;
+					try {
+						target = select();
+					} catch (ConnectException e) {
+						// 没有可用连接
+					}
+					if (target != null && target != client && target.adopt(protocol, client)) {
+						moved++;
+					} else if (!client.requeue(protocol)) {
+						logger.error("failover dropped protocol:{}", protocol.getMessageId());
+						client.fail(protocol, new AccessException("failover dropped: queue full"));
+					}
+				}
+				if (moved > 0) {
+					logger.warn("failover {} queued messages from {}", moved, endpoint.address);
+				}
+			}
+		}
+	}
+
+	private void scheduleHealthCheck() {
+		if (closed) {
+			return;
+		}
+		AbstractClient.timer.newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				try {
+					checkHealth();
+				} finally {
+					scheduleHealthCheck();
+				}
+			}
+		}, healthCheckInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public void setHealthCheckInterval(long healthCheckInterval) {
+		this.healthCheckInterval = healthCheckInterval;
+	}
+
+	public void setMaxPendingPerConnection(int maxPendingPerConnection) {
+		this.maxPendingPerConnection = maxPendingPerConnection;
+	}
+
+	private static class Endpoint {
+		private final String address;
+		private final int weight;
+		private final List<MultiplexClient> clients;
+		// 平滑加权轮询的当前权重
+		private int current;
+		private boolean healthy;
+
+		private Endpoint(String address, int weight, List<MultiplexClient> clients) {
+			this.address = address;
+			this.weight = weight;
+			this.clients = clients;
+		}
+	}
+}
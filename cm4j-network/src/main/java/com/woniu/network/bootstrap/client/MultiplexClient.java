@@ -0,0 +1,126 @@
+package com.woniu.network.bootstrap.client;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jboss.netty.channel.ChannelPipeline;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.woniu.network.exception.AccessException;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.handler.client.CorrelationHandler;
+import com.woniu.network.handler.codec.FrameDecompressor;
+import com.woniu.network.handler.codec.ProtocolDecoder;
+import com.woniu.network.handler.codec.ZeroCopyFrameDecoder;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 多路复用的请求/响应客户端<br>
+ * 一个长连接上同时有多个未完成的请求，通过消息头中的关联ID({@link CorrelationHandler#CORRELATION_FIELD})对应响应，
+ * 服务端须在响应中原样带回该字段<br>
+ * 没有关联ID或关联ID不匹配的消息交给{@link #pipelinePostProcess(ChannelPipeline)}中加入的后续handler处理
+ */
+public class MultiplexClient extends AbstractClient {
+
+	public static final long DEFAULT_REQUEST_TIMEOUT = 3000;
+
+	private final CorrelationHandler correlationHandler = new CorrelationHandler(timer);
+	private final int maxFrameLength;
+	private final FrameDecompressor frameDecompressor;
+
+	/**
+	 * 单个消息的最大长度与服务端相同，取server.maxFrameLength
+	 */
+	public MultiplexClient(String address) {
+		this(address, MessageConfiguration.getMaxFrameLength());
+	}
+
+	public MultiplexClient(String address, int maxFrameLength) {
+		super(address);
+		this.maxFrameLength = maxFrameLength;
+		this.frameDecompressor = new FrameDecompressor(maxFrameLength * 16);
+		super.setReconnect(true);
+		super.setCloseChannelAfterWrite(false);
+		sendQueue = new LinkedBlockingQueue<IProtocol>(2000);
+	}
+
+	/**
+	 * 发送请求，超时时间为{@link #DEFAULT_REQUEST_TIMEOUT}
+	 *
+	 * @param request
+	 * @return
+	 */
+	public ListenableFuture<IProtocol> request(IProtocol request) {
+		return request(request, DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * 发送请求，不阻塞等待响应
+	 *
+	 * @param request
+	 *            会被写入关联ID，发送完成前不要修改或复用
+	 * @param timeoutMillis
+	 * @return 收到响应时完成；超时、发送队列已满或连接断开时失败
+	 */
+	public ListenableFuture<IProtocol> request(IProtocol request, long timeoutMillis) {
+		ListenableFuture<IProtocol> future = correlationHandler.register(request, timeoutMillis);
+		if (!sendProtocol(request)) {
+			correlationHandler.fail(request, new AccessException("send rejected: queue full or circuit open"));
+		}
+		return future;
+	}
+
+	/**
+	 * 接管另一个连接中尚未发出的消息，请求的future随消息转到本连接
+	 *
+	 * @param protocol
+	 *            从from的发送队列中取出的消息
+	 * @param from
+	 * @return 本连接拒绝时返回false，消息和登记仍属于from；请求已超时或失败时直接丢弃，返回true
+	 */
+	boolean adopt(IProtocol protocol, MultiplexClient from) {
+		if (!from.correlationHandler.transfer(protocol, correlationHandler)) {
+			// 调用方已收到失败，不能再发出，否则服务端会重复处理
+			return true;
+		}
+		if (sendProtocol(protocol)) {
+			return true;
+		}
+		correlationHandler.transfer(protocol, from.correlationHandler);
+		return false;
+	}
+
+	/**
+	 * 消息未能发出时置对应请求为失败
+	 */
+	void fail(IProtocol protocol, Throwable cause) {
+		correlationHandler.fail(protocol, cause);
+	}
+
+	/**
+	 * 关闭连接，未完成的请求(包括队列中未发出的)置为失败，异常为{@link ConnectException}
+	 */
+	@Override
+	public void close() {
+		super.close();
+		correlationHandler.failAll(new ConnectException("client closed"));
+	}
+
+	/**
+	 * 未完成的请求数
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		return correlationHandler.getPendingCount();
+	}
+
+	@Override
+	public void pipelinePostProcess(ChannelPipeline pipeline) {
+		pipeline.addLast("framerDecoder", new ZeroCopyFrameDecoder(maxFrameLength, 0, 4, 0, 0));
+		pipeline.addLast("frameDecompressor", frameDecompressor);
+		// 响应交给调用方异步处理，不能复用消息对象
+		pipeline.addLast("protocolDecoder", new ProtocolDecoder(false));
+		pipeline.addLast("correlationHandler", correlationHandler);
+	}
+}
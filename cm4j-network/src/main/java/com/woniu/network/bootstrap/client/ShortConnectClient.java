@@ -1,6 +1,6 @@
 package com.woniu.network.bootstrap.client;
 
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.jboss.netty.channel.ChannelPipeline;
 
@@ -12,7 +12,8 @@ public class ShortConnectClient extends AbstractClient {
 		super(address);
 		super.setReconnect(false);
 		super.setCloseChannelAfterWrite(true);
-		sendQueue = new SynchronousQueue<IProtocol>();
+		// 写出不再有线程阻塞等待，不能使用SynchronousQueue
+		sendQueue = new LinkedBlockingQueue<IProtocol>(1);
 	}
 	
 	@Override
@@ -0,0 +1,19 @@
+package com.woniu.network.bootstrap.server;
+
+/**
+ * 服务端，与传输实现无关
+ */
+public interface NetworkServer {
+
+	/**
+	 * 监听{@link ServerConfig#getBindAddresses()}中的所有地址
+	 */
+	public void start();
+
+	/**
+	 * 关闭监听和所有线程
+	 */
+	public void stop();
+
+	public ServerConfig getConfig();
+}
@@ -1,20 +1,39 @@
 package com.woniu.network.bootstrap.server;
 
-import java.net.InetSocketAddress;
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.buffer.PooledChannelBufferFactory;
+import com.woniu.network.capture.CaptureFile;
+import com.woniu.network.capture.CaptureHandler;
+import com.woniu.network.handler.codec.BufferReleaseHandler;
+import com.woniu.network.handler.codec.FrameCompressor;
+import com.woniu.network.handler.codec.FrameDecompressor;
 import com.woniu.network.handler.codec.LittleEndianCoder;
 import com.woniu.network.handler.codec.ProtocolDecoder;
+import com.woniu.network.handler.codec.ProtocolEncoder;
+import com.woniu.network.handler.codec.ZeroCopyFrameDecoder;
+import com.woniu.network.handler.server.ConnectionLimitHandler;
+import com.woniu.network.handler.server.IdleCloseHandler;
+import com.woniu.network.handler.server.OrderedExecutionHandler;
 import com.woniu.network.handler.server.ProtocolMulticasterHandler;
 
 /**
@@ -27,23 +46,103 @@ import com.woniu.network.handler.server.ProtocolMulticasterHandler;
  * @since 2011-6-20 上午09:59:40
  * 
  */
-public class Server {
+public class Server implements NetworkServer {
 
 	private static final Logger logger = LoggerFactory.getLogger(Server.class);
 
+	private static final BufferReleaseHandler BUFFER_RELEASE_HANDLER = new BufferReleaseHandler();
+
+	private final ServerConfig config;
+
+	/**
+	 * 业务线程池，所有连接共享
+	 */
+	private final OrderedExecutionHandler executionHandler;
+	private final ConnectionLimitHandler connectionLimitHandler;
+	private final IdleCloseHandler idleCloseHandler = new IdleCloseHandler();
+	private final FrameCompressor frameCompressor;
+	private final FrameDecompressor frameDecompressor;
+	private CaptureHandler captureHandler;
+
+	private Timer timer;
+	private ServerBootstrap bootstrap;
+	private final List<Channel> boundChannels = new ArrayList<Channel>();
+
+	public Server() {
+		this(ServerConfig.load());
+	}
+
+	public Server(ServerConfig config) {
+		this.config = config;
+		this.executionHandler = new OrderedExecutionHandler(config.getExecutorThreads(),
+				config.getMaxQueuedPerChannel());
+		this.connectionLimitHandler = new ConnectionLimitHandler(config.getMaxConnections());
+		this.frameCompressor = config.getCompressThreshold() > 0 ? new FrameCompressor(config.getCompressThreshold())
+				: null;
+		this.frameDecompressor = new FrameDecompressor(config.getMaxFrameLength() * 16);
+	}
+
+	@Override
 	public void start() {
 		ChannelFactory channelFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-				Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
-		ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
+				Executors.newCachedThreadPool(), config.getWorkers());
+		bootstrap = new ServerBootstrap(channelFactory);
+
+		bootstrap.setOption("backlog", config.getBacklog());
+		bootstrap.setOption("reuseAddress", true);
+		bootstrap.setOption("child.tcpNoDelay", config.isTcpNoDelay());
+		bootstrap.setOption("child.keepAlive", config.isKeepAlive());
+		if (config.getReceiveBufferSize() > 0) {
+			bootstrap.setOption("child.receiveBufferSize", config.getReceiveBufferSize());
+		}
+		if (config.getSendBufferSize() > 0) {
+			bootstrap.setOption("child.sendBufferSize", config.getSendBufferSize());
+		}
+		bootstrap.setOption("child.writeBufferHighWaterMark", config.getWriteBufferHighWaterMark());
+		bootstrap.setOption("child.writeBufferLowWaterMark", config.getWriteBufferLowWaterMark());
+
+		// 所有连接共享一个定时器，每个连接只占用一个定时任务
+		timer = new HashedWheelTimer(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("server-timer-%d")
+				.build());
+		final IdleStateHandler idleStateHandler = config.getReaderIdleSeconds() > 0 ? new IdleStateHandler(timer,
+				config.getReaderIdleSeconds(), 0, 0) : null;
+		final int maxFrameLength = config.getMaxFrameLength();
+		if (captureHandler == null && config.getCaptureFile() != null) {
+			try {
+				captureHandler = new CaptureHandler(new CaptureFile(new File(config.getCaptureFile()),
+						config.getCaptureMaxSize() * 1024L * 1024), true, false);
+				logger.info("capture inbound frames to {}", config.getCaptureFile());
+			} catch (IOException e) {
+				logger.error("open capture file error:" + config.getCaptureFile(), e);
+			}
+		}
 
 		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
 			@Override
 			public ChannelPipeline getPipeline() throws Exception {
 				ChannelPipeline pipeline = Channels.pipeline();
+				pipeline.addLast("connectionLimit", connectionLimitHandler);
+				if (idleStateHandler != null) {
+					pipeline.addLast("idleState", idleStateHandler);
+					pipeline.addLast("idleClose", idleCloseHandler);
+				}
 				pipeline.addLast("littleEndianCoder", new LittleEndianCoder());
-				pipeline.addLast("framerDecoder", new LengthFieldBasedFrameDecoder(10000, 0, 4, 0, 0));
+				pipeline.addLast("bufferRelease", BUFFER_RELEASE_HANDLER);
+				if (frameCompressor != null) {
+					pipeline.addLast("frameCompressor", frameCompressor);
+				}
+				pipeline.addLast("encoder", new ProtocolEncoder(PooledChannelBufferFactory.getDefault()));
+				pipeline.addLast("framerDecoder", new ZeroCopyFrameDecoder(maxFrameLength, 0, 4, 0, 0));
+				if (captureHandler != null) {
+					// 抓取原始frame(可能是压缩过的)
+					pipeline.addLast("capture", captureHandler);
+				}
+				// 对端压缩过的消息
+				pipeline.addLast("frameDecompressor", frameDecompressor);
 
 				pipeline.addLast("protocolDecoder", new ProtocolDecoder());
+				// 之后的handler在业务线程中执行
+				pipeline.addLast("orderedExecution", executionHandler);
 				pipeline.addLast("protocolMulticasterHandler", new ProtocolMulticasterHandler());
 
 				// pipeline.addLast("messagePrintHandler", new
@@ -52,8 +151,83 @@ public class Server {
 			}
 		});
 
-		InetSocketAddress address = new InetSocketAddress(2012);
-		bootstrap.bind(address);
-		logger.debug("server start at {}", address);
+		PooledChannelBufferFactory.getDefault().registerMBean();
+		executionHandler.registerMBean();
+
+		for (SocketAddress address : config.getBindAddresses()) {
+			boundChannels.add(bootstrap.bind(address));
+			logger.debug("server start at {}", address);
+		}
+	}
+
+	/**
+	 * 关闭监听和所有线程，已建立的连接随I/O线程关闭
+	 */
+	@Override
+	public void stop() {
+		for (Channel channel : boundChannels) {
+			channel.close().awaitUninterruptibly();
+		}
+		boundChannels.clear();
+		if (bootstrap != null) {
+			bootstrap.releaseExternalResources();
+		}
+		if (timer != null) {
+			timer.stop();
+		}
+		executionHandler.releaseExternalResources();
+		executionHandler.unregisterMBean();
+		if (captureHandler != null) {
+			try {
+				captureHandler.getCaptureFile().close();
+			} catch (IOException e) {
+				logger.error("close capture file error", e);
+			}
+		}
+	}
+
+	/**
+	 * 可在start之前添加lane、按messageId分配lane
+	 *
+	 * @return
+	 */
+	public OrderedExecutionHandler getExecutionHandler() {
+		return executionHandler;
+	}
+
+	public ConnectionLimitHandler getConnectionLimitHandler() {
+		return connectionLimitHandler;
+	}
+
+	public IdleCloseHandler getIdleCloseHandler() {
+		return idleCloseHandler;
+	}
+
+	/**
+	 * @return 未配置server.compressThreshold时返回null
+	 */
+	public FrameCompressor getFrameCompressor() {
+		return frameCompressor;
+	}
+
+	/**
+	 * 抓取收到的frame，须在start之前调用，stop时关闭抓包文件；也可以配置server.captureFile
+	 *
+	 * @param captureFile
+	 */
+	public void setCaptureFile(CaptureFile captureFile) {
+		this.captureHandler = new CaptureHandler(captureFile, true, false);
+	}
+
+	/**
+	 * @return 未抓包时返回null
+	 */
+	public CaptureHandler getCaptureHandler() {
+		return captureHandler;
+	}
+
+	@Override
+	public ServerConfig getConfig() {
+		return config;
 	}
 }
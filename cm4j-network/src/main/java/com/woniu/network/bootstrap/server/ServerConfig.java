@@ -0,0 +1,246 @@
+package com.woniu.network.bootstrap.server;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.util.SocketAddressConvertor;
+
+/**
+ * {@link Server}启动参数<br>
+ * {@link #load()}从network.properties读取，未配置的项使用默认值；默认值按单机保持5万以上空闲长连接设置
+ *
+ * <pre>
+ * server.bind                      监听地址，逗号分隔的多个IP:port；未配置时使用server.port，默认2012
+ * server.workers                   I/O线程数，默认CPU核数*2
+ * server.backlog                   accept队列长度，默认1024
+ * server.tcpNoDelay                默认true
+ * server.keepAlive                 默认true
+ * server.receiveBufferSize         SO_RCVBUF，0表示使用系统默认值
+ * server.sendBufferSize            SO_SNDBUF，0表示使用系统默认值
+ * server.writeBufferHighWaterMark  待发送数据超过此值时channel不可写，默认64K
+ * server.writeBufferLowWaterMark   待发送数据低于此值时恢复可写，默认32K
+ * server.maxFrameLength            单个消息最大长度，默认10000
+ * server.maxConnections            最大连接数，0表示不限制，默认60000
+ * server.readerIdleSeconds         多久未收到数据关闭连接，0表示不检查，默认180
+ * server.executorThreads           业务线程数，默认CPU核数*4
+ * server.maxQueuedPerChannel       单个连接最多积压的消息数，默认1000
+ * server.compressThreshold         消息体不小于此长度时压缩发送，0表示不压缩，默认0
+ * server.captureFile               把收到的frame写入此文件，用于离线回放，未配置时不抓包
+ * server.captureMaxSize            抓包文件最大长度(MB)，1~2047，默认1024
+ * </pre>
+ */
+public class ServerConfig {
+
+	public static final int DEFAULT_PORT = 2012;
+	/**
+	 * 抓包文件最大长度(MB)的上限，{@link com.woniu.network.capture.CaptureFile}映射的文件不超过2G
+	 */
+	public static final int MAX_CAPTURE_SIZE = Integer.MAX_VALUE / (1024 * 1024);
+
+	private List<SocketAddress> bindAddresses = Collections
+			.singletonList((SocketAddress) new InetSocketAddress(DEFAULT_PORT));
+	private int workers = Runtime.getRuntime().availableProcessors() * 2;
+	private int backlog = 1024;
+	private boolean tcpNoDelay = true;
+	private boolean keepAlive = true;
+	private int receiveBufferSize;
+	private int sendBufferSize;
+	private int writeBufferHighWaterMark = 64 * 1024;
+	private int writeBufferLowWaterMark = 32 * 1024;
+	private int maxFrameLength = 10000;
+	private int maxConnections = 60000;
+	private int readerIdleSeconds = 180;
+	private int executorThreads = Runtime.getRuntime().availableProcessors() * 4;
+	private int maxQueuedPerChannel = 1000;
+	private int compressThreshold;
+	private String captureFile;
+	private int captureMaxSize = 1024;
+
+	/**
+	 * 从network.properties读取配置
+	 *
+	 * @return
+	 */
+	public static ServerConfig load() {
+		ServerConfig config = new ServerConfig();
+		String bind = MessageConfiguration.getServerBind();
+		if (StringUtils.isNotBlank(bind)) {
+			config.setBindAddresses(SocketAddressConvertor.convertAll(bind));
+		} else {
+			int port = MessageConfiguration.getInt("server.port", DEFAULT_PORT);
+			config.setBindAddresses(Collections.singletonList((SocketAddress) new InetSocketAddress(port)));
+		}
+		config.setWorkers(MessageConfiguration.getInt("server.workers", config.getWorkers()));
+		config.setBacklog(MessageConfiguration.getInt("server.backlog", config.getBacklog()));
+		config.setTcpNoDelay(MessageConfiguration.getBoolean("server.tcpNoDelay", config.isTcpNoDelay()));
+		config.setKeepAlive(MessageConfiguration.getBoolean("server.keepAlive", config.isKeepAlive()));
+		config.setReceiveBufferSize(MessageConfiguration.getInt("server.receiveBufferSize",
+				config.getReceiveBufferSize()));
+		config.setSendBufferSize(MessageConfiguration.getInt("server.sendBufferSize", config.getSendBufferSize()));
+		config.setWriteBufferHighWaterMark(MessageConfiguration.getInt("server.writeBufferHighWaterMark",
+				config.getWriteBufferHighWaterMark()));
+		config.setWriteBufferLowWaterMark(MessageConfiguration.getInt("server.writeBufferLowWaterMark",
+				config.getWriteBufferLowWaterMark()));
+		config.setMaxFrameLength(MessageConfiguration.getMaxFrameLength());
+		config.setMaxConnections(MessageConfiguration.getInt("server.maxConnections", config.getMaxConnections()));
+		config.setReaderIdleSeconds(MessageConfiguration.getInt("server.readerIdleSeconds",
+				config.getReaderIdleSeconds()));
+		config.setExecutorThreads(MessageConfiguration.getInt("server.executorThreads", config.getExecutorThreads()));
+		config.setMaxQueuedPerChannel(MessageConfiguration.getInt("server.maxQueuedPerChannel",
+				config.getMaxQueuedPerChannel()));
+		config.setCompressThreshold(MessageConfiguration.getInt("server.compressThreshold",
+				config.getCompressThreshold()));
+		config.setCaptureFile(MessageConfiguration.getOptionalValue("server.captureFile"));
+		config.setCaptureMaxSize(MessageConfiguration.getInt("server.captureMaxSize", config.getCaptureMaxSize()));
+		return config;
+	}
+
+	public List<SocketAddress> getBindAddresses() {
+		return bindAddresses;
+	}
+
+	public void setBindAddresses(List<SocketAddress> bindAddresses) {
+		this.bindAddresses = bindAddresses;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public int getWriteBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+		this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+	}
+
+	public int getWriteBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+
+	public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+		this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+	}
+
+	public int getMaxFrameLength() {
+		return maxFrameLength;
+	}
+
+	public void setMaxFrameLength(int maxFrameLength) {
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getReaderIdleSeconds() {
+		return readerIdleSeconds;
+	}
+
+	public void setReaderIdleSeconds(int readerIdleSeconds) {
+		this.readerIdleSeconds = readerIdleSeconds;
+	}
+
+	public int getExecutorThreads() {
+		return executorThreads;
+	}
+
+	public void setExecutorThreads(int executorThreads) {
+		this.executorThreads = executorThreads;
+	}
+
+	public int getMaxQueuedPerChannel() {
+		return maxQueuedPerChannel;
+	}
+
+	public void setMaxQueuedPerChannel(int maxQueuedPerChannel) {
+		this.maxQueuedPerChannel = maxQueuedPerChannel;
+	}
+
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	public void setCompressThreshold(int compressThreshold) {
+		this.compressThreshold = compressThreshold;
+	}
+
+	public String getCaptureFile() {
+		return captureFile;
+	}
+
+	public void setCaptureFile(String captureFile) {
+		this.captureFile = StringUtils.trimToNull(captureFile);
+	}
+
+	public int getCaptureMaxSize() {
+		return captureMaxSize;
+	}
+
+	/**
+	 * @param captureMaxSize
+	 *            单位MB，不超过{@link #MAX_CAPTURE_SIZE}
+	 */
+	public void setCaptureMaxSize(int captureMaxSize) {
+		if (captureMaxSize <= 0 || captureMaxSize > MAX_CAPTURE_SIZE) {
+			throw new IllegalArgumentException("server.captureMaxSize must be in (0, " + MAX_CAPTURE_SIZE + "]MB:"
+					+ captureMaxSize);
+		}
+		this.captureMaxSize = captureMaxSize;
+	}
+}
@@ -0,0 +1,73 @@
+package com.woniu.network.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ByteBufferBackedChannelBuffer;
+
+/**
+ * 从{@link PooledChannelBufferFactory}分配的direct buffer，带引用计数<br>
+ * 创建时引用计数为1，{@link #release()}减到0时归还到池中，之后不可再读写<br>
+ * slice/duplicate出的buffer与其共享内存，不单独计数，须在release之前用完
+ */
+public class PooledChannelBuffer extends ByteBufferBackedChannelBuffer {
+
+	private final PooledChannelBufferFactory pool;
+	/**
+	 * 池中原始的ByteBuffer，归还时使用
+	 */
+	private final ByteBuffer memory;
+	private final int sizeClass;
+	private final AtomicInteger refCnt = new AtomicInteger(1);
+
+	PooledChannelBuffer(PooledChannelBufferFactory pool, ByteBuffer memory, int sizeClass) {
+		super(memory);
+		this.pool = pool;
+		this.memory = memory;
+		this.sizeClass = sizeClass;
+		// ByteBufferBackedChannelBuffer构造后writerIndex为capacity，分配出去时应为空buffer
+		clear();
+	}
+
+	/**
+	 * 增加引用计数，如多个channel写同一个buffer时
+	 *
+	 * @return
+	 */
+	public PooledChannelBuffer retain() {
+		for (;;) {
+			int cnt = refCnt.get();
+			if (cnt <= 0) {
+				throw new IllegalStateException("buffer already released");
+			}
+			if (refCnt.compareAndSet(cnt, cnt + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * 减少引用计数，减到0时归还到池中
+	 *
+	 * @return 是否已归还
+	 */
+	public boolean release() {
+		for (;;) {
+			int cnt = refCnt.get();
+			if (cnt <= 0) {
+				throw new IllegalStateException("buffer already released");
+			}
+			if (refCnt.compareAndSet(cnt, cnt - 1)) {
+				if (cnt == 1) {
+					pool.recycle(memory, sizeClass);
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	public int refCnt() {
+		return refCnt.get();
+	}
+}
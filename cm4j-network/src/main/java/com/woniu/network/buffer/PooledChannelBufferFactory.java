@@ -0,0 +1,247 @@
+package com.woniu.network.buffer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.netty.buffer.AbstractChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * 按规格分级的direct buffer池
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 规格从{@link #MIN_SIZE}开始按2倍递增到{@link #MAX_SIZE}，申请时向上取整到对应规格，每个规格最多缓存maxPooledPerClass个空闲buffer；
+ * 超过{@link #MAX_SIZE}的申请直接分配heap buffer，不经过池
+ * <p>
+ * 分配出的{@link PooledChannelBuffer}需调用{@link PooledChannelBuffer#release()}归还，
+ * 发送消息时由{@link com.woniu.network.handler.codec.BufferReleaseHandler}在写完成后归还；未归还的buffer由GC回收，只是不再复用
+ * <p>
+ * direct buffer写入socket时无需再拷贝到临时的direct buffer中
+ * <p>
+ * 注意：不要设置为channel的ChannelBufferFactory，netty读取数据时分配的buffer不会被release
+ * <p>
+ * -----------------------------------------------------------
+ */
+public class PooledChannelBufferFactory extends AbstractChannelBufferFactory implements
+		PooledChannelBufferFactoryMBean {
+
+	public static final String DEFAULT_OBJECT_NAME = "com.woniu.network:type=PooledChannelBufferFactory";
+
+	public static final int MIN_SIZE = 256;
+	public static final int MAX_SIZE = 64 * 1024;
+	private static final int MIN_SHIFT = 8;
+
+	private static final PooledChannelBufferFactory DEFAULT = new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN,
+			256);
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final Queue<ByteBuffer>[] pools;
+	// 各规格空闲数，ConcurrentLinkedQueue.size()需遍历
+	private final AtomicInteger[] pooledCounts;
+	private final int maxPooledPerClass;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong oversizeCount = new AtomicLong();
+	private final AtomicLong recycleCount = new AtomicLong();
+	private final AtomicLong discardCount = new AtomicLong();
+
+	private String objectName = DEFAULT_OBJECT_NAME;
+
+	/**
+	 * 默认池：小端，每个规格最多缓存256个
+	 *
+	 * @return
+	 */
+	public static PooledChannelBufferFactory getDefault() {
+		return DEFAULT;
+	}
+
+	@SuppressWarnings("unchecked")
+	public PooledChannelBufferFactory(ByteOrder defaultOrder, int maxPooledPerClass) {
+		super(defaultOrder);
+		this.maxPooledPerClass = maxPooledPerClass;
+
+		int classes = sizeClass(MAX_SIZE) + 1;
+		this.pools = new Queue[classes];
+		this.pooledCounts = new AtomicInteger[classes];
+		for (int i = 0; i < classes; i++) {
+			pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			pooledCounts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * 容量对应的规格下标
+	 */
+	static int sizeClass(int capacity) {
+		if (capacity <= MIN_SIZE) {
+			return 0;
+		}
+		// 向上取整到2的幂
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+	}
+
+	@Override
+	public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity: " + capacity);
+		}
+		if (capacity > MAX_SIZE) {
+			oversizeCount.incrementAndGet();
+			return ChannelBuffers.buffer(order, capacity);
+		}
+
+		int sizeClass = sizeClass(capacity);
+		ByteBuffer memory = pools[sizeClass].poll();
+		if (memory != null) {
+			pooledCounts[sizeClass].decrementAndGet();
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+			memory = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+		}
+		memory.clear();
+		memory.order(order);
+		return new PooledChannelBuffer(this, memory, sizeClass);
+	}
+
+	@Override
+	public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+		ChannelBuffer buffer = getBuffer(order, length);
+		buffer.writeBytes(array, offset, length);
+		return buffer;
+	}
+
+	@Override
+	public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+		ChannelBuffer buffer = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+		buffer.writeBytes(nioBuffer.duplicate());
+		return buffer;
+	}
+
+	/**
+	 * 由{@link PooledChannelBuffer#release()}调用
+	 */
+	void recycle(ByteBuffer memory, int sizeClass) {
+		if (pooledCounts[sizeClass].incrementAndGet() > maxPooledPerClass) {
+			pooledCounts[sizeClass].decrementAndGet();
+			discardCount.incrementAndGet();
+			return;
+		}
+		pools[sizeClass].offer(memory);
+		recycleCount.incrementAndGet();
+	}
+
+	// ***************************************************************************
+	// * --------------------------------JMX----------------------------------- *
+	// **************************************************************************/
+
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, new ObjectName(objectName));
+			logger.debug("PooledChannelBufferFactory注册JMX：{}", objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.warn("PooledChannelBufferFactory已注册JMX：{}", objectName);
+		} catch (Exception e) {
+			logger.error("PooledChannelBufferFactory注册JMX异常", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(objectName);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.error("PooledChannelBufferFactory注销JMX异常", e);
+		}
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public long getOversizeCount() {
+		return oversizeCount.get();
+	}
+
+	@Override
+	public long getRecycleCount() {
+		return recycleCount.get();
+	}
+
+	@Override
+	public long getDiscardCount() {
+		return discardCount.get();
+	}
+
+	@Override
+	public int getPooledBuffers() {
+		int count = 0;
+		for (AtomicInteger pooledCount : pooledCounts) {
+			count += pooledCount.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getPooledBytes() {
+		long bytes = 0;
+		for (int i = 0; i < pooledCounts.length; i++) {
+			bytes += (long) pooledCounts[i].get() * (MIN_SIZE << i);
+		}
+		return bytes;
+	}
+
+	@Override
+	public String[] getSizeClassStatistics() {
+		String[] result = new String[pooledCounts.length];
+		for (int i = 0; i < pooledCounts.length; i++) {
+			result[i] = (MIN_SIZE << i) + ": " + pooledCounts[i].get();
+		}
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		hitCount.set(0);
+		missCount.set(0);
+		oversizeCount.set(0);
+		recycleCount.set(0);
+		discardCount.set(0);
+	}
+
+	public int getMaxPooledPerClass() {
+		return maxPooledPerClass;
+	}
+
+	public void setObjectName(String objectName) {
+		this.objectName = objectName;
+	}
+}
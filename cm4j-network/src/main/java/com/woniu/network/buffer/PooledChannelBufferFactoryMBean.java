@@ -0,0 +1,52 @@
+package com.woniu.network.buffer;
+
+/**
+ * {@link PooledChannelBufferFactory}的JMX接口
+ */
+public interface PooledChannelBufferFactoryMBean {
+
+	/**
+	 * 从池中取到buffer的次数
+	 */
+	public long getHitCount();
+
+	/**
+	 * 池中无可用buffer，新分配的次数
+	 */
+	public long getMissCount();
+
+	/**
+	 * 超过最大规格，不经过池直接分配的次数
+	 */
+	public long getOversizeCount();
+
+	/**
+	 * 归还到池中的次数
+	 */
+	public long getRecycleCount();
+
+	/**
+	 * 池满后丢弃(交由GC回收)的次数
+	 */
+	public long getDiscardCount();
+
+	/**
+	 * 当前池中空闲的buffer数
+	 */
+	public int getPooledBuffers();
+
+	/**
+	 * 当前池中空闲的字节数
+	 */
+	public long getPooledBytes();
+
+	/**
+	 * 各规格的空闲buffer数
+	 */
+	public String[] getSizeClassStatistics();
+
+	/**
+	 * 清空统计
+	 */
+	public void reset();
+}
@@ -0,0 +1,190 @@
+package com.woniu.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 抓包文件，内存映射、只追加写，可由多个I/O线程同时写入<br>
+ * 打开时按最大长度映射整个文件，每条记录用CAS预留位置后直接复制到映射区，不加锁、不经过系统调用；写满后丢弃并计数
+ *
+ * <pre>
+ * 文件头(16字节，小端)：magic(int) version(int) 开始抓包的时间(long，毫秒)
+ * 记录：  direction(byte) 相对开始的时间(long，纳秒) channelId(int) frame长度(int) frame
+ * </pre>
+ *
+ * direction为0表示文件结束；进程异常退出未{@link #close()}时，未写入的部分全为0，读取时同样在此结束
+ */
+public class CaptureFile {
+
+	public static final int MAGIC = 0x434D4A43;
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER_LENGTH = 16;
+	public static final int RECORD_HEADER_LENGTH = 17;
+
+	public static final byte END = 0;
+	/**
+	 * 收到的frame
+	 */
+	public static final byte INBOUND = 1;
+	/**
+	 * 发出的frame
+	 */
+	public static final byte OUTBOUND = 2;
+
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(CaptureFile.class);
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer mapped;
+	private final long startNanos;
+
+	private final AtomicInteger position = new AtomicInteger(FILE_HEADER_LENGTH);
+	// 正在写入的线程数，关闭时等待写完再截断文件
+	private final AtomicInteger writers = new AtomicInteger();
+	private volatile boolean closed;
+
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	// ByteBuffer的position不是线程安全的，每个线程使用自己的视图
+	private final ThreadLocal<ByteBuffer> views = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		}
+	};
+
+	public CaptureFile(File file) throws IOException {
+		this(file, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param file
+	 *            已存在时覆盖
+	 * @param maxSize
+	 *            文件最大长度，不超过2G
+	 * @throws IOException
+	 */
+	public CaptureFile(File file, long maxSize) throws IOException {
+		if (maxSize <= FILE_HEADER_LENGTH || maxSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("invalid capture file size:" + maxSize);
+		}
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxSize);
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		mapped.putInt(0, MAGIC);
+		mapped.putInt(4, VERSION);
+		mapped.putLong(8, System.currentTimeMillis());
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * 写入一个完整的frame，不改变frame的readerIndex
+	 *
+	 * @param direction
+	 *            {@link #INBOUND}或{@link #OUTBOUND}
+	 * @return 文件已满或已关闭时返回false
+	 */
+	public boolean append(byte direction, int channelId, ChannelBuffer frame) {
+		return append(direction, channelId, frame, frame.readerIndex(), frame.readableBytes());
+	}
+
+	/**
+	 * 写入buffer中从index开始的一个frame，不改变buffer的readerIndex
+	 *
+	 * @param direction
+	 *            {@link #INBOUND}或{@link #OUTBOUND}
+	 * @return 文件已满或已关闭时返回false
+	 */
+	public boolean append(byte direction, int channelId, ChannelBuffer buffer, int index, int length) {
+		long nanos = System.nanoTime() - startNanos;
+		int recordLength = RECORD_HEADER_LENGTH + length;
+
+		writers.incrementAndGet();
+		try {
+			if (closed) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			int position;
+			do {
+				position = this.position.get();
+				if (position > mapped.capacity() - recordLength) {
+					if (dropped.getAndIncrement() == 0) {
+						logger.warn("capture file {} is full, drop frames", file);
+					}
+					return false;
+				}
+			} while (!this.position.compareAndSet(position, position + recordLength));
+
+			ByteBuffer view = views.get();
+			view.limit(position + recordLength).position(position + RECORD_HEADER_LENGTH);
+			buffer.getBytes(index, view);
+			view.putLong(position + 1, nanos);
+			view.putInt(position + 9, channelId);
+			view.putInt(position + 13, length);
+			// 最后写direction，未写完的记录读取时视为文件结束
+			view.put(position, direction);
+			records.incrementAndGet();
+			return true;
+		} finally {
+			writers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 等待正在写入的记录完成，按实际长度截断文件
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		while (writers.get() > 0) {
+			Thread.yield();
+		}
+		mapped.force();
+		int length = position.get();
+		// 截断后空出一个结束标记
+		raf.setLength(Math.min(length + 1, mapped.capacity()));
+		raf.close();
+		logger.info("capture file {} closed, records:{}, dropped:{}",
+				new Object[] { file, records.get(), dropped.get() });
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getRecordCount() {
+		return records.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * 已写入的字节数，包括文件头
+	 */
+	public int getLength() {
+		return position.get();
+	}
+}
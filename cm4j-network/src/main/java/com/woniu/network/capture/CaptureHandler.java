@@ -0,0 +1,80 @@
+package com.woniu.network.capture;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * 把经过的frame写入{@link CaptureFile}，不改变消息，所有连接共享<br>
+ * 只在frame边界处抓包：收到的frame须放在{@link com.woniu.network.handler.codec.ZeroCopyFrameDecoder}之后，
+ * 发出的frame须放在{@link com.woniu.network.handler.codec.ProtocolEncoder}之前(下行方向之后)；
+ * 同一位置上另一方向的数据不是完整的frame，因此按方向分别开启<br>
+ * 一个buffer中有多个frame时(如{@link com.woniu.network.protocol.ProtocolBatch}合并写出)按length拆分，每个frame一条记录
+ */
+@Sharable
+public class CaptureHandler extends SimpleChannelHandler {
+
+	private final CaptureFile captureFile;
+	private final boolean inbound;
+	private final boolean outbound;
+	private volatile boolean enabled = true;
+
+	/**
+	 * @param inbound
+	 *            是否抓取收到的frame
+	 * @param outbound
+	 *            是否抓取发出的frame
+	 */
+	public CaptureHandler(CaptureFile captureFile, boolean inbound, boolean outbound) {
+		this.captureFile = captureFile;
+		this.inbound = inbound;
+		this.outbound = outbound;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (inbound && enabled && e.getMessage() instanceof ChannelBuffer) {
+			capture(CaptureFile.INBOUND, e.getChannel().getId(), (ChannelBuffer) e.getMessage());
+		}
+		ctx.sendUpstream(e);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (outbound && enabled && e.getMessage() instanceof ChannelBuffer) {
+			capture(CaptureFile.OUTBOUND, e.getChannel().getId(), (ChannelBuffer) e.getMessage());
+		}
+		ctx.sendDownstream(e);
+	}
+
+	private void capture(byte direction, int channelId, ChannelBuffer buffer) {
+		int index = buffer.readerIndex();
+		int end = buffer.writerIndex();
+		while (index < end) {
+			int frameLength = end - index >= 4 ? buffer.getInt(index) + 4 : -1;
+			if (frameLength < 4 || frameLength > end - index) {
+				// length不完整或越界，剩余部分作为一条记录
+				frameLength = end - index;
+			}
+			captureFile.append(direction, channelId, buffer, index, frameLength);
+			index += frameLength;
+		}
+	}
+
+	/**
+	 * 暂停或恢复抓包
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public CaptureFile getCaptureFile() {
+		return captureFile;
+	}
+}
@@ -0,0 +1,134 @@
+package com.woniu.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * 顺序读取{@link CaptureFile}，只读映射整个文件<br>
+ * 每次{@link #next()}移到下一条记录，通过getter读取当前记录，不创建对象；非线程安全
+ *
+ * <pre>
+ * CaptureReader reader = new CaptureReader(file);
+ * while (reader.next()) {
+ * 	reader.getFrame();
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class CaptureReader {
+
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer mapped;
+	private final long startMillis;
+
+	private int position = CaptureFile.FILE_HEADER_LENGTH;
+	private int recordIndex = -1;
+	private byte direction;
+	private long timestampNanos;
+	private int channelId;
+	private int frameLength;
+
+	public CaptureReader(File file) throws IOException {
+		this.raf = new RandomAccessFile(file, "r");
+		long length = raf.length();
+		if (length < CaptureFile.FILE_HEADER_LENGTH || length > Integer.MAX_VALUE) {
+			raf.close();
+			throw new IOException("invalid capture file length:" + length);
+		}
+		this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if (mapped.getInt(0) != CaptureFile.MAGIC) {
+			raf.close();
+			throw new IOException("not a capture file:" + file);
+		}
+		if (mapped.getInt(4) != CaptureFile.VERSION) {
+			raf.close();
+			throw new IOException("unsupported capture file version:" + mapped.getInt(4));
+		}
+		this.startMillis = mapped.getLong(8);
+	}
+
+	/**
+	 * @return 没有更多记录时返回false
+	 */
+	public boolean next() {
+		if (recordIndex >= 0) {
+			position += CaptureFile.RECORD_HEADER_LENGTH + frameLength;
+		}
+		if (position > mapped.capacity() - CaptureFile.RECORD_HEADER_LENGTH) {
+			return false;
+		}
+		byte d = mapped.get(position);
+		int length = mapped.getInt(position + 13);
+		if (d == CaptureFile.END || length < 0
+				|| length > mapped.capacity() - position - CaptureFile.RECORD_HEADER_LENGTH) {
+			return false;
+		}
+		recordIndex = position;
+		direction = d;
+		timestampNanos = mapped.getLong(position + 1);
+		channelId = mapped.getInt(position + 9);
+		frameLength = length;
+		return true;
+	}
+
+	/**
+	 * 回到第一条记录之前
+	 */
+	public void rewind() {
+		position = CaptureFile.FILE_HEADER_LENGTH;
+		recordIndex = -1;
+		frameLength = 0;
+	}
+
+	/**
+	 * @return {@link CaptureFile#INBOUND}或{@link CaptureFile#OUTBOUND}
+	 */
+	public byte getDirection() {
+		return direction;
+	}
+
+	/**
+	 * 相对开始抓包的时间，纳秒
+	 */
+	public long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	public int getChannelId() {
+		return channelId;
+	}
+
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * 当前记录的frame，直接引用映射区，小端
+	 */
+	public ChannelBuffer getFrame() {
+		ByteBuffer view = mapped.duplicate();
+		view.limit(recordIndex + CaptureFile.RECORD_HEADER_LENGTH + frameLength).position(
+				recordIndex + CaptureFile.RECORD_HEADER_LENGTH);
+		return ChannelBuffers.wrappedBuffer(view.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * 开始抓包的时间，毫秒
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+}
@@ -0,0 +1,168 @@
+package com.woniu.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.bootstrap.client.LongConnectClient;
+import com.woniu.network.exception.ProtocolAnalyzeException;
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.handler.codec.FrameDecompressor;
+import com.woniu.network.handler.codec.ProtocolDecoder;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 把{@link CaptureFile}中的frame解码后通过{@link LongConnectClient}重新发送，用于按真实流量压测编解码和业务线程池<br>
+ * 按抓包时的间隔发送，speed为倍速，{@link #MAX_SPEED}表示不等待；同一个抓包连接的消息总是由同一个客户端发送，保持顺序
+ *
+ * <pre>
+ * java com.woniu.network.capture.ProtocolReplayer 抓包文件 ip:port [speed] [客户端数]
+ * </pre>
+ */
+public class ProtocolReplayer {
+
+	public static final double MAX_SPEED = 0;
+
+	private static final Logger logger = LoggerFactory.getLogger(ProtocolReplayer.class);
+
+	private final List<LongConnectClient> clients;
+	private final FrameDecompressor decompressor = new FrameDecompressor(MessageConfiguration.getMaxFrameLength() * 16);
+	// 消息进入发送队列后才编码，不能复用
+	private final ProtocolDecoder decoder = new ProtocolDecoder(false);
+
+	private double speed = 1;
+	private byte direction = CaptureFile.INBOUND;
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * @param clients
+	 *            已连接的客户端
+	 */
+	public ProtocolReplayer(List<LongConnectClient> clients) {
+		if (clients.isEmpty()) {
+			throw new IllegalArgumentException("no client to replay");
+		}
+		this.clients = clients;
+	}
+
+	public void replay(File file) throws IOException {
+		CaptureReader reader = new CaptureReader(file);
+		try {
+			replay(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * 在当前线程中发送reader中剩余的记录，返回时消息可能还在客户端的发送队列中
+	 */
+	public void replay(CaptureReader reader) {
+		long firstTimestamp = -1;
+		long begin = 0;
+		while (reader.next()) {
+			if (reader.getDirection() != direction) {
+				continue;
+			}
+			if (speed > 0) {
+				if (firstTimestamp < 0) {
+					firstTimestamp = reader.getTimestampNanos();
+					begin = System.nanoTime();
+				}
+				long due = begin + (long) ((reader.getTimestampNanos() - firstTimestamp) / speed);
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+
+			IProtocol protocol;
+			try {
+				protocol = decoder.decode(decompressor.decompress(reader.getFrame()));
+			} catch (ProtocolAnalyzeException e) {
+				skipped.incrementAndGet();
+				continue;
+			}
+			LongConnectClient client = clients.get((reader.getChannelId() & Integer.MAX_VALUE) % clients.size());
+			if (client.sendProtocol(protocol)) {
+				sent.incrementAndGet();
+			} else {
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @param speed
+	 *            1为原速，2为2倍速，{@link #MAX_SPEED}不等待
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	/**
+	 * 回放哪个方向的frame，默认{@link CaptureFile#INBOUND}，即服务端抓到的请求；回放客户端抓包时设为{@link CaptureFile#OUTBOUND}
+	 */
+	public void setDirection(byte direction) {
+		this.direction = direction;
+	}
+
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * 断路器打开或发送队列满未能发送的消息数
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * 无法解码跳过的frame数
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: ProtocolReplayer <capture file> <ip:port> [speed, 0 for max] [clients]");
+			return;
+		}
+		File file = new File(args[0]);
+		double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+		int count = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+		List<LongConnectClient> clients = new ArrayList<LongConnectClient>(count);
+		for (int i = 0; i < count; i++) {
+			LongConnectClient client = new LongConnectClient(args[1]);
+			client.connect();
+			clients.add(client);
+		}
+		ProtocolReplayer replayer = new ProtocolReplayer(Collections.unmodifiableList(clients));
+		replayer.setSpeed(speed);
+
+		long begin = System.nanoTime();
+		replayer.replay(file);
+		// 客户端线程为守护线程，等待发送队列清空
+		for (LongConnectClient client : clients) {
+			while (client.getQueuedCount() > 0 && client.isConnected()) {
+				Thread.sleep(10);
+			}
+		}
+		long millis = (System.nanoTime() - begin) / 1000000;
+		logger.info("replay {} finished in {}ms, sent:{}, failed:{}, skipped:{}", new Object[] { file, millis,
+				replayer.getSentCount(), replayer.getFailedCount(), replayer.getSkippedCount() });
+	}
+}
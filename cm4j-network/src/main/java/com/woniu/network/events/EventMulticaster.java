@@ -2,103 +2,351 @@ package com.woniu.network.events;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * 事件分发器
- * 
+ * <p>
+ * 监听的事件类型在{@link #addListener(ApplicationListener)}时解析一次；每种事件对应的监听器数组缓存起来，
+ * 没有监听器的事件也缓存(空数组)，增删监听器时清空缓存；缓存项带有生成时的版本号，与增删监听器并发生成的旧结果不会被使用
+ * <p>
+ * 分发方式见{@link DispatchMode}，默认{@link DispatchMode#ASYNC}
+ *
  * @author yang.hao
  * @since 2011-11-16 下午4:13:32
  */
 @SuppressWarnings("rawtypes")
 public class EventMulticaster {
 
-	private Set<ApplicationListener> listeners = new CopyOnWriteArraySet<ApplicationListener>();
+	public enum DispatchMode {
+		/**
+		 * 在调用multicastEvent的线程中依次执行所有监听器
+		 */
+		SYNC,
+		/**
+		 * 每个事件提交一个任务到executor，任务中依次执行所有监听器
+		 */
+		ASYNC,
+		/**
+		 * 事件放入环形队列，由executor中的一个任务批量取出执行，同一时间最多一个线程在分发，事件按发布顺序处理；
+		 * 队列满时调用线程等待队列有空位；监听器在分发线程中发布事件且队列已满时，直接在分发线程中执行
+		 */
+		BATCH
+	}
+
+	public static final int DEFAULT_RING_SIZE = 4096;
+
+	// BATCH队列满时每次等待的时间
+	private static final long OVERFLOW_WAIT_NANOS = 50000;
+
+	private static final ListenerEntry[] EMPTY = new ListenerEntry[0];
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final List<ListenerEntry> listeners = new CopyOnWriteArrayList<ListenerEntry>();
+	private final Map<Class<?>, Retriever> retrieverCache = new ConcurrentHashMap<Class<?>, Retriever>();
+	// 增删监听器时递增
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private final DispatchMode mode;
+	private final Executor executor;
+	private final EventRing ring;
+	private final AtomicInteger wip = new AtomicInteger();
+	private final AtomicLong overflow = new AtomicLong();
+	private volatile Thread drainThread;
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	public EventMulticaster() {
+		this(DispatchMode.ASYNC, Executors.newFixedThreadPool(10, new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("event-multicaster-%d").build()), DEFAULT_RING_SIZE);
+	}
 
-	private ExecutorService executorService = Executors.newFixedThreadPool(10);
+	/**
+	 * @param mode
+	 * @param executor
+	 *            SYNC时可为null
+	 * @param ringSize
+	 *            BATCH时环形队列的大小，会调整为2的幂
+	 */
+	public EventMulticaster(DispatchMode mode, Executor executor, int ringSize) {
+		if (mode != DispatchMode.SYNC && executor == null) {
+			throw new IllegalArgumentException("executor is required for " + mode);
+		}
+		this.mode = mode;
+		this.executor = executor;
+		this.ring = mode == DispatchMode.BATCH ? new EventRing(ringSize) : null;
+	}
 
 	public void addListener(ApplicationListener listenter) {
-		listeners.add(listenter);
+		listeners.add(new ListenerEntry(listenter, resolveEventType(listenter)));
+		generation.incrementAndGet();
+		retrieverCache.clear();
+	}
+
+	public void removeListener(ApplicationListener listenter) {
+		for (ListenerEntry entry : listeners) {
+			if (entry.listener == listenter) {
+				listeners.remove(entry);
+			}
+		}
+		generation.incrementAndGet();
+		retrieverCache.clear();
 	}
 
 	/**
 	 * 事件分发
-	 * 
+	 *
 	 * @param event
 	 */
 	public void multicastEvent(final ApplicationEvent event) {
-		Set<ApplicationListener<ApplicationEvent>> list = getApplicationListeners(event);
-		for (final ApplicationListener<ApplicationEvent> applicationListener : list) {
-			executorService.submit(new Runnable() {
+		final ListenerEntry[] entries = getApplicationListeners(event);
+		if (entries.length == 0) {
+			return;
+		}
+		switch (mode) {
+		case SYNC:
+			invoke(entries, event);
+			break;
+		case ASYNC:
+			executor.execute(new Runnable() {
 				@Override
 				public void run() {
-					applicationListener.onEvent(event);
+					invoke(entries, event);
 				}
 			});
+			break;
+		case BATCH:
+			if (!ring.offer(event)) {
+				overflow.incrementAndGet();
+				if (Thread.currentThread() == drainThread) {
+					// 分发线程等待会死锁，此时没有其他线程在分发
+					invoke(entries, event);
+					return;
+				}
+				do {
+					if (wip.get() == 0) {
+						// 之前提交被拒绝，重新提交
+						scheduleDrain();
+					}
+					LockSupport.parkNanos(OVERFLOW_WAIT_NANOS);
+				} while (!ring.offer(event));
+			}
+			scheduleDrain();
+			break;
 		}
 	}
 
-	private final Map<ListenerCacheKey, Set<ApplicationListener<ApplicationEvent>>> retrieverCache = new ConcurrentHashMap<EventMulticaster.ListenerCacheKey, Set<ApplicationListener<ApplicationEvent>>>();
+	private void scheduleDrain() {
+		if (wip.getAndIncrement() == 0) {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				wip.set(0);
+				logger.error("event multicaster executor rejected", e);
+			}
+		}
+	}
 
-	private Set<ApplicationListener<ApplicationEvent>> getApplicationListeners(ApplicationEvent event) {
+	private void drain() {
+		Thread current = Thread.currentThread();
+		int missed = 1;
+		while (true) {
+			drainThread = current;
+			ApplicationEvent event;
+			while ((event = ring.poll()) != null) {
+				invoke(getApplicationListeners(event), event);
+			}
+			// 在wip归零前清除，之后可能已有其他线程开始分发
+			drainThread = null;
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				break;
+			}
+		}
+	}
+
+	private void invoke(ListenerEntry[] entries, ApplicationEvent event) {
+		for (ListenerEntry entry : entries) {
+			entry.invoke(event);
+		}
+	}
+
+	private ListenerEntry[] getApplicationListeners(ApplicationEvent event) {
 		Class<? extends ApplicationEvent> eventType = event.getClass();
-		Class sourceType = event.getSource().getClass();
-		ListenerCacheKey cacheKey = new ListenerCacheKey(eventType, sourceType);
-
-		Set<ApplicationListener<ApplicationEvent>> result = this.retrieverCache.get(cacheKey);
-		if (result != null) {
-			return result;
-		} else {
-			result = new LinkedHashSet<ApplicationListener<ApplicationEvent>>();
-			Class<? extends ApplicationEvent> cls = event.getClass();
-			for (ApplicationListener<ApplicationEvent> listener : listeners) {
-				Type _interface = listener.getClass().getGenericInterfaces()[0];
-				if (_interface instanceof ParameterizedType) {
-					Class<?> _event_type = (Class) ((ParameterizedType) (_interface)).getActualTypeArguments()[0];
-					if (_event_type.isAssignableFrom(cls)) {
-						result.add(listener);
+		// 先读版本号再遍历，遍历结果至少包含此版本之前的增删
+		int current = generation.get();
+		Retriever retriever = retrieverCache.get(eventType);
+		if (retriever != null && retriever.generation == current) {
+			return retriever.entries;
+		}
+
+		List<ListenerEntry> matched = new ArrayList<ListenerEntry>();
+		for (ListenerEntry entry : listeners) {
+			if (entry.eventType.isAssignableFrom(eventType)) {
+				matched.add(entry);
+			}
+		}
+		// 没有监听器也缓存，避免每次都遍历
+		ListenerEntry[] result = matched.isEmpty() ? EMPTY : matched.toArray(new ListenerEntry[matched.size()]);
+		retrieverCache.put(eventType, new Retriever(current, result));
+		return result;
+	}
+
+	/**
+	 * 从类及父类实现的ApplicationListener&lt;E&gt;中取出E，无范型时返回{@link ApplicationEvent}
+	 */
+	static Class<?> resolveEventType(ApplicationListener listener) {
+		for (Class<?> cls = listener.getClass(); cls != null; cls = cls.getSuperclass()) {
+			for (Type type : cls.getGenericInterfaces()) {
+				if (type instanceof ParameterizedType
+						&& ((ParameterizedType) type).getRawType() == ApplicationListener.class) {
+					Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+					if (argument instanceof Class) {
+						return (Class<?>) argument;
+					}
+					if (argument instanceof ParameterizedType) {
+						return (Class<?>) ((ParameterizedType) argument).getRawType();
 					}
-				} else {
-					// 无范型
-					result.add(listener);
 				}
 			}
-			if (!result.isEmpty()) {
-				this.retrieverCache.put(cacheKey, result);
-			}
 		}
-		return result;
+		return ApplicationEvent.class;
+	}
+
+	/**
+	 * 各监听器统计：类名、监听的事件、调用次数、平均和最大耗时(微秒)、异常次数
+	 */
+	public String[] getListenerStatistics() {
+		List<String> result = new ArrayList<String>();
+		for (ListenerEntry entry : listeners) {
+			long count = entry.count.get();
+			result.add(entry.listener.getClass().getName() + " event:" + entry.eventType.getSimpleName() + " count:"
+					+ count + " avgMicros:" + (count == 0 ? 0 : entry.totalNanos.get() / count / 1000)
+					+ " maxMicros:" + entry.maxNanos.get() / 1000 + " errors:" + entry.errors.get());
+		}
+		return result.toArray(new String[result.size()]);
 	}
 
-	private static class ListenerCacheKey {
-		private final Class eventType;
+	/**
+	 * BATCH时因队列满而等待(或在分发线程中直接执行)的事件数
+	 */
+	public long getOverflowCount() {
+		return overflow.get();
+	}
 
-		private final Class sourceType;
+	/**
+	 * 某种事件的监听器及生成时的版本号
+	 */
+	private static class Retriever {
+		private final int generation;
+		private final ListenerEntry[] entries;
 
-		public ListenerCacheKey(Class eventType, Class sourceType) {
+		private Retriever(int generation, ListenerEntry[] entries) {
+			this.generation = generation;
+			this.entries = entries;
+		}
+	}
+
+	private class ListenerEntry {
+		private final ApplicationListener listener;
+		private final Class<?> eventType;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+
+		private ListenerEntry(ApplicationListener listener, Class<?> eventType) {
+			this.listener = listener;
 			this.eventType = eventType;
-			this.sourceType = sourceType;
 		}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
+		@SuppressWarnings("unchecked")
+		private void invoke(ApplicationEvent event) {
+			long start = System.nanoTime();
+			try {
+				listener.onEvent(event);
+			} catch (Throwable t) {
+				errors.incrementAndGet();
+				logger.error("listener " + listener.getClass().getName() + " failed", t);
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				count.incrementAndGet();
+				totalNanos.addAndGet(elapsed);
+				long max;
+				while (elapsed > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsed)) {
+					// 重试
+				}
 			}
+		}
+	}
+
+	/**
+	 * 多生产者、单消费者的有界环形队列，不加锁
+	 */
+	private static class EventRing {
+		private final AtomicReferenceArray<ApplicationEvent> slots;
+		private final int mask;
+		private final AtomicLong head = new AtomicLong();
+		private final AtomicLong tail = new AtomicLong();
 
-			ListenerCacheKey key = (ListenerCacheKey) obj;
-			return (this.eventType.equals(key.eventType) && this.sourceType.equals(key.sourceType));
+		private EventRing(int size) {
+			int capacity = 2;
+			while (capacity < size) {
+				capacity <<= 1;
+			}
+			this.slots = new AtomicReferenceArray<ApplicationEvent>(capacity);
+			this.mask = capacity - 1;
 		}
-		
-		@Override
-		public int hashCode() {
-			return this.eventType.hashCode() * 29 + this.sourceType.hashCode();
+
+		private boolean offer(ApplicationEvent event) {
+			while (true) {
+				long t = tail.get();
+				if (t - head.get() >= slots.length()) {
+					return false;
+				}
+				if (tail.compareAndSet(t, t + 1)) {
+					slots.set((int) t & mask, event);
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * 只能由一个线程调用
+		 *
+		 * @return 为空或下一个位置尚未写入时返回null
+		 */
+		private ApplicationEvent poll() {
+			long h = head.get();
+			int index = (int) h & mask;
+			ApplicationEvent event = slots.get(index);
+			if (event == null) {
+				return null;
+			}
+			slots.set(index, null);
+			head.set(h + 1);
+			return event;
 		}
 	}
 }
@@ -50,4 +50,13 @@ public abstract class ConfigurableConstants {
 		}
 		return value;
 	}
+
+	/**
+	 * @param key
+	 *            属性名
+	 * @return 属性值，不存在时返回null且不输出警告
+	 */
+	public static String getOptionalValue(String key) {
+		return p.getProperty(key);
+	}
 }
\ No newline at end of file
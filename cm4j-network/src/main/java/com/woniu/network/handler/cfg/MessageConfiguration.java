@@ -1,10 +1,12 @@
 package com.woniu.network.handler.cfg;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 
 public class MessageConfiguration extends ConfigurableConstants {
 
-	{
+	// 只调用静态方法时实例初始化块不会执行，须用静态块
+	static {
 		init("network.properties");
 	}
 
@@ -15,4 +17,41 @@ public class MessageConfiguration extends ConfigurableConstants {
 	public static int getServerPort() {
 		return NumberUtils.toInt(getValue("server.port"));
 	}
+
+	/**
+	 * 服务端监听地址，逗号分隔的多个IP:port
+	 */
+	public static String getServerBind() {
+		return getValue("server.bind");
+	}
+
+	/**
+	 * 单个消息的最大长度(字节)
+	 */
+	public static int getMaxFrameLength() {
+		return getInt("server.maxFrameLength", 10000);
+	}
+
+	/**
+	 * 可选配置，未配置时不输出警告
+	 * 
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static int getInt(String key, int defaultValue) {
+		return NumberUtils.toInt(getOptionalValue(key), defaultValue);
+	}
+
+	/**
+	 * 可选配置，未配置时不输出警告
+	 * 
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getOptionalValue(key);
+		return StringUtils.isBlank(value) ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
 }
@@ -1,25 +1,83 @@
 package com.woniu.network.handler.cfg;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import com.woniu.network.handler.server.executor.ExecutorMapping;
+import com.woniu.network.handler.server.executor.MessageExecutor;
 import com.woniu.network.handler.server.executor.ProtocolExecutor;
+import com.woniu.network.handler.server.executor.ProtocolExecutorAdapter;
 import com.woniu.network.handler.server.executor.ProtocolShowExecutor;
+import com.woniu.network.util.IntDispatchTable;
 
 /**
- * 协议处理器对应关系配置
- * 
+ * 协议处理器对应关系配置<br>
+ * 查找表为不可变的{@link IntDispatchTable}，注册时整体替换，运行中可热更新处理器<br>
+ * {@link ProtocolExecutor}注册时包装为{@link ProtocolExecutorAdapter}
+ *
  * @author yang.hao
  * @since 2011-11-23 下午3:42:47
  */
 public class ProtocolExecutorMatcher {
-	
-	private static Map<Integer, ProtocolExecutor> map = new HashMap<Integer, ProtocolExecutor>();
+
+	private static volatile IntDispatchTable<MessageExecutor> table = IntDispatchTable.empty();
 	static {
-		map.put(0x1001, new ProtocolShowExecutor());
+		register(new ProtocolShowExecutor());
+	}
+
+	public static MessageExecutor get(int messageType) {
+		return table.get(messageType);
+	}
+
+	/**
+	 * 按{@link ExecutorMapping}注册处理器，已存在的messageId会被替换
+	 *
+	 * @param executor
+	 */
+	public static void register(ProtocolExecutor executor) {
+		MessageExecutor adapter = new ProtocolExecutorAdapter(executor);
+		for (int messageType : getMapping(executor)) {
+			register(messageType, adapter);
+		}
+	}
+
+	/**
+	 * 按{@link ExecutorMapping}注册处理器，已存在的messageId会被替换
+	 *
+	 * @param executor
+	 */
+	public static void register(MessageExecutor executor) {
+		for (int messageType : getMapping(executor)) {
+			register(messageType, executor);
+		}
+	}
+
+	private static int[] getMapping(Object executor) {
+		ExecutorMapping mapping = executor.getClass().getAnnotation(ExecutorMapping.class);
+		if (mapping == null) {
+			throw new IllegalArgumentException("no @ExecutorMapping on " + executor.getClass().getName());
+		}
+		return mapping.value();
+	}
+
+	/**
+	 * 注册处理器，已存在的messageId会被替换
+	 *
+	 * @param messageType
+	 * @param executor
+	 */
+	public static void register(int messageType, ProtocolExecutor executor) {
+		register(messageType, new ProtocolExecutorAdapter(executor));
+	}
+
+	/**
+	 * 注册处理器，已存在的messageId会被替换
+	 *
+	 * @param messageType
+	 * @param executor
+	 */
+	public static synchronized void register(int messageType, MessageExecutor executor) {
+		table = table.with(messageType, executor);
 	}
 
-	public static ProtocolExecutor get(int messageType) {
-		return map.get(messageType);
+	public static synchronized void unregister(int messageType) {
+		table = table.without(messageType);
 	}
 }
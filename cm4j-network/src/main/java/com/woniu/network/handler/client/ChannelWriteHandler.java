@@ -1,52 +1,83 @@
 package com.woniu.network.handler.client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.woniu.network.bootstrap.client.AbstractClient;
 import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
 
 /**
- * 在channel连接上时启动线程池从 {@link BlockingQueue}
- * 
+ * 将 {@link BlockingQueue} 中的消息写入channel，不占用额外线程<br>
+ * 消息入队后调用{@link #drain()}，连接建立、channel恢复可写时也会触发；
+ * 每次最多取maxBatch条合并为{@link ProtocolBatch}写出，不等待写结果<br>
+ * channel不可写时停止写出，消息留在队列中，由队列容量限制发送方(背压)
+ *
  * @author yang.hao
  * @since 2011-11-18 下午3:43:57
  */
 public class ChannelWriteHandler extends SimpleChannelUpstreamHandler {
 
+	public static final int DEFAULT_MAX_BATCH = 64;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 	private BlockingQueue<IProtocol> sendQueue;
 	private boolean closeAfterWrite;
-	private boolean shutdown = false;
-	private final ThreadGroup threadGroup = new ThreadGroup("channelwriteGroup");
-	private final AtomicInteger counter = new AtomicInteger(); 
+	private final int maxBatch;
+
+	private volatile Channel channel;
+	// 同一时间只有一个线程写出，其他线程的drain请求记为miss由写出线程继续处理
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				logger.error("client write error:" + future.getChannel(), future.getCause());
+			}
+		}
+	};
 
 	public ChannelWriteHandler(BlockingQueue<IProtocol> sendQueue, boolean closeAfterWrite) {
+		this(sendQueue, closeAfterWrite, DEFAULT_MAX_BATCH);
+	}
+
+	public ChannelWriteHandler(BlockingQueue<IProtocol> sendQueue, boolean closeAfterWrite, int maxBatch) {
 		this.sendQueue = sendQueue;
 		this.closeAfterWrite = closeAfterWrite;
+		this.maxBatch = maxBatch;
 	}
 
 	@Override
 	public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-		startWriteChannel(ctx.getChannel());
+		this.channel = ctx.getChannel();
+		drain();
 		super.channelConnected(ctx, e);
 	}
 
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		// 写缓冲降到低水位以下，继续写出
+		if (ctx.getChannel().isWritable()) {
+			drain();
+		}
+		super.channelInterestChanged(ctx, e);
+	}
+
 	@Override
 	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-		// 关闭当前允许线程
-		stopWriteChannel();
+		this.channel = null;
 		super.channelClosed(ctx, e);
 	}
 
@@ -56,70 +87,65 @@ public class ChannelWriteHandler extends SimpleChannelUpstreamHandler {
 //		Channels.close(ctx.getChannel());
 	}
 
-	public void startWriteChannel(Channel channel) {
-		Thread t = new Thread(threadGroup, new R(channel), "Channel write handler #" + counter.incrementAndGet());
-		t.start();
+	/**
+	 * @return 未连接时返回null
+	 */
+	public Channel getChannel() {
+		return channel;
 	}
 
-	public void stopWriteChannel() {
-		this.shutdown = true;
-		try {
-			if (threadGroup.activeCount() > 0) {
-				logger.debug("destroy thread group,size:{}", threadGroup.activeCount());
-				threadGroup.interrupt();
+	public boolean isConnected() {
+		Channel ch = this.channel;
+		return ch != null && ch.isConnected();
+	}
+
+	/**
+	 * 将队列中的消息写入channel，可在任意线程调用，不阻塞
+	 */
+	public void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+
+		int missed = 1;
+		for (;;) {
+			Channel ch = this.channel;
+			while (ch != null && ch.isConnected() && ch.isWritable()) {
+				if (!writeBatch(ch)) {
+					break;
+				}
+			}
+
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				return;
 			}
-		} catch (Exception e) {
-			logger.error("stop threadGroup error", e);
 		}
 	}
 
-	class R implements Runnable {
-		private Channel channel;
-
-		public R(Channel channel) {
-			this.channel = channel;
+	/**
+	 * @return 是否写出了消息
+	 */
+	private boolean writeBatch(Channel ch) {
+		int size = closeAfterWrite ? 1 : maxBatch;
+		List<IProtocol> batch = new ArrayList<IProtocol>(Math.min(size, sendQueue.size() + 1));
+		sendQueue.drainTo(batch, size);
+		if (batch.isEmpty()) {
+			return false;
 		}
 
-		private boolean stopped = false;
+		ChannelFuture writeFuture = ch.write(batch.size() == 1 ? batch.get(0) : new ProtocolBatch(batch));
+		writeFuture.addListener(writeListener);
+		if (logger.isDebugEnabled()) {
+			logger.debug("client write {} messages => {}", batch.size(), ch);
+		}
 
-		@Override
-		public void run() {
-			while (!stopped) {
-				try {
-					if (shutdown) {
-						stopped = true;
-						if (closeAfterWrite) {
-							// 关闭连接
-							Channels.close(channel);
-						}
-						continue;
-					}
-					
-					if (! channel.isWritable()){
-						continue;
-					}
-
-					IProtocol constructedMessage = sendQueue.poll(AbstractClient.timeout, TimeUnit.MILLISECONDS);
-					if (constructedMessage == null) {
-						continue;
-					} else {
-						// 写入数据
-						ChannelFuture writeFuture = channel.write(constructedMessage);
-
-						// 等待1500ms
-						writeFuture.awaitUninterruptibly(AbstractClient.timeout);
-
-						logger.debug("client write result:{} => {}",writeFuture.isSuccess(), writeFuture.getChannel());
-
-						if (closeAfterWrite) {
-							// 关闭连接
-							Channels.close(channel);
-						}
-					}
-				} catch (InterruptedException e) {
-					logger.error("write to channel error", e);
-				}
-			}
+		if (closeAfterWrite) {
+			// 写完后关闭连接
+			writeFuture.addListener(ChannelFutureListener.CLOSE);
+			this.channel = null;
+			return false;
 		}
+		return true;
 	}
 }
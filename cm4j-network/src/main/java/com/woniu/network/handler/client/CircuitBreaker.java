@@ -0,0 +1,63 @@
+package com.woniu.network.handler.client;
+
+/**
+ * 连接断路器<br>
+ * 连接断开后打开，此时发送直接失败，不在已满的队列上等待；重连成功后关闭。已在队列中的消息保留，连接恢复后继续发送
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		/**
+		 * 连接正常，允许发送
+		 */
+		CLOSED,
+		/**
+		 * 连接断开，等待重连，拒绝发送
+		 */
+		OPEN,
+		/**
+		 * 正在重连，拒绝发送
+		 */
+		HALF_OPEN
+	}
+
+	private volatile State state = State.CLOSED;
+	private volatile long openedAt;
+
+	/**
+	 * 是否允许发送
+	 *
+	 * @return
+	 */
+	public boolean allowRequest() {
+		return state == State.CLOSED;
+	}
+
+	public void onConnected() {
+		state = State.CLOSED;
+	}
+
+	public void onDisconnected() {
+		if (state == State.CLOSED) {
+			openedAt = System.currentTimeMillis();
+		}
+		state = State.OPEN;
+	}
+
+	public void onReconnecting() {
+		state = State.HALF_OPEN;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * 断路器打开的时长，关闭状态为0
+	 *
+	 * @return
+	 */
+	public long getOpenMillis() {
+		return state == State.CLOSED ? 0 : System.currentTimeMillis() - openedAt;
+	}
+}
@@ -0,0 +1,250 @@
+package com.woniu.network.handler.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.exception.ProtocolParamValidationException;
+import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
+import com.woniu.network.protocol.generated.MessageHeader;
+
+/**
+ * 按消息头中的关联ID将响应与请求对应起来<br>
+ * 请求发送前由{@link #register(IProtocol, long)}分配关联ID写入消息头的{@link #CORRELATION_FIELD}，服务端响应时原样带回；
+ * 收到关联ID匹配的响应时完成对应的future，其他消息继续向后传递<br>
+ * 超时由共享的{@link Timer}处理；连接关闭时已写出的未完成请求失败，还在发送队列中的请求保留，重连或转到其他连接后发出。
+ * 在重连之间共享，同一时间只服务一个连接；须在pipeline最后，以便看到所有写出的消息
+ */
+@Sharable
+public class CorrelationHandler extends SimpleChannelHandler {
+
+	/**
+	 * 存放关联ID的消息头字段
+	 */
+	public static final String CORRELATION_FIELD = "userid3";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final Timer timer;
+	private final AtomicInteger idGenerator = new AtomicInteger();
+	private final Map<Integer, Pending> pendings = new ConcurrentHashMap<Integer, Pending>();
+
+	public CorrelationHandler(Timer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * 为请求分配关联ID并登记
+	 *
+	 * @param request
+	 * @param timeoutMillis
+	 * @return 收到响应时完成，超时抛出{@link TimeoutException}
+	 */
+	public ListenableFuture<IProtocol> register(IProtocol request, long timeoutMillis) {
+		int id = nextId();
+		setCorrelationId(request, id);
+
+		Pending pending = new Pending(id, SettableFuture.<IProtocol> create(), System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+		add(pending);
+		return pending.future;
+	}
+
+	/**
+	 * 把尚未发出的请求转给另一个连接：在target中重新分配关联ID，future和超时时间不变
+	 *
+	 * @param request
+	 * @param target
+	 * @return 请求已完成(超时或失败)、不再有调用方等待时返回false；没有关联ID的消息返回true
+	 */
+	public boolean transfer(IProtocol request, CorrelationHandler target) {
+		int id = getCorrelationId(request);
+		if (id == 0) {
+			return true;
+		}
+		Pending pending = pendings.remove(id);
+		if (pending == null) {
+			return false;
+		}
+		pending.cancelTimeout();
+		int newId = target.nextId();
+		setCorrelationId(request, newId);
+		target.add(new Pending(newId, pending.future, pending.deadline));
+		return true;
+	}
+
+	private void add(final Pending pending) {
+		pendings.put(pending.id, pending);
+		pending.timeout = timer.newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				if (pendings.remove(pending.id) != null) {
+					pending.future.setException(new TimeoutException("request timeout,correlationId:" + pending.id));
+				}
+			}
+		}, Math.max(pending.deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 请求未能发出时取消登记
+	 */
+	public void fail(IProtocol request, Throwable cause) {
+		Pending pending = pendings.remove(getCorrelationId(request));
+		if (pending != null) {
+			pending.cancelTimeout();
+			pending.future.setException(cause);
+		}
+	}
+
+	/**
+	 * 置所有未完成的请求为失败，客户端关闭时调用
+	 *
+	 * @return 失败的请求数
+	 */
+	public int failAll(Throwable cause) {
+		int failed = 0;
+		Iterator<Pending> iterator = pendings.values().iterator();
+		while (iterator.hasNext()) {
+			Pending pending = iterator.next();
+			iterator.remove();
+			pending.cancelTimeout();
+			pending.future.setException(cause);
+			failed++;
+		}
+		if (failed > 0) {
+			logger.warn("{} pending requests failed:{}", failed, cause.getMessage());
+		}
+		return failed;
+	}
+
+	public int getPendingCount() {
+		return pendings.size();
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		Object message = e.getMessage();
+		if (message instanceof IProtocol) {
+			int id = getCorrelationId((IProtocol) message);
+			Pending pending = id == 0 ? null : pendings.remove(id);
+			if (pending != null) {
+				pending.cancelTimeout();
+				pending.future.set((IProtocol) message);
+				return;
+			}
+		}
+		super.messageReceived(ctx, e);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		Object message = e.getMessage();
+		if (message instanceof ProtocolBatch) {
+			for (IProtocol protocol : ((ProtocolBatch) message).getProtocols()) {
+				markWritten(protocol);
+			}
+		} else if (message instanceof IProtocol) {
+			markWritten((IProtocol) message);
+		}
+		super.writeRequested(ctx, e);
+	}
+
+	private void markWritten(IProtocol protocol) {
+		int id = getCorrelationId(protocol);
+		Pending pending = id == 0 ? null : pendings.get(id);
+		if (pending != null) {
+			pending.written = true;
+		}
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		// 已写出的请求的响应不会再到达，未写出的还可以重发
+		int failed = 0;
+		Iterator<Pending> iterator = pendings.values().iterator();
+		while (iterator.hasNext()) {
+			Pending pending = iterator.next();
+			if (!pending.written) {
+				continue;
+			}
+			iterator.remove();
+			pending.cancelTimeout();
+			pending.future.setException(new ConnectException("channel closed,correlationId:" + pending.id));
+			failed++;
+		}
+		if (failed > 0) {
+			logger.warn("channel closed with {} pending requests", failed);
+		}
+		super.channelClosed(ctx, e);
+	}
+
+	/**
+	 * 0表示无关联ID，跳过
+	 */
+	private int nextId() {
+		int id;
+		do {
+			id = idGenerator.incrementAndGet();
+		} while (id == 0);
+		return id;
+	}
+
+	public static int getCorrelationId(IProtocol protocol) {
+		if (protocol instanceof MessageHeader) {
+			return ((MessageHeader) protocol).getUserid3();
+		} else if (protocol instanceof ConstructedMessage) {
+			return ((ConstructedMessage) protocol).getHeaderInt(CORRELATION_FIELD);
+		}
+		return 0;
+	}
+
+	public static void setCorrelationId(IProtocol protocol, int id) {
+		if (protocol instanceof MessageHeader) {
+			((MessageHeader) protocol).setUserid3(id);
+		} else if (protocol instanceof ConstructedMessage) {
+			((ConstructedMessage) protocol).setHeaderInt(CORRELATION_FIELD, id);
+		} else {
+			throw new ProtocolParamValidationException("unsupported protocol:" + protocol.getClass().getName());
+		}
+	}
+
+	private static class Pending {
+		private final int id;
+		private final SettableFuture<IProtocol> future;
+		private final long deadline;
+		private volatile Timeout timeout;
+		private volatile boolean written;
+
+		private Pending(int id, SettableFuture<IProtocol> future, long deadline) {
+			this.id = id;
+			this.future = future;
+			this.deadline = deadline;
+		}
+
+		private void cancelTimeout() {
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+	}
+}
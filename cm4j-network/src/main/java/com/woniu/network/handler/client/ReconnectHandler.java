@@ -1,10 +1,15 @@
 package com.woniu.network.handler.client;
 
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
@@ -15,44 +20,130 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * 断线重连
- * 
+ * 断线重连<br>
+ * 重连间隔按指数退避增长，加随机抖动避免大量客户端同时重连，不超过maxDelayMillis；连接成功后重置<br>
+ * 配置了多个地址时，重连失败后依次切换到下一个地址(failover)，待发送的消息仍在客户端队列中，不会丢失<br>
+ * 同一客户端的所有连接共享一个实例(连接失败也会触发channelClosed)，以便累计重连次数
+ *
  * @author yang.hao
  * @since 2011-11-14 下午3:31:17
  */
+@Sharable
 public class ReconnectHandler extends SimpleChannelUpstreamHandler {
 
+	public static final long DEFAULT_INITIAL_DELAY = 200;
+	public static final long DEFAULT_MAX_DELAY = 30000;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
-	private final int RECONNECT_DELAY = 3;
 
 	private Timer timer;
 	private final ClientBootstrap bootstrap;
-	private boolean reconnect;
+	private volatile boolean reconnect;
+	private final List<SocketAddress> addresses;
+	private final CircuitBreaker circuitBreaker;
+	private final Random random = new Random();
+
+	private long initialDelayMillis = DEFAULT_INITIAL_DELAY;
+	private long maxDelayMillis = DEFAULT_MAX_DELAY;
+
+	// 连续失败次数，连接成功后清零
+	private volatile int attempts;
+	private volatile int addressIndex;
 
 	public ReconnectHandler(Timer timer, ClientBootstrap bootstrap, boolean reconnect) {
+		this(timer, bootstrap, reconnect, Collections.singletonList((SocketAddress) bootstrap
+				.getOption("remoteAddress")), new CircuitBreaker());
+	}
+
+	public ReconnectHandler(Timer timer, ClientBootstrap bootstrap, boolean reconnect, List<SocketAddress> addresses,
+			CircuitBreaker circuitBreaker) {
 		this.timer = timer;
 		this.bootstrap = bootstrap;
 		this.reconnect = reconnect;
+		this.addresses = addresses;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	SocketAddress getRemoteAddress() {
+		return (SocketAddress) bootstrap.getOption("remoteAddress");
 	}
 
-	InetSocketAddress getRemoteAddress() {
-		return (InetSocketAddress) bootstrap.getOption("remoteAddress");
+	@Override
+	public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		attempts = 0;
+		circuitBreaker.onConnected();
+		super.channelConnected(ctx, e);
 	}
 
 	@Override
 	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
 		logger.debug("client channel closed from {}", getRemoteAddress());
+		circuitBreaker.onDisconnected();
 		if (this.reconnect) {
-			logger.debug("reconnet for seconds:{}", RECONNECT_DELAY);
-			timer.newTimeout(new TimerTask() {
-				@Override
-				public void run(Timeout timeout) throws Exception {
-					logger.debug("reconnet to {}", getRemoteAddress());
-					ChannelFuture future = bootstrap.connect();
-
-					logger.debug("reconnect to {} result:{}", future.getChannel(), future.isSuccess());
+			scheduleReconnect();
+		}
+		super.channelClosed(ctx, e);
+	}
+
+	private void scheduleReconnect() {
+		int attempt = attempts++;
+		if (attempt > 0 && addresses.size() > 1) {
+			// 上次重连失败，切换到下一个地址
+			addressIndex = (addressIndex + 1) % addresses.size();
+		}
+		long delay = nextDelay(attempt);
+		final SocketAddress address = addresses.get(addressIndex);
+		logger.debug("reconnect to {} after {}ms, attempt:{}", new Object[] { address, delay, attempt + 1 });
+
+		timer.newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				// 其间已通过其他途径连接成功(如connect()切换到了下一个地址)
+				if (!reconnect || circuitBreaker.allowRequest()) {
+					return;
 				}
-			}, RECONNECT_DELAY, TimeUnit.SECONDS);
+				circuitBreaker.onReconnecting();
+				bootstrap.setOption("remoteAddress", address);
+				bootstrap.connect(address).addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) throws Exception {
+						// 失败时channelClosed会再次触发重连
+						logger.debug("reconnect to {} result:{}", address, future.isSuccess());
+						if (future.isSuccess() && !reconnect) {
+							// 连接期间客户端已关闭
+							future.getChannel().close();
+						}
+					}
+				});
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 第attempt次重连(从0开始)的等待时间：initial * 2^attempt，封顶maxDelay，取其50%~100%之间的随机值
+	 */
+	long nextDelay(int attempt) {
+		long delay = initialDelayMillis << Math.min(attempt, 30);
+		if (delay <= 0 || delay > maxDelayMillis) {
+			delay = maxDelayMillis;
 		}
+		long half = delay / 2;
+		return half + (long) (random.nextDouble() * (delay - half));
+	}
+
+	public void setReconnect(boolean reconnect) {
+		this.reconnect = reconnect;
+	}
+
+	public void setInitialDelayMillis(long initialDelayMillis) {
+		this.initialDelayMillis = initialDelayMillis;
+	}
+
+	public void setMaxDelayMillis(long maxDelayMillis) {
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
 	}
 }
@@ -0,0 +1,32 @@
+package com.woniu.network.handler.codec;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+
+import com.woniu.network.buffer.PooledChannelBuffer;
+
+/**
+ * 写完成(成功、失败或取消)后将{@link PooledChannelBuffer}归还到池中<br>
+ * 须放在pipeline中{@link ProtocolEncoder}之前(更靠近socket)
+ */
+@Sharable
+public class BufferReleaseHandler extends SimpleChannelDownstreamHandler {
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (e.getMessage() instanceof PooledChannelBuffer) {
+			final PooledChannelBuffer buffer = (PooledChannelBuffer) e.getMessage();
+			e.getFuture().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					buffer.release();
+				}
+			});
+		}
+		super.writeRequested(ctx, e);
+	}
+}
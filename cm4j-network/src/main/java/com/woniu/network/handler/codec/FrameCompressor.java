@@ -0,0 +1,255 @@
+package com.woniu.network.handler.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+import com.woniu.network.buffer.PooledChannelBuffer;
+import com.woniu.network.exception.ProtocolParamValidationException;
+import com.woniu.network.protocol.factory.ProtocolFactory;
+
+/**
+ * 压缩消息体较大的frame，由对端的{@link FrameDecompressor}解压<br>
+ * 消息头不压缩，压缩后在reserved中置{@link #FLAG_DEFLATE}，消息体变为：原消息体长度(int) + deflate数据<br>
+ * 消息体小于阈值或压缩后没有变小的frame原样发送，一个buffer中有多条frame时逐条判断<br>
+ * Deflater按线程复用，须放在pipeline中{@link ProtocolEncoder}之前(更靠近socket)
+ */
+@Sharable
+public class FrameCompressor extends OneToOneEncoder {
+
+	/**
+	 * 消息头中存放压缩标志的字段
+	 */
+	public static final String RESERVED_FIELD = "reserved";
+	/**
+	 * reserved中表示消息体已压缩的标志位
+	 */
+	public static final int FLAG_DEFLATE = 0x1;
+
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+	private static final ThreadLocal<byte[]> outputs = new ThreadLocal<byte[]>();
+
+	private final int threshold;
+	private final int level;
+	// 按protocol.xml中的header计算
+	private final int headerLength;
+	private final int reservedIndex;
+	private volatile boolean onlyWhenCongested;
+
+	private final AtomicLong compressedFrames = new AtomicLong();
+	private final AtomicLong bytesBefore = new AtomicLong();
+	private final AtomicLong bytesAfter = new AtomicLong();
+
+	/**
+	 * @param threshold
+	 *            消息体不小于此长度(字节)时才压缩
+	 */
+	public FrameCompressor(int threshold) {
+		this(threshold, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param threshold
+	 *            消息体不小于此长度(字节)时才压缩
+	 * @param level
+	 *            {@link Deflater}的压缩级别
+	 */
+	public FrameCompressor(int threshold, int level) {
+		this(threshold, level, ProtocolFactory.Holder.instance);
+	}
+
+	/**
+	 * 按factory加载的消息头定位reserved
+	 *
+	 * @throws ProtocolParamValidationException
+	 *             消息头未加载或没有int类型的reserved
+	 */
+	public FrameCompressor(int threshold, int level, ProtocolFactory factory) {
+		this(threshold, level, factory.getHeaderLength(), reservedIndex(factory));
+	}
+
+	/**
+	 * @param headerLength
+	 *            消息头长度
+	 * @param reservedIndex
+	 *            消息头中reserved(int)的位置
+	 */
+	public FrameCompressor(int threshold, int level, int headerLength, int reservedIndex) {
+		checkHeader(headerLength, reservedIndex);
+		this.threshold = Math.max(threshold, 1);
+		this.level = level;
+		this.headerLength = headerLength;
+		this.reservedIndex = reservedIndex;
+	}
+
+	static int reservedIndex(ProtocolFactory factory) {
+		int index = factory.getHeaderIntFieldIndex(RESERVED_FIELD);
+		if (index < 0) {
+			throw new ProtocolParamValidationException("the header in xml should contain int field:"
+					+ RESERVED_FIELD);
+		}
+		return index;
+	}
+
+	static void checkHeader(int headerLength, int reservedIndex) {
+		// reserved不能与length重叠，且须完整落在消息头内
+		if (reservedIndex < 4 || reservedIndex + 4 > headerLength) {
+			throw new ProtocolParamValidationException("invalid header layout,headerLength:" + headerLength
+					+ ",reservedIndex:" + reservedIndex);
+		}
+	}
+
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+		if (!(msg instanceof ChannelBuffer)) {
+			return msg;
+		}
+		if (onlyWhenCongested && channel.isWritable()) {
+			return msg;
+		}
+		ChannelBuffer buffer = (ChannelBuffer) msg;
+		if (!hasLargeFrame(buffer)) {
+			return msg;
+		}
+
+		ChannelBuffer result = ChannelBuffers.dynamicBuffer(buffer.order(), buffer.readableBytes(), channel
+				.getConfig().getBufferFactory());
+		int index = buffer.readerIndex();
+		while (index < buffer.writerIndex()) {
+			int frameLength = buffer.getInt(index) + 4;
+			int bodyLength = frameLength - headerLength;
+			if (bodyLength < threshold || !compress(buffer, index, bodyLength, result)) {
+				result.writeBytes(buffer, index, frameLength);
+			}
+			index += frameLength;
+		}
+		if (buffer instanceof PooledChannelBuffer) {
+			// 原buffer不再向下传递，BufferReleaseHandler不会再归还它
+			((PooledChannelBuffer) buffer).release();
+		}
+		return result;
+	}
+
+	private boolean hasLargeFrame(ChannelBuffer buffer) {
+		int index = buffer.readerIndex();
+		while (index < buffer.writerIndex()) {
+			int frameLength = buffer.getInt(index) + 4;
+			if (frameLength - headerLength >= threshold) {
+				return true;
+			}
+			index += frameLength;
+		}
+		return false;
+	}
+
+	/**
+	 * 压缩一个frame并写入result
+	 *
+	 * @return 压缩后没有变小时返回false，result不变
+	 */
+	private boolean compress(ChannelBuffer buffer, int frameIndex, int bodyLength, ChannelBuffer result) {
+		byte[] input;
+		int offset;
+		if (buffer.hasArray()) {
+			input = buffer.array();
+			offset = buffer.arrayOffset() + frameIndex + headerLength;
+		} else {
+			input = new byte[bodyLength];
+			offset = 0;
+			buffer.getBytes(frameIndex + headerLength, input);
+		}
+
+		Deflater deflater = deflater();
+		deflater.setInput(input, offset, bodyLength);
+		deflater.finish();
+		// 压缩后不小于原长度的不要
+		byte[] output = output(bodyLength);
+		int compressedLength = 0;
+		while (!deflater.finished() && compressedLength < bodyLength) {
+			compressedLength += deflater.deflate(output, compressedLength, bodyLength - compressedLength);
+		}
+		boolean smaller = deflater.finished() && compressedLength + 4 < bodyLength;
+		deflater.reset();
+		if (!smaller) {
+			return false;
+		}
+
+		int newFrameIndex = result.writerIndex();
+		result.writeBytes(buffer, frameIndex, headerLength);
+		// length不包含自身：消息头 + 原长度(int) + 压缩数据 - 4
+		result.setInt(newFrameIndex, headerLength + compressedLength);
+		result.setInt(newFrameIndex + reservedIndex, buffer.getInt(frameIndex + reservedIndex) | FLAG_DEFLATE);
+		result.writeInt(bodyLength);
+		result.writeBytes(output, 0, compressedLength);
+
+		compressedFrames.incrementAndGet();
+		bytesBefore.addAndGet(bodyLength);
+		bytesAfter.addAndGet(compressedLength + 4);
+		return true;
+	}
+
+	public int getHeaderLength() {
+		return headerLength;
+	}
+
+	public int getReservedIndex() {
+		return reservedIndex;
+	}
+
+	private Deflater deflater() {
+		Deflater deflater = deflaters.get();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+			deflaters.set(deflater);
+		} else {
+			// 同一线程可能被多个不同级别的compressor使用
+			deflater.setLevel(level);
+		}
+		return deflater;
+	}
+
+	private static byte[] output(int length) {
+		byte[] output = outputs.get();
+		if (output == null || output.length < length) {
+			output = new byte[Math.max(length, 1024)];
+			outputs.set(output);
+		}
+		return output;
+	}
+
+	/**
+	 * 为true时只在channel不可写(待发送数据超过writeBufferHighWaterMark，即带宽不足)时压缩，否则省下CPU
+	 *
+	 * @param onlyWhenCongested
+	 */
+	public void setOnlyWhenCongested(boolean onlyWhenCongested) {
+		this.onlyWhenCongested = onlyWhenCongested;
+	}
+
+	/**
+	 * 已压缩的frame数
+	 */
+	public long getCompressedFrames() {
+		return compressedFrames.get();
+	}
+
+	/**
+	 * 已压缩frame的消息体原长度合计
+	 */
+	public long getBytesBefore() {
+		return bytesBefore.get();
+	}
+
+	/**
+	 * 已压缩frame的消息体压缩后长度合计
+	 */
+	public long getBytesAfter() {
+		return bytesAfter.get();
+	}
+}
@@ -0,0 +1,140 @@
+package com.woniu.network.handler.codec;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+
+import com.woniu.network.exception.ProtocolAnalyzeException;
+import com.woniu.network.exception.ProtocolParamValidationException;
+import com.woniu.network.protocol.factory.ProtocolFactory;
+
+/**
+ * 解压{@link FrameCompressor}压缩过的frame，未压缩的frame原样传递<br>
+ * 须放在pipeline中{@link ZeroCopyFrameDecoder}和{@link ProtocolDecoder}之间；Inflater按线程复用
+ */
+@Sharable
+public class FrameDecompressor extends OneToOneDecoder {
+
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>();
+
+	private final int maxBodyLength;
+	private final int headerLength;
+	private final int reservedIndex;
+
+	/**
+	 * @param maxBodyLength
+	 *            解压后消息体的最大长度，防止异常数据占用过多内存
+	 */
+	public FrameDecompressor(int maxBodyLength) {
+		this(maxBodyLength, ProtocolFactory.Holder.instance);
+	}
+
+	/**
+	 * 按factory加载的消息头定位reserved
+	 *
+	 * @throws ProtocolParamValidationException
+	 *             消息头未加载或没有int类型的reserved
+	 */
+	public FrameDecompressor(int maxBodyLength, ProtocolFactory factory) {
+		this(maxBodyLength, factory.getHeaderLength(), FrameCompressor.reservedIndex(factory));
+	}
+
+	/**
+	 * @param headerLength
+	 *            消息头长度
+	 * @param reservedIndex
+	 *            消息头中reserved(int)的位置
+	 */
+	public FrameDecompressor(int maxBodyLength, int headerLength, int reservedIndex) {
+		FrameCompressor.checkHeader(headerLength, reservedIndex);
+		this.maxBodyLength = maxBodyLength;
+		this.headerLength = headerLength;
+		this.reservedIndex = reservedIndex;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+		if (!(msg instanceof ChannelBuffer)) {
+			return msg;
+		}
+		return decompress((ChannelBuffer) msg);
+	}
+
+	/**
+	 * 与传输层无关，其他传输实现也用此方法解压
+	 *
+	 * @param frame
+	 *            完整的frame
+	 * @return 未压缩时返回frame本身
+	 * @throws ProtocolAnalyzeException
+	 */
+	public ChannelBuffer decompress(ChannelBuffer frame) {
+		int frameIndex = frame.readerIndex();
+		int reserved = frame.getInt(frameIndex + reservedIndex);
+		if ((reserved & FrameCompressor.FLAG_DEFLATE) == 0) {
+			return frame;
+		}
+
+		int bodyIndex = frameIndex + headerLength;
+		int bodyLength = frame.getInt(bodyIndex);
+		if (bodyLength < 0 || bodyLength > maxBodyLength) {
+			throw new ProtocolAnalyzeException("invalid uncompressed length:" + bodyLength);
+		}
+		int compressedIndex = bodyIndex + 4;
+		int compressedLength = frame.writerIndex() - compressedIndex;
+
+		byte[] input;
+		int offset;
+		if (frame.hasArray()) {
+			input = frame.array();
+			offset = frame.arrayOffset() + compressedIndex;
+		} else {
+			input = new byte[compressedLength];
+			offset = 0;
+			frame.getBytes(compressedIndex, input);
+		}
+
+		byte[] output = new byte[headerLength + bodyLength];
+		Inflater inflater = inflater();
+		try {
+			inflater.setInput(input, offset, compressedLength);
+			int length = 0;
+			while (length < bodyLength && !inflater.finished()) {
+				int n = inflater.inflate(output, headerLength + length, bodyLength - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += n;
+			}
+			if (length != bodyLength) {
+				throw new ProtocolAnalyzeException("uncompressed length dismatch,expect:" + bodyLength + ",actual:"
+						+ length);
+			}
+		} catch (DataFormatException e) {
+			throw new ProtocolAnalyzeException(e);
+		} finally {
+			inflater.reset();
+		}
+
+		ChannelBuffer result = ChannelBuffers.wrappedBuffer(frame.order(), output);
+		result.setBytes(0, frame, frameIndex, headerLength);
+		result.setInt(0, output.length - 4);
+		result.setInt(reservedIndex, reserved & ~FrameCompressor.FLAG_DEFLATE);
+		return result;
+	}
+
+	private static Inflater inflater() {
+		Inflater inflater = inflaters.get();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+			inflaters.set(inflater);
+		}
+		return inflater;
+	}
+}
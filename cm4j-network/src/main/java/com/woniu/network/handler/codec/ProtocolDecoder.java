@@ -1,5 +1,7 @@
 package com.woniu.network.handler.codec;
 
+import java.util.Arrays;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -8,23 +10,102 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.woniu.network.exception.ProtocolAnalyzeException;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.codec.CodecMessage;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecs;
+import com.woniu.network.protocol.factory.ProtocolFactory;
 
+/**
+ * 将frame解析为{@link IProtocol}<br>
+ * 根据messageId优先使用生成的{@link MessageCodec}解析为{@link CodecMessage}，
+ * 没有生成的编解码器时找到配置中的协议解析为{@link ConstructedMessage}<br>
+ * reuseMessage为true时每种消息只创建一个实例，每次解码覆盖其中的值，不再产生新对象；
+ * 此时后续handler必须在messageReceived中同步处理完消息且不能持有消息，decoder也不能在channel之间共享
+ */
 public class ProtocolDecoder extends OneToOneDecoder {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	private final boolean reuseMessage;
+	// 可重复使用的消息，消息种类很少，顺序查找即可
+	private int[] reusableIds = new int[0];
+	private IProtocol[] reusableMessages = new IProtocol[0];
+
+	public ProtocolDecoder() {
+		this(false);
+	}
+
+	public ProtocolDecoder(boolean reuseMessage) {
+		this.reuseMessage = reuseMessage;
+	}
+
 	@Override
 	protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+		if (!(msg instanceof ChannelBuffer)) {
+			return msg;
+		}
+		return decode((ChannelBuffer) msg);
+	}
+
+	/**
+	 * 解析一个完整的frame，与传输层无关，其他传输实现也用此方法解码
+	 *
+	 * @param buffer
+	 * @return
+	 * @throws ProtocolAnalyzeException
+	 */
+	public IProtocol decode(ChannelBuffer buffer) {
 		try {
-			ChannelBuffer buffer = (ChannelBuffer) msg;
-//			ConstructedMessage protocol = ProtocolFactory.Holder.instance.createProtocol();
-//			protocol.read(buffer);
-//			return protocol;
-			return null;
+			ProtocolFactory factory = ProtocolFactory.Holder.instance;
+			int messageId = factory.getMessageId(buffer);
+
+			MessageCodec<CodecMessage> codec = MessageCodecs.get(messageId);
+			if (codec != null) {
+				CodecMessage message = (CodecMessage) getReusable(messageId);
+				if (message == null) {
+					message = codec.newMessage();
+					addReusable(messageId, message);
+				}
+				codec.read(buffer, message);
+				return message;
+			}
+
+			ConstructedMessage protocol = (ConstructedMessage) getReusable(messageId);
+			if (protocol == null) {
+				protocol = factory.newProtocol(messageId);
+				addReusable(messageId, protocol);
+			} else {
+				protocol.clear();
+			}
+			protocol.read(buffer);
+			return protocol;
 		} catch (Exception e) {
 			logger.error("protocol decode exception", e);
 			throw new ProtocolAnalyzeException(e);
 		}
 	}
 
+	private IProtocol getReusable(int messageId) {
+		if (reuseMessage) {
+			for (int i = 0; i < reusableIds.length; i++) {
+				if (reusableIds[i] == messageId) {
+					return reusableMessages[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	private void addReusable(int messageId, IProtocol message) {
+		if (reuseMessage) {
+			int length = reusableIds.length;
+			reusableIds = Arrays.copyOf(reusableIds, length + 1);
+			reusableMessages = Arrays.copyOf(reusableMessages, length + 1);
+			reusableIds[length] = messageId;
+			reusableMessages[length] = message;
+		}
+	}
+
 }
@@ -1,6 +1,10 @@
 package com.woniu.network.handler.codec;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -8,11 +12,22 @@ import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.woniu.network.buffer.PooledChannelBuffer;
+import com.woniu.network.buffer.PooledChannelBufferFactory;
+import com.woniu.network.exception.MessageTypeNotFoundException;
 import com.woniu.network.exception.ProtocolAnalyzeException;
 import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
+import com.woniu.network.protocol.codec.CodecMessage;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecs;
 
 /**
- * 将 {@link IProtocol} 转化为 byte[]
+ * 将 {@link IProtocol} 转化为 byte[]<br>
+ * buffer按预估长度分配，写完后重设消息头中的length(不包含length本身)<br>
+ * 指定了bufferFactory(如direct buffer池)时从中分配，否则由channel的ChannelBufferFactory分配<br>
+ * {@link ProtocolBatch}中的多条消息依次写入同一个buffer
  * 
  * @author yang.hao
  * @since 2011-10-24 下午5:38:27
@@ -21,20 +36,120 @@ public class ProtocolEncoder extends OneToOneEncoder {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	/**
+	 * 发送buffer的分配器，为null时使用channel的ChannelBufferFactory
+	 */
+	private final ChannelBufferFactory bufferFactory;
+
+	public ProtocolEncoder() {
+		this(null);
+	}
+
+	/**
+	 * @param bufferFactory
+	 *            如{@link PooledChannelBufferFactory}，需同时在pipeline中加入{@link BufferReleaseHandler}
+	 */
+	public ProtocolEncoder(ChannelBufferFactory bufferFactory) {
+		this.bufferFactory = bufferFactory;
+	}
+
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
 		try {
-			ConstructedMessage protocol = (ConstructedMessage) msg;
-
-//			boolean littleEndian = protocol.getXmlModel().getLittleEndian();
-//			ByteOrder order = littleEndian ? ChannelBuffers.LITTLE_ENDIAN : ChannelBuffers.BIG_ENDIAN;
-			ChannelBuffer dynamicBuffer = ChannelBuffers.dynamicBuffer(ctx.getChannel().getConfig().getBufferFactory());
+			List<IProtocol> protocols = toProtocols(msg);
+			if (protocols == null) {
+				return msg;
+			}
 
-//			protocol.write(dynamicBuffer);
-			return dynamicBuffer;
+			ChannelBuffer buffer = allocate(channel, estimateLength(protocols));
+			try {
+				writeFrames(buffer, protocols);
+			} catch (IndexOutOfBoundsException e) {
+				// 预估与CodecUtil写入时预留的长度一致，正常不会到这里；仅作兜底，改用可扩容的buffer重写
+				release(buffer);
+				buffer = ChannelBuffers.dynamicBuffer(channel.getConfig().getBufferFactory());
+				writeFrames(buffer, protocols);
+			}
+			return buffer;
 		} catch (Exception e) {
 			logger.error("protocol encode exception", e);
 			throw new ProtocolAnalyzeException(e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @param msg
+	 * @return msg不是消息或{@link ProtocolBatch}时返回null
+	 */
+	public static List<IProtocol> toProtocols(Object msg) {
+		if (msg instanceof ProtocolBatch) {
+			return ((ProtocolBatch) msg).getProtocols();
+		} else if (msg instanceof CodecMessage || msg instanceof ConstructedMessage) {
+			return Collections.singletonList((IProtocol) msg);
+		}
+		return null;
+	}
+
+	/**
+	 * 各消息预估长度之和
+	 */
+	public static int estimateLength(List<IProtocol> protocols) {
+		int estimateLength = 0;
+		for (IProtocol protocol : protocols) {
+			estimateLength += estimateLength(protocol);
+		}
+		return estimateLength;
+	}
+
+	/**
+	 * 依次写入每条消息，并重设各自消息头中的length；与传输层无关，其他传输实现也用此方法编码
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             buffer不可扩容且长度不足时
+	 */
+	public static void writeFrames(ChannelBuffer buffer, List<IProtocol> protocols) {
+		for (IProtocol protocol : protocols) {
+			int frameIndex = buffer.writerIndex();
+			if (protocol instanceof CodecMessage) {
+				getCodec((CodecMessage) protocol).write(buffer, (CodecMessage) protocol);
+			} else if (protocol instanceof ConstructedMessage) {
+				((ConstructedMessage) protocol).write(buffer);
+			} else {
+				throw new MessageTypeNotFoundException("unsupported protocol:" + protocol.getClass().getName());
+			}
+			buffer.setInt(frameIndex, buffer.writerIndex() - frameIndex - 4);
+		}
+	}
+
+	private static int estimateLength(IProtocol protocol) {
+		if (protocol instanceof CodecMessage) {
+			return getCodec((CodecMessage) protocol).estimateLength((CodecMessage) protocol);
+		} else if (protocol instanceof ConstructedMessage) {
+			return ((ConstructedMessage) protocol).estimateLength();
+		}
+		throw new MessageTypeNotFoundException("unsupported protocol:" + protocol.getClass().getName());
+	}
+
+	private static MessageCodec<CodecMessage> getCodec(CodecMessage message) {
+		MessageCodec<CodecMessage> codec = MessageCodecs.get(message.getMessageId());
+		if (codec == null) {
+			throw new MessageTypeNotFoundException("codec not registered,messageId:" + message.getMessageId());
+		}
+		return codec;
+	}
+
+	private ChannelBuffer allocate(Channel channel, int estimateLength) {
+		ChannelBufferFactory channelFactory = channel.getConfig().getBufferFactory();
+		if (bufferFactory == null) {
+			return ChannelBuffers.dynamicBuffer(estimateLength, channelFactory);
+		}
+		// 字节序与channel保持一致
+		return bufferFactory.getBuffer(channelFactory.getDefaultOrder(), estimateLength);
+	}
+
+	private void release(ChannelBuffer buffer) {
+		if (buffer instanceof PooledChannelBuffer) {
+			((PooledChannelBuffer) buffer).release();
+		}
+	}
+}
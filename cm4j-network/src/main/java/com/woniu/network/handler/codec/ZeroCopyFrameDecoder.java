@@ -0,0 +1,22 @@
+package com.woniu.network.handler.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+
+/**
+ * 不复制数据的{@link LengthFieldBasedFrameDecoder}<br>
+ * 返回的frame为原buffer的slice，只在本次decode调用中有效，
+ * 因此后面必须紧跟同步解析frame的{@link ProtocolDecoder}，中间不能加入ExecutionHandler等异步处理
+ */
+public class ZeroCopyFrameDecoder extends LengthFieldBasedFrameDecoder {
+
+	public ZeroCopyFrameDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
+			int lengthAdjustment, int initialBytesToStrip) {
+		super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+	}
+
+	@Override
+	protected ChannelBuffer extractFrame(ChannelBuffer buffer, int index, int length) {
+		return buffer.slice(index, length);
+	}
+}
@@ -0,0 +1,68 @@
+package com.woniu.network.handler.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 限制服务端同时存在的连接数，超出时新连接直接关闭<br>
+ * 须放在pipeline最前面，被拒绝的连接不会向后传递channelOpen
+ */
+@Sharable
+public class ConnectionLimitHandler extends SimpleChannelUpstreamHandler {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final int maxConnections;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param maxConnections
+	 *            最大连接数，0表示不限制
+	 */
+	public ConnectionLimitHandler(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	@Override
+	public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		int current = connections.incrementAndGet();
+		if (maxConnections > 0 && current > maxConnections) {
+			// 计数在channelClosed中减掉
+			if (rejected.incrementAndGet() % 1000 == 1) {
+				logger.warn("too many connections:{}, max:{}, rejected:{}", new Object[] { current, maxConnections,
+						rejected.get() });
+			}
+			ctx.getChannel().close();
+			return;
+		}
+		super.channelOpen(ctx, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		connections.decrementAndGet();
+		super.channelClosed(ctx, e);
+	}
+
+	/**
+	 * 当前连接数，包括正在被拒绝关闭的连接
+	 */
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	/**
+	 * 累计拒绝的连接数
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+}
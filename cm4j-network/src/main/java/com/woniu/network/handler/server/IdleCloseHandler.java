@@ -0,0 +1,41 @@
+package com.woniu.network.handler.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 关闭空闲连接，空闲事件由前面的{@link org.jboss.netty.handler.timeout.IdleStateHandler}产生<br>
+ * 因{@link OrderedExecutionHandler}积压而暂停读取的连接不是对端空闲，读空闲时不关闭，恢复读取后重新计时
+ */
+@Sharable
+public class IdleCloseHandler extends IdleStateAwareChannelHandler {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final AtomicLong closed = new AtomicLong();
+
+	@Override
+	public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
+		if (e.getState() == IdleState.READER_IDLE && !e.getChannel().isReadable()) {
+			logger.debug("channel {} reading suspended, skip idle close", e.getChannel());
+			return;
+		}
+		closed.incrementAndGet();
+		logger.debug("close idle channel {}, state:{}", e.getChannel(), e.getState());
+		e.getChannel().close();
+	}
+
+	/**
+	 * 累计因空闲被关闭的连接数
+	 */
+	public long getClosedCount() {
+		return closed.get();
+	}
+}
@@ -0,0 +1,375 @@
+package com.woniu.network.handler.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.ExternalResourceReleasable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.util.IntDispatchTable;
+
+/**
+ * <p>
+ * 将解码后的消息转到业务线程池执行，I/O线程不再被业务逻辑阻塞
+ * <p>
+ * -----------------------------------------------------------
+ * <p>
+ * 每个执行队列(lane)有独立的线程池，可按messageId将消息分配到不同lane，如将慢消息隔离，未配置的消息使用{@link #DEFAULT_LANE}
+ * <p>
+ * 同一连接在同一lane中的消息按接收顺序串行执行；不同lane之间不保证顺序
+ * <p>
+ * 单个连接积压的消息超过maxQueuedPerChannel时暂停读取该连接，积压降到一半以下时恢复，以此限制队列长度；
+ * 暂停期间不读取数据，{@link IdleCloseHandler}不会因此关闭连接
+ * <p>
+ * channelClosed在该连接已入队的消息全部执行完之后才向后传递，由执行最后一条消息的业务线程发出
+ * <p>
+ * 须放在ProtocolDecoder之后、{@link ProtocolMulticasterHandler}之前；ProtocolDecoder不能复用消息对象
+ * <p>
+ * -----------------------------------------------------------
+ */
+@Sharable
+public class OrderedExecutionHandler extends SimpleChannelUpstreamHandler implements OrderedExecutionHandlerMBean,
+		ExternalResourceReleasable {
+
+	public static final String DEFAULT_LANE = "default";
+	public static final String DEFAULT_OBJECT_NAME = "com.woniu.network:type=OrderedExecutionHandler";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final List<Lane> lanes = new ArrayList<Lane>();
+	private volatile IntDispatchTable<Lane> messageLanes = IntDispatchTable.empty();
+	private final Map<Integer, ChannelQueues> channels = new ConcurrentHashMap<Integer, ChannelQueues>();
+	private final int maxQueuedPerChannel;
+	private final AtomicInteger suspendedChannels = new AtomicInteger();
+
+	private String objectName = DEFAULT_OBJECT_NAME;
+
+	/**
+	 * @param defaultThreads
+	 *            默认lane的线程数
+	 * @param maxQueuedPerChannel
+	 *            单个连接最多积压的消息数
+	 */
+	public OrderedExecutionHandler(int defaultThreads, int maxQueuedPerChannel) {
+		Preconditions.checkArgument(maxQueuedPerChannel > 0, "maxQueuedPerChannel should be positive");
+		this.maxQueuedPerChannel = maxQueuedPerChannel;
+		addLane(DEFAULT_LANE, defaultThreads);
+	}
+
+	/**
+	 * 添加执行队列，须在server启动前调用
+	 *
+	 * @param name
+	 * @param threads
+	 */
+	public synchronized void addLane(String name, int threads) {
+		Preconditions.checkArgument(getLane(name) == null, "lane already exists:" + name);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("executor-" + name + "-%d").build());
+		lanes.add(new Lane(lanes.size(), name, threads, executor));
+	}
+
+	/**
+	 * 将消息分配到指定lane，须在server启动前调用
+	 *
+	 * @param messageId
+	 * @param laneName
+	 */
+	public synchronized void bind(int messageId, String laneName) {
+		Lane lane = getLane(laneName);
+		Preconditions.checkArgument(lane != null, "lane not found:" + laneName);
+		messageLanes = messageLanes.with(messageId, lane);
+	}
+
+	private Lane getLane(String name) {
+		for (Lane lane : lanes) {
+			if (lane.name.equals(name)) {
+				return lane;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		channels.put(ctx.getChannel().getId(), new ChannelQueues(ctx, lanes.size()));
+		super.channelOpen(ctx, e);
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		ChannelQueues queues = channels.get(ctx.getChannel().getId());
+		if (queues == null) {
+			// 已关闭
+			return;
+		}
+
+		Lane lane = null;
+		if (e.getMessage() instanceof IProtocol) {
+			lane = messageLanes.get(((IProtocol) e.getMessage()).getMessageId());
+		}
+		if (lane == null) {
+			lane = lanes.get(0);
+		}
+		queues.offer(lane, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		ChannelQueues queues = channels.remove(ctx.getChannel().getId());
+		if (queues == null) {
+			super.channelClosed(ctx, e);
+			return;
+		}
+		if (queues.suspended.compareAndSet(true, false)) {
+			suspendedChannels.decrementAndGet();
+		}
+		// 排在已入队的消息之后
+		queues.closeEvent.set(e);
+		queues.fireClosedIfDrained();
+	}
+
+	/**
+	 * 关闭所有线程池，已入队的消息继续执行完
+	 */
+	@Override
+	public void releaseExternalResources() {
+		for (Lane lane : lanes) {
+			lane.executor.shutdown();
+		}
+	}
+
+	/**
+	 * 一个连接在各lane中的队列
+	 */
+	private class ChannelQueues {
+		private final ChannelHandlerContext ctx;
+		private final SerialQueue[] queues;
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicBoolean suspended = new AtomicBoolean();
+		private final AtomicReference<ChannelStateEvent> closeEvent = new AtomicReference<ChannelStateEvent>();
+
+		private ChannelQueues(ChannelHandlerContext ctx, int laneNum) {
+			this.ctx = ctx;
+			this.queues = new SerialQueue[laneNum];
+		}
+
+		private void offer(Lane lane, MessageEvent e) {
+			SerialQueue queue;
+			synchronized (queues) {
+				queue = queues[lane.index];
+				if (queue == null) {
+					queue = new SerialQueue(this, lane);
+					queues[lane.index] = queue;
+				}
+			}
+
+			if (queued.incrementAndGet() > maxQueuedPerChannel && suspended.compareAndSet(false, true)) {
+				suspendedChannels.incrementAndGet();
+				logger.warn("channel {} suspend reading, queued:{}", ctx.getChannel(), queued.get());
+				ctx.getChannel().setReadable(false);
+			}
+			lane.queued(1);
+			queue.offer(e);
+		}
+
+		private void done() {
+			int remaining = queued.decrementAndGet();
+			if (remaining <= maxQueuedPerChannel / 2 && suspended.compareAndSet(true, false)) {
+				suspendedChannels.decrementAndGet();
+				Channel channel = ctx.getChannel();
+				if (channel.isOpen()) {
+					channel.setReadable(true);
+				}
+			}
+			if (remaining == 0) {
+				fireClosedIfDrained();
+			}
+		}
+
+		/**
+		 * 连接已关闭且消息全部执行完时传递channelClosed，只传递一次
+		 */
+		private void fireClosedIfDrained() {
+			if (queued.get() == 0 && closeEvent.get() != null) {
+				ChannelStateEvent e = closeEvent.getAndSet(null);
+				if (e != null) {
+					try {
+						ctx.sendUpstream(e);
+					} catch (Throwable t) {
+						Channels.fireExceptionCaught(ctx, t);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 串行执行队列：同一时间最多有一个线程在处理，保证顺序
+	 */
+	private class SerialQueue implements Runnable {
+		private final ChannelQueues owner;
+		private final Lane lane;
+		private final Queue<MessageEvent> events = new ConcurrentLinkedQueue<MessageEvent>();
+		private final AtomicBoolean running = new AtomicBoolean();
+
+		private SerialQueue(ChannelQueues owner, Lane lane) {
+			this.owner = owner;
+			this.lane = lane;
+		}
+
+		private void offer(MessageEvent e) {
+			events.offer(e);
+			schedule();
+		}
+
+		private void schedule() {
+			if (running.compareAndSet(false, true)) {
+				try {
+					lane.executor.execute(this);
+				} catch (RejectedExecutionException ex) {
+					running.set(false);
+					logger.error("lane {} rejected, server shutting down", lane.name);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			MessageEvent e;
+			while ((e = events.poll()) != null) {
+				try {
+					owner.ctx.sendUpstream(e);
+				} catch (Throwable t) {
+					Channels.fireExceptionCaught(owner.ctx, t);
+				} finally {
+					lane.queued(-1);
+					lane.executed.incrementAndGet();
+					owner.done();
+				}
+			}
+			running.set(false);
+			// 释放running之后又有消息入队
+			if (!events.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+	private static class Lane {
+		private final int index;
+		private final String name;
+		private final int threads;
+		private final ExecutorService executor;
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicInteger maxQueued = new AtomicInteger();
+		private final AtomicLong executed = new AtomicLong();
+
+		private Lane(int index, String name, int threads, ExecutorService executor) {
+			this.index = index;
+			this.name = name;
+			this.threads = threads;
+			this.executor = executor;
+		}
+
+		private void queued(int delta) {
+			int current = queued.addAndGet(delta);
+			int max;
+			while (current > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, current)) {
+				// 重试
+			}
+		}
+	}
+
+	// ***************************************************************************
+	// * --------------------------------JMX----------------------------------- *
+	// **************************************************************************/
+
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, new ObjectName(objectName));
+			logger.debug("OrderedExecutionHandler注册JMX：{}", objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.warn("OrderedExecutionHandler已注册JMX：{}", objectName);
+		} catch (Exception e) {
+			logger.error("OrderedExecutionHandler注册JMX异常", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(objectName);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.error("OrderedExecutionHandler注销JMX异常", e);
+		}
+	}
+
+	@Override
+	public int getQueuedCount() {
+		int count = 0;
+		for (Lane lane : lanes) {
+			count += lane.queued.get();
+		}
+		return count;
+	}
+
+	@Override
+	public int getSuspendedChannelCount() {
+		return suspendedChannels.get();
+	}
+
+	@Override
+	public String[] getLaneStatistics() {
+		String[] result = new String[lanes.size()];
+		for (int i = 0; i < result.length; i++) {
+			Lane lane = lanes.get(i);
+			result[i] = lane.name + " threads:" + lane.threads + " queued:" + lane.queued.get() + " maxQueued:"
+					+ lane.maxQueued.get() + " executed:" + lane.executed.get();
+		}
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		for (Lane lane : lanes) {
+			lane.maxQueued.set(lane.queued.get());
+			lane.executed.set(0);
+		}
+	}
+
+	public void setObjectName(String objectName) {
+		this.objectName = objectName;
+	}
+}
@@ -0,0 +1,27 @@
+package com.woniu.network.handler.server;
+
+/**
+ * {@link OrderedExecutionHandler}的JMX接口
+ */
+public interface OrderedExecutionHandlerMBean {
+
+	/**
+	 * 所有执行队列中等待处理的消息数
+	 */
+	public int getQueuedCount();
+
+	/**
+	 * 因积压暂停读取的连接数
+	 */
+	public int getSuspendedChannelCount();
+
+	/**
+	 * 各执行队列统计：名称、线程数、当前积压、最大积压、已处理数
+	 */
+	public String[] getLaneStatistics();
+
+	/**
+	 * 清空统计
+	 */
+	public void reset();
+}
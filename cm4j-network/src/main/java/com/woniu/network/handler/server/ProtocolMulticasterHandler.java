@@ -11,9 +11,8 @@ import org.slf4j.LoggerFactory;
 
 import com.woniu.network.exception.ExecutorNotFoundException;
 import com.woniu.network.handler.cfg.ProtocolExecutorMatcher;
-import com.woniu.network.handler.server.executor.ProtocolExecutor;
-import com.woniu.network.protocol.ConstructedMessage;
-import com.woniu.network.protocol.ProtocolMessage;
+import com.woniu.network.handler.server.executor.MessageExecutor;
+import com.woniu.network.protocol.IProtocol;
 
 /**
  * protocol分发器
@@ -33,16 +32,10 @@ public class ProtocolMulticasterHandler extends SimpleChannelUpstreamHandler {
 			logger.debug("===============server received message count:{}===============", counter.get());
 		}
 		
-		ConstructedMessage protocol = (ConstructedMessage) e.getMessage();
-//		ProtocolMessage message = protocol.getMessages().get(0);
-		ProtocolMessage message = null;
-		Integer type = (Integer) message.getProtocolFieldValue("messageType");
-		if (type == null || type == 0) {
-			throw new ExecutorNotFoundException(
-					"illegal messageType, can not find corresponding executor, messageType=" + type);
-		}
+		IProtocol protocol = (IProtocol) e.getMessage();
+		int type = protocol.getMessageId();
 
-		ProtocolExecutor executor = ProtocolExecutorMatcher.get(type);
+		MessageExecutor executor = ProtocolExecutorMatcher.get(type);
 		if (executor == null) {
 			logger.error("not found corresponding executor,type=" + type);
 			throw new ExecutorNotFoundException("not found corresponding executor,type=" + type);
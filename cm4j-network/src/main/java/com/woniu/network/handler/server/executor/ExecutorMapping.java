@@ -0,0 +1,22 @@
+package com.woniu.network.handler.server.executor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明{@link ProtocolExecutor}或{@link MessageExecutor}处理的messageId，通过
+ * {@link com.woniu.network.handler.cfg.ProtocolExecutorMatcher#register(ProtocolExecutor)}注册
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ExecutorMapping {
+
+	/**
+	 * 处理的messageId，可以有多个
+	 */
+	int[] value();
+}
@@ -0,0 +1,15 @@
+package com.woniu.network.handler.server.executor;
+
+import org.jboss.netty.channel.Channel;
+
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 协议处理器，收到的消息可以是{@link com.woniu.network.protocol.ConstructedMessage}或生成的消息类
+ * 
+ * @see com.woniu.network.protocol.codec.MessageCodecs
+ */
+public interface MessageExecutor {
+
+	public void execute(Channel channel, IProtocol protocol);
+}
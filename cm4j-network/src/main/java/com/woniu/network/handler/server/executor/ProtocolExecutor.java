@@ -5,7 +5,8 @@ import org.jboss.netty.channel.Channel;
 import com.woniu.network.protocol.ConstructedMessage;
 
 /**
- * 协议处理器
+ * 协议处理器，收到的消息为{@link ConstructedMessage}<br>
+ * 启用了生成的编解码器的messageId收到的是生成的消息类，须改用{@link MessageExecutor}
  * 
  * @author yang.hao
  * @since 2011-11-23 下午4:14:51
@@ -0,0 +1,32 @@
+package com.woniu.network.handler.server.executor;
+
+import org.jboss.netty.channel.Channel;
+
+import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 把{@link ProtocolExecutor}适配为{@link MessageExecutor}，注册时自动包装，已有的处理器无需修改
+ */
+public class ProtocolExecutorAdapter implements MessageExecutor {
+
+	private final ProtocolExecutor executor;
+
+	public ProtocolExecutorAdapter(ProtocolExecutor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Channel channel, IProtocol protocol) {
+		if (!(protocol instanceof ConstructedMessage)) {
+			throw new IllegalStateException(executor.getClass().getName() + " can not handle "
+					+ protocol.getClass().getName() + ", implement MessageExecutor for messageId:"
+					+ protocol.getMessageId());
+		}
+		executor.execute(channel, (ConstructedMessage) protocol);
+	}
+
+	public ProtocolExecutor getExecutor() {
+		return executor;
+	}
+}
@@ -5,16 +5,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.woniu.network.protocol.ConstructedMessage;
-import com.woniu.network.protocol.ProtocolMessage;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.generated.Message1001;
 
-public class ProtocolShowExecutor implements ProtocolExecutor {
+@ExecutorMapping(0x1001)
+public class ProtocolShowExecutor implements MessageExecutor {
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	@Override
-	public void execute(Channel channel, ConstructedMessage protocol) {
-//		ProtocolMessage message = protocol.getMessages().get(0);
-//		logger.debug(">>>>accountId:{}", message.getProtocolField("accountId"));
+	public void execute(Channel channel, IProtocol protocol) {
+		if (protocol instanceof Message1001) {
+			logger.debug(">>>>accountId:{}", ((Message1001) protocol).getAccountId());
+		} else {
+			logger.debug(">>>>accountId:{}", ((ConstructedMessage) protocol).getMessageValue("accountId"));
+		}
 	}
 
 }
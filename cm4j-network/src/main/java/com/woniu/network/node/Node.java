@@ -8,6 +8,10 @@ import java.util.concurrent.TimeoutException;
 
 import com.woniu.network.exception.NodeExectionException;
 
+/**
+ * 单个请求的Future，由消费者阻塞等待结果<br>
+ * 连接内按顺序写回响应请使用{@link NodeRing}，不需要每个请求创建对象和阻塞等待
+ */
 public class Node {
 
 	private Future<Response> future;
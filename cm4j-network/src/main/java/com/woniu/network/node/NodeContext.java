@@ -1,26 +1,120 @@
 package com.woniu.network.node;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.woniu.network.node.queue.BusinessHandler;
 
+/**
+ * 每个连接一个{@link NodeRing}，连接关闭时移除；定时检查各连接环头请求是否超时
+ */
 public class NodeContext {
 
-	private BlockingQueue<Node> queue;
-	private ExecutorService executor;
-	private BusinessHandler handler;
+	private static final long TIME_OUT = 3000;
+
+	private final ConcurrentMap<Channel, NodeRing> rings = new ConcurrentHashMap<Channel, NodeRing>();
+	private final ExecutorService executor;
+	private final BusinessHandler handler;
+	private final int capacity;
+	private final long timeout;
+	private final ScheduledExecutorService timeoutChecker;
+	// 不写回响应的请求，处理中(含排队)的数量不超过capacity
+	private final Semaphore pending;
 
-	public NodeContext(ExecutorService executor, BusinessHandler handler ) {
-		this.queue = new LinkedBlockingQueue<Node>(200);
+	public NodeContext(ExecutorService executor, BusinessHandler handler) {
+		this(executor, handler, NodeRing.DEFAULT_CAPACITY, TIME_OUT);
+	}
+
+	/**
+	 * @param capacity
+	 *            每个连接同时处理中的最大请求数，也是不写回响应的请求同时处理中的最大数
+	 * @param timeout
+	 *            单个请求的超时时间，毫秒
+	 */
+	public NodeContext(ExecutorService executor, BusinessHandler handler, int capacity, long timeout) {
 		this.executor = executor;
 		this.handler = handler;
-//		new Thread(queueConsumer).start();
+		this.capacity = capacity;
+		this.timeout = timeout;
+		this.pending = new Semaphore(capacity);
+		this.timeoutChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("node-timeout-checker").build());
+		long period = Math.max(timeout / 2, 10);
+		timeoutChecker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for (NodeRing ring : rings.values()) {
+					ring.checkTimeout();
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 提交请求，响应按提交顺序写回channel
+	 *
+	 * @return 该连接处理中的请求已满或线程池拒绝时返回false
+	 */
+	public boolean put(Channel channel, Request request) {
+		return getRing(channel).submit(request);
+	}
+
+	/**
+	 * 提交不需要写回响应的请求，处理中的请求已达capacity时阻塞等待
+	 *
+	 * @throws RejectedExecutionException
+	 *             线程池拒绝时
+	 */
+	public void put(final Request request) throws InterruptedException {
+		pending.acquire();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						handler.exec(request);
+					} finally {
+						pending.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.release();
+			throw e;
+		}
+	}
+
+	public NodeRing getRing(final Channel channel) {
+		NodeRing ring = rings.get(channel);
+		if (ring == null) {
+			ring = new NodeRing(channel, executor, handler, capacity, timeout);
+			NodeRing existing = rings.putIfAbsent(channel, ring);
+			if (existing != null) {
+				return existing;
+			}
+			channel.getCloseFuture().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					rings.remove(channel);
+				}
+			});
+		}
+		return ring;
 	}
 
-	public void put(Request request) throws InterruptedException {
-		Node node = new Node(executor, new NodeCallable(handler, request));
-		queue.put(node);
+	public void shutdown() {
+		timeoutChecker.shutdown();
+		rings.clear();
 	}
 }
@@ -0,0 +1,270 @@
+package com.woniu.network.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.node.queue.BusinessHandler;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
+
+/**
+ * 单个连接的请求处理环，替代每个请求一个{@link Node}(Future)加阻塞队列的方式
+ * <p>
+ * 槽位预先分配、循环使用，槽位本身即提交给线程池的任务，提交请求时不创建对象；
+ * 请求在线程池中并行处理，响应按请求顺序写回：任一请求完成时，从环头开始把连续完成的响应合并为{@link ProtocolBatch}一次写出，
+ * 同一时间只有一个线程写出，其他线程的写出请求记为miss由写出线程继续处理，不阻塞等待
+ * <p>
+ * 环头的请求超时后跳过(不写响应)，其槽位在任务结束后才回收；环满或线程池拒绝时{@link #submit(Request)}返回false<br>
+ * 响应须实现{@link IProtocol}才能编码写出，其他响应记录错误后丢弃
+ */
+public class NodeRing {
+
+	public static final int DEFAULT_CAPACITY = 256;
+	public static final int DEFAULT_MAX_BATCH = 64;
+
+	private static final int FREE = 0;
+	private static final int PENDING = 1;
+	private static final int DONE = 2;
+	private static final int TIMED_OUT = 3;
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeRing.class);
+
+	private static final AtomicIntegerFieldUpdater<Slot> SLOT_STATE = AtomicIntegerFieldUpdater.newUpdater(
+			Slot.class, "state");
+
+	private final Channel channel;
+	private final Executor executor;
+	private final BusinessHandler handler;
+	private final long timeoutNanos;
+	private final int maxBatch;
+
+	private final Slot[] slots;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	// 只由写出线程修改
+	private volatile long head;
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	/**
+	 * @param channel
+	 *            响应写回的连接
+	 * @param executor
+	 *            业务线程池
+	 * @param handler
+	 * @param capacity
+	 *            同时处理中的最大请求数，会调整为2的幂
+	 * @param timeoutMillis
+	 *            单个请求的超时时间
+	 */
+	public NodeRing(Channel channel, Executor executor, BusinessHandler handler, int capacity, long timeoutMillis) {
+		this(channel, executor, handler, capacity, timeoutMillis, DEFAULT_MAX_BATCH);
+	}
+
+	public NodeRing(Channel channel, Executor executor, BusinessHandler handler, int capacity, long timeoutMillis,
+			int maxBatch) {
+		this.channel = channel;
+		this.executor = executor;
+		this.handler = handler;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.maxBatch = maxBatch;
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * 提交请求，可由多个线程调用
+	 *
+	 * @param request
+	 * @return 环满或线程池拒绝时返回false
+	 */
+	public boolean submit(Request request) {
+		Slot slot;
+		while (true) {
+			long t = tail.get();
+			slot = slots[(int) t & mask];
+			// 超时跳过的槽位在任务结束前不能复用
+			if (t - head >= slots.length || slot.state != FREE) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			if (tail.compareAndSet(t, t + 1)) {
+				break;
+			}
+		}
+		slot.request = request;
+		slot.deadline = System.nanoTime() + timeoutNanos;
+		slot.state = PENDING;
+		try {
+			executor.execute(slot);
+		} catch (RejectedExecutionException e) {
+			// 按无响应完成，由写出线程跳过
+			slot.request = null;
+			slot.state = DONE;
+			rejected.incrementAndGet();
+			drain();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 检查环头的请求是否超时，由定时任务调用；正常情况下请求完成时即会写出，无需调用
+	 */
+	public void checkTimeout() {
+		if (head != tail.get()) {
+			drain();
+		}
+	}
+
+	/**
+	 * 从环头开始写出连续完成的响应
+	 */
+	private void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		while (true) {
+			List<IProtocol> batch = null;
+			long h = head;
+			long now = 0;
+			long t = tail.get();
+			while (h < t) {
+				Slot slot = slots[(int) h & mask];
+				int state = slot.state;
+				if (state == DONE) {
+					Response response = slot.response;
+					slot.response = null;
+					slot.state = FREE;
+					h++;
+					if (response instanceof IProtocol) {
+						if (batch == null) {
+							batch = new ArrayList<IProtocol>(Math.min(maxBatch, (int) (t - h + 1)));
+						}
+						batch.add((IProtocol) response);
+						if (batch.size() >= maxBatch) {
+							write(batch);
+							batch = null;
+						}
+					} else if (response != null) {
+						errors.incrementAndGet();
+						logger.error("response is not IProtocol, dropped:{}", response);
+					}
+					continue;
+				}
+				if (state == PENDING) {
+					if (now == 0) {
+						now = System.nanoTime();
+					}
+					if (now - slot.deadline > 0 && SLOT_STATE.compareAndSet(slot, PENDING, TIMED_OUT)) {
+						timeouts.incrementAndGet();
+						logger.warn("node timeout, skip request:{}", slot.request);
+						h++;
+						continue;
+					}
+				}
+				// 未完成或槽位尚未写入请求
+				break;
+			}
+			head = h;
+			if (batch != null) {
+				write(batch);
+			}
+
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				break;
+			}
+		}
+	}
+
+	private void write(List<IProtocol> batch) {
+		Object message = batch.size() == 1 ? batch.get(0) : new ProtocolBatch(batch);
+		if (!channel.isConnected()) {
+			logger.debug("channel closed, drop response:{}", message);
+			return;
+		}
+		channel.write(message);
+	}
+
+	/**
+	 * 处理中(含已完成未写出)的请求数
+	 */
+	public int getInFlight() {
+		return (int) (tail.get() - head);
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * 预分配的槽位，同时也是提交给线程池的任务
+	 */
+	private class Slot implements Runnable {
+		// 由AtomicIntegerFieldUpdater修改，不能为private
+		volatile int state = FREE;
+		private Request request;
+		private Response response;
+		private long deadline;
+
+		@Override
+		public void run() {
+			Response result = null;
+			try {
+				result = handler.exec(request);
+			} catch (Throwable t) {
+				errors.incrementAndGet();
+				logger.error("business handler failed, request:" + request, t);
+			}
+			completed.incrementAndGet();
+			request = null;
+			response = result;
+			if (!SLOT_STATE.compareAndSet(this, PENDING, DONE)) {
+				// 已超时跳过，直接回收
+				response = null;
+				state = FREE;
+				return;
+			}
+			drain();
+		}
+	}
+}
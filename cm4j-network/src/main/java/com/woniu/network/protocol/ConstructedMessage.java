@@ -2,59 +2,179 @@ package com.woniu.network.protocol;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 
+import com.woniu.network.exception.ProtocolParamValidationException;
 import com.woniu.network.protocol.xmlmodel.Header;
 import com.woniu.network.protocol.xmlmodel.Message;
 
 /**
- * 构建好的消息协议，包含消息头和消息体
+ * 构建好的消息协议，包含消息头和消息体<br>
+ * {@link com.woniu.network.protocol.factory.ProtocolFactory}中保存的为模板，收发消息时通过{@link #newInstance()}创建新实例，
+ * 新实例与模板共享消息头和消息体的结构，外在值各自独立<br>
+ * 外在值存放在{@link ProtocolSlots}中，基本类型字段可通过getInt/setInt等方法读写，不装箱；
+ * 调用{@link #clear()}后可重复使用同一实例
  * 
  * @author yang.hao
  * @since 2011-10-27 上午10:27:45
  */
-public class ConstructedMessage{
+public class ConstructedMessage implements IProtocol {
 
 	private Header xmlHeader;
 	private Message xmlMessage;
-	
+
 	private ProtocolHeader header;
 	/**
 	 * 消息头外在值
 	 */
-	private Object[] headerValues;
-	
+	private final ProtocolSlots headerSlots;
+
 	private ProtocolMessage message;
 	/**
 	 * 消息体外在值
 	 */
-	private Object[] messageValues;
+	private final ProtocolSlots messageSlots;
 
 	public ConstructedMessage(Header xmlHeader, Message xmlMessage) {
 		this.xmlHeader = xmlHeader;
 		this.xmlMessage = xmlMessage;
-		
+
 		this.header = (ProtocolHeader) this.xmlHeader.buildProtocolEntity();
 		this.message = (ProtocolMessage) this.xmlMessage.buildProtocolEntity();
+		this.headerSlots = this.header.newSlots();
+		this.messageSlots = this.message.newSlots();
+	}
+
+	protected ConstructedMessage(ConstructedMessage prototype) {
+		this.xmlHeader = prototype.xmlHeader;
+		this.xmlMessage = prototype.xmlMessage;
+
+		this.header = prototype.header;
+		this.message = prototype.message;
+		this.headerSlots = this.header.newSlots();
+		this.messageSlots = this.message.newSlots();
+	}
+
+	/**
+	 * 以当前协议为模板创建新实例
+	 * 
+	 * @return
+	 */
+	public ConstructedMessage newInstance() {
+		return new ConstructedMessage(this);
 	}
 
 	public void read(ChannelBuffer buffer) {
 		// 读取消息头
-		this.headerValues = this.header.read(buffer);
-		this.messageValues = this.message.read(buffer);
-	}
-	
-	public void write(ChannelBuffer buffer, Object[] extrinsicValues) {
-		if (message != null) {
-			// 写入消息头
-			this.header.write(buffer, extrinsicValues);
-			// 写入消息体
-			this.message.write(buffer, extrinsicValues);
-		}
+		this.header.read(buffer, headerSlots);
+		this.message.read(buffer, messageSlots);
+	}
+
+	public void write(ChannelBuffer buffer) {
+		// 写入消息头
+		this.header.write(buffer, headerSlots);
+		// 写入消息体
+		this.message.write(buffer, messageSlots);
 	}
-	
+
+	/**
+	 * 估算写入后的字节数
+	 * 
+	 * @return
+	 */
+	public int estimateLength() {
+		return this.header.estimateLength(headerSlots) + this.message.estimateLength(messageSlots);
+	}
+
+	/**
+	 * 清除所有外在值，以便重复使用
+	 */
+	public void clear() {
+		headerSlots.clear();
+		messageSlots.clear();
+	}
+
 	public int getMessageId (){
 		return (Integer) this.message.intrinsicValues[0];
 	}
 
+	/**
+	 * 获取消息头外在值，基本类型会装箱，未设置时返回null
+	 */
+	public Object getHeaderValue(String fieldName) {
+		return getValue(header, headerSlots, fieldName);
+	}
+
+	/**
+	 * 设置消息头外在值，null表示清除
+	 */
+	public void setHeaderValue(String fieldName, Object value) {
+		setValue(header, headerSlots, fieldName, value);
+	}
+
+	/**
+	 * 获取消息体外在值，基本类型会装箱，未设置时返回null
+	 */
+	public Object getMessageValue(String fieldName) {
+		return getValue(message, messageSlots, fieldName);
+	}
+
+	/**
+	 * 设置消息体外在值，null表示清除
+	 */
+	public void setMessageValue(String fieldName, Object value) {
+		setValue(message, messageSlots, fieldName, value);
+	}
+
+	public int getHeaderInt(String fieldName) {
+		return (int) header.getLong(getFieldPos(header, fieldName), headerSlots);
+	}
+
+	public void setHeaderInt(String fieldName, int value) {
+		headerSlots.setInt(getFieldPos(header, fieldName), value);
+	}
+
+	/**
+	 * 获取基本类型的字段值，未设置外在值时返回内在值或0
+	 */
+	public int getMessageInt(String fieldName) {
+		return (int) message.getLong(getFieldPos(message, fieldName), messageSlots);
+	}
+
+	public void setMessageInt(String fieldName, int value) {
+		messageSlots.setInt(getFieldPos(message, fieldName), value);
+	}
+
+	public long getMessageLong(String fieldName) {
+		return message.getLong(getFieldPos(message, fieldName), messageSlots);
+	}
+
+	public void setMessageLong(String fieldName, long value) {
+		messageSlots.setLong(getFieldPos(message, fieldName), value);
+	}
+
+	private Object getValue(ProtocolEntity entity, ProtocolSlots slots, String fieldName) {
+		int pos = getFieldPos(entity, fieldName);
+		return slots.isAssigned(pos) ? entity.getValue(pos, slots) : null;
+	}
+
+	private void setValue(ProtocolEntity entity, ProtocolSlots slots, String fieldName, Object value) {
+		int pos = getFieldPos(entity, fieldName);
+		if (value != null && entity.getProtocolField(pos).getFieldType().isPrimitive()) {
+			slots.setLong(pos, entity.getProtocolField(pos).getFieldType().longValue(value));
+		} else {
+			slots.setObject(pos, value);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private int getFieldPos(ProtocolEntity entity, String fieldName) {
+		ProtocolField field = entity.getProtocolField(fieldName);
+		if (field == null) {
+			throw new ProtocolParamValidationException("field not found,messageId:" + getMessageId() + ",name:"
+					+ fieldName);
+		}
+		return field.getFieldPos();
+	}
+
 	public ProtocolHeader getHeader() {
 		return header;
 	}
@@ -62,12 +182,12 @@ public class ConstructedMessage{
 	public ProtocolMessage getMessage() {
 		return message;
 	}
-	
-	public Object[] getHeaderValues() {
-		return headerValues;
+
+	public ProtocolSlots getHeaderSlots() {
+		return headerSlots;
 	}
 
-	public Object[] getMessageValues() {
-		return messageValues;
+	public ProtocolSlots getMessageSlots() {
+		return messageSlots;
 	}
 }
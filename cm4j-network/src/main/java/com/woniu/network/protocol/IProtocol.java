@@ -2,4 +2,10 @@ package com.woniu.network.protocol;
 
 public interface IProtocol {
 
+	/**
+	 * 消息体的messageId，用于查找编解码器和处理器
+	 * 
+	 * @return
+	 */
+	int getMessageId();
 }
@@ -0,0 +1,24 @@
+package com.woniu.network.protocol;
+
+import java.util.List;
+
+/**
+ * 一次写出的多条协议<br>
+ * 由{@link com.woniu.network.handler.codec.ProtocolEncoder}依次编码到同一个buffer中，多条消息合并为一次socket写
+ */
+public class ProtocolBatch {
+
+	private final List<IProtocol> protocols;
+
+	public ProtocolBatch(List<IProtocol> protocols) {
+		this.protocols = protocols;
+	}
+
+	public List<IProtocol> getProtocols() {
+		return protocols;
+	}
+
+	public int size() {
+		return protocols.size();
+	}
+}
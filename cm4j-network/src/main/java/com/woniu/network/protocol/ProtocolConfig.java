@@ -1,6 +1,7 @@
 package com.woniu.network.protocol;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -20,8 +21,24 @@ public class ProtocolConfig {
 	 * @throws IOException
 	 */
 	public static XMLModel getProtocolConfiguration(String protocolLocation) throws JAXBException, IOException {
+		InputStream in = new ClassPathResource(protocolLocation).getInputStream();
+		try {
+			return getProtocolConfiguration(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 解析xml -> 对象，不关闭输入流
+	 * 
+	 * @param in
+	 * @return
+	 * @throws JAXBException
+	 */
+	public static XMLModel getProtocolConfiguration(InputStream in) throws JAXBException {
 		JAXBContext context = JAXBContext.newInstance(XMLModel.class);
 		Unmarshaller um = context.createUnmarshaller();
-		return (XMLModel) um.unmarshal(new ClassPathResource(protocolLocation).getInputStream());
+		return (XMLModel) um.unmarshal(in);
 	}
 }
@@ -1,7 +1,8 @@
 package com.woniu.network.protocol;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -22,14 +23,33 @@ public abstract class ProtocolEntity {
 	private LinkedHashMap<String, ProtocolField> fields;
 	// 内部状态 - 初始值，禁止修改
 	protected final Object[] intrinsicValues;
+	// 定长字段(含类型信息)的总字节数
+	private int fixedLength;
+	// 变长字段，估算长度时需要根据值计算
+	private List<ProtocolField> variableFields = new ArrayList<ProtocolField>();
+	// 按位置存放的字段及字段名
+	private final ProtocolField[] fieldArray;
+	private final String[] fieldNames;
 
 	public ProtocolEntity(int fieldNum) {
 		intrinsicValues = new Object[fieldNum];
 		this.fields = new LinkedHashMap<String, ProtocolField>(fieldNum);
+		this.fieldArray = new ProtocolField[fieldNum];
+		this.fieldNames = new String[fieldNum];
 	}
 
 	public void addProtocolField(String fieldName, ProtocolField field) {
 		fields.put(fieldName, field);
+		fieldArray[field.getFieldPos()] = field;
+		fieldNames[field.getFieldPos()] = fieldName;
+		if (hasTypeInfo()) {
+			fixedLength++;
+		}
+		if (field.getFieldType().getLength() < 0) {
+			variableFields.add(field);
+		} else {
+			fixedLength += field.getFieldType().getLength();
+		}
 	}
 
 	public Map<String, ProtocolField> getProtocolFields() {
@@ -54,30 +74,127 @@ public abstract class ProtocolEntity {
 	 * 将对象写入{@link ChannelBuffer}
 	 * 
 	 * @param buffer
-	 * @param extrinsicValues
+	 * @param slots
+	 *            外在值，可为null
 	 */
 	@SuppressWarnings("unchecked")
-	public void write(ChannelBuffer buffer, Object[] extrinsicValues) {
+	public void write(ChannelBuffer buffer, ProtocolSlots slots) {
 		// 写入前先进行重置参数，如argNum等，子类覆盖
 		rebuild();
 
-		Collection<ProtocolField> _fieldValues = fields.values();
-		boolean is_body = this instanceof ProtocolMessage;
-		for (ProtocolField protocolField : _fieldValues) {
-			// 优先写入外部值，无外部值，则写入内部值
-			protocolField.write(buffer, is_body,
-					extrinsicValues[protocolField.getFieldPos()] == null ? intrinsicValues[protocolField.getFieldPos()]
-							: extrinsicValues[protocolField.getFieldPos()]);
+		boolean is_body = hasTypeInfo();
+		for (int pos = 0; pos < fieldArray.length; pos++) {
+			ProtocolFieldType type = fieldArray[pos].getFieldType();
+			if (is_body) {
+				buffer.writeByte(type.getType());
+			}
+			if (type.isPrimitive()) {
+				type.putLong(buffer, getLong(pos, slots));
+			} else {
+				type.put(buffer, getObject(pos, slots));
+			}
 		}
 	}
 
 	/**
-	 * 从{@link ChannelBuffer}获取值并拼装为对象
+	 * 估算写入后的字节数，定长部分已预先算好，只需计算变长字段
+	 * 
+	 * @param slots
+	 *            外在值，可为null
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public int estimateLength(ProtocolSlots slots) {
+		int length = fixedLength;
+		for (ProtocolField protocolField : variableFields) {
+			length += protocolField.getFieldType().estimateLength(getObject(protocolField.getFieldPos(), slots));
+		}
+		return length;
+	}
+
+	/**
+	 * 基本类型字段的值：优先取外在值，无外在值则取内在值，都没有则为0
+	 */
+	protected long getLong(int pos, ProtocolSlots slots) {
+		if (slots != null && slots.isAssigned(pos)) {
+			return slots.getLong(pos);
+		}
+		Object intrinsicValue = intrinsicValues[pos];
+		return intrinsicValue == null ? 0L : fieldArray[pos].getFieldType().longValue(intrinsicValue);
+	}
+
+	/**
+	 * 非基本类型字段的值：优先取外在值，无外在值则取内在值，都没有则取类型默认值
+	 */
+	protected Object getObject(int pos, ProtocolSlots slots) {
+		if (slots != null && slots.isAssigned(pos)) {
+			return slots.getObject(pos);
+		}
+		if (intrinsicValues[pos] != null) {
+			return intrinsicValues[pos];
+		}
+		return fieldArray[pos].getFieldType().defaultValue();
+	}
+
+	/**
+	 * 字段的值(基本类型会装箱)，用于日志和按名称取值
+	 * 
+	 * @param pos
+	 * @param slots
+	 * @return
+	 */
+	public Object getValue(int pos, ProtocolSlots slots) {
+		ProtocolFieldType type = fieldArray[pos].getFieldType();
+		return type.isPrimitive() ? type.valueOf(getLong(pos, slots)) : getObject(pos, slots);
+	}
+
+	/**
+	 * 定长字段的总字节数，包含变长字段时返回-1
+	 * 
+	 * @return
+	 */
+	public int getFixedLength() {
+		return variableFields.isEmpty() ? fixedLength : -1;
+	}
+
+	/**
+	 * 每个字段前是否有1个字节的类型信息
+	 * 
+	 * @return
+	 */
+	protected boolean hasTypeInfo() {
+		return false;
+	}
+
+	/**
+	 * 从{@link ChannelBuffer}获取值放入slots
 	 * 
 	 * @param buffer
+	 * @param slots
+	 */
+	public abstract void read(ChannelBuffer buffer, ProtocolSlots slots);
+
+	public ProtocolSlots newSlots() {
+		return new ProtocolSlots(fieldArray.length);
+	}
+
+	public int getFieldNum() {
+		return fieldArray.length;
+	}
+
+	/**
+	 * 按位置获取字段，读写时按位置遍历，避免map迭代
+	 * 
+	 * @param pos
 	 * @return
 	 */
-	public abstract Object[] read(ChannelBuffer buffer);
+	public ProtocolField getProtocolField(int pos) {
+		return fieldArray[pos];
+	}
+
+	public String getFieldName(int pos) {
+		return fieldNames[pos];
+	}
 
 	/**
 	 * 重新构造当前类，需要子类覆盖<br>
@@ -29,10 +29,19 @@ public abstract class ProtocolFieldType<T> {
 	 * 名称(与配置一致)
 	 */
 	private String name;
+	/**
+	 * 写入buffer后占用的字节数，-1表示变长
+	 */
+	private int length;
 
 	public ProtocolFieldType(int type, String name) {
+		this(type, name, -1);
+	}
+
+	public ProtocolFieldType(int type, String name, int length) {
 		this.type = type;
 		this.name = name;
+		this.length = length;
 	}
 
 	/**
@@ -68,6 +77,80 @@ public abstract class ProtocolFieldType<T> {
 	 */
 	public abstract T decode(String value);
 
+	/**
+	 * 估算值写入buffer后占用的字节数，用于预分配buffer，变长类型需覆盖
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public int estimateLength(T value) {
+		return length;
+	}
+
+	/**
+	 * 是否为基本类型(byte/int/long/date)，基本类型可通过{@link #getLong(ChannelBuffer)}和
+	 * {@link #putLong(ChannelBuffer, long)}读写，避免装箱
+	 * 
+	 * @return
+	 */
+	public boolean isPrimitive() {
+		return false;
+	}
+
+	/**
+	 * 以long读取基本类型的值
+	 * 
+	 * @param buffer
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             非基本类型
+	 */
+	public long getLong(ChannelBuffer buffer) {
+		throw new UnsupportedOperationException("type " + name + " is not primitive");
+	}
+
+	/**
+	 * 以long写入基本类型的值，超出范围的部分被截断
+	 * 
+	 * @param buffer
+	 * @param value
+	 * @throws UnsupportedOperationException
+	 *             非基本类型
+	 */
+	public void putLong(ChannelBuffer buffer, long value) {
+		throw new UnsupportedOperationException("type " + name + " is not primitive");
+	}
+
+	public int getInt(ChannelBuffer buffer) {
+		return (int) getLong(buffer);
+	}
+
+	public void putInt(ChannelBuffer buffer, int value) {
+		putLong(buffer, value);
+	}
+
+	/**
+	 * 将long转为本类型的包装对象
+	 * 
+	 * @param value
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             非基本类型
+	 */
+	public T valueOf(long value) {
+		throw new UnsupportedOperationException("type " + name + " is not primitive");
+	}
+
+	/**
+	 * 将本类型的包装对象转为long
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public long longValue(Object value) {
+		return ((Number) value).longValue();
+	}
+
 	public int getType() {
 		return type;
 	}
@@ -84,7 +167,11 @@ public abstract class ProtocolFieldType<T> {
 		this.name = name;
 	}
 
-	public static final ProtocolFieldType<Byte> ByteType = new ProtocolFieldType<Byte>(BYTE_VALUE, "byte") {
+	public int getLength() {
+		return length;
+	}
+
+	public static final ProtocolFieldType<Byte> ByteType = new ProtocolFieldType<Byte>(BYTE_VALUE, "byte", 1) {
 		@Override
 		public Byte defaultValue() {
 			return 0;
@@ -104,9 +191,29 @@ public abstract class ProtocolFieldType<T> {
 		public Byte decode(String value) {
 			return Byte.decode(value);
 		};
+
+		@Override
+		public boolean isPrimitive() {
+			return true;
+		}
+
+		@Override
+		public long getLong(ChannelBuffer buffer) {
+			return buffer.readByte();
+		}
+
+		@Override
+		public void putLong(ChannelBuffer buffer, long value) {
+			buffer.writeByte((int) value);
+		}
+
+		@Override
+		public Byte valueOf(long value) {
+			return (byte) value;
+		}
 	};
 
-	public static final ProtocolFieldType<Integer> IntType = new ProtocolFieldType<Integer>(INT_VALUE, "int") {
+	public static final ProtocolFieldType<Integer> IntType = new ProtocolFieldType<Integer>(INT_VALUE, "int", 4) {
 		@Override
 		public Integer defaultValue() {
 			return 0;
@@ -127,6 +234,35 @@ public abstract class ProtocolFieldType<T> {
 			return Integer.decode(value);
 		};
 
+		@Override
+		public boolean isPrimitive() {
+			return true;
+		}
+
+		@Override
+		public long getLong(ChannelBuffer buffer) {
+			return buffer.readInt();
+		}
+
+		@Override
+		public void putLong(ChannelBuffer buffer, long value) {
+			buffer.writeInt((int) value);
+		}
+
+		@Override
+		public int getInt(ChannelBuffer buffer) {
+			return buffer.readInt();
+		}
+
+		@Override
+		public void putInt(ChannelBuffer buffer, int value) {
+			buffer.writeInt(value);
+		}
+
+		@Override
+		public Integer valueOf(long value) {
+			return (int) value;
+		}
 	};
 
 	public static final ProtocolFieldType<String> StringType = new ProtocolFieldType<String>(STRING_VALUE, "string") {
@@ -137,7 +273,7 @@ public abstract class ProtocolFieldType<T> {
 
 		@Override
 		public void put(ChannelBuffer buffer, String value) {
-			buffer.writeBytes(CodecUtil.encode(value, CharsetUtil.UTF_8));
+			CodecUtil.encode(buffer, value, CharsetUtil.UTF_8);
 		}
 
 		@Override
@@ -149,6 +285,12 @@ public abstract class ProtocolFieldType<T> {
 		public String decode(String value) {
 			return value;
 		};
+
+		@Override
+		public int estimateLength(String value) {
+			// 与写入时预留的长度一致，加结束符
+			return CodecUtil.maxEncodedLength(value, CharsetUtil.UTF_8) + 1;
+		}
 	};
 
 	public static final ProtocolFieldType<String> WStringType = new ProtocolFieldType<String>(WSTRING_VALUE, "wstring") {
@@ -159,12 +301,12 @@ public abstract class ProtocolFieldType<T> {
 
 		@Override
 		public void put(ChannelBuffer buffer, String value) {
-			buffer.writeBytes(CodecUtil.encodeW(value, CharsetUtil.UTF_16));
+			CodecUtil.encodeW(buffer, value, CharsetUtil.UTF_16);
 		}
 
 		@Override
 		public String get(ChannelBuffer buffer) {
-			return CodecUtil.decode(buffer, CharsetUtil.UTF_16);
+			return CodecUtil.decodeW(buffer, CharsetUtil.UTF_16);
 		}
 
 		@Override
@@ -172,9 +314,14 @@ public abstract class ProtocolFieldType<T> {
 			return value;
 		};
 
+		@Override
+		public int estimateLength(String value) {
+			// 与写入时预留的长度一致，加2个字节结束符
+			return CodecUtil.maxEncodedLength(value, CharsetUtil.UTF_16) + 2;
+		}
 	};
 
-	public static final ProtocolFieldType<Long> LongType = new ProtocolFieldType<Long>(LONG_VALUE, "long") {
+	public static final ProtocolFieldType<Long> LongType = new ProtocolFieldType<Long>(LONG_VALUE, "long", 8) {
 		@Override
 		public Long defaultValue() {
 			return 0L;
@@ -194,8 +341,28 @@ public abstract class ProtocolFieldType<T> {
 		public Long decode(String value) {
 			return Long.decode(value);
 		}
+
+		@Override
+		public boolean isPrimitive() {
+			return true;
+		}
+
+		@Override
+		public long getLong(ChannelBuffer buffer) {
+			return buffer.readLong();
+		}
+
+		@Override
+		public void putLong(ChannelBuffer buffer, long value) {
+			buffer.writeLong(value);
+		}
+
+		@Override
+		public Long valueOf(long value) {
+			return value;
+		}
 	};
-	public static final ProtocolFieldType<Long> DateType = new ProtocolFieldType<Long>(DATE_VALUE, "date") {
+	public static final ProtocolFieldType<Long> DateType = new ProtocolFieldType<Long>(DATE_VALUE, "date", 8) {
 		@Override
 		public Long defaultValue() {
 			return 0L;
@@ -215,6 +382,26 @@ public abstract class ProtocolFieldType<T> {
 		public Long decode(String value) {
 			return Long.decode(value);
 		};
+
+		@Override
+		public boolean isPrimitive() {
+			return true;
+		}
+
+		@Override
+		public long getLong(ChannelBuffer buffer) {
+			return buffer.readLong() * 1000;
+		}
+
+		@Override
+		public void putLong(ChannelBuffer buffer, long value) {
+			buffer.writeLong(value / 1000);
+		}
+
+		@Override
+		public Long valueOf(long value) {
+			return value;
+		}
 	};
 
 	@SuppressWarnings("rawtypes")
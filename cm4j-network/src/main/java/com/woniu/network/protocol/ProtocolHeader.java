@@ -1,8 +1,5 @@
 package com.woniu.network.protocol;
 
-import java.util.Map.Entry;
-import java.util.Set;
-
 import org.jboss.netty.buffer.ChannelBuffer;
 
 public class ProtocolHeader extends ProtocolEntity {
@@ -13,22 +10,28 @@ public class ProtocolHeader extends ProtocolEntity {
 
 	@SuppressWarnings("rawtypes")
 	@Override
-	public Object[] read(ChannelBuffer buffer) {
-		logger.info("------解析消息头开始------");
-		Set<Entry<String, ProtocolField>> entrySet = super.getProtocolFields().entrySet();
-		Object[] result = new Object[super.getProtocolFields().size()];
+	public void read(ChannelBuffer buffer, ProtocolSlots slots) {
+		boolean debug = logger.isDebugEnabled();
+		if (debug) {
+			logger.debug("------解析消息头开始------");
+		}
 
-		for (Entry<String, ProtocolField> entry : entrySet) {
-			String key = entry.getKey();
-			ProtocolField protocolField = entry.getValue();
+		for (int pos = 0; pos < getFieldNum(); pos++) {
+			ProtocolFieldType type = getProtocolField(pos).getFieldType();
 			// 消息头
-			Object value = protocolField.read(buffer);
-			result[protocolField.getFieldPos()] = value;
-
-			logger.info("{}={}[{}]", new Object[] { key, value, protocolField.getFieldType().getName() });
+			if (type.isPrimitive()) {
+				slots.setLong(pos, type.getLong(buffer));
+			} else {
+				slots.setObject(pos, type.get(buffer));
+			}
+
+			if (debug) {
+				logger.debug("{}={}[{}]", new Object[] { getFieldName(pos), getValue(pos, slots), type.getName() });
+			}
 		}
 
-		logger.info("------解析消息头完成------");
-		return result;
+		if (debug) {
+			logger.debug("------解析消息头完成------");
+		}
 	}
 }
@@ -1,9 +1,5 @@
 package com.woniu.network.protocol;
 
-import java.util.Map.Entry;
-import java.util.Set;
-
-import org.apache.commons.lang.ObjectUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 
 import com.woniu.network.exception.ProtocolTypeDismatchException;
@@ -17,54 +13,77 @@ import com.woniu.network.exception.ProtocolValueDismatchException;
  */
 public class ProtocolMessage extends ProtocolEntity {
 
+	private volatile boolean argNumBuilt;
+
 	public ProtocolMessage(int fieldNum) {
 		super(fieldNum);
 	}
 
+	@Override
+	protected boolean hasTypeInfo() {
+		return true;
+	}
+
 	@SuppressWarnings({ "rawtypes" })
 	@Override
 	public void rebuild() {
 		// 调用父类rebuild()
 		super.rebuild();
+		// argNum只与字段数有关，只需设置一次
+		if (argNumBuilt) {
+			return;
+		}
 		// 重新修改Message类，更改argNum的值(不包含argNum本身)
 		ProtocolField argNumField = super.getProtocolFields().get("argNum");
 		if (argNumField != null) {
 			super.intrinsicValues[argNumField.getFieldPos()] = argNumField.getFieldType().decode(
-					ObjectUtils.toString(super.getProtocolFields().size() - 1));
+					String.valueOf(super.getFieldNum() - 1));
 		}
+		argNumBuilt = true;
 	}
 
 	@SuppressWarnings({ "rawtypes" })
 	@Override
-	public Object[] read(ChannelBuffer buffer) {
-		logger.info("++++++解析消息体开始++++++");
-		Object[] result = new Object[super.getProtocolFields().size()];
+	public void read(ChannelBuffer buffer, ProtocolSlots slots) {
+		boolean debug = logger.isDebugEnabled();
+		if (debug) {
+			logger.debug("++++++解析消息体开始++++++");
+		}
 
-		Set<Entry<String, ProtocolField>> entrySet = super.getProtocolFields().entrySet();
-		for (Entry<String, ProtocolField> entry : entrySet) {
-			String key = entry.getKey();
-			ProtocolField protocolField = entry.getValue();
+		for (int pos = 0; pos < getFieldNum(); pos++) {
+			ProtocolFieldType fieldType = getProtocolField(pos).getFieldType();
 
 			// 消息体：每个数据前都包含有1个字节的类型信息
 			// 类型校验(读取的类型与配置中的类型校验)
 			int type = buffer.readByte();
-			if (type != protocolField.getFieldType().getType()) {
-				throw new ProtocolTypeDismatchException("xml name:" + key + ",type:"
-						+ protocolField.getFieldType().toString() + ",actual:" + type);
+			if (type != fieldType.getType()) {
+				throw new ProtocolTypeDismatchException("xml name:" + getFieldName(pos) + ",type:"
+						+ fieldType.toString() + ",actual:" + type);
 			}
 			// 配置中有值，发送过来的值和配置值不一致，则报错
-			Object value = protocolField.read(buffer);
-			if (super.intrinsicValues[protocolField.getFieldPos()] != null
-					&& !ObjectUtils.toString(value).equals(
-							ObjectUtils.toString(super.intrinsicValues[protocolField.getFieldPos()]))) {
-				throw new ProtocolValueDismatchException("xml name:" + key + ",value:"
-						+ super.intrinsicValues[protocolField.getFieldPos()] + ",actual:" + value);
+			Object intrinsicValue = super.intrinsicValues[pos];
+			if (fieldType.isPrimitive()) {
+				long value = fieldType.getLong(buffer);
+				if (intrinsicValue != null && fieldType.longValue(intrinsicValue) != value) {
+					throw new ProtocolValueDismatchException("xml name:" + getFieldName(pos) + ",value:"
+							+ intrinsicValue + ",actual:" + value);
+				}
+				slots.setLong(pos, value);
+			} else {
+				Object value = fieldType.get(buffer);
+				if (intrinsicValue != null && !intrinsicValue.equals(value)) {
+					throw new ProtocolValueDismatchException("xml name:" + getFieldName(pos) + ",value:"
+							+ intrinsicValue + ",actual:" + value);
+				}
+				slots.setObject(pos, value);
 			}
-			result[protocolField.getFieldPos()] = value;
 
-			logger.info("{}={}[{}]", new Object[] { key, value, protocolField.getFieldType().getName() });
+			if (debug) {
+				logger.debug("{}={}[{}]", new Object[] { getFieldName(pos), getValue(pos, slots), fieldType.getName() });
+			}
+		}
+		if (debug) {
+			logger.debug("++++++解析消息体完成++++++");
 		}
-		logger.info("++++++解析消息体完成++++++");
-		return result;
 	}
 }
@@ -0,0 +1,65 @@
+package com.woniu.network.protocol;
+
+import java.util.Arrays;
+
+/**
+ * 消息头或消息体的外在值，按字段位置存放<br>
+ * 基本类型存放在long[]中，字符串存放在Object[]中，读写基本类型不装箱；
+ * 调用{@link #clear()}后可重复使用，稳定运行时解码→处理→编码不产生新对象
+ */
+public class ProtocolSlots {
+
+	private final long[] primitives;
+	private final Object[] objects;
+	// 是否设置了外在值，未设置时写入内在值或默认值
+	private final boolean[] assigned;
+
+	public ProtocolSlots(int fieldNum) {
+		this.primitives = new long[fieldNum];
+		this.objects = new Object[fieldNum];
+		this.assigned = new boolean[fieldNum];
+	}
+
+	public int size() {
+		return assigned.length;
+	}
+
+	public boolean isAssigned(int pos) {
+		return assigned[pos];
+	}
+
+	public long getLong(int pos) {
+		return primitives[pos];
+	}
+
+	public int getInt(int pos) {
+		return (int) primitives[pos];
+	}
+
+	public Object getObject(int pos) {
+		return objects[pos];
+	}
+
+	public void setLong(int pos, long value) {
+		primitives[pos] = value;
+		assigned[pos] = true;
+	}
+
+	public void setInt(int pos, int value) {
+		setLong(pos, value);
+	}
+
+	public void setObject(int pos, Object value) {
+		objects[pos] = value;
+		assigned[pos] = value != null;
+	}
+
+	/**
+	 * 清除所有外在值
+	 */
+	public void clear() {
+		Arrays.fill(primitives, 0L);
+		Arrays.fill(objects, null);
+		Arrays.fill(assigned, false);
+	}
+}
@@ -0,0 +1,10 @@
+package com.woniu.network.protocol.codec;
+
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 由{@link ProtocolCodecGenerator}生成的消息父类，字段均为基本类型
+ */
+public abstract class CodecMessage implements IProtocol {
+
+}
@@ -0,0 +1,41 @@
+package com.woniu.network.protocol.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * 单个消息的编解码器，由{@link ProtocolCodecGenerator}根据protocol.xml生成
+ * 
+ * @param <T>
+ */
+public interface MessageCodec<T extends CodecMessage> {
+
+	int getMessageId();
+
+	T newMessage();
+
+	/**
+	 * 估算写入后的字节数，用于预分配buffer
+	 * 
+	 * @param message
+	 * @return
+	 */
+	int estimateLength(T message);
+
+	/**
+	 * 写入消息头和消息体，消息头中的length由调用方重设
+	 * 
+	 * @param buffer
+	 * @param message
+	 */
+	void write(ChannelBuffer buffer, T message);
+
+	/**
+	 * 读取消息头和消息体到message中
+	 * 
+	 * @param buffer
+	 * @param message
+	 * @throws com.woniu.network.exception.ProtocolTypeDismatchException
+	 * @throws com.woniu.network.exception.ProtocolValueDismatchException
+	 */
+	void read(ChannelBuffer buffer, T message);
+}
@@ -0,0 +1,28 @@
+package com.woniu.network.protocol.codec;
+
+import com.woniu.network.exception.ProtocolTypeDismatchException;
+import com.woniu.network.exception.ProtocolValueDismatchException;
+
+/**
+ * 生成的编解码器使用的校验方法，与{@link com.woniu.network.protocol.ProtocolMessage#read}的校验一致
+ */
+public class MessageCodecSupport {
+
+	public static void checkType(String name, int expected, int actual) {
+		if (expected != actual) {
+			throw new ProtocolTypeDismatchException("xml name:" + name + ",type:" + expected + ",actual:" + actual);
+		}
+	}
+
+	public static void checkValue(String name, long expected, long actual) {
+		if (expected != actual) {
+			throw new ProtocolValueDismatchException("xml name:" + name + ",value:" + expected + ",actual:" + actual);
+		}
+	}
+
+	public static void checkValue(String name, String expected, String actual) {
+		if (!expected.equals(actual)) {
+			throw new ProtocolValueDismatchException("xml name:" + name + ",value:" + expected + ",actual:" + actual);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.woniu.network.protocol.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.util.IntDispatchTable;
+
+/**
+ * 已注册的{@link MessageCodec}，未注册的消息走{@link com.woniu.network.protocol.ConstructedMessage}<br>
+ * 默认不注册任何编解码器；network.properties中配置protocol.generatedCodecs=true时，类加载时加载生成的注册类，
+ * 其messageId收到的消息为生成的消息类，处理器须实现{@link com.woniu.network.handler.server.executor.MessageExecutor}
+ *
+ * <pre>
+ * protocol.generatedCodecs   是否启用生成的编解码器，默认false
+ * protocol.codecRegistry     生成的注册类，默认{@value #GENERATED_REGISTRY}，应用自己生成代码时配置
+ * </pre>
+ */
+public class MessageCodecs {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageCodecs.class);
+
+	/**
+	 * 生成的注册类，在其静态块中注册所有编解码器
+	 */
+	public static final String GENERATED_REGISTRY = "com.woniu.network.protocol.generated.GeneratedMessageCodecs";
+
+	private static volatile IntDispatchTable<MessageCodec<?>> codecs = IntDispatchTable.empty();
+
+	static {
+		if (MessageConfiguration.getBoolean("protocol.generatedCodecs", false)) {
+			String registry = MessageConfiguration.getOptionalValue("protocol.codecRegistry");
+			try {
+				loadRegistry(registry == null ? GENERATED_REGISTRY : registry.trim());
+			} catch (IllegalArgumentException e) {
+				logger.error("load generated codec error", e);
+			}
+		}
+	}
+
+	/**
+	 * 加载生成的注册类，由其静态块注册所有编解码器
+	 *
+	 * @param className
+	 */
+	public static void loadRegistry(String className) {
+		try {
+			Class.forName(className);
+			logger.debug("generated codec loaded:{}", className);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("no generated codec registry found:" + className, e);
+		}
+	}
+
+	public static synchronized void register(MessageCodec<?> codec) {
+		codecs = codecs.with(codec.getMessageId(), codec);
+	}
+
+	/**
+	 * @param messageId
+	 * @return 未注册时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends CodecMessage> MessageCodec<T> get(int messageId) {
+		return (MessageCodec<T>) codecs.get(messageId);
+	}
+}
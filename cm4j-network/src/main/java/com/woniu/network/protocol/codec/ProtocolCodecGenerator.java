@@ -0,0 +1,519 @@
+package com.woniu.network.protocol.codec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.exception.ProtocolParamValidationException;
+import com.woniu.network.protocol.ProtocolConfig;
+import com.woniu.network.protocol.ProtocolFieldType;
+import com.woniu.network.protocol.xmlmodel.Field;
+import com.woniu.network.protocol.xmlmodel.Message;
+import com.woniu.network.protocol.xmlmodel.XMLModel;
+
+/**
+ * 根据protocol.xml生成编解码代码，每个消息生成一个字段均为基本类型的消息类和一个编解码器，
+ * 编解码时按配置顺序直接读写buffer，没有map查找和装箱<br>
+ * 修改protocol.xml后执行 mvn -Pcodegen process-classes 重新生成，生成的代码需提交，
+ * ProtocolCodecGeneratorTest检查提交的代码与protocol.xml一致<br>
+ * 应用使用自己的protocol.xml时，在应用中生成到自己的包，并配置protocol.codecRegistry，见{@link MessageCodecs}
+ *
+ * <pre>
+ * 参数：[protocol.xml的classpath路径] [输出目录] [包名]
+ * </pre>
+ */
+public class ProtocolCodecGenerator {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProtocolCodecGenerator.class);
+
+	public static final String DEFAULT_PACKAGE = "com.woniu.network.protocol.generated";
+
+	private static final String HEADER_CLASS = "MessageHeader";
+	private static final String HEADER_CODEC_CLASS = "MessageHeaderCodec";
+	private static final String REGISTRY_CLASS = "GeneratedMessageCodecs";
+
+	private final XMLModel xmlModel;
+	private final String packageName;
+
+	public ProtocolCodecGenerator(XMLModel xmlModel, String packageName) {
+		this.xmlModel = xmlModel;
+		this.packageName = packageName;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String protocolLocation = args.length > 0 ? args[0] : "protocol.xml";
+		File outputDir = new File(args.length > 1 ? args[1] : "src/main/java");
+		String packageName = args.length > 2 ? args[2] : DEFAULT_PACKAGE;
+
+		XMLModel xmlModel = ProtocolConfig.getProtocolConfiguration(protocolLocation);
+		new ProtocolCodecGenerator(xmlModel, packageName).generate(outputDir);
+	}
+
+	/**
+	 * 生成所有代码到outputDir下对应包目录中
+	 *
+	 * @param outputDir
+	 * @throws IOException
+	 */
+	public void generate(File outputDir) throws IOException {
+		File dir = getPackageDir(outputDir);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("can not create dir:" + dir);
+		}
+
+		Map<String, String> sources = generateSources();
+		for (Entry<String, String> entry : sources.entrySet()) {
+			write(dir, entry.getKey(), entry.getValue());
+		}
+		logger.info("generated {} message codecs to {}", xmlModel.getMessages().getMessage().length, dir);
+	}
+
+	/**
+	 * 生成所有代码，不写文件
+	 *
+	 * @return 类名 -> 源码
+	 */
+	public Map<String, String> generateSources() {
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		Field[] headerFields = xmlModel.getHeader().getField();
+		checkHeader(headerFields);
+		sources.put(HEADER_CLASS, headerClass(headerFields));
+		sources.put(HEADER_CODEC_CLASS, headerCodecClass(headerFields));
+
+		Message[] messages = xmlModel.getMessages().getMessage();
+		for (Message message : messages) {
+			Field[] fields = message.getField();
+			checkMessage(headerFields, fields);
+			String className = messageClassName(message);
+			sources.put(className, messageClass(className, fields));
+			sources.put(className + "Codec", messageCodecClass(className, fields));
+		}
+		sources.put(REGISTRY_CLASS, registryClass(messages));
+		return sources;
+	}
+
+	/**
+	 * 生成代码所在的包目录
+	 */
+	public File getPackageDir(File outputDir) {
+		return new File(outputDir, packageName.replace('.', File.separatorChar));
+	}
+
+	private void checkHeader(Field[] headerFields) {
+		if (headerFields.length == 0 || !"int".equals(headerFields[0].getType())) {
+			throw new ProtocolParamValidationException("the first field of header should be int length");
+		}
+		for (Field field : headerFields) {
+			if (type(field).getLength() < 0) {
+				throw new ProtocolParamValidationException("the header in xml should not contain string field");
+			}
+		}
+	}
+
+	private void checkMessage(Field[] headerFields, Field[] fields) {
+		if (fields.length == 0 || !"int".equals(fields[0].getType()) || fields[0].getValue() == null) {
+			throw new ProtocolParamValidationException("the first field of message should be int messageId with value");
+		}
+		Set<String> names = new HashSet<String>();
+		for (Field field : headerFields) {
+			names.add(field.getName());
+		}
+		for (Field field : fields) {
+			if (!names.add(field.getName())) {
+				throw new ProtocolParamValidationException("the field name is duplicated with header,name:"
+						+ field.getName());
+			}
+		}
+	}
+
+	private String messageClassName(Message message) {
+		int messageId = ProtocolFieldType.IntType.decode(message.getField()[0].getValue());
+		return "Message" + Integer.toHexString(messageId).toUpperCase();
+	}
+
+	// ----------------------------------- 消息类 -----------------------------------
+
+	private String headerClass(Field[] fields) {
+		Source s = new Source();
+		s.line("package " + packageName + ";");
+		s.line("");
+		s.line("import " + CodecMessage.class.getName() + ";");
+		s.line("");
+		s.generatedComment();
+		s.line("public abstract class " + HEADER_CLASS + " extends " + CodecMessage.class.getSimpleName() + " {");
+		s.line("");
+		for (Field field : fields) {
+			s.line(1, "private " + javaType(field) + " " + field.getName() + initializer(field) + ";");
+		}
+		for (Field field : fields) {
+			accessors(s, field);
+		}
+		s.line("}");
+		return s.toString();
+	}
+
+	private String messageClass(String className, Field[] fields) {
+		Source s = new Source();
+		s.line("package " + packageName + ";");
+		s.line("");
+		s.generatedComment();
+		s.line("public class " + className + " extends " + HEADER_CLASS + " {");
+		s.line("");
+		// 配置了值的字段为常量，读取时校验
+		for (Field field : fields) {
+			if (field.getValue() != null) {
+				s.line(1, "public static final " + javaType(field) + " " + constantName(field) + " = "
+						+ literal(field) + ";");
+			}
+		}
+		s.line("");
+		for (Field field : fields) {
+			if (field.getValue() == null) {
+				s.line(1, "private " + javaType(field) + " " + field.getName() + initializer(field) + ";");
+			}
+		}
+		for (Field field : fields) {
+			if (field.getValue() == null) {
+				accessors(s, field);
+			} else {
+				s.line("");
+				if ("getMessageId".equals(getter(field))) {
+					s.line(1, "@Override");
+				}
+				s.line(1, "public " + javaType(field) + " " + getter(field) + "() {");
+				s.line(2, "return " + constantName(field) + ";");
+				s.line(1, "}");
+			}
+		}
+		if (!"getMessageId".equals(getter(fields[0]))) {
+			s.line("");
+			s.line(1, "@Override");
+			s.line(1, "public int getMessageId() {");
+			s.line(2, "return " + constantName(fields[0]) + ";");
+			s.line(1, "}");
+		}
+		s.line("}");
+		return s.toString();
+	}
+
+	private void accessors(Source s, Field field) {
+		String name = field.getName();
+		s.line("");
+		s.line(1, "public " + javaType(field) + " " + getter(field) + "() {");
+		s.line(2, "return " + name + ";");
+		s.line(1, "}");
+		s.line("");
+		s.line(1, "public void set" + StringUtils.capitalize(name) + "(" + javaType(field) + " " + name + ") {");
+		s.line(2, "this." + name + " = " + name + ";");
+		s.line(1, "}");
+	}
+
+	// ----------------------------------- 编解码器 -----------------------------------
+
+	private String headerCodecClass(Field[] fields) {
+		int length = 0;
+		for (Field field : fields) {
+			length += type(field).getLength();
+		}
+
+		Source s = new Source();
+		s.line("package " + packageName + ";");
+		s.line("");
+		s.line("import org.jboss.netty.buffer.ChannelBuffer;");
+		s.line("");
+		s.generatedComment();
+		s.line("public final class " + HEADER_CODEC_CLASS + " {");
+		s.line("");
+		s.line(1, "public static final int LENGTH = " + length + ";");
+		s.line("");
+		s.line(1, "private " + HEADER_CODEC_CLASS + "() {");
+		s.line(1, "}");
+		s.line("");
+		s.line(1, "public static void write(ChannelBuffer buffer, " + HEADER_CLASS + " message) {");
+		for (Field field : fields) {
+			s.line(2, writeStatement(field, "message." + getter(field) + "()"));
+		}
+		s.line(1, "}");
+		s.line("");
+		s.line(1, "public static void read(ChannelBuffer buffer, " + HEADER_CLASS + " message) {");
+		for (Field field : fields) {
+			s.line(2, "message.set" + StringUtils.capitalize(field.getName()) + "(" + readExpression(field) + ");");
+		}
+		s.line(1, "}");
+		s.line("}");
+		return s.toString();
+	}
+
+	private String messageCodecClass(String className, Field[] fields) {
+		// 定长部分：每个字段1个字节的类型信息 + 定长字段
+		int fixedLength = 0;
+		for (Field field : fields) {
+			fixedLength += 1 + Math.max(type(field).getLength(), 0);
+		}
+
+		Source s = new Source();
+		s.line("package " + packageName + ";");
+		s.line("");
+		s.line("import org.jboss.netty.buffer.ChannelBuffer;");
+		s.line("");
+		s.line("import " + ProtocolFieldType.class.getName() + ";");
+		s.line("import " + MessageCodec.class.getName() + ";");
+		s.line("import " + MessageCodecSupport.class.getName() + ";");
+		s.line("");
+		s.generatedComment();
+		s.line("public class " + className + "Codec implements " + MessageCodec.class.getSimpleName() + "<"
+				+ className + "> {");
+		s.line("");
+		s.line(1, "private static final int FIXED_LENGTH = " + HEADER_CODEC_CLASS + ".LENGTH + " + fixedLength + ";");
+		s.line("");
+		s.line(1, "@Override");
+		s.line(1, "public int getMessageId() {");
+		s.line(2, "return " + className + "." + constantName(fields[0]) + ";");
+		s.line(1, "}");
+		s.line("");
+		s.line(1, "@Override");
+		s.line(1, "public " + className + " newMessage() {");
+		s.line(2, "return new " + className + "();");
+		s.line(1, "}");
+
+		s.line("");
+		s.line(1, "@Override");
+		s.line(1, "public int estimateLength(" + className + " message) {");
+		StringBuilder estimate = new StringBuilder("FIXED_LENGTH");
+		for (Field field : fields) {
+			if (type(field).getLength() < 0) {
+				estimate.append("\n\t\t\t\t+ ProtocolFieldType.").append(typeConstant(field))
+						.append(".estimateLength(message.").append(getter(field)).append("())");
+			}
+		}
+		s.line(2, "return " + estimate + ";");
+		s.line(1, "}");
+
+		s.line("");
+		s.line(1, "@Override");
+		s.line(1, "public void write(ChannelBuffer buffer, " + className + " message) {");
+		s.line(2, HEADER_CODEC_CLASS + ".write(buffer, message);");
+		for (Field field : fields) {
+			s.line(2, "buffer.writeByte(ProtocolFieldType." + typeValueConstant(field) + ");");
+			s.line(2, writeStatement(field, "message." + getter(field) + "()"));
+		}
+		s.line(1, "}");
+
+		s.line("");
+		s.line(1, "@Override");
+		s.line(1, "public void read(ChannelBuffer buffer, " + className + " message) {");
+		s.line(2, HEADER_CODEC_CLASS + ".read(buffer, message);");
+		for (Field field : fields) {
+			String name = field.getName();
+			s.line(2, "MessageCodecSupport.checkType(\"" + name + "\", ProtocolFieldType." + typeValueConstant(field)
+					+ ", buffer.readByte());");
+			if (field.getValue() != null) {
+				s.line(2, "MessageCodecSupport.checkValue(\"" + name + "\", " + className + "."
+						+ constantName(field) + ", " + readExpression(field) + ");");
+			} else {
+				s.line(2, "message.set" + StringUtils.capitalize(name) + "(" + readExpression(field) + ");");
+			}
+		}
+		s.line(1, "}");
+		s.line("}");
+		return s.toString();
+	}
+
+	private String registryClass(Message[] messages) {
+		Source s = new Source();
+		s.line("package " + packageName + ";");
+		s.line("");
+		s.line("import " + MessageCodecs.class.getName() + ";");
+		s.line("");
+		s.generatedComment();
+		s.line("public final class " + REGISTRY_CLASS + " {");
+		s.line("");
+		s.line(1, "static {");
+		for (Message message : messages) {
+			s.line(2, "MessageCodecs.register(new " + messageClassName(message) + "Codec());");
+		}
+		s.line(1, "}");
+		s.line("");
+		s.line(1, "private " + REGISTRY_CLASS + "() {");
+		s.line(1, "}");
+		s.line("}");
+		return s.toString();
+	}
+
+	// ----------------------------------- 类型映射 -----------------------------------
+
+	@SuppressWarnings("rawtypes")
+	private static ProtocolFieldType type(Field field) {
+		return ProtocolFieldType.getType(field.getType());
+	}
+
+	private static String javaType(Field field) {
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "byte";
+		case ProtocolFieldType.INT_VALUE:
+			return "int";
+		case ProtocolFieldType.LONG_VALUE:
+		case ProtocolFieldType.DATE_VALUE:
+			return "long";
+		default:
+			return "String";
+		}
+	}
+
+	private static String typeConstant(Field field) {
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "ByteType";
+		case ProtocolFieldType.INT_VALUE:
+			return "IntType";
+		case ProtocolFieldType.LONG_VALUE:
+			return "LongType";
+		case ProtocolFieldType.DATE_VALUE:
+			return "DateType";
+		case ProtocolFieldType.STRING_VALUE:
+			return "StringType";
+		default:
+			return "WStringType";
+		}
+	}
+
+	private static String typeValueConstant(Field field) {
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "BYTE_VALUE";
+		case ProtocolFieldType.INT_VALUE:
+			return "INT_VALUE";
+		case ProtocolFieldType.LONG_VALUE:
+			return "LONG_VALUE";
+		case ProtocolFieldType.DATE_VALUE:
+			return "DATE_VALUE";
+		case ProtocolFieldType.STRING_VALUE:
+			return "STRING_VALUE";
+		default:
+			return "WSTRING_VALUE";
+		}
+	}
+
+	private static String writeStatement(Field field, String value) {
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "buffer.writeByte(" + value + ");";
+		case ProtocolFieldType.INT_VALUE:
+			return "buffer.writeInt(" + value + ");";
+		case ProtocolFieldType.LONG_VALUE:
+			return "buffer.writeLong(" + value + ");";
+		case ProtocolFieldType.DATE_VALUE:
+			return "buffer.writeLong(" + value + " / 1000);";
+		default:
+			return "ProtocolFieldType." + typeConstant(field) + ".put(buffer, " + value + ");";
+		}
+	}
+
+	private static String readExpression(Field field) {
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "buffer.readByte()";
+		case ProtocolFieldType.INT_VALUE:
+			return "buffer.readInt()";
+		case ProtocolFieldType.LONG_VALUE:
+			return "buffer.readLong()";
+		case ProtocolFieldType.DATE_VALUE:
+			return "buffer.readLong() * 1000";
+		default:
+			return "ProtocolFieldType." + typeConstant(field) + ".get(buffer)";
+		}
+	}
+
+	/**
+	 * 字段初始值：配置的值，无配置时基本类型为0，字符串为""
+	 */
+	private static String initializer(Field field) {
+		if (field.getValue() != null) {
+			return " = " + literal(field);
+		}
+		return "String".equals(javaType(field)) ? " = \"\"" : "";
+	}
+
+	private static String literal(Field field) {
+		Object value = type(field).decode(field.getValue());
+		switch (type(field).getType()) {
+		case ProtocolFieldType.BYTE_VALUE:
+			return "(byte) " + value;
+		case ProtocolFieldType.INT_VALUE:
+			return "0x" + Integer.toHexString((Integer) value);
+		case ProtocolFieldType.LONG_VALUE:
+		case ProtocolFieldType.DATE_VALUE:
+			return value + "L";
+		default:
+			return "\"" + StringUtils.replace(StringUtils.replace((String) value, "\\", "\\\\"), "\"", "\\\"")
+					+ "\"";
+		}
+	}
+
+	private static String getter(Field field) {
+		return "get" + StringUtils.capitalize(field.getName());
+	}
+
+	/**
+	 * messageId -> MESSAGE_ID
+	 */
+	private static String constantName(Field field) {
+		String name = field.getName();
+		StringBuilder sb = new StringBuilder(name.length() + 4);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c) && i > 0) {
+				sb.append('_');
+			}
+			sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	private static void write(File dir, String className, String source) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, className + ".java")), "UTF-8");
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static class Source {
+		private final StringBuilder sb = new StringBuilder(4096);
+
+		void line(String line) {
+			sb.append(line).append('\n');
+		}
+
+		void line(int indent, String line) {
+			for (int i = 0; i < indent; i++) {
+				sb.append('\t');
+			}
+			line(line);
+		}
+
+		void generatedComment() {
+			line("/**");
+			line(" * 由" + ProtocolCodecGenerator.class.getSimpleName() + "根据protocol.xml生成，请勿手工修改");
+			line(" */");
+		}
+
+		@Override
+		public String toString() {
+			return sb.toString();
+		}
+	}
+}
@@ -1,17 +1,19 @@
 package com.woniu.network.protocol.factory;
 
-import java.util.concurrent.ConcurrentHashMap;
-
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.woniu.network.exception.MessageTypeNotFoundException;
 import com.woniu.network.exception.ProtocolParamValidationException;
 import com.woniu.network.protocol.ConstructedMessage;
 import com.woniu.network.protocol.ProtocolConfig;
+import com.woniu.network.protocol.ProtocolEntity;
+import com.woniu.network.protocol.ProtocolFieldType;
 import com.woniu.network.protocol.xmlmodel.Header;
 import com.woniu.network.protocol.xmlmodel.Message;
 import com.woniu.network.protocol.xmlmodel.XMLModel;
+import com.woniu.network.util.IntDispatchTable;
 
 /**
  * Protocol工厂类
@@ -27,8 +29,12 @@ public class ProtocolFactory {
 		public static ProtocolFactory instance = new ProtocolFactory();
 	}
 
-	private ConcurrentHashMap<String, ConstructedMessage> keyValue = new ConcurrentHashMap<String, ConstructedMessage>(
-			5);
+	// 按messageId查找，解码时每条消息都会查一次
+	private volatile IntDispatchTable<ConstructedMessage> prototypes = IntDispatchTable.empty();
+	// messageId相对于消息起始位置的偏移量：消息头长度 + 消息体第一个字段的1个字节类型信息
+	private int messageIdIndex;
+	// 配置加载失败时为null
+	private ProtocolEntity header;
 
 	public ProtocolFactory() {
 		try {
@@ -50,17 +56,26 @@ public class ProtocolFactory {
 		}
 
 		Header xmlHeader = xmlModel.getHeader();
+		ProtocolEntity header = xmlHeader.buildProtocolEntity();
+		if (header.getFixedLength() < 0) {
+			throw new ProtocolParamValidationException("the header in xml should not contain string field");
+		}
+		messageIdIndex = header.getFixedLength() + 1;
+		this.header = header;
+
+		IntDispatchTable<ConstructedMessage> table = IntDispatchTable.empty();
 		Message[] xmlMessages = xmlModel.getMessages().getMessage();
 		for (Message xmlMessage : xmlMessages) {
 			ConstructedMessage protocol = new ConstructedMessage(xmlHeader, xmlMessage);
 
-			if (getConstructedMessage(protocol.getMessageId()) != null) {
+			if (table.get(protocol.getMessageId()) != null) {
 				throw new ProtocolParamValidationException("the protocol in xml is duplicated,messageId:"
 						+ protocol.getMessageId());
 			}
 
-			keyValue.putIfAbsent("M-" + protocol.getMessageId(), protocol);
+			table = table.with(protocol.getMessageId(), protocol);
 		}
+		prototypes = table;
 	}
 
 	/**
@@ -70,18 +85,70 @@ public class ProtocolFactory {
 	 * @return
 	 */
 	public ConstructedMessage getConstructedMessage(int messageId) {
-		return keyValue.get("M-" + messageId);
+		return prototypes.get(messageId);
+	}
+
+	/**
+	 * 以配置中的协议为模板创建新的{@link ConstructedMessage}，用于收发消息
+	 * 
+	 * @param messageId
+	 * @return
+	 * @throws MessageTypeNotFoundException
+	 */
+	public ConstructedMessage newProtocol(int messageId) {
+		ConstructedMessage prototype = getConstructedMessage(messageId);
+		if (prototype == null) {
+			throw new MessageTypeNotFoundException("messageId:" + messageId);
+		}
+		return prototype.newInstance();
 	}
 
 	/**
-	 * 获取消息体的messageId
+	 * 获取消息体的messageId，不改变buffer的readerIndex
 	 * 
 	 * @param buffer
 	 * @return
 	 */
 	public int getMessageId(ChannelBuffer buffer) {
-		// 从buffer中获取消息体的类型并读取消息
-		// 4*6 代表消息头6个int类型参数
-		return buffer.getInt(buffer.readerIndex() + 4 * 6);
+		return buffer.getInt(buffer.readerIndex() + messageIdIndex);
+	}
+
+	/**
+	 * 消息头的长度(字节)
+	 * 
+	 * @return
+	 * @throws ProtocolParamValidationException
+	 *             protocol.xml未加载成功
+	 */
+	public int getHeaderLength() {
+		return loadedHeader().getFixedLength();
+	}
+
+	/**
+	 * 消息头中int字段相对于消息起始位置的偏移量
+	 * 
+	 * @param fieldName
+	 * @return 字段不存在或不是int时返回-1
+	 * @throws ProtocolParamValidationException
+	 *             protocol.xml未加载成功
+	 */
+	public int getHeaderIntFieldIndex(String fieldName) {
+		ProtocolEntity header = loadedHeader();
+		int index = 0;
+		for (int pos = 0; pos < header.getFieldNum(); pos++) {
+			ProtocolFieldType<?> fieldType = header.getProtocolField(pos).getFieldType();
+			if (header.getFieldName(pos).equals(fieldName)) {
+				return fieldType.getType() == ProtocolFieldType.INT_VALUE ? index : -1;
+			}
+			index += fieldType.getLength();
+		}
+		return -1;
+	}
+
+	private ProtocolEntity loadedHeader() {
+		if (header == null) {
+			throw new ProtocolParamValidationException("the header in protocol.xml is not loaded");
+		}
+		return header;
 	}
 }
@@ -0,0 +1,17 @@
+package com.woniu.network.protocol.generated;
+
+import com.woniu.network.protocol.codec.MessageCodecs;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public final class GeneratedMessageCodecs {
+
+	static {
+		MessageCodecs.register(new Message1001Codec());
+		MessageCodecs.register(new Message1002Codec());
+	}
+
+	private GeneratedMessageCodecs() {
+	}
+}
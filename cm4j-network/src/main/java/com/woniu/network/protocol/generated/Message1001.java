@@ -0,0 +1,60 @@
+package com.woniu.network.protocol.generated;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public class Message1001 extends MessageHeader {
+
+	public static final int MESSAGE_ID = 0x1001;
+
+	private int serverId;
+	private int accountId;
+	private int gameId;
+	private int imprestType;
+	private String remark = "";
+
+	@Override
+	public int getMessageId() {
+		return MESSAGE_ID;
+	}
+
+	public int getServerId() {
+		return serverId;
+	}
+
+	public void setServerId(int serverId) {
+		this.serverId = serverId;
+	}
+
+	public int getAccountId() {
+		return accountId;
+	}
+
+	public void setAccountId(int accountId) {
+		this.accountId = accountId;
+	}
+
+	public int getGameId() {
+		return gameId;
+	}
+
+	public void setGameId(int gameId) {
+		this.gameId = gameId;
+	}
+
+	public int getImprestType() {
+		return imprestType;
+	}
+
+	public void setImprestType(int imprestType) {
+		this.imprestType = imprestType;
+	}
+
+	public String getRemark() {
+		return remark;
+	}
+
+	public void setRemark(String remark) {
+		this.remark = remark;
+	}
+}
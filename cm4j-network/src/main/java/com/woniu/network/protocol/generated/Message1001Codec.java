@@ -0,0 +1,65 @@
+package com.woniu.network.protocol.generated;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.woniu.network.protocol.ProtocolFieldType;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecSupport;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public class Message1001Codec implements MessageCodec<Message1001> {
+
+	private static final int FIXED_LENGTH = MessageHeaderCodec.LENGTH + 26;
+
+	@Override
+	public int getMessageId() {
+		return Message1001.MESSAGE_ID;
+	}
+
+	@Override
+	public Message1001 newMessage() {
+		return new Message1001();
+	}
+
+	@Override
+	public int estimateLength(Message1001 message) {
+		return FIXED_LENGTH
+				+ ProtocolFieldType.StringType.estimateLength(message.getRemark());
+	}
+
+	@Override
+	public void write(ChannelBuffer buffer, Message1001 message) {
+		MessageHeaderCodec.write(buffer, message);
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getMessageId());
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getServerId());
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getAccountId());
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getGameId());
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getImprestType());
+		buffer.writeByte(ProtocolFieldType.STRING_VALUE);
+		ProtocolFieldType.StringType.put(buffer, message.getRemark());
+	}
+
+	@Override
+	public void read(ChannelBuffer buffer, Message1001 message) {
+		MessageHeaderCodec.read(buffer, message);
+		MessageCodecSupport.checkType("messageId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		MessageCodecSupport.checkValue("messageId", Message1001.MESSAGE_ID, buffer.readInt());
+		MessageCodecSupport.checkType("serverId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		message.setServerId(buffer.readInt());
+		MessageCodecSupport.checkType("accountId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		message.setAccountId(buffer.readInt());
+		MessageCodecSupport.checkType("gameId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		message.setGameId(buffer.readInt());
+		MessageCodecSupport.checkType("imprestType", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		message.setImprestType(buffer.readInt());
+		MessageCodecSupport.checkType("remark", ProtocolFieldType.STRING_VALUE, buffer.readByte());
+		message.setRemark(ProtocolFieldType.StringType.get(buffer));
+	}
+}
@@ -0,0 +1,24 @@
+package com.woniu.network.protocol.generated;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public class Message1002 extends MessageHeader {
+
+	public static final int MESSAGE_ID = 0x1002;
+
+	private int accountId;
+
+	@Override
+	public int getMessageId() {
+		return MESSAGE_ID;
+	}
+
+	public int getAccountId() {
+		return accountId;
+	}
+
+	public void setAccountId(int accountId) {
+		this.accountId = accountId;
+	}
+}
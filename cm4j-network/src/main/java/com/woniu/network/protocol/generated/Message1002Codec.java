@@ -0,0 +1,48 @@
+package com.woniu.network.protocol.generated;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.woniu.network.protocol.ProtocolFieldType;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecSupport;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public class Message1002Codec implements MessageCodec<Message1002> {
+
+	private static final int FIXED_LENGTH = MessageHeaderCodec.LENGTH + 10;
+
+	@Override
+	public int getMessageId() {
+		return Message1002.MESSAGE_ID;
+	}
+
+	@Override
+	public Message1002 newMessage() {
+		return new Message1002();
+	}
+
+	@Override
+	public int estimateLength(Message1002 message) {
+		return FIXED_LENGTH;
+	}
+
+	@Override
+	public void write(ChannelBuffer buffer, Message1002 message) {
+		MessageHeaderCodec.write(buffer, message);
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getMessageId());
+		buffer.writeByte(ProtocolFieldType.INT_VALUE);
+		buffer.writeInt(message.getAccountId());
+	}
+
+	@Override
+	public void read(ChannelBuffer buffer, Message1002 message) {
+		MessageHeaderCodec.read(buffer, message);
+		MessageCodecSupport.checkType("messageId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		MessageCodecSupport.checkValue("messageId", Message1002.MESSAGE_ID, buffer.readInt());
+		MessageCodecSupport.checkType("accountId", ProtocolFieldType.INT_VALUE, buffer.readByte());
+		message.setAccountId(buffer.readInt());
+	}
+}
@@ -0,0 +1,82 @@
+package com.woniu.network.protocol.generated;
+
+import com.woniu.network.protocol.codec.CodecMessage;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public abstract class MessageHeader extends CodecMessage {
+
+	private int length;
+	private int version = 0x301;
+	private int userid0 = 0x0;
+	private int userid1 = 0x0;
+	private int userid2 = 0x0;
+	private int userid3 = 0x0;
+	private int reserved = 0x0;
+	private int messageType = 0x9000;
+
+	public int getLength() {
+		return length;
+	}
+
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	public int getUserid0() {
+		return userid0;
+	}
+
+	public void setUserid0(int userid0) {
+		this.userid0 = userid0;
+	}
+
+	public int getUserid1() {
+		return userid1;
+	}
+
+	public void setUserid1(int userid1) {
+		this.userid1 = userid1;
+	}
+
+	public int getUserid2() {
+		return userid2;
+	}
+
+	public void setUserid2(int userid2) {
+		this.userid2 = userid2;
+	}
+
+	public int getUserid3() {
+		return userid3;
+	}
+
+	public void setUserid3(int userid3) {
+		this.userid3 = userid3;
+	}
+
+	public int getReserved() {
+		return reserved;
+	}
+
+	public void setReserved(int reserved) {
+		this.reserved = reserved;
+	}
+
+	public int getMessageType() {
+		return messageType;
+	}
+
+	public void setMessageType(int messageType) {
+		this.messageType = messageType;
+	}
+}
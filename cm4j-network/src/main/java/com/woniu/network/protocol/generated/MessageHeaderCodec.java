@@ -0,0 +1,36 @@
+package com.woniu.network.protocol.generated;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * 由ProtocolCodecGenerator根据protocol.xml生成，请勿手工修改
+ */
+public final class MessageHeaderCodec {
+
+	public static final int LENGTH = 32;
+
+	private MessageHeaderCodec() {
+	}
+
+	public static void write(ChannelBuffer buffer, MessageHeader message) {
+		buffer.writeInt(message.getLength());
+		buffer.writeInt(message.getVersion());
+		buffer.writeInt(message.getUserid0());
+		buffer.writeInt(message.getUserid1());
+		buffer.writeInt(message.getUserid2());
+		buffer.writeInt(message.getUserid3());
+		buffer.writeInt(message.getReserved());
+		buffer.writeInt(message.getMessageType());
+	}
+
+	public static void read(ChannelBuffer buffer, MessageHeader message) {
+		message.setLength(buffer.readInt());
+		message.setVersion(buffer.readInt());
+		message.setUserid0(buffer.readInt());
+		message.setUserid1(buffer.readInt());
+		message.setUserid2(buffer.readInt());
+		message.setUserid3(buffer.readInt());
+		message.setReserved(buffer.readInt());
+		message.setMessageType(buffer.readInt());
+	}
+}
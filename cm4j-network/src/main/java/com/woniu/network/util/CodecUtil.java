@@ -1,19 +1,41 @@
 package com.woniu.network.util;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * 以0结尾的字符串编解码<br>
+ * string以1个字节0结尾，wstring以2个字节0结尾(按2字节对齐)
+ */
 public class CodecUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(CodecUtil.class);
 
+	private static final StringCache stringCache = new StringCache(1024);
+
+	// CharsetEncoder非线程安全，每个线程每种编码一个
+	private static final ThreadLocal<Map<Charset, CharsetEncoder>> encoders = new ThreadLocal<Map<Charset, CharsetEncoder>>() {
+		@Override
+		protected Map<Charset, CharsetEncoder> initialValue() {
+			return new HashMap<Charset, CharsetEncoder>();
+		}
+	};
+
 	/**
 	 * 在str转码后再在byte[]增加一位0
-	 * 
+	 *
 	 * @param str
 	 * @param charset
 	 * @return
@@ -24,8 +46,7 @@ public class CodecUtil {
 				byte[] b = str.getBytes(charset);
 				byte[] c = new byte[b.length + 1];
 				System.arraycopy(b, 0, c, 0, b.length);
-				c[b.length] = 0;
-				return ArrayUtils.add(b, (byte) 0);
+				return c;
 			} catch (Exception e) {
 				logger.error("encode string {}: {}", e.getClass().getSimpleName(), e.getMessage());
 			}
@@ -40,8 +61,6 @@ public class CodecUtil {
 				byte[] b = str.getBytes(charset);
 				byte[] c = new byte[b.length + 2]; // 占两位
 				System.arraycopy(b, 0, c, 0, b.length);
-				c[c.length - 2] = 0;
-				c[c.length - 1] = 0;
 				return c;
 			} catch (Exception e) {
 				logger.error("encodeW {}: {}", e.getClass().getSimpleName(), e.getMessage());
@@ -50,33 +69,161 @@ public class CodecUtil {
 		return new byte[] { 0, 0 };
 	}
 
+	/**
+	 * 将str直接编码写入buffer，并在末尾写入1个字节0，不产生中间byte[]
+	 *
+	 * @param buffer
+	 * @param str
+	 * @param charset
+	 */
+	public static void encode(ChannelBuffer buffer, String str, Charset charset) {
+		if (str != null && str.length() > 0) {
+			write(buffer, str, charset);
+		}
+		buffer.writeByte(0);
+	}
+
+	/**
+	 * 将str直接编码写入buffer，并在末尾写入2个字节0
+	 *
+	 * @param buffer
+	 * @param str
+	 * @param charset
+	 */
+	public static void encodeW(ChannelBuffer buffer, String str, Charset charset) {
+		if (str != null && str.length() > 0) {
+			write(buffer, str, charset);
+		}
+		buffer.writeShort(0);
+	}
+
+	/**
+	 * str编码后的最大字节数(不含结束符)，写入buffer前按此预留空间，消息长度预估也应使用此值
+	 *
+	 * @param str
+	 * @param charset
+	 * @return
+	 */
+	public static int maxEncodedLength(String str, Charset charset) {
+		if (str == null || str.length() == 0) {
+			return 0;
+		}
+		if (charset.equals(CharsetUtil.UTF_16)) {
+			// 2字节BOM，代理对每个char也是2字节；maxBytesPerChar为4，按它预留会多出一倍
+			return 2 + str.length() * 2;
+		}
+		if (charset.equals(CharsetUtil.UTF_16BE) || charset.equals(CharsetUtil.UTF_16LE)) {
+			return str.length() * 2;
+		}
+		return (int) Math.ceil(getEncoder(charset).maxBytesPerChar() * str.length());
+	}
+
+	private static void write(ChannelBuffer buffer, String str, Charset charset) {
+		CharsetEncoder encoder = getEncoder(charset);
+		buffer.ensureWritableBytes(maxEncodedLength(str, charset));
+		int writerIndex = buffer.writerIndex();
+		ByteBuffer out;
+		if (buffer.hasArray()) {
+			out = ByteBuffer.wrap(buffer.array(), buffer.arrayOffset() + writerIndex, buffer.writableBytes());
+		} else if (buffer.isDirect()) {
+			// direct buffer(如发送池中的buffer)的toByteBuffer与其共享内存，直接编码到可写区域
+			out = buffer.toByteBuffer(writerIndex, buffer.writableBytes());
+		} else {
+			// 如多段组合的buffer，toByteBuffer可能是复制
+			buffer.writeBytes(str.getBytes(charset));
+			return;
+		}
+		int start = out.position();
+		try {
+			encoder.reset();
+			CoderResult result = encoder.encode(CharBuffer.wrap(str), out, true);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			result = encoder.flush(out);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+		} catch (CharacterCodingException e) {
+			// 按maxBytesPerChar预留了空间，不会出现
+			throw new IllegalStateException(e);
+		}
+		buffer.writerIndex(writerIndex + out.position() - start);
+	}
+
+	private static CharsetEncoder getEncoder(Charset charset) {
+		Map<Charset, CharsetEncoder> map = encoders.get();
+		CharsetEncoder encoder = map.get(charset);
+		if (encoder == null) {
+			// 与String.getBytes一致，无法编码的字符替换掉
+			encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			map.put(charset, encoder);
+		}
+		return encoder;
+	}
+
+	/**
+	 * 读取以1个字节0结尾的字符串，readerIndex移到结尾0之后
+	 *
+	 * @param buffer
+	 * @param charset
+	 * @return
+	 * @throws IndexOutOfBoundsException
+	 *             找不到结尾0
+	 */
 	public static String decode(ChannelBuffer buffer, Charset charset) {
-		String result = null;
 		int startIndex = buffer.readerIndex();
-		byte b = 0;
-		do {
-			b = buffer.readByte();
-			if (0 == b) {
-				int endIndex = buffer.readerIndex();
-				result = buffer.toString(startIndex, endIndex - startIndex - 1, charset);
-			}
-		} while (0 != b);
+		int endIndex = buffer.indexOf(startIndex, buffer.writerIndex(), (byte) 0);
+		if (endIndex < 0) {
+			throw new IndexOutOfBoundsException("string terminator not found from " + startIndex);
+		}
+		String result = stringCache.get(buffer, startIndex, endIndex - startIndex, charset);
+		buffer.readerIndex(endIndex + 1);
 		return result;
 	}
 
+	/**
+	 * 读取以2个字节0结尾的字符串，结尾0与起始位置按2字节对齐，readerIndex移到结尾0之后
+	 *
+	 * @param buffer
+	 * @param charset
+	 * @return
+	 * @throws IndexOutOfBoundsException
+	 *             找不到结尾0
+	 */
 	public static String decodeW(ChannelBuffer buffer, Charset charset) {
-		String result = null;
 		int startIndex = buffer.readerIndex();
-		byte prev = 0;
-		byte cur = 0;
-		do {
-			prev = cur;
-			cur = buffer.readByte();
-			if (0 == prev && 0 == cur) {
-				int endIndex = buffer.readerIndex();
-				result = buffer.toString(startIndex, endIndex - startIndex - 2, charset);
-			}
-		} while (0 != prev || 0 != cur);
+		int endIndex = indexOfW(buffer, startIndex, buffer.writerIndex());
+		if (endIndex < 0) {
+			throw new IndexOutOfBoundsException("wstring terminator not found from " + startIndex);
+		}
+		String result = stringCache.get(buffer, startIndex, endIndex - startIndex, charset);
+		buffer.readerIndex(endIndex + 2);
 		return result;
 	}
+
+	/**
+	 * 查找[fromIndex, toIndex)中第一个与fromIndex按2字节对齐的两个0
+	 *
+	 * @return 未找到返回-1
+	 */
+	public static int indexOfW(ChannelBuffer buffer, int fromIndex, int toIndex) {
+		int index = fromIndex;
+		while (index + 1 < toIndex) {
+			int zero = buffer.indexOf(index, toIndex - 1, (byte) 0);
+			if (zero < 0) {
+				return -1;
+			}
+			if (((zero - fromIndex) & 1) == 0) {
+				if (buffer.getByte(zero + 1) == 0) {
+					return zero;
+				}
+				index = zero + 2;
+			} else {
+				index = zero + 1;
+			}
+		}
+		return -1;
+	}
 }
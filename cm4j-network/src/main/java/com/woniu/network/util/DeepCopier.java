@@ -0,0 +1,383 @@
+package com.woniu.network.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于反射的深拷贝，每个类的字段只解析一次并缓存<br>
+ * <ul>
+ * <li>同一次拷贝中对象只复制一次，引用关系(包括循环引用)保持不变</li>
+ * <li>不可变对象(String、包装类型、枚举、Class、BigInteger/BigDecimal及{@link #registerImmutable(Class)}注册的类)直接引用</li>
+ * <li>transient和static字段不复制，与Java序列化一致</li>
+ * <li>常用集合按元素复制到同类型的新集合中，其余对象不调用构造函数，逐字段复制</li>
+ * <li>定义了writeObject/readObject的可序列化类(如HashMap子类、Date)状态多在transient字段中，通过Java序列化复制；
+ * 其内部引用的对象不与拷贝的其他部分共享</li>
+ * </ul>
+ * 线程安全
+ */
+public class DeepCopier {
+
+	public static final DeepCopier INSTANCE = new DeepCopier();
+
+	private final ConcurrentMap<Class<?>, ClassCopier> copiers = new ConcurrentHashMap<Class<?>, ClassCopier>();
+	private final Set<Class<?>> immutables = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	public DeepCopier() {
+		for (Class<?> cls : new Class<?>[] { String.class, Boolean.class, Byte.class, Character.class, Short.class,
+				Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, Class.class }) {
+			immutables.add(cls);
+		}
+	}
+
+	/**
+	 * 注册不可变类，此类的对象拷贝时直接引用
+	 */
+	public void registerImmutable(Class<?> cls) {
+		immutables.add(cls);
+		copiers.remove(cls);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T copy(T obj) {
+		if (obj == null) {
+			return null;
+		}
+		return (T) copy(obj, new IdentityHashMap<Object, Object>());
+	}
+
+	private Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+		if (obj == null) {
+			return null;
+		}
+		ClassCopier copier = getCopier(obj.getClass());
+		if (copier == IMMUTABLE) {
+			return obj;
+		}
+		Object copy = copied.get(obj);
+		if (copy != null) {
+			return copy;
+		}
+		return copier.copy(obj, copied);
+	}
+
+	private ClassCopier getCopier(Class<?> cls) {
+		ClassCopier copier = copiers.get(cls);
+		if (copier == null) {
+			copier = createCopier(cls);
+			ClassCopier existing = copiers.putIfAbsent(cls, copier);
+			if (existing != null) {
+				copier = existing;
+			}
+		}
+		return copier;
+	}
+
+	private ClassCopier createCopier(Class<?> cls) {
+		if (cls.isEnum() || (cls.getSuperclass() != null && cls.getSuperclass().isEnum()) || immutables.contains(cls)) {
+			return IMMUTABLE;
+		}
+		if (cls.isArray()) {
+			return cls.getComponentType().isPrimitive() ? new PrimitiveArrayCopier() : new ArrayCopier();
+		}
+		if (COLLECTION_TYPES.contains(cls)) {
+			return new CollectionCopier();
+		}
+		if (MAP_TYPES.contains(cls)) {
+			return new MapCopier();
+		}
+		if (Serializable.class.isAssignableFrom(cls) && hasCustomSerialization(cls)) {
+			return SERIALIZATION;
+		}
+		return new FieldCopier(cls);
+	}
+
+	private interface ClassCopier {
+		Object copy(Object obj, IdentityHashMap<Object, Object> copied);
+	}
+
+	private static final ClassCopier IMMUTABLE = new ClassCopier() {
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			return obj;
+		}
+	};
+
+	private static final Set<Class<?>> COLLECTION_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+			ArrayList.class, LinkedList.class, CopyOnWriteArrayList.class, HashSet.class, LinkedHashSet.class,
+			TreeSet.class, ArrayDeque.class, PriorityQueue.class));
+	private static final Set<Class<?>> MAP_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+			HashMap.class, LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class, IdentityHashMap.class,
+			EnumMap.class));
+
+	/**
+	 * 类或父类是否自定义了序列化方式
+	 */
+	private static boolean hasCustomSerialization(Class<?> cls) {
+		for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+			if (hasPrivateMethod(c, "writeObject", ObjectOutputStream.class)
+					|| hasPrivateMethod(c, "readObject", ObjectInputStream.class)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasPrivateMethod(Class<?> cls, String name, Class<?> parameterType) {
+		try {
+			int modifiers = cls.getDeclaredMethod(name, parameterType).getModifiers();
+			return Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers);
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static final ClassCopier SERIALIZATION = new ClassCopier() {
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+				ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(obj);
+				out.close();
+				final ClassLoader loader = obj.getClass().getClassLoader();
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())) {
+					@Override
+					protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+						// 与原对象使用同一个ClassLoader
+						try {
+							return Class.forName(desc.getName(), false, loader);
+						} catch (ClassNotFoundException e) {
+							return super.resolveClass(desc);
+						}
+					}
+				};
+				Object copy = in.readObject();
+				copied.put(obj, copy);
+				return copy;
+			} catch (Exception e) {
+				throw new IllegalStateException("can not copy " + obj.getClass().getName() + " by serialization", e);
+			}
+		}
+	};
+
+	private static class PrimitiveArrayCopier implements ClassCopier {
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			int length = Array.getLength(obj);
+			Object copy = Array.newInstance(obj.getClass().getComponentType(), length);
+			System.arraycopy(obj, 0, copy, 0, length);
+			copied.put(obj, copy);
+			return copy;
+		}
+	}
+
+	private class ArrayCopier implements ClassCopier {
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			Object[] array = (Object[]) obj;
+			Object[] copy = (Object[]) Array.newInstance(obj.getClass().getComponentType(), array.length);
+			copied.put(obj, copy);
+			for (int i = 0; i < array.length; i++) {
+				copy[i] = DeepCopier.this.copy(array[i], copied);
+			}
+			return copy;
+		}
+	}
+
+	private class CollectionCopier implements ClassCopier {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			Collection collection = (Collection) obj;
+			Collection copy;
+			if (obj instanceof TreeSet) {
+				copy = new TreeSet(((TreeSet) obj).comparator());
+			} else if (obj instanceof PriorityQueue) {
+				copy = new PriorityQueue(Math.max(1, collection.size()), ((PriorityQueue) obj).comparator());
+			} else if (obj instanceof ArrayList) {
+				copy = new ArrayList(collection.size());
+			} else {
+				copy = (Collection) newDefaultInstance(obj.getClass());
+			}
+			copied.put(obj, copy);
+			if (copy instanceof CopyOnWriteArrayList) {
+				// 逐个添加每次都要复制数组
+				List elements = new ArrayList(collection.size());
+				for (Object element : collection) {
+					elements.add(DeepCopier.this.copy(element, copied));
+				}
+				copy.addAll(elements);
+			} else {
+				for (Object element : collection) {
+					copy.add(DeepCopier.this.copy(element, copied));
+				}
+			}
+			return copy;
+		}
+	}
+
+	private class MapCopier implements ClassCopier {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			Map<Object, Object> map = (Map) obj;
+			Map copy;
+			if (obj instanceof TreeMap) {
+				copy = new TreeMap(((TreeMap) obj).comparator());
+			} else if (obj instanceof LinkedHashMap) {
+				// accessOrder无法取得，按插入顺序复制
+				copy = new LinkedHashMap(Math.max(16, (int) (map.size() / 0.75f) + 1));
+			} else if (obj instanceof HashMap) {
+				copy = new HashMap(Math.max(16, (int) (map.size() / 0.75f) + 1));
+			} else if (obj instanceof EnumMap) {
+				// 空的EnumMap无法取得key类型，复制后清空
+				copy = ((EnumMap) obj).clone();
+				copy.clear();
+			} else {
+				copy = (Map) newDefaultInstance(obj.getClass());
+			}
+			copied.put(obj, copy);
+			for (Map.Entry<Object, Object> entry : map.entrySet()) {
+				copy.put(DeepCopier.this.copy(entry.getKey(), copied), DeepCopier.this.copy(entry.getValue(), copied));
+			}
+			return copy;
+		}
+	}
+
+	private class FieldCopier implements ClassCopier {
+		private final Class<?> cls;
+		// 基本类型字段直接复制值，引用类型字段递归复制
+		private final Field[] primitiveFields;
+		private final Field[] referenceFields;
+
+		private FieldCopier(Class<?> cls) {
+			this.cls = cls;
+			List<Field> primitives = new ArrayList<Field>();
+			List<Field> references = new ArrayList<Field>();
+			for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+						continue;
+					}
+					field.setAccessible(true);
+					(field.getType().isPrimitive() ? primitives : references).add(field);
+				}
+			}
+			this.primitiveFields = primitives.toArray(new Field[primitives.size()]);
+			this.referenceFields = references.toArray(new Field[references.size()]);
+		}
+
+		@Override
+		public Object copy(Object obj, IdentityHashMap<Object, Object> copied) {
+			Object copy = allocate(cls);
+			copied.put(obj, copy);
+			try {
+				for (Field field : primitiveFields) {
+					copyPrimitive(field, obj, copy);
+				}
+				for (Field field : referenceFields) {
+					field.set(copy, DeepCopier.this.copy(field.get(obj), copied));
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("can not copy field of " + cls.getName(), e);
+			}
+			return copy;
+		}
+	}
+
+	private static void copyPrimitive(Field field, Object from, Object to) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (type == int.class) {
+			field.setInt(to, field.getInt(from));
+		} else if (type == long.class) {
+			field.setLong(to, field.getLong(from));
+		} else if (type == boolean.class) {
+			field.setBoolean(to, field.getBoolean(from));
+		} else if (type == byte.class) {
+			field.setByte(to, field.getByte(from));
+		} else if (type == short.class) {
+			field.setShort(to, field.getShort(from));
+		} else if (type == char.class) {
+			field.setChar(to, field.getChar(from));
+		} else if (type == float.class) {
+			field.setFloat(to, field.getFloat(from));
+		} else {
+			field.setDouble(to, field.getDouble(from));
+		}
+	}
+
+	private static Object newDefaultInstance(Class<?> cls) {
+		try {
+			Constructor<?> constructor = cls.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("can not instantiate " + cls.getName(), e);
+		}
+	}
+
+	// 不调用构造函数创建对象
+	private static final Object UNSAFE;
+	private static final Method ALLOCATE_INSTANCE;
+
+	static {
+		Object unsafe = null;
+		Method allocate = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			allocate = unsafeClass.getMethod("allocateInstance", Class.class);
+		} catch (Exception e) {
+			// 退回到无参构造函数
+		}
+		UNSAFE = unsafe;
+		ALLOCATE_INSTANCE = allocate;
+	}
+
+	private static Object allocate(Class<?> cls) {
+		if (ALLOCATE_INSTANCE == null) {
+			return newDefaultInstance(cls);
+		}
+		try {
+			return ALLOCATE_INSTANCE.invoke(UNSAFE, cls);
+		} catch (Exception e) {
+			throw new IllegalStateException("can not instantiate " + cls.getName(), e);
+		}
+	}
+}
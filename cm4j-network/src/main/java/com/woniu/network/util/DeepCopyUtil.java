@@ -1,40 +1,23 @@
 package com.woniu.network.util;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-
 /**
  * 深拷贝对象
+ * <p>
+ * 由{@link DeepCopier}按字段复制，不再经过Java序列化，对象无需实现{@link java.io.Serializable}
  * 
  * @author yang.hao
  * @since 2011-11-2 下午5:28:05
  */
 public class DeepCopyUtil {
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @param oldObj
+	 * @return
+	 * @throws IllegalStateException
+	 *             对象无法创建或字段无法访问时
+	 */
 	public static <T> T deepCopy(T oldObj){
-		Object obj = null;
-		try {
-			// Write the object out to a byte array
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(bos);
-			out.writeObject(oldObj);
-			out.flush();
-			out.close();
-			// Retrieve an input stream from the byte array and read
-			// a copy of the object back in.
-			ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-			ObjectInputStream in = new ObjectInputStream(bis);
-			obj = in.readObject();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ClassNotFoundException cnfe) {
-			cnfe.printStackTrace();
-		}
-		return (T) obj;
+		return DeepCopier.INSTANCE.copy(oldObj);
 	}
 
 }
@@ -0,0 +1,176 @@
+package com.woniu.network.util;
+
+import java.util.Arrays;
+
+/**
+ * 以int为key的不可变查找表，用于按messageId分发<br>
+ * key分布集中时使用连续数组，查找只需一次数组下标访问；分布稀疏时使用开放寻址的哈希表，均无装箱和对象创建<br>
+ * 修改通过{@link #with(int, Object)}、{@link #without(int)}返回新表(copy-on-write)，持有方用volatile字段替换即可热更新，读取无需加锁
+ *
+ * @param <V>
+ *            value不能为null
+ */
+public final class IntDispatchTable<V> {
+
+	/**
+	 * 连续数组的最大长度
+	 */
+	static final int MAX_DENSE_SPAN = 1 << 16;
+
+	private static final IntDispatchTable<Object> EMPTY = new IntDispatchTable<Object>(new int[0], new Object[0]);
+
+	// 所有key/value，用于重建
+	private final int[] keys;
+	private final Object[] values;
+
+	// 连续数组：dense[key - base]
+	private final int base;
+	private final Object[] dense;
+
+	// 开放寻址哈希表，slotValues为null表示空槽
+	private final int[] slotKeys;
+	private final Object[] slotValues;
+	private final int mask;
+
+	@SuppressWarnings("unchecked")
+	public static <V> IntDispatchTable<V> empty() {
+		return (IntDispatchTable<V>) EMPTY;
+	}
+
+	private IntDispatchTable(int[] keys, Object[] values) {
+		this.keys = keys;
+		this.values = values;
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int key : keys) {
+			min = Math.min(min, key);
+			max = Math.max(max, key);
+		}
+		long span = keys.length == 0 ? 0 : (long) max - min + 1;
+
+		if (span <= MAX_DENSE_SPAN && span <= Math.max(64, keys.length * 8L)) {
+			this.base = min;
+			this.dense = new Object[(int) span];
+			for (int i = 0; i < keys.length; i++) {
+				dense[keys[i] - base] = values[i];
+			}
+			this.slotKeys = null;
+			this.slotValues = null;
+			this.mask = 0;
+		} else {
+			// 装载因子不超过0.5
+			int capacity = 2;
+			while (capacity < keys.length * 2) {
+				capacity <<= 1;
+			}
+			this.base = 0;
+			this.dense = null;
+			this.slotKeys = new int[capacity];
+			this.slotValues = new Object[capacity];
+			this.mask = capacity - 1;
+			for (int i = 0; i < keys.length; i++) {
+				int index = hash(keys[i]) & mask;
+				while (slotValues[index] != null) {
+					index = (index + 1) & mask;
+				}
+				slotKeys[index] = keys[i];
+				slotValues[index] = values[i];
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @param key
+	 * @return 不存在时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (dense != null) {
+			int index = key - base;
+			return index >= 0 && index < dense.length ? (V) dense[index] : null;
+		}
+		int index = hash(key) & mask;
+		Object value;
+		while ((value = slotValues[index]) != null) {
+			if (slotKeys[index] == key) {
+				return (V) value;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * 返回加入(或替换)key后的新表，本表不变
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public IntDispatchTable<V> with(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value is null,key=" + key);
+		}
+		int position = indexOf(key);
+		if (position >= 0) {
+			Object[] newValues = values.clone();
+			newValues[position] = value;
+			return new IntDispatchTable<V>(keys, newValues);
+		}
+		int[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+		Object[] newValues = Arrays.copyOf(values, values.length + 1);
+		newKeys[keys.length] = key;
+		newValues[values.length] = value;
+		return new IntDispatchTable<V>(newKeys, newValues);
+	}
+
+	/**
+	 * 返回去掉key后的新表，key不存在时返回本表
+	 *
+	 * @param key
+	 * @return
+	 */
+	public IntDispatchTable<V> without(int key) {
+		int position = indexOf(key);
+		if (position < 0) {
+			return this;
+		}
+		int[] newKeys = new int[keys.length - 1];
+		Object[] newValues = new Object[values.length - 1];
+		System.arraycopy(keys, 0, newKeys, 0, position);
+		System.arraycopy(values, 0, newValues, 0, position);
+		System.arraycopy(keys, position + 1, newKeys, position, keys.length - position - 1);
+		System.arraycopy(values, position + 1, newValues, position, values.length - position - 1);
+		return new IntDispatchTable<V>(newKeys, newValues);
+	}
+
+	private int indexOf(int key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * @return 所有key的副本
+	 */
+	public int[] keys() {
+		return keys.clone();
+	}
+
+	boolean isDense() {
+		return dense != null;
+	}
+}
@@ -0,0 +1,136 @@
+package com.woniu.network.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数-线性分桶的延迟直方图(HdrHistogram的做法)，线程安全，记录时不创建对象<br>
+ * 每个2的幂区间再线性分成2^(SUB_BUCKET_BITS-1)份，相对误差小于0.8%
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+	private final long highestTrackableValue;
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param highestTrackableValue
+	 *            超过此值的记录按此值计入分桶，用于减少分桶数量
+	 */
+	public LatencyHistogram(long highestTrackableValue) {
+		this.highestTrackableValue = Math.max(highestTrackableValue, SUB_BUCKET_COUNT);
+		this.counts = new AtomicLongArray(indexOf(this.highestTrackableValue) + 1);
+	}
+
+	/**
+	 * @param value
+	 *            非负数，如纳秒
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(Math.min(value, highestTrackableValue)));
+		totalCount.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// 重试
+		}
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		int sub = (int) (value >>> shift);
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (sub - SUB_BUCKET_HALF);
+	}
+
+	/**
+	 * 桶中能表示的最大值
+	 */
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int k = index - SUB_BUCKET_COUNT;
+		int shift = k / SUB_BUCKET_HALF + 1;
+		long sub = SUB_BUCKET_HALF + k % SUB_BUCKET_HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param percentile
+	 *            0~100
+	 * @return 不小于该比例记录值的最小值(桶上限)，没有记录时返回0
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = totalCount.get();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= target) {
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long total = totalCount.get();
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * 按微秒输出常用百分位
+	 *
+	 * @param unit
+	 *            记录值的单位
+	 * @return
+	 */
+	public String report(TimeUnit unit) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("count=%d mean=%.1fus", getTotalCount(),
+				unit.toNanos(1) * getMean() / 1000));
+		double[] percentiles = { 50, 90, 99, 99.9, 99.99 };
+		for (double percentile : percentiles) {
+			builder.append(String.format(" p%s=%dus", percentile, unit.toMicros(getValueAtPercentile(percentile))));
+		}
+		builder.append(String.format(" max=%dus", unit.toMicros(getMax())));
+		return builder.toString();
+	}
+}
@@ -2,6 +2,8 @@ package com.woniu.network.util;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
@@ -27,4 +29,24 @@ public class SocketAddressConvertor {
 		}
 		return new InetSocketAddress(split[0], NumberUtils.toInt(split[1]));
 	}
+
+	/**
+	 * 将逗号分隔的多个IP:port转换为{@link SocketAddress}列表，顺序不变
+	 * 
+	 * @param addresses
+	 *            如 192.168.0.1:2012,192.168.0.2:2012
+	 * @return
+	 * @throws ProtocolParamValidationException
+	 */
+	public static List<SocketAddress> convertAll(String addresses) throws ProtocolParamValidationException {
+		if (StringUtils.isBlank(addresses)) {
+			throw new ProtocolParamValidationException("address must be formed as ip:port");
+		}
+		String[] split = StringUtils.split(addresses, ",");
+		List<SocketAddress> result = new ArrayList<SocketAddress>(split.length);
+		for (String address : split) {
+			result.add(convert(StringUtils.trim(address)));
+		}
+		return result;
+	}
 }
@@ -0,0 +1,101 @@
+package com.woniu.network.util;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * 短字符串解码缓存<br>
+ * 备注、名称等字段重复率很高，按字节内容缓存解码后的String，命中时不再创建新对象<br>
+ * 固定大小的直接映射表，冲突时覆盖旧值；Entry不可变，多线程下无需加锁
+ */
+public class StringCache {
+
+	/**
+	 * 超过此长度(字节)的字符串不缓存
+	 */
+	public static final int MAX_CACHED_LENGTH = 32;
+
+	private final Entry[] table;
+	private final int mask;
+
+	/**
+	 * @param size
+	 *            缓存槽数，会调整为2的幂
+	 */
+	public StringCache(int size) {
+		int capacity = 1;
+		while (capacity < size) {
+			capacity <<= 1;
+		}
+		this.table = new Entry[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * 解码buffer中[index, index + length)的字节，不改变readerIndex
+	 *
+	 * @param buffer
+	 * @param index
+	 * @param length
+	 * @param charset
+	 * @return
+	 */
+	public String get(ChannelBuffer buffer, int index, int length, Charset charset) {
+		if (length == 0) {
+			return "";
+		}
+		if (length > MAX_CACHED_LENGTH) {
+			return toString(buffer, index, length, charset);
+		}
+
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer.getByte(index + i);
+		}
+		hash ^= (hash >>> 16);
+
+		int slot = hash & mask;
+		Entry entry = table[slot];
+		if (entry != null && entry.matches(buffer, index, length, charset)) {
+			return entry.value;
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.getBytes(index, bytes);
+		String value = new String(bytes, charset);
+		table[slot] = new Entry(bytes, charset, value);
+		return value;
+	}
+
+	static String toString(ChannelBuffer buffer, int index, int length, Charset charset) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + index, length, charset);
+		}
+		return buffer.toString(index, length, charset);
+	}
+
+	private static final class Entry {
+		private final byte[] bytes;
+		private final Charset charset;
+		private final String value;
+
+		private Entry(byte[] bytes, Charset charset, String value) {
+			this.bytes = bytes;
+			this.charset = charset;
+			this.value = value;
+		}
+
+		private boolean matches(ChannelBuffer buffer, int index, int length, Charset charset) {
+			if (bytes.length != length || !this.charset.equals(charset)) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (bytes[i] != buffer.getByte(index + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
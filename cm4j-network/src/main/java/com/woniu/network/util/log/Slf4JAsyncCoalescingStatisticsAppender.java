@@ -2,11 +2,19 @@ package com.woniu.network.util.log;
 
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.perf4j.GroupedTimingStatistics;
 import org.perf4j.StopWatch;
+import org.perf4j.TimingStatistics;
 import org.perf4j.helpers.GenericAsyncCoalescingStatisticsAppender;
+import org.perf4j.helpers.StopWatchParser;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
@@ -16,62 +24,108 @@ import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.AppenderBase;
 import ch.qos.logback.core.spi.AppenderAttachable;
-import ch.qos.logback.core.spi.AppenderAttachableImpl;
 
+import com.woniu.network.util.LatencyHistogram;
+
+/**
+ * perf4j按时间片汇总StopWatch日志，再交给下游appender
+ * <p>
+ * exportMetrics为true时，每个时间片各tag的次数、均值、最大值和百分位写入{@link TimingMetrics}，保留最近metricsWindows个，
+ * 通过JMX(metricsObjectName)和HTTP(metricsHttpHost:metricsHttpPort，port为0时不启动)读取：
+ *
+ * <pre>
+ * &lt;appender name="CoalescingStatistics" class="com.woniu.network.util.log.Slf4JAsyncCoalescingStatisticsAppender"&gt;
+ *     &lt;timeSlice&gt;10000&lt;/timeSlice&gt;
+ *     &lt;exportMetrics&gt;true&lt;/exportMetrics&gt;
+ *     &lt;metricsWindows&gt;60&lt;/metricsWindows&gt;
+ *     &lt;metricsHttpPort&gt;9810&lt;/metricsHttpPort&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * 百分位来自每个tag的{@link LatencyHistogram}，rollup统计生成的tag没有百分位；StopWatch由{@link RecordingStopWatchParser}在perf4j的汇总线程中解析，
+ * 打日志的线程只把消息放入perf4j的队列
+ */
 public class Slf4JAsyncCoalescingStatisticsAppender extends AppenderBase<ILoggingEvent> implements
 		AppenderAttachable<ILoggingEvent> {
+	/**
+	 * 直方图记录的最大耗时(毫秒)，更长的按此值计入百分位
+	 */
+	private static final long HIGHEST_TRACKABLE_MILLIS = 3600000L;
+
+	/**
+	 * perf4j汇总线程名的前缀，后接appender的name
+	 */
+	private static final String DRAIN_THREAD_PREFIX = "perf4j-async-stats-appender-sink-";
+	/**
+	 * exportMetrics的appender，按name查找；perf4j按类名创建{@link RecordingStopWatchParser}，parser由汇总线程名找到所属的appender
+	 */
+	private static final ConcurrentMap<String, Slf4JAsyncCoalescingStatisticsAppender> RECORDING = new ConcurrentHashMap<String, Slf4JAsyncCoalescingStatisticsAppender>();
+
 	private GenericAsyncCoalescingStatisticsAppender baseImplementation = new GenericAsyncCoalescingStatisticsAppender();
 	private Level downStreamLogLevel = Level.INFO;
-	private final AppenderAttachableImpl<ILoggingEvent> downStreamAppenders = new AppenderAttachableImpl<ILoggingEvent>();
+	// 分发时遍历快照，不加锁
+	private final CopyOnWriteArrayList<Appender<ILoggingEvent>> downStreamAppenders = new CopyOnWriteArrayList<Appender<ILoggingEvent>>();
+
+	private boolean exportMetrics;
+	private int metricsWindows = 60;
+	private int metricsHttpPort;
+	private String metricsObjectName = TimingMetrics.DEFAULT_OBJECT_NAME;
+	private TimingMetrics metrics;
+	private TimingMetricsHttpServer httpServer;
+	private String metricsHttpHost = "127.0.0.1";
+	private volatile boolean unboundReported;
+	private String stopWatchParserClassName = StopWatchParser.class.getName();
+	// 时间片开始时间 -> tag -> 耗时直方图
+	private final ConcurrentMap<Long, ConcurrentMap<String, LatencyHistogram>> histograms = new ConcurrentHashMap<Long, ConcurrentMap<String, LatencyHistogram>>();
 
 	// -- AppenderAttachable methods --
 	@Override
 	public void addAppender(Appender<ILoggingEvent> newAppender) {
-		synchronized (downStreamAppenders) {
-			downStreamAppenders.addAppender(newAppender);
+		if (newAppender != null) {
+			downStreamAppenders.addIfAbsent(newAppender);
 		}
 	}
 
 	@Override
 	public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
-		synchronized (downStreamAppenders) {
-			return downStreamAppenders.iteratorForAppenders();
-		}
+		return downStreamAppenders.iterator();
 	}
 
 	@Override
 	public Appender<ILoggingEvent> getAppender(String name) {
-		synchronized (downStreamAppenders) {
-			return downStreamAppenders.getAppender(name);
+		if (name == null) {
+			return null;
 		}
+		for (Appender<ILoggingEvent> appender : downStreamAppenders) {
+			if (name.equals(appender.getName())) {
+				return appender;
+			}
+		}
+		return null;
 	}
 
 	@Override
 	public boolean isAttached(Appender<ILoggingEvent> eAppender) {
-		synchronized (downStreamAppenders) {
-			return downStreamAppenders.isAttached(eAppender);
-		}
+		return eAppender != null && downStreamAppenders.contains(eAppender);
 	}
 
 	@Override
 	public void detachAndStopAllAppenders() {
-		synchronized (downStreamAppenders) {
-			downStreamAppenders.detachAndStopAllAppenders();
+		for (Appender<ILoggingEvent> appender : downStreamAppenders) {
+			appender.stop();
 		}
+		downStreamAppenders.clear();
 	}
 
 	@Override
 	public boolean detachAppender(Appender<ILoggingEvent> eAppender) {
-		synchronized (downStreamAppenders) {
-			return downStreamAppenders.detachAppender(eAppender);
-		}
+		return eAppender != null && downStreamAppenders.remove(eAppender);
 	}
 
 	@Override
 	public boolean detachAppender(String name) {
-		synchronized (downStreamAppenders) {
-			return downStreamAppenders.detachAppender(name);
-		}
+		Appender<ILoggingEvent> appender = getAppender(name);
+		return appender != null && downStreamAppenders.remove(appender);
 	}
 
 	// -- AppenderBase methods --
@@ -80,56 +134,165 @@ public class Slf4JAsyncCoalescingStatisticsAppender extends AppenderBase<ILoggin
 		baseImplementation.append(eventObject.getMessage());
 	}
 
+	private StopWatchParser newStopWatchParser() {
+		try {
+			return (StopWatchParser) Class.forName(stopWatchParserClassName).newInstance();
+		} catch (Exception e) {
+			addError("Could not create StopWatchParser " + stopWatchParserClassName, e);
+			return new StopWatchParser();
+		}
+	}
+
+	/**
+	 * 在perf4j的汇总线程中调用
+	 */
+	private void record(StopWatch stopWatch) {
+		// 与perf4j相同，按StopWatch的开始时间划分时间片
+		long timeSlice = getTimeSlice();
+		Long sliceStart = stopWatch.getStartTime() / timeSlice * timeSlice;
+		ConcurrentMap<String, LatencyHistogram> byTag = histograms.get(sliceStart);
+		if (byTag == null) {
+			ConcurrentMap<String, LatencyHistogram> created = new ConcurrentHashMap<String, LatencyHistogram>();
+			byTag = histograms.putIfAbsent(sliceStart, created);
+			if (byTag == null) {
+				byTag = created;
+			}
+		}
+		LatencyHistogram histogram = byTag.get(stopWatch.getTag());
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(HIGHEST_TRACKABLE_MILLIS);
+			histogram = byTag.putIfAbsent(stopWatch.getTag(), created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		histogram.record(stopWatch.getElapsedTime());
+	}
+
+	private void publish(GroupedTimingStatistics statistics) {
+		Map<String, LatencyHistogram> byTag = histograms.remove(statistics.getStartTime());
+		if (byTag == null && !statistics.getStatisticsByTag().isEmpty() && !unboundReported) {
+			unboundReported = true;
+			addError("No StopWatch recorded by " + RecordingStopWatchParser.class.getName() + " for appender "
+					+ getName() + ", percentiles are not exported");
+		}
+		// 丢弃更早的、不会再被汇总的时间片
+		for (Iterator<Long> it = histograms.keySet().iterator(); it.hasNext();) {
+			if (it.next() < statistics.getStartTime()) {
+				it.remove();
+			}
+		}
+
+		List<TimingWindow.TagStatistics> tags = new ArrayList<TimingWindow.TagStatistics>();
+		for (Map.Entry<String, TimingStatistics> entry : statistics.getStatisticsByTag().entrySet()) {
+			TimingStatistics stat = entry.getValue();
+			LatencyHistogram histogram = byTag == null ? null : byTag.get(entry.getKey());
+			long p50 = -1;
+			long p90 = -1;
+			long p99 = -1;
+			if (histogram != null && histogram.getTotalCount() > 0) {
+				p50 = histogram.getValueAtPercentile(50);
+				p90 = histogram.getValueAtPercentile(90);
+				p99 = histogram.getValueAtPercentile(99);
+			}
+			tags.add(new TimingWindow.TagStatistics(entry.getKey(), stat.getCount(), stat.getMean(), stat.getMin(),
+					stat.getMax(), p50, p90, p99));
+		}
+		metrics.publish(new TimingWindow(statistics.getStartTime(), statistics.getStopTime(), tags));
+	}
+
+	private void appendLoopOnAppenders(ILoggingEvent event) {
+		for (Appender<ILoggingEvent> appender : downStreamAppenders) {
+			appender.doAppend(event);
+		}
+	}
+
 	@Override
 	public void start() {
+		baseImplementation.setStopWatchParserClassName(exportMetrics ? RecordingStopWatchParser.class.getName()
+				: stopWatchParserClassName);
+		if (exportMetrics) {
+			metrics = new TimingMetrics(metricsWindows);
+			metrics.setObjectName(metricsObjectName);
+			metrics.registerMBean();
+			if (metricsHttpPort > 0) {
+				httpServer = new TimingMetricsHttpServer(metrics, metricsHttpHost, metricsHttpPort);
+				try {
+					httpServer.start();
+				} catch (IOException e) {
+					addError("Could not start timing metrics http server on " + metricsHttpHost + ":"
+							+ metricsHttpPort, e);
+					httpServer = null;
+				}
+			}
+			if (getName() == null || RECORDING.putIfAbsent(getName(), this) != null) {
+				addError("Appender name " + getName() + " is missing or duplicated, percentiles are not exported");
+			}
+		}
+		startBaseImplementation();
+		started = true;
+	}
+
+	private void startBaseImplementation() {
 		baseImplementation.start(new GenericAsyncCoalescingStatisticsAppender.GroupedTimingStatisticsHandler() {
 			@Override
 			public void handle(GroupedTimingStatistics groupedTimingStatistics) {
-				ILoggingEvent event = new GroupedTimingStatisticsLoggingEvent(Logger.FQCN, (Logger) LoggerFactory
-						.getLogger(StopWatch.DEFAULT_LOGGER_NAME), getDownStreamLogLevel(), groupedTimingStatistics
-						.toString(), groupedTimingStatistics);
-				synchronized (downStreamAppenders) {
+				if (metrics != null) {
 					try {
-						downStreamAppenders.appendLoopOnAppenders(event);
+						publish(groupedTimingStatistics);
 					} catch (Exception ex) {
-						ILoggingEvent errorEvent = new LoggingEvent(Logger.FQCN, (Logger) LoggerFactory
-								.getLogger(StopWatch.DEFAULT_LOGGER_NAME), Level.ERROR,
-								"Exception calling appender with GroupedTimingStatistics on downstream appender", ex,
-								new Object[] { event });
-						downStreamAppenders.appendLoopOnAppenders(errorEvent);
+						addError("Exception publishing timing metrics", ex);
 					}
 				}
+				ILoggingEvent event = new GroupedTimingStatisticsLoggingEvent(Logger.FQCN, (Logger) LoggerFactory
+						.getLogger(StopWatch.DEFAULT_LOGGER_NAME), getDownStreamLogLevel(), groupedTimingStatistics
+						.toString(), groupedTimingStatistics);
+				try {
+					appendLoopOnAppenders(event);
+				} catch (Exception ex) {
+					ILoggingEvent errorEvent = new LoggingEvent(Logger.FQCN, (Logger) LoggerFactory
+							.getLogger(StopWatch.DEFAULT_LOGGER_NAME), Level.ERROR,
+							"Exception calling appender with GroupedTimingStatistics on downstream appender", ex,
+							new Object[] { event });
+					appendLoopOnAppenders(errorEvent);
+				}
 			}
 
 			@Override
 			public void error(String s) {
 				ILoggingEvent event = new LoggingEvent(Logger.FQCN, (Logger) LoggerFactory
 						.getLogger(StopWatch.DEFAULT_LOGGER_NAME), Level.ERROR, s, null, null);
-				downStreamAppenders.appendLoopOnAppenders(event);
+				appendLoopOnAppenders(event);
 			}
 		});
-		started = true;
 	}
 
 	@Override
 	public void stop() {
 		baseImplementation.stop();
-		synchronized (downStreamAppenders) {
-			for (Appender<ILoggingEvent> appender : new IteratorIterable<Appender<ILoggingEvent>>(
-					downStreamAppenders.iteratorForAppenders())) {
-				if (appender instanceof Flushable) {
-					try {
-						((Flushable) appender).flush();
-					} catch (IOException e) {
-						// ignored, we're shutting down
-					}
+		for (Appender<ILoggingEvent> appender : downStreamAppenders) {
+			if (appender instanceof Flushable) {
+				try {
+					((Flushable) appender).flush();
+				} catch (IOException e) {
+					// ignored, we're shutting down
 				}
 			}
-			for (Appender<ILoggingEvent> appender : new IteratorIterable<Appender<ILoggingEvent>>(
-					downStreamAppenders.iteratorForAppenders())) {
-				appender.stop();
-			}
 		}
+		for (Appender<ILoggingEvent> appender : downStreamAppenders) {
+			appender.stop();
+		}
+		if (httpServer != null) {
+			httpServer.stop();
+			httpServer = null;
+		}
+		if (metrics != null) {
+			metrics.unregisterMBean();
+		}
+		if (getName() != null) {
+			RECORDING.remove(getName(), this);
+		}
+		histograms.clear();
 		started = false;
 	}
 
@@ -173,27 +336,91 @@ public class Slf4JAsyncCoalescingStatisticsAppender extends AppenderBase<ILoggin
 	}
 
 	public String getStopWatchParserClassName() {
-		return baseImplementation.getStopWatchParserClassName();
+		return stopWatchParserClassName;
 	}
 
 	public void setStopWatchParserClassName(String stopWatchParserClassName) {
-		baseImplementation.setStopWatchParserClassName(stopWatchParserClassName);
+		this.stopWatchParserClassName = stopWatchParserClassName;
 	}
 
 	public int getNumDiscardedMessages() {
 		return baseImplementation.getNumDiscardedMessages();
 	}
 
-	class IteratorIterable<E> implements Iterable<E> {
-		private Iterator<E> iterator;
+	public boolean isExportMetrics() {
+		return exportMetrics;
+	}
 
-		IteratorIterable(Iterator<E> iterator) {
-			this.iterator = iterator;
-		}
+	public void setExportMetrics(boolean exportMetrics) {
+		this.exportMetrics = exportMetrics;
+	}
+
+	public int getMetricsWindows() {
+		return metricsWindows;
+	}
+
+	public void setMetricsWindows(int metricsWindows) {
+		this.metricsWindows = metricsWindows;
+	}
+
+	public int getMetricsHttpPort() {
+		return metricsHttpPort;
+	}
+
+	public void setMetricsHttpPort(int metricsHttpPort) {
+		this.metricsHttpPort = metricsHttpPort;
+	}
+
+	public String getMetricsHttpHost() {
+		return metricsHttpHost;
+	}
+
+	/**
+	 * HTTP服务监听的地址，默认只监听本机；0.0.0.0为所有网卡
+	 */
+	public void setMetricsHttpHost(String metricsHttpHost) {
+		this.metricsHttpHost = metricsHttpHost;
+	}
+
+	public String getMetricsObjectName() {
+		return metricsObjectName;
+	}
+
+	public void setMetricsObjectName(String metricsObjectName) {
+		this.metricsObjectName = metricsObjectName;
+	}
+
+	/**
+	 * @return exportMetrics为false或未启动时返回null
+	 */
+	public TimingMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * exportMetrics时交给perf4j的StopWatchParser，用stopWatchParserClassName指定的parser解析，并把耗时记入所属appender的直方图
+	 */
+	public static class RecordingStopWatchParser extends StopWatchParser {
+
+		// 只在汇总线程中访问，第一次解析时按线程名绑定
+		private Slf4JAsyncCoalescingStatisticsAppender appender;
+		private StopWatchParser delegate;
 
 		@Override
-		public Iterator<E> iterator() {
-			return iterator;
+		public StopWatch parseStopWatch(String message) {
+			if (delegate == null) {
+				String threadName = Thread.currentThread().getName();
+				if (threadName.startsWith(DRAIN_THREAD_PREFIX)) {
+					appender = RECORDING.get(threadName.substring(DRAIN_THREAD_PREFIX.length()));
+				}
+				// 找不到时只解析不记录，由appender汇总时报告
+				delegate = appender == null ? new StopWatchParser() : appender.newStopWatchParser();
+			}
+			StopWatch stopWatch = delegate.parseStopWatch(message);
+			if (stopWatch != null && appender != null && appender.metrics != null) {
+				appender.record(stopWatch);
+			}
+			return stopWatch;
 		}
 	}
 }
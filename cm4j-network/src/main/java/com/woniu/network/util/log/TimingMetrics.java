@@ -0,0 +1,134 @@
+package com.woniu.network.util.log;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 最近若干个时间片的计时统计，环形保存，新的覆盖最旧的<br>
+ * 由{@link Slf4JAsyncCoalescingStatisticsAppender}写入，通过JMX和{@link TimingMetricsHttpServer}读取
+ */
+public class TimingMetrics implements TimingMetricsMBean {
+
+	public static final String DEFAULT_OBJECT_NAME = "com.woniu.network:type=TimingMetrics";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final AtomicReferenceArray<TimingWindow> windows;
+	private final AtomicLong sequence = new AtomicLong();
+
+	private String objectName = DEFAULT_OBJECT_NAME;
+
+	/**
+	 * @param capacity
+	 *            保留的时间片数
+	 */
+	public TimingMetrics(int capacity) {
+		this.windows = new AtomicReferenceArray<TimingWindow>(Math.max(capacity, 1));
+	}
+
+	public void publish(TimingWindow window) {
+		long seq = sequence.getAndIncrement();
+		windows.set((int) (seq % windows.length()), window);
+	}
+
+	/**
+	 * @return 从旧到新
+	 */
+	public List<TimingWindow> getRecentWindows() {
+		long end = sequence.get();
+		long start = Math.max(0, end - windows.length());
+		List<TimingWindow> result = new ArrayList<TimingWindow>((int) (end - start));
+		for (long seq = start; seq < end; seq++) {
+			TimingWindow window = windows.get((int) (seq % windows.length()));
+			if (window != null) {
+				result.add(window);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return 还没有数据时返回null
+	 */
+	public TimingWindow getLatestWindow() {
+		long end = sequence.get();
+		return end == 0 ? null : windows.get((int) ((end - 1) % windows.length()));
+	}
+
+	public String toJson(List<TimingWindow> list) {
+		StringBuilder builder = new StringBuilder(256);
+		builder.append('[');
+		for (int i = 0; i < list.size(); i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			list.get(i).appendJson(builder);
+		}
+		return builder.append(']').toString();
+	}
+
+	// ***************************************************************************
+	// * --------------------------------JMX----------------------------------- *
+	// **************************************************************************/
+
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, new ObjectName(objectName));
+			logger.debug("TimingMetrics注册JMX：{}", objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.warn("TimingMetrics已注册JMX：{}", objectName);
+		} catch (Exception e) {
+			logger.error("TimingMetrics注册JMX异常", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(objectName);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.error("TimingMetrics注销JMX异常", e);
+		}
+	}
+
+	@Override
+	public int getWindowCount() {
+		return (int) Math.min(sequence.get(), windows.length());
+	}
+
+	@Override
+	public String[] getLatestStatistics() {
+		TimingWindow window = getLatestWindow();
+		if (window == null) {
+			return new String[0];
+		}
+		String[] result = new String[window.getTags().size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = window.getTags().get(i).toString();
+		}
+		return result;
+	}
+
+	@Override
+	public String getRecentJson() {
+		return toJson(getRecentWindows());
+	}
+
+	public void setObjectName(String objectName) {
+		this.objectName = objectName;
+	}
+}
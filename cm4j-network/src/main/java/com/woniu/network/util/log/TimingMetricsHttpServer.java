@@ -0,0 +1,110 @@
+package com.woniu.network.util.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 以JSON输出{@link TimingMetrics}的简易HTTP服务，使用JDK自带的HttpServer，单线程处理
+ *
+ * <pre>
+ * GET /metrics         最近所有时间片
+ * GET /metrics/latest  最近一个时间片
+ * </pre>
+ */
+public class TimingMetricsHttpServer {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final TimingMetrics metrics;
+	private final String host;
+	private final int port;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * 只监听本机
+	 */
+	public TimingMetricsHttpServer(TimingMetrics metrics, int port) {
+		this(metrics, "127.0.0.1", port);
+	}
+
+	/**
+	 * @param host
+	 *            监听的地址，0.0.0.0为所有网卡
+	 */
+	public TimingMetricsHttpServer(TimingMetrics metrics, String host, int port) {
+		this.metrics = metrics;
+		this.host = host;
+		this.port = port;
+	}
+
+	public synchronized void start() throws IOException {
+		if (server != null) {
+			return;
+		}
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					String path = exchange.getRequestURI().getPath();
+					String body;
+					if ("/metrics".equals(path) || "/metrics/".equals(path)) {
+						body = metrics.toJson(metrics.getRecentWindows());
+					} else if ("/metrics/latest".equals(path)) {
+						TimingWindow latest = metrics.getLatestWindow();
+						body = metrics.toJson(latest == null ? Collections.<TimingWindow> emptyList() : Collections
+								.singletonList(latest));
+					} else {
+						exchange.sendResponseHeaders(404, -1);
+						return;
+					}
+					byte[] bytes = body.getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(bytes);
+					out.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("timing-metrics-http").build());
+		server.setExecutor(executor);
+		server.start();
+		logger.info("TimingMetrics HTTP服务已启动，地址：{}", server.getAddress());
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdown();
+			server = null;
+		}
+	}
+
+	/**
+	 * 实际监听的端口，port为0时由系统分配
+	 */
+	public synchronized int getPort() {
+		return server == null ? port : server.getAddress().getPort();
+	}
+}
@@ -0,0 +1,22 @@
+package com.woniu.network.util.log;
+
+/**
+ * {@link TimingMetrics}的JMX接口
+ */
+public interface TimingMetricsMBean {
+
+	/**
+	 * 保留的时间片数
+	 */
+	public int getWindowCount();
+
+	/**
+	 * 最近一个时间片各tag的统计
+	 */
+	public String[] getLatestStatistics();
+
+	/**
+	 * 最近的时间片，JSON格式
+	 */
+	public String getRecentJson();
+}
@@ -0,0 +1,125 @@
+package com.woniu.network.util.log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 一个时间片内各tag的计时统计，不可变
+ */
+public class TimingWindow {
+
+	private final long startTime;
+	private final long stopTime;
+	private final List<TagStatistics> tags;
+
+	public TimingWindow(long startTime, long stopTime, List<TagStatistics> tags) {
+		this.startTime = startTime;
+		this.stopTime = stopTime;
+		this.tags = Collections.unmodifiableList(tags);
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getStopTime() {
+		return stopTime;
+	}
+
+	public List<TagStatistics> getTags() {
+		return tags;
+	}
+
+	public void appendJson(StringBuilder builder) {
+		builder.append("{\"start\":").append(startTime).append(",\"stop\":").append(stopTime).append(",\"tags\":[");
+		for (int i = 0; i < tags.size(); i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			tags.get(i).appendJson(builder);
+		}
+		builder.append("]}");
+	}
+
+	/**
+	 * 单个tag的统计，时间单位为毫秒；没有原始数据(如rollup统计)时百分位为-1
+	 */
+	public static class TagStatistics {
+		private final String tag;
+		private final int count;
+		private final double mean;
+		private final long min;
+		private final long max;
+		private final long p50;
+		private final long p90;
+		private final long p99;
+
+		public TagStatistics(String tag, int count, double mean, long min, long max, long p50, long p90, long p99) {
+			this.tag = tag;
+			this.count = count;
+			this.mean = mean;
+			this.min = min;
+			this.max = max;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+		}
+
+		public String getTag() {
+			return tag;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getMin() {
+			return min;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP90() {
+			return p90;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		void appendJson(StringBuilder builder) {
+			builder.append("{\"tag\":\"");
+			for (int i = 0; i < tag.length(); i++) {
+				char c = tag.charAt(i);
+				if (c == '"' || c == '\\') {
+					builder.append('\\').append(c);
+				} else if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+			builder.append("\",\"count\":").append(count).append(",\"mean\":")
+					.append(String.format(Locale.US, "%.2f", mean)).append(",\"min\":").append(min).append(",\"max\":")
+					.append(max).append(",\"p50\":").append(p50).append(",\"p90\":").append(p90)
+					.append(",\"p99\":").append(p99).append('}');
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s count:%d mean:%.1f min:%d max:%d p50:%d p90:%d p99:%d", tag, count, mean, min,
+					max, p50, p90, p99);
+		}
+	}
+}
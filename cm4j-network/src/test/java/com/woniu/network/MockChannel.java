@@ -0,0 +1,231 @@
+package com.woniu.network;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * 测试用的Channel及其ChannelHandlerContext，由动态代理实现，不需要I/O线程<br>
+ * 记录写出的消息、向后传递的事件、关闭和暂停读取；未用到的方法返回null
+ */
+public class MockChannel {
+
+	/**
+	 * 经ChannelHandlerContext向后传递的事件
+	 */
+	public interface UpstreamListener {
+		void upstream(ChannelEvent e);
+	}
+
+	private final int id;
+	private final List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+	private final List<ChannelEvent> upstream = Collections.synchronizedList(new ArrayList<ChannelEvent>());
+	private final List<ChannelEvent> downstream = Collections.synchronizedList(new ArrayList<ChannelEvent>());
+	private final AtomicInteger closed = new AtomicInteger();
+	private volatile boolean connected = true;
+	private volatile boolean readable = true;
+	private volatile UpstreamListener upstreamListener;
+	private ChannelBufferFactory bufferFactory = HeapChannelBufferFactory.getInstance(ByteOrder.LITTLE_ENDIAN);
+
+	private final Channel channel;
+	private final ChannelConfig config;
+	private final ChannelHandlerContext context;
+	private final DefaultChannelFuture closeFuture;
+
+	public MockChannel() {
+		this(1);
+	}
+
+	public MockChannel(int id) {
+		this.id = id;
+		this.config = proxy(ChannelConfig.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return method.getName().equals("getBufferFactory") ? bufferFactory : null;
+			}
+		});
+		this.channel = proxy(Channel.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return invokeChannel(method, args);
+			}
+		});
+		this.closeFuture = new DefaultChannelFuture(channel, false);
+		this.context = proxy(ChannelHandlerContext.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("getChannel")) {
+					return channel;
+				} else if (name.equals("sendUpstream")) {
+					ChannelEvent e = (ChannelEvent) args[0];
+					upstream.add(e);
+					UpstreamListener listener = upstreamListener;
+					if (listener != null) {
+						listener.upstream(e);
+					}
+				} else if (name.equals("sendDownstream")) {
+					downstream.add((ChannelEvent) args[0]);
+				}
+				return null;
+			}
+		});
+	}
+
+	private Object invokeChannel(Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("getId")) {
+			return id;
+		} else if (name.equals("toString")) {
+			return "MockChannel-" + id;
+		} else if (name.equals("getConfig")) {
+			return config;
+		} else if (name.equals("isOpen") || name.equals("isConnected")) {
+			return connected;
+		} else if (name.equals("isReadable")) {
+			return readable;
+		} else if (name.equals("isWritable")) {
+			return true;
+		} else if (name.equals("setReadable")) {
+			readable = (Boolean) args[0];
+			return succeeded();
+		} else if (name.equals("write")) {
+			written.add(args[0]);
+			return succeeded();
+		} else if (name.equals("close")) {
+			closed.incrementAndGet();
+			connected = false;
+			closeFuture.setSuccess();
+			return closeFuture;
+		} else if (name.equals("getCloseFuture")) {
+			return closeFuture;
+		}
+		return null;
+	}
+
+	private ChannelFuture succeeded() {
+		DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+		future.setSuccess();
+		return future;
+	}
+
+	/**
+	 * 本连接上收到的消息
+	 */
+	public MessageEvent message(final Object message) {
+		return proxy(MessageEvent.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getMessage")) {
+					return message;
+				} else if (method.getName().equals("getChannel")) {
+					return channel;
+				} else if (method.getName().equals("toString")) {
+					return "message:" + message;
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 本连接的状态事件
+	 */
+	public ChannelStateEvent stateEvent(final ChannelState state, final Object value) {
+		return proxy(ChannelStateEvent.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getState")) {
+					return state;
+				} else if (method.getName().equals("getValue")) {
+					return value;
+				} else if (method.getName().equals("getChannel")) {
+					return channel;
+				} else if (method.getName().equals("toString")) {
+					return "state:" + state + "=" + value;
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * equals和hashCode按对象标识，其他方法交给handler
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T proxy(Class<T> type, final InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(MockChannel.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("equals") && args != null && args.length == 1) {
+							return proxy == args[0];
+						} else if (method.getName().equals("hashCode") && args == null) {
+							return System.identityHashCode(proxy);
+						}
+						return handler.invoke(proxy, method, args);
+					}
+				});
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public ChannelHandlerContext getContext() {
+		return context;
+	}
+
+	public List<Object> getWritten() {
+		return written;
+	}
+
+	public List<ChannelEvent> getUpstream() {
+		return upstream;
+	}
+
+	public List<ChannelEvent> getDownstream() {
+		return downstream;
+	}
+
+	public int getClosedCount() {
+		return closed.get();
+	}
+
+	public boolean isReadable() {
+		return readable;
+	}
+
+	public void setReadable(boolean readable) {
+		this.readable = readable;
+	}
+
+	public void setConnected(boolean connected) {
+		this.connected = connected;
+	}
+
+	public void setUpstreamListener(UpstreamListener upstreamListener) {
+		this.upstreamListener = upstreamListener;
+	}
+
+	public void setBufferFactory(ChannelBufferFactory bufferFactory) {
+		this.bufferFactory = bufferFactory;
+	}
+}
@@ -0,0 +1,367 @@
+package com.woniu.network.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.channel.Channel;
+
+import com.woniu.network.bootstrap.client.LongConnectClient;
+import com.woniu.network.bootstrap.server.Server;
+import com.woniu.network.bootstrap.server.ServerConfig;
+import com.woniu.network.handler.cfg.ProtocolExecutorMatcher;
+import com.woniu.network.handler.server.executor.MessageExecutor;
+import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolField;
+import com.woniu.network.protocol.ProtocolFieldType;
+import com.woniu.network.protocol.factory.ProtocolFactory;
+import com.woniu.network.protocol.generated.MessageHeader;
+import com.woniu.network.util.LatencyHistogram;
+
+/**
+ * 本机回环上的压测工具：同一进程内启动{@link Server}和N个{@link LongConnectClient}，按固定速率发送protocol.xml中的消息<br>
+ * 延迟从<b>计划</b>发送时间算起(放在消息头userid1、userid2中)，发送线程落后时排队的时间也计入，即已修正coordinated omission；
+ * 被拒绝或发送异常的消息按计划时间到失败时的延迟计入直方图，不会因失败而从结果中消失<br>
+ * 输出吞吐、延迟百分位、分配速率和GC时间，分配速率由后台线程定时采样各线程的分配量累计得出，已结束的线程也计入；
+ * 参数通过系统属性设置：
+ *
+ * <pre>
+ * bench.port               默认2099
+ * bench.connections        连接数，默认8
+ * bench.senders            发送线程数，默认min(连接数, CPU核数)
+ * bench.rate               所有连接合计每秒消息数，默认20000
+ * bench.seconds            测量时长，默认30
+ * bench.warmupSeconds      预热时长，不计入结果，默认5
+ * bench.mix                messageId:权重，逗号分隔，默认0x1001:80,0x1002:20
+ * bench.stringLength       string/wstring字段填充的长度，默认64
+ * bench.compressThreshold  客户端压缩阈值，0表示不压缩，默认0
+ * bench.allocSampleMillis  分配量采样间隔，毫秒，默认10；在两次采样之间启动并结束的线程不计入
+ * </pre>
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.woniu.network.benchmark.NetworkBenchmark
+ */
+public class NetworkBenchmark {
+
+	private final int port = Integer.getInteger("bench.port", 2099);
+	private final int connections = Integer.getInteger("bench.connections", 8);
+	private final int senders = Integer.getInteger("bench.senders",
+			Math.min(connections, Runtime.getRuntime().availableProcessors()));
+	private final int rate = Integer.getInteger("bench.rate", 20000);
+	private final int seconds = Integer.getInteger("bench.seconds", 30);
+	private final int warmupSeconds = Integer.getInteger("bench.warmupSeconds", 5);
+	private final String mix = System.getProperty("bench.mix", "0x1001:80,0x1002:20");
+	private final int stringLength = Integer.getInteger("bench.stringLength", 64);
+	private final int compressThreshold = Integer.getInteger("bench.compressThreshold", 0);
+	private final int allocSampleMillis = Integer.getInteger("bench.allocSampleMillis", 10);
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong received = new AtomicLong();
+	private volatile boolean recording;
+
+	// 按权重展开的messageId，第k条消息用messageIds[k % length]
+	private int[] messageIds;
+	private String payload;
+	private long baseNanos;
+
+	public static void main(String[] args) throws Exception {
+		new NetworkBenchmark().run();
+		System.exit(0);
+	}
+
+	public void run() throws Exception {
+		messageIds = parseMix(mix);
+		payload = StringUtils.repeat("x", stringLength);
+		baseNanos = System.nanoTime();
+		AllocationSampler allocation = new AllocationSampler(allocSampleMillis);
+		allocation.start();
+
+		Server server = startServer();
+		List<LongConnectClient> clients = new ArrayList<LongConnectClient>();
+		for (int i = 0; i < connections; i++) {
+			LongConnectClient client = new LongConnectClient("127.0.0.1:" + port);
+			client.setCompressThreshold(compressThreshold);
+			client.connect();
+			clients.add(client);
+		}
+		System.out.println(String.format("connections=%d senders=%d rate=%d/s mix=%s stringLength=%d compress=%d",
+				connections, senders, rate, mix, stringLength, compressThreshold));
+
+		long start = System.nanoTime();
+		long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+		CountDownLatch done = new CountDownLatch(senders);
+		for (int i = 0; i < senders; i++) {
+			List<LongConnectClient> own = new ArrayList<LongConnectClient>();
+			for (int j = i; j < clients.size(); j += senders) {
+				own.add(clients.get(j));
+			}
+			Thread thread = new Thread(new Sender(own, start, end, done), "bench-sender-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		sleepUntil(warmupEnd);
+		histogram.reset();
+		long sentBefore = sent.get();
+		long receivedBefore = received.get();
+		long rejectedBefore = rejected.get();
+		long failedBefore = failed.get();
+		long allocatedBefore = allocation.sample();
+		long[] gcBefore = gcCountAndTime();
+		recording = true;
+
+		long next = warmupEnd;
+		while (next < end) {
+			long lastReceived = received.get();
+			next += TimeUnit.SECONDS.toNanos(1);
+			sleepUntil(next);
+			System.out.println(String.format("received %d/s, %s", received.get() - lastReceived,
+					histogram.report(TimeUnit.NANOSECONDS)));
+		}
+		recording = false;
+		done.await();
+
+		double elapsed = (double) (System.nanoTime() - warmupEnd) / TimeUnit.SECONDS.toNanos(1);
+		long allocated = allocation.sample() - allocatedBefore;
+		allocation.stop();
+		long[] gcAfter = gcCountAndTime();
+		System.out.println("==================== result ====================");
+		System.out.println(String.format("sent %.0f/s, received %.0f/s, rejected %d, failed %d",
+				(sent.get() - sentBefore) / elapsed, (received.get() - receivedBefore) / elapsed, rejected.get()
+						- rejectedBefore, failed.get() - failedBefore));
+		System.out.println("latency " + histogram.report(TimeUnit.NANOSECONDS));
+		System.out.println(String.format("allocation %.1f MB/s, gc count %d, gc time %d ms", allocatedBefore < 0 ? -1
+				: allocated / elapsed / 1024 / 1024, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]));
+
+		for (LongConnectClient client : clients) {
+			client.setReconnect(false);
+		}
+		server.stop();
+	}
+
+	private Server startServer() {
+		ServerConfig config = new ServerConfig();
+		config.setBindAddresses(Collections.singletonList((SocketAddress) new InetSocketAddress("127.0.0.1", port)));
+		config.setReaderIdleSeconds(0);
+		Server server = new Server(config);
+
+		MessageExecutor recorder = new MessageExecutor() {
+			@Override
+			public void execute(Channel channel, IProtocol protocol) {
+				long latency = System.nanoTime() - baseNanos - getIntendedTime(protocol);
+				received.incrementAndGet();
+				if (recording) {
+					histogram.record(latency);
+				}
+			}
+		};
+		for (int messageId : messageIds) {
+			ProtocolExecutorMatcher.register(messageId, recorder);
+		}
+		server.start();
+		return server;
+	}
+
+	private class Sender implements Runnable {
+		private final List<LongConnectClient> clients;
+		private final long start;
+		private final long end;
+		private final CountDownLatch done;
+
+		private Sender(List<LongConnectClient> clients, long start, long end, CountDownLatch done) {
+			this.clients = clients;
+			this.start = start;
+			this.end = end;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			double interval = (double) TimeUnit.SECONDS.toNanos(1) * senders / rate;
+			try {
+				for (long k = 0;; k++) {
+					// 按计划时间发送，落后时不等待，直接补发
+					long intended = start + (long) (k * interval);
+					if (intended >= end) {
+						break;
+					}
+					sleepUntil(intended);
+
+					IProtocol protocol = newProtocol(messageIds[(int) (k % messageIds.length)], intended - baseNanos);
+					try {
+						if (clients.get((int) (k % clients.size())).sendProtocol(protocol)) {
+							sent.incrementAndGet();
+						} else {
+							rejected.incrementAndGet();
+							recordFailure(intended);
+						}
+					} catch (RuntimeException e) {
+						failed.incrementAndGet();
+						recordFailure(intended);
+					}
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * 未发出的消息同样从计划时间算起，记录到失败为止的延迟
+	 */
+	private void recordFailure(long intended) {
+		if (recording) {
+			histogram.record(System.nanoTime() - intended);
+		}
+	}
+
+	private IProtocol newProtocol(int messageId, long intendedTime) {
+		ConstructedMessage protocol = ProtocolFactory.Holder.instance.newProtocol(messageId);
+		for (String fieldName : protocol.getMessage().getProtocolFields().keySet()) {
+			ProtocolField<?> field = protocol.getMessage().getProtocolField(fieldName);
+			if (field.getFieldType() == ProtocolFieldType.StringType
+					|| field.getFieldType() == ProtocolFieldType.WStringType) {
+				protocol.setMessageValue(fieldName, payload);
+			}
+		}
+		protocol.setHeaderInt("userid1", (int) (intendedTime >>> 32));
+		protocol.setHeaderInt("userid2", (int) intendedTime);
+		return protocol;
+	}
+
+	private static long getIntendedTime(IProtocol protocol) {
+		int high;
+		int low;
+		if (protocol instanceof MessageHeader) {
+			high = ((MessageHeader) protocol).getUserid1();
+			low = ((MessageHeader) protocol).getUserid2();
+		} else {
+			high = ((ConstructedMessage) protocol).getHeaderInt("userid1");
+			low = ((ConstructedMessage) protocol).getHeaderInt("userid2");
+		}
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	static int[] parseMix(String mix) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (String item : StringUtils.split(mix, ",")) {
+			String[] pair = StringUtils.split(item.trim(), ":");
+			int messageId = Integer.decode(pair[0].trim());
+			int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+			for (int i = 0; i < weight; i++) {
+				ids.add(messageId);
+			}
+		}
+		// 打散，避免同一种消息连续发送
+		Collections.shuffle(ids, new Random(0));
+		int[] result = new int[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+		return result;
+	}
+
+	private static void sleepUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > 100000) {
+				LockSupport.parkNanos(remaining - 50000);
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * 定时采样各线程累计分配的字节数，记住每个线程最后一次的值，线程结束后仍计入总量；JVM不支持时总量为-1
+	 */
+	private static class AllocationSampler implements Runnable {
+		private final long intervalMillis;
+		private final com.sun.management.ThreadMXBean bean;
+		private final Map<Long, Long> lastBytes = new HashMap<Long, Long>();
+		private long total;
+		private volatile boolean running;
+
+		private AllocationSampler(long intervalMillis) {
+			this.intervalMillis = intervalMillis;
+			ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+			com.sun.management.ThreadMXBean sunBean = null;
+			if (threadBean instanceof com.sun.management.ThreadMXBean) {
+				sunBean = (com.sun.management.ThreadMXBean) threadBean;
+				if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) {
+					sunBean = null;
+				}
+			}
+			this.bean = sunBean;
+		}
+
+		void start() {
+			if (bean == null) {
+				return;
+			}
+			running = true;
+			Thread thread = new Thread(this, "bench-alloc-sampler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() {
+			running = false;
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				sample();
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+			}
+		}
+
+		/**
+		 * 采样一次，返回已采到的所有线程(含已结束的)累计分配的字节数
+		 */
+		synchronized long sample() {
+			if (bean == null) {
+				return -1;
+			}
+			long[] ids = bean.getAllThreadIds();
+			long[] bytes = bean.getThreadAllocatedBytes(ids);
+			for (int i = 0; i < ids.length; i++) {
+				// 采样期间结束的线程返回-1，保留其上次的值
+				if (bytes[i] < 0) {
+					continue;
+				}
+				Long last = lastBytes.put(ids[i], bytes[i]);
+				total += bytes[i] - (last == null ? 0 : last);
+			}
+			return total;
+		}
+	}
+
+	private static long[] gcCountAndTime() {
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return new long[] { count, time };
+	}
+}
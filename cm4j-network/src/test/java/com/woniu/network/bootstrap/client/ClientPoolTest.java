@@ -0,0 +1,48 @@
+package com.woniu.network.bootstrap.client;
+
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class ClientPoolTest {
+
+	@Test
+	public void noHealthyConnection() throws Exception {
+		ClientPool pool = new ClientPool(1);
+		pool.addEndpoint("127.0.0.1:1", 1);
+		// 未连接，没有健康的endpoint
+		Assert.assertFalse(pool.sendProtocol(new Message1001()));
+		try {
+			pool.request(new Message1001()).get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ConnectException);
+		}
+		pool.close();
+	}
+
+	@Test
+	public void closeFailsQueuedRequests() throws Exception {
+		MultiplexClient client = new MultiplexClient("127.0.0.1:1");
+		// 未连接，请求留在发送队列中
+		ListenableFuture<IProtocol> future = client.request(new Message1001());
+		Assert.assertEquals(1, client.getQueuedCount());
+		client.close();
+		try {
+			future.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ConnectException);
+		}
+		Assert.assertEquals(0, client.getQueuedCount());
+		Assert.assertEquals(0, client.getPendingCount());
+		Assert.assertFalse(client.sendProtocol(new Message1001()));
+	}
+}
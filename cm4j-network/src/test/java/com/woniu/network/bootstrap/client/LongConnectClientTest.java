@@ -14,10 +14,10 @@ public class LongConnectClientTest {
 		client.connect();
 
 		for (int i = 0; i < 100000; i++) {
-//			param.setAccountId(100000 + i);
-//			ConstructedMessage protocol = ((Object) ProtocolFactory.Holder.instance).createProtocol();
-//
-//			client.sendProtocol(protocol);
+			ConstructedMessage protocol = ProtocolFactory.Holder.instance.newProtocol(0x1001);
+			protocol.setMessageValue("accountId", 100000 + i);
+
+			client.sendProtocol(protocol);
 		}
 
 		try {
@@ -0,0 +1,65 @@
+package com.woniu.network.buffer;
+
+import java.nio.ByteOrder;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+public class PooledChannelBufferFactoryTest {
+
+	@Test
+	public void sizeClass() {
+		Assert.assertEquals(0, PooledChannelBufferFactory.sizeClass(1));
+		Assert.assertEquals(0, PooledChannelBufferFactory.sizeClass(256));
+		Assert.assertEquals(1, PooledChannelBufferFactory.sizeClass(257));
+		Assert.assertEquals(8, PooledChannelBufferFactory.sizeClass(PooledChannelBufferFactory.MAX_SIZE));
+	}
+
+	@Test
+	public void recycle() {
+		PooledChannelBufferFactory factory = new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN, 1);
+
+		ChannelBuffer first = factory.getBuffer(100);
+		Assert.assertTrue(first instanceof PooledChannelBuffer);
+		Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, first.order());
+		Assert.assertEquals(256, first.capacity());
+		Assert.assertEquals(0, first.readableBytes());
+		Assert.assertEquals(1, factory.getMissCount());
+
+		first.writeInt(1);
+		Assert.assertTrue(((PooledChannelBuffer) first).release());
+		Assert.assertEquals(1, factory.getPooledBuffers());
+
+		ChannelBuffer second = factory.getBuffer(ByteOrder.BIG_ENDIAN, 200);
+		Assert.assertEquals(1, factory.getHitCount());
+		Assert.assertEquals(ByteOrder.BIG_ENDIAN, second.order());
+		Assert.assertEquals(0, second.readableBytes());
+
+		// 池已满，多出的丢弃
+		ChannelBuffer third = factory.getBuffer(200);
+		((PooledChannelBuffer) second).release();
+		((PooledChannelBuffer) third).release();
+		Assert.assertEquals(1, factory.getPooledBuffers());
+		Assert.assertEquals(1, factory.getDiscardCount());
+	}
+
+	@Test
+	public void oversize() {
+		PooledChannelBufferFactory factory = new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN, 1);
+		ChannelBuffer buffer = factory.getBuffer(PooledChannelBufferFactory.MAX_SIZE + 1);
+		Assert.assertFalse(buffer instanceof PooledChannelBuffer);
+		Assert.assertEquals(1, factory.getOversizeCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void releaseTwice() {
+		PooledChannelBufferFactory factory = new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN, 1);
+		PooledChannelBuffer buffer = (PooledChannelBuffer) factory.getBuffer(10);
+		buffer.retain();
+		Assert.assertFalse(buffer.release());
+		Assert.assertTrue(buffer.release());
+		buffer.release();
+	}
+}
@@ -0,0 +1,126 @@
+package com.woniu.network.capture;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class CaptureFileTest {
+
+	@Test
+	public void roundTrip() throws Exception {
+		File file = File.createTempFile("capture", ".cap");
+		file.deleteOnExit();
+		CaptureFile captureFile = new CaptureFile(file, 1024 * 1024);
+		ChannelBuffer first = frame(0x1001, 20);
+		Assert.assertTrue(captureFile.append(CaptureFile.INBOUND, 7, first));
+		Assert.assertTrue(captureFile.append(CaptureFile.OUTBOUND, 8, frame(0x1002, 300)));
+		// 不改变readerIndex
+		Assert.assertEquals(8, first.readerIndex());
+		captureFile.close();
+		Assert.assertFalse(captureFile.append(CaptureFile.INBOUND, 7, first));
+		Assert.assertEquals(captureFile.getLength() + 1, file.length());
+
+		CaptureReader reader = new CaptureReader(file);
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(CaptureFile.INBOUND, reader.getDirection());
+		Assert.assertEquals(7, reader.getChannelId());
+		ChannelBuffer frame = reader.getFrame();
+		Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, frame.order());
+		Assert.assertEquals(first.readableBytes(), frame.readableBytes());
+		Assert.assertEquals(first.readableBytes() - 4, frame.getInt(0));
+		Assert.assertEquals(0x1001, frame.getInt(32));
+		long timestamp = reader.getTimestampNanos();
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(CaptureFile.OUTBOUND, reader.getDirection());
+		Assert.assertEquals(8, reader.getChannelId());
+		Assert.assertEquals(0x1002, reader.getFrame().getInt(32));
+		Assert.assertTrue(reader.getTimestampNanos() >= timestamp);
+		Assert.assertFalse(reader.next());
+
+		reader.rewind();
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(7, reader.getChannelId());
+		reader.close();
+	}
+
+	@Test
+	public void concurrentAppend() throws Exception {
+		File file = File.createTempFile("capture", ".cap");
+		file.deleteOnExit();
+		final CaptureFile captureFile = new CaptureFile(file, 16 * 1024 * 1024);
+		final int threads = 4;
+		final int count = 5000;
+		final CountDownLatch latch = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int channelId = t;
+			new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						captureFile.append(CaptureFile.INBOUND, channelId, frame(i, 10 + i % 50));
+					}
+					latch.countDown();
+				}
+			}.start();
+		}
+		latch.await();
+		captureFile.close();
+
+		Map<Integer, Integer> next = new HashMap<Integer, Integer>();
+		CaptureReader reader = new CaptureReader(file);
+		int total = 0;
+		while (reader.next()) {
+			Integer expect = next.get(reader.getChannelId());
+			expect = expect == null ? 0 : expect;
+			// 同一线程写入的记录保持顺序
+			Assert.assertEquals(expect.intValue(), reader.getFrame().getInt(32));
+			Assert.assertEquals(32 + 4 + 10 + expect % 50, reader.getFrameLength());
+			next.put(reader.getChannelId(), expect + 1);
+			total++;
+		}
+		reader.close();
+		Assert.assertEquals(threads * count, total);
+	}
+
+	@Test
+	public void full() throws Exception {
+		File file = File.createTempFile("capture", ".cap");
+		file.deleteOnExit();
+		CaptureFile captureFile = new CaptureFile(file, CaptureFile.FILE_HEADER_LENGTH
+				+ CaptureFile.RECORD_HEADER_LENGTH + 100);
+		Assert.assertTrue(captureFile.append(CaptureFile.INBOUND, 1, frame(1, 64)));
+		Assert.assertFalse(captureFile.append(CaptureFile.INBOUND, 1, frame(2, 64)));
+		Assert.assertEquals(1, captureFile.getDroppedCount());
+		captureFile.close();
+
+		CaptureReader reader = new CaptureReader(file);
+		Assert.assertTrue(reader.next());
+		Assert.assertFalse(reader.next());
+		reader.close();
+	}
+
+	/**
+	 * 32字节消息头 + messageId + body，readerIndex不为0
+	 */
+	private static ChannelBuffer frame(int messageId, int bodyLength) {
+		ChannelBuffer buffer = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, 8 + 32 + 4 + bodyLength);
+		buffer.writerIndex(8);
+		buffer.readerIndex(8);
+		buffer.writeInt(32 + 4 + bodyLength - 4);
+		buffer.writeZero(28);
+		buffer.writeInt(messageId);
+		for (int i = 0; i < bodyLength; i++) {
+			buffer.writeByte(i);
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,72 @@
+package com.woniu.network.capture;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.woniu.network.MockChannel;
+import com.woniu.network.bootstrap.client.LongConnectClient;
+import com.woniu.network.handler.codec.ProtocolEncoder;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class ProtocolReplayerTest {
+
+	@Test
+	public void replayBatch() throws Exception {
+		File file = File.createTempFile("capture", ".cap");
+		file.deleteOnExit();
+		CaptureFile captureFile = new CaptureFile(file, 1024 * 1024);
+		CaptureHandler handler = new CaptureHandler(captureFile, false, true);
+		MockChannel channel = new MockChannel(3);
+
+		// ProtocolBatch合并写出：一个buffer中3个frame
+		List<IProtocol> batch = new ArrayList<IProtocol>();
+		for (int i = 0; i < 3; i++) {
+			Message1001 protocol = new Message1001();
+			protocol.setAccountId(100001 + i);
+			batch.add(protocol);
+		}
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 256);
+		ProtocolEncoder.writeFrames(buffer, batch);
+		Message1001 single = new Message1001();
+		single.setAccountId(100004);
+		ChannelBuffer next = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 64);
+		ProtocolEncoder.writeFrames(next, Collections.<IProtocol> singletonList(single));
+
+		int readerIndex = buffer.readerIndex();
+		handler.writeRequested(channel.getContext(), channel.message(buffer));
+		handler.writeRequested(channel.getContext(), channel.message(next));
+		Assert.assertEquals(readerIndex, buffer.readerIndex());
+		Assert.assertEquals(2, channel.getDownstream().size());
+		Assert.assertEquals(4, captureFile.getRecordCount());
+		captureFile.close();
+
+		final List<IProtocol> sent = new ArrayList<IProtocol>();
+		LongConnectClient client = new LongConnectClient("127.0.0.1:2012") {
+			@Override
+			public boolean sendProtocol(IProtocol protocol) {
+				sent.add(protocol);
+				return true;
+			}
+		};
+		ProtocolReplayer replayer = new ProtocolReplayer(Collections.singletonList(client));
+		replayer.setSpeed(ProtocolReplayer.MAX_SPEED);
+		replayer.setDirection(CaptureFile.OUTBOUND);
+		replayer.replay(file);
+
+		Assert.assertEquals(4, replayer.getSentCount());
+		Assert.assertEquals(0, replayer.getSkippedCount());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(100001 + i, ((Message1001) sent.get(i)).getAccountId());
+		}
+	}
+}
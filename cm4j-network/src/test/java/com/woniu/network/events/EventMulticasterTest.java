@@ -1,7 +1,21 @@
 package com.woniu.network.events;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
 import org.junit.Test;
 
+import com.woniu.network.events.EventMulticaster.DispatchMode;
+
 public class EventMulticasterTest {
 
 	@Test
@@ -23,6 +37,154 @@ public class EventMulticasterTest {
 		});
 		multicaster.multicastEvent(new Event1(this));
 	}
+
+	@Test
+	public void typedSync() {
+		EventMulticaster multicaster = new EventMulticaster(DispatchMode.SYNC, null, 0);
+		final List<String> received = new ArrayList<String>();
+		// 没有监听器时缓存空结果，加入监听器后失效
+		multicaster.multicastEvent(new Event1(this));
+		multicaster.addListener(new ApplicationListener<Event1>() {
+			@Override
+			public void onEvent(Event1 event) {
+				received.add("event1");
+			}
+		});
+		multicaster.addListener(new ApplicationListener<ApplicationEvent>() {
+			@Override
+			public void onEvent(ApplicationEvent event) {
+				received.add("all");
+			}
+		});
+		multicaster.multicastEvent(new Event1(this));
+		multicaster.multicastEvent(new ApplicationEvent(this));
+
+		Assert.assertEquals(3, received.size());
+		Assert.assertEquals("event1", received.get(0));
+		Assert.assertEquals("all", received.get(1));
+		Assert.assertEquals("all", received.get(2));
+		Assert.assertEquals(Event1.class, EventMulticaster.resolveEventType(new Event1Listener()));
+	}
+
+	@Test
+	public void batchInOrder() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		EventMulticaster multicaster = new EventMulticaster(DispatchMode.BATCH, executor, 16384);
+		final int count = 10000;
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(count);
+		multicaster.addListener(new ApplicationListener<Event1>() {
+			@Override
+			public void onEvent(Event1 event) {
+				received.add((Integer) event.getSource());
+				latch.countDown();
+			}
+		});
+		for (int i = 0; i < count; i++) {
+			multicaster.multicastEvent(new Event1(i));
+		}
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(0, multicaster.getOverflowCount());
+		// 按发布顺序处理
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i, received.get(i).intValue());
+		}
+		Assert.assertTrue(multicaster.getListenerStatistics()[0].contains("count:" + count));
+		executor.shutdown();
+	}
+
+	@Test
+	public void batchOverflowWaits() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		EventMulticaster multicaster = new EventMulticaster(DispatchMode.BATCH, executor, 2);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+		multicaster.addListener(new ApplicationListener<Event1>() {
+			@Override
+			public void onEvent(Event1 event) {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				received.add((Integer) event.getSource());
+				threads.add(Thread.currentThread());
+			}
+		});
+		final int count = 20;
+		final EventMulticaster publisher = multicaster;
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					publisher.multicastEvent(new Event1(i));
+				}
+			}
+		};
+		thread.start();
+		// 队列满时发布线程等待，不在发布线程中执行监听器
+		long deadline = System.currentTimeMillis() + 5000;
+		while (multicaster.getOverflowCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertTrue(multicaster.getOverflowCount() > 0);
+		Assert.assertTrue(thread.isAlive());
+		Assert.assertTrue(received.isEmpty());
+
+		blocked.countDown();
+		thread.join(5000);
+		deadline = System.currentTimeMillis() + 5000;
+		while (received.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(count, received.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i, received.get(i).intValue());
+			Assert.assertNotSame(thread, threads.get(i));
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void listenerAddedDuringDispatch() throws Exception {
+		final EventMulticaster multicaster = new EventMulticaster(DispatchMode.SYNC, null, 0);
+		final int listeners = 200;
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final Object marker = new Object();
+		Thread publisher = new Thread() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					multicaster.multicastEvent(new Event1(this));
+				}
+			}
+		};
+		publisher.start();
+		for (int i = 0; i < listeners; i++) {
+			multicaster.addListener(new ApplicationListener<Event1>() {
+				@Override
+				public void onEvent(Event1 event) {
+					if (event.getSource() == marker) {
+						received.incrementAndGet();
+					}
+				}
+			});
+		}
+		running.set(false);
+		publisher.join();
+
+		// 与增加监听器并发生成的缓存不能遗漏之后加入的监听器
+		multicaster.multicastEvent(new Event1(marker));
+		Assert.assertEquals(listeners, received.get());
+	}
+}
+
+class Event1Listener implements ApplicationListener<Event1> {
+	@Override
+	public void onEvent(Event1 event) {
+	}
 }
 
 class Event1 extends ApplicationEvent {
@@ -0,0 +1,131 @@
+package com.woniu.network.handler.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class CorrelationHandlerTest {
+
+	private final Timer timer = new HashedWheelTimer();
+
+	@After
+	public void stop() {
+		timer.stop();
+	}
+
+	@Test
+	public void assignId() {
+		CorrelationHandler handler = new CorrelationHandler(timer);
+		Message1001 first = new Message1001();
+		Message1001 second = new Message1001();
+		handler.register(first, 1000);
+		handler.register(second, 1000);
+
+		Assert.assertTrue(CorrelationHandler.getCorrelationId(first) != 0);
+		Assert.assertTrue(CorrelationHandler.getCorrelationId(first) != CorrelationHandler.getCorrelationId(second));
+		Assert.assertEquals(2, handler.getPendingCount());
+	}
+
+	@Test
+	public void timeout() throws Exception {
+		CorrelationHandler handler = new CorrelationHandler(timer);
+		ListenableFuture<IProtocol> future = handler.register(new Message1001(), 50);
+		try {
+			future.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertEquals(0, handler.getPendingCount());
+	}
+
+	@Test
+	public void fail() throws Exception {
+		CorrelationHandler handler = new CorrelationHandler(timer);
+		Message1001 request = new Message1001();
+		ListenableFuture<IProtocol> future = handler.register(request, 1000);
+		handler.fail(request, new ConnectException("test"));
+		try {
+			future.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ConnectException);
+		}
+		Assert.assertEquals(0, handler.getPendingCount());
+	}
+
+	@Test
+	public void transfer() throws Exception {
+		CorrelationHandler source = new CorrelationHandler(timer);
+		CorrelationHandler target = new CorrelationHandler(timer);
+		Message1001 request = new Message1001();
+		ListenableFuture<IProtocol> future = source.register(request, 50);
+
+		Assert.assertTrue(source.transfer(request, target));
+		Assert.assertEquals(0, source.getPendingCount());
+		Assert.assertEquals(1, target.getPendingCount());
+		// 超时时间不变
+		try {
+			future.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertEquals(0, target.getPendingCount());
+
+		// 已失败的请求不能再转发
+		Assert.assertFalse(target.transfer(request, source));
+		Assert.assertEquals(0, source.getPendingCount());
+	}
+
+	@Test
+	public void closeFailsWrittenOnly() throws Exception {
+		CorrelationHandler handler = new CorrelationHandler(timer);
+		Message1001 written = new Message1001();
+		Message1001 queued = new Message1001();
+		ListenableFuture<IProtocol> writtenFuture = handler.register(written, 1000);
+		ListenableFuture<IProtocol> queuedFuture = handler.register(queued, 1000);
+
+		ChannelHandlerContext ctx = proxy(ChannelHandlerContext.class, null);
+		handler.writeRequested(ctx, proxy(MessageEvent.class, written));
+		handler.channelClosed(ctx, null);
+
+		Assert.assertTrue(writtenFuture.isDone());
+		try {
+			writtenFuture.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ConnectException);
+		}
+		// 未写出的请求留到重连后发送
+		Assert.assertFalse(queuedFuture.isDone());
+		Assert.assertEquals(1, handler.getPendingCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T proxy(Class<T> type, final Object message) {
+		return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return method.getName().equals("getMessage") ? message : null;
+					}
+				});
+	}
+}
@@ -0,0 +1,49 @@
+package com.woniu.network.handler.client;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.junit.Test;
+
+public class ReconnectHandlerTest {
+
+	@Test
+	public void backoff() {
+		ReconnectHandler handler = new ReconnectHandler(null, new ClientBootstrap(), true,
+				Collections.singletonList((SocketAddress) new InetSocketAddress("127.0.0.1", 2012)),
+				new CircuitBreaker());
+		handler.setInitialDelayMillis(100);
+		handler.setMaxDelayMillis(1000);
+
+		for (int i = 0; i < 100; i++) {
+			long first = handler.nextDelay(0);
+			Assert.assertTrue(first >= 50 && first <= 100);
+			long third = handler.nextDelay(2);
+			Assert.assertTrue(third >= 200 && third <= 400);
+			// 封顶
+			long capped = handler.nextDelay(40);
+			Assert.assertTrue(capped >= 500 && capped <= 1000);
+		}
+	}
+
+	@Test
+	public void circuitBreaker() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		Assert.assertTrue(breaker.allowRequest());
+
+		breaker.onDisconnected();
+		Assert.assertFalse(breaker.allowRequest());
+		Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		breaker.onReconnecting();
+		Assert.assertFalse(breaker.allowRequest());
+
+		breaker.onConnected();
+		Assert.assertTrue(breaker.allowRequest());
+		Assert.assertEquals(0, breaker.getOpenMillis());
+	}
+}
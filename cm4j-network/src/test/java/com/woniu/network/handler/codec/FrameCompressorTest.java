@@ -0,0 +1,113 @@
+package com.woniu.network.handler.codec;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteOrder;
+import java.util.zip.Deflater;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.junit.Test;
+
+import com.woniu.network.exception.ProtocolParamValidationException;
+
+public class FrameCompressorTest {
+
+	// 与protocol.xml中的header一致
+	private static final int HEADER_LENGTH = 32;
+	private static final int RESERVED_INDEX = 24;
+
+	@Test
+	public void roundTrip() throws Exception {
+		ChannelBuffer small = frame(0x1001, 20);
+		ChannelBuffer large = frame(0x1002, 2000);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 4096);
+		buffer.writeBytes(small, small.readerIndex(), small.readableBytes());
+		buffer.writeBytes(large, large.readerIndex(), large.readableBytes());
+
+		FrameCompressor compressor = new FrameCompressor(256, Deflater.BEST_SPEED, HEADER_LENGTH, RESERVED_INDEX);
+		ChannelBuffer compressed = (ChannelBuffer) compressor.encode(null, channel(), buffer);
+		Assert.assertEquals(1, compressor.getCompressedFrames());
+		Assert.assertTrue(compressed.readableBytes() < buffer.readableBytes());
+
+		FrameDecompressor decompressor = new FrameDecompressor(10000, HEADER_LENGTH, RESERVED_INDEX);
+		int index = compressed.readerIndex();
+		ChannelBuffer first = nextFrame(compressed, index);
+		index += first.readableBytes();
+		ChannelBuffer second = nextFrame(compressed, index);
+		Assert.assertEquals(compressed.writerIndex(), index + second.readableBytes());
+		Assert.assertTrue((second.getInt(RESERVED_INDEX) & FrameCompressor.FLAG_DEFLATE) != 0);
+
+		// 未压缩的原样返回
+		Assert.assertSame(first, decompressor.decode(null, null, first));
+		Assert.assertTrue(ChannelBuffers.equals(small, first));
+		Assert.assertTrue(ChannelBuffers.equals(large, (ChannelBuffer) decompressor.decode(null, null, second)));
+	}
+
+	@Test
+	public void belowThreshold() throws Exception {
+		ChannelBuffer small = frame(0x1001, 100);
+		Assert.assertSame(small, new FrameCompressor(256, Deflater.BEST_SPEED, HEADER_LENGTH, RESERVED_INDEX).encode(null, channel(), small));
+	}
+
+	@Test
+	public void invalidHeaderLayout() {
+		try {
+			new FrameCompressor(256, Deflater.BEST_SPEED, HEADER_LENGTH, HEADER_LENGTH - 2);
+			Assert.fail();
+		} catch (ProtocolParamValidationException e) {
+		}
+		try {
+			new FrameDecompressor(10000, HEADER_LENGTH, 0);
+			Assert.fail();
+		} catch (ProtocolParamValidationException e) {
+		}
+	}
+
+	private ChannelBuffer nextFrame(ChannelBuffer buffer, int index) {
+		return buffer.slice(index, buffer.getInt(index) + 4);
+	}
+
+	/**
+	 * 可压缩的消息体：重复的文本
+	 */
+	private ChannelBuffer frame(int messageId, int bodyLength) {
+		ChannelBuffer frame = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, HEADER_LENGTH
+				+ bodyLength);
+		frame.writeInt(HEADER_LENGTH + bodyLength - 4);
+		frame.writeInt(0x301);
+		frame.writeZero(HEADER_LENGTH - 12);
+		frame.writeInt(0x9000);
+		for (int i = 0; i < bodyLength; i++) {
+			frame.writeByte("remark ".charAt(i % 7));
+		}
+		frame.setInt(HEADER_LENGTH, messageId);
+		return frame;
+	}
+
+	private Channel channel() {
+		final ChannelConfig config = (ChannelConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ChannelConfig.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return HeapChannelBufferFactory.getInstance(ByteOrder.LITTLE_ENDIAN);
+					}
+				});
+		return (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Channel.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getConfig")) {
+							return config;
+						}
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,67 @@
+package com.woniu.network.handler.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.junit.Test;
+
+public class ConnectionLimitHandlerTest {
+
+	@Test
+	public void limit() throws Exception {
+		ConnectionLimitHandler handler = new ConnectionLimitHandler(2);
+		final AtomicInteger closed = new AtomicInteger();
+		final AtomicInteger passed = new AtomicInteger();
+		final ChannelStateEvent open = (ChannelStateEvent) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ChannelStateEvent.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return null;
+					}
+				});
+		final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Channel.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("close")) {
+							closed.incrementAndGet();
+						}
+						return null;
+					}
+				});
+		ChannelHandlerContext ctx = (ChannelHandlerContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ChannelHandlerContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getChannel")) {
+							return channel;
+						} else if (method.getName().equals("sendUpstream") && args[0] == open) {
+							passed.incrementAndGet();
+						}
+						return null;
+					}
+				});
+
+		handler.channelOpen(ctx, open);
+		handler.channelOpen(ctx, open);
+		handler.channelOpen(ctx, open);
+		Assert.assertEquals(2, passed.get());
+		Assert.assertEquals(1, closed.get());
+		Assert.assertEquals(1, handler.getRejectedCount());
+
+		// 被拒绝的连接关闭后仍是满的，再关闭一个正常连接才腾出位置
+		handler.channelClosed(ctx, null);
+		Assert.assertEquals(2, handler.getConnectionCount());
+		handler.channelClosed(ctx, null);
+		handler.channelOpen(ctx, open);
+		Assert.assertEquals(3, passed.get());
+		Assert.assertEquals(2, handler.getConnectionCount());
+	}
+}
@@ -0,0 +1,54 @@
+package com.woniu.network.handler.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.junit.Test;
+
+import com.woniu.network.MockChannel;
+
+public class IdleCloseHandlerTest {
+
+	@Test
+	public void closeIdle() throws Exception {
+		IdleCloseHandler handler = new IdleCloseHandler();
+		MockChannel channel = new MockChannel();
+		handler.channelIdle(channel.getContext(), idle(channel.getChannel(), IdleState.READER_IDLE));
+		Assert.assertEquals(1, channel.getClosedCount());
+		Assert.assertEquals(1, handler.getClosedCount());
+	}
+
+	@Test
+	public void keepSuspended() throws Exception {
+		IdleCloseHandler handler = new IdleCloseHandler();
+		MockChannel channel = new MockChannel();
+		// OrderedExecutionHandler积压时暂停读取
+		channel.getChannel().setReadable(false);
+		handler.channelIdle(channel.getContext(), idle(channel.getChannel(), IdleState.READER_IDLE));
+		Assert.assertEquals(0, channel.getClosedCount());
+
+		// 恢复读取后仍然空闲则关闭
+		channel.getChannel().setReadable(true);
+		handler.channelIdle(channel.getContext(), idle(channel.getChannel(), IdleState.READER_IDLE));
+		Assert.assertEquals(1, channel.getClosedCount());
+	}
+
+	private IdleStateEvent idle(final Channel channel, final IdleState state) {
+		return MockChannel.proxy(IdleStateEvent.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getState")) {
+					return state;
+				} else if (method.getName().equals("getChannel")) {
+					return channel;
+				}
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,161 @@
+package com.woniu.network.handler.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Test;
+
+import com.woniu.network.MockChannel;
+import com.woniu.network.protocol.IProtocol;
+
+public class OrderedExecutionHandlerTest {
+
+	@Test
+	public void orderPerChannel() throws Exception {
+		OrderedExecutionHandler handler = new OrderedExecutionHandler(4, 100000);
+		int count = 10000;
+		CountDownLatch latch = new CountDownLatch(count * 2);
+		List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+		MockChannel channel1 = channel(1, first, latch);
+		MockChannel channel2 = channel(2, second, latch);
+
+		handler.channelOpen(channel1.getContext(), channel1.stateEvent(ChannelState.OPEN, true));
+		handler.channelOpen(channel2.getContext(), channel2.stateEvent(ChannelState.OPEN, true));
+		for (int i = 0; i < count; i++) {
+			handler.messageReceived(channel1.getContext(), channel1.message(new Message(0x1001, i)));
+			handler.messageReceived(channel2.getContext(), channel2.message(new Message(0x1001, i)));
+		}
+
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i, first.get(i).intValue());
+			Assert.assertEquals(i, second.get(i).intValue());
+		}
+		Assert.assertEquals(0, handler.getQueuedCount());
+		handler.releaseExternalResources();
+	}
+
+	@Test
+	public void bindLane() throws Exception {
+		OrderedExecutionHandler handler = new OrderedExecutionHandler(1, 100);
+		handler.addLane("slow", 1);
+		handler.bind(0x1002, "slow");
+
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch = new CountDownLatch(2);
+		MockChannel channel = new MockChannel(1);
+		channel.setUpstreamListener(new MockChannel.UpstreamListener() {
+			@Override
+			public void upstream(ChannelEvent e) {
+				if (e instanceof MessageEvent) {
+					threads.add(Thread.currentThread().getName());
+					latch.countDown();
+				}
+			}
+		});
+
+		handler.channelOpen(channel.getContext(), channel.stateEvent(ChannelState.OPEN, true));
+		handler.messageReceived(channel.getContext(), channel.message(new Message(0x1001, 0)));
+		handler.messageReceived(channel.getContext(), channel.message(new Message(0x1002, 1)));
+		Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(threads.contains("executor-default-0"));
+		Assert.assertTrue(threads.contains("executor-slow-0"));
+		handler.releaseExternalResources();
+	}
+
+	@Test
+	public void closeAfterQueuedMessages() throws Exception {
+		OrderedExecutionHandler handler = new OrderedExecutionHandler(1, 100);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+		MockChannel channel = new MockChannel(1);
+		channel.setUpstreamListener(new MockChannel.UpstreamListener() {
+			@Override
+			public void upstream(ChannelEvent e) {
+				if (e instanceof MessageEvent) {
+					try {
+						blocked.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					events.add(((Message) ((MessageEvent) e).getMessage()).getSeq());
+				} else if (e instanceof ChannelStateEvent && ((ChannelStateEvent) e).getValue() == null) {
+					events.add("closed");
+				}
+			}
+		});
+
+		handler.channelOpen(channel.getContext(), channel.stateEvent(ChannelState.OPEN, true));
+		for (int i = 0; i < 3; i++) {
+			handler.messageReceived(channel.getContext(), channel.message(new Message(0x1001, i)));
+		}
+		handler.channelClosed(channel.getContext(), channel.stateEvent(ChannelState.OPEN, null));
+		Assert.assertTrue(events.isEmpty());
+
+		blocked.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (events.size() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(Arrays.<Object> asList(0, 1, 2, "closed"), events);
+		handler.releaseExternalResources();
+	}
+
+	@Test
+	public void closeWithoutQueuedMessages() throws Exception {
+		OrderedExecutionHandler handler = new OrderedExecutionHandler(1, 100);
+		MockChannel channel = new MockChannel(1);
+		ChannelStateEvent closed = channel.stateEvent(ChannelState.OPEN, null);
+		handler.channelOpen(channel.getContext(), channel.stateEvent(ChannelState.OPEN, true));
+		handler.channelClosed(channel.getContext(), closed);
+		Assert.assertTrue(channel.getUpstream().contains(closed));
+		handler.releaseExternalResources();
+	}
+
+	/**
+	 * 按顺序记录执行的消息序号
+	 */
+	private MockChannel channel(int id, final List<Integer> received, final CountDownLatch latch) {
+		MockChannel channel = new MockChannel(id);
+		channel.setUpstreamListener(new MockChannel.UpstreamListener() {
+			@Override
+			public void upstream(ChannelEvent e) {
+				if (e instanceof MessageEvent) {
+					received.add(((Message) ((MessageEvent) e).getMessage()).getSeq());
+					latch.countDown();
+				}
+			}
+		});
+		return channel;
+	}
+
+	public static class Message implements IProtocol {
+		private final int messageId;
+		private final int seq;
+
+		public Message(int messageId, int seq) {
+			this.messageId = messageId;
+			this.seq = seq;
+		}
+
+		@Override
+		public int getMessageId() {
+			return messageId;
+		}
+
+		public int getSeq() {
+			return seq;
+		}
+	}
+}
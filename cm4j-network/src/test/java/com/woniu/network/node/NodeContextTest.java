@@ -1,8 +1,13 @@
 package com.woniu.network.node;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import junit.framework.Assert;
+
 import org.junit.Test;
 
 import com.woniu.network.node.queue.BusinessHandler;
@@ -27,6 +32,54 @@ public class NodeContextTest {
 		}
 	}
 
+	@Test
+	public void putBlocksAtCapacity() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger executed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		final NodeContext ctx = new NodeContext(executor, new BusinessHandler() {
+			@Override
+			public Response exec(Request request) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				executed.incrementAndGet();
+				return null;
+			}
+		}, 2, 3000);
+		try {
+			ctx.put(new R(0));
+			ctx.put(new R(1));
+			Thread producer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						ctx.put(new R(2));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			producer.start();
+			// 处理中的请求已达capacity，第三个请求等待
+			producer.join(200);
+			Assert.assertTrue(producer.isAlive());
+
+			release.countDown();
+			producer.join(1000);
+			Assert.assertFalse(producer.isAlive());
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+			Assert.assertEquals(3, executed.get());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			ctx.shutdown();
+		}
+	}
+
 	class R implements Request {
 		private int i;
 
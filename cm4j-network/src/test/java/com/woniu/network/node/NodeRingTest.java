@@ -0,0 +1,157 @@
+package com.woniu.network.node;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.Test;
+
+import com.woniu.network.node.queue.BusinessHandler;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
+
+public class NodeRingTest {
+
+	private final List<Runnable> tasks = new ArrayList<Runnable>();
+	private final Executor executor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+	};
+	private final BusinessHandler handler = new BusinessHandler() {
+		@Override
+		public Response exec(Request request) {
+			return new Message(((Message) request).getSeq());
+		}
+	};
+
+	@Test
+	public void inOrderBatch() {
+		List<Object> written = new ArrayList<Object>();
+		NodeRing ring = new NodeRing(channel(written), executor, handler, 8, 3000);
+		for (int i = 0; i < 4; i++) {
+			Assert.assertTrue(ring.submit(new Message(i)));
+		}
+		// 倒序完成，环头未完成前不写出
+		for (int i = 3; i > 0; i--) {
+			tasks.get(i).run();
+		}
+		Assert.assertTrue(written.isEmpty());
+		tasks.get(0).run();
+
+		Assert.assertEquals(1, written.size());
+		List<IProtocol> protocols = ((ProtocolBatch) written.get(0)).getProtocols();
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(i, ((Message) protocols.get(i)).getSeq());
+		}
+		Assert.assertEquals(0, ring.getInFlight());
+
+		// 槽位回收后继续使用
+		tasks.clear();
+		written.clear();
+		for (int i = 0; i < 8; i++) {
+			Assert.assertTrue(ring.submit(new Message(i)));
+			tasks.get(i).run();
+		}
+		Assert.assertEquals(8, written.size());
+		Assert.assertEquals(7, ((Message) written.get(7)).getSeq());
+	}
+
+	@Test
+	public void timeout() throws InterruptedException {
+		List<Object> written = new ArrayList<Object>();
+		NodeRing ring = new NodeRing(channel(written), executor, handler, 2, 1);
+		ring.submit(new Message(0));
+		ring.submit(new Message(1));
+		tasks.get(1).run();
+		Assert.assertTrue(written.isEmpty());
+
+		Thread.sleep(10);
+		ring.checkTimeout();
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(1, ((Message) written.get(0)).getSeq());
+		Assert.assertEquals(1, ring.getTimeoutCount());
+
+		// 超时的请求结束前槽位不能复用
+		Assert.assertFalse(ring.submit(new Message(2)));
+		tasks.get(0).run();
+		Assert.assertEquals(1, written.size());
+		Assert.assertTrue(ring.submit(new Message(3)));
+	}
+
+	@Test
+	public void full() {
+		List<Object> written = new ArrayList<Object>();
+		NodeRing ring = new NodeRing(channel(written), executor, handler, 2, 3000);
+		Assert.assertTrue(ring.submit(new Message(0)));
+		Assert.assertTrue(ring.submit(new Message(1)));
+		Assert.assertFalse(ring.submit(new Message(2)));
+		Assert.assertEquals(1, ring.getRejectedCount());
+
+		tasks.get(0).run();
+		Assert.assertEquals(1, written.size());
+		Assert.assertTrue(ring.submit(new Message(2)));
+	}
+
+	@Test
+	public void nonProtocolResponse() {
+		List<Object> written = new ArrayList<Object>();
+		NodeRing ring = new NodeRing(channel(written), executor, new BusinessHandler() {
+			@Override
+			public Response exec(Request request) {
+				int seq = ((Message) request).getSeq();
+				return seq == 1 ? new Response() {
+				} : new Message(seq);
+			}
+		}, 4, 3000);
+		for (int i = 0; i < 3; i++) {
+			ring.submit(new Message(i));
+			tasks.get(i).run();
+		}
+		// 不能编码的响应被丢弃，其后的响应照常写出
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals(0, ((Message) written.get(0)).getSeq());
+		Assert.assertEquals(2, ((Message) written.get(1)).getSeq());
+		Assert.assertEquals(1, ring.getErrorCount());
+		Assert.assertEquals(0, ring.getInFlight());
+	}
+
+	private Channel channel(final List<Object> written) {
+		return (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Channel.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("isConnected")) {
+							return true;
+						} else if (method.getName().equals("write")) {
+							written.add(args[0]);
+						}
+						return null;
+					}
+				});
+	}
+
+	private static class Message implements Request, Response, IProtocol {
+		private final int seq;
+
+		private Message(int seq) {
+			this.seq = seq;
+		}
+
+		@Override
+		public int getMessageId() {
+			return 0x1001;
+		}
+
+		public int getSeq() {
+			return seq;
+		}
+	}
+}
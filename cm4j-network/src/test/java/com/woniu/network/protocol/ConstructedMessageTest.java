@@ -0,0 +1,62 @@
+package com.woniu.network.protocol;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.woniu.network.protocol.factory.ProtocolFactory;
+
+public class ConstructedMessageTest {
+
+	@Test
+	public void writeAndRead() {
+		ProtocolFactory factory = new ProtocolFactory();
+		ConstructedMessage protocol = factory.newProtocol(0x1001);
+		protocol.setMessageValue("accountId", 100001);
+		protocol.setMessageValue("remark", "充值");
+
+		int estimate = protocol.estimateLength();
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ChannelBuffers.LITTLE_ENDIAN, estimate);
+		protocol.write(buffer);
+		Assert.assertTrue(estimate >= buffer.readableBytes());
+		Assert.assertEquals(0x1001, factory.getMessageId(buffer));
+
+		ConstructedMessage read = factory.newProtocol(factory.getMessageId(buffer));
+		read.read(buffer);
+		Assert.assertEquals(0x9000, read.getHeaderValue("messageType"));
+		Assert.assertEquals(100001, read.getMessageValue("accountId"));
+		Assert.assertEquals(0, read.getMessageValue("serverId"));
+		Assert.assertEquals("充值", read.getMessageValue("remark"));
+		Assert.assertFalse(buffer.readable());
+	}
+
+	@Test
+	public void primitiveAndReuse() {
+		ProtocolFactory factory = new ProtocolFactory();
+		ConstructedMessage protocol = factory.newProtocol(0x1001);
+		protocol.setMessageInt("accountId", 100001);
+		Assert.assertEquals(0x1001, protocol.getMessageInt("messageId"));
+		Assert.assertEquals(0, protocol.getMessageInt("serverId"));
+
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ChannelBuffers.LITTLE_ENDIAN, 64);
+		protocol.write(buffer);
+
+		protocol.clear();
+		Assert.assertNull(protocol.getMessageValue("accountId"));
+		protocol.read(buffer);
+		Assert.assertEquals(100001, protocol.getMessageInt("accountId"));
+		Assert.assertEquals(0x301, protocol.getHeaderInt("version"));
+	}
+
+	@Test
+	public void newInstance() {
+		ProtocolFactory factory = new ProtocolFactory();
+		ConstructedMessage protocol = factory.newProtocol(0x1001);
+		protocol.setMessageValue("accountId", 1);
+
+		Assert.assertNull(factory.newProtocol(0x1001).getMessageValue("accountId"));
+		Assert.assertNull(factory.getConstructedMessage(0x1001).getMessageValue("accountId"));
+	}
+}
@@ -0,0 +1,55 @@
+package com.woniu.network.protocol.codec;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.woniu.network.protocol.ConstructedMessage;
+import com.woniu.network.protocol.factory.ProtocolFactory;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class MessageCodecTest {
+
+	@Test
+	public void sameAsConstructedMessage() {
+		MessageCodec<Message1001> codec = MessageCodecs.get(Message1001.MESSAGE_ID);
+		Message1001 message = codec.newMessage();
+		message.setAccountId(100001);
+		message.setServerId(3);
+		message.setRemark("充值");
+		ChannelBuffer generated = ChannelBuffers.dynamicBuffer(ChannelBuffers.LITTLE_ENDIAN,
+				codec.estimateLength(message));
+		codec.write(generated, message);
+		Assert.assertTrue(codec.estimateLength(message) >= generated.readableBytes());
+
+		ConstructedMessage protocol = new ProtocolFactory().newProtocol(Message1001.MESSAGE_ID);
+		protocol.setMessageValue("accountId", 100001);
+		protocol.setMessageValue("serverId", 3);
+		protocol.setMessageValue("remark", "充值");
+		ChannelBuffer constructed = ChannelBuffers.dynamicBuffer(ChannelBuffers.LITTLE_ENDIAN, 64);
+		protocol.write(constructed);
+
+		Assert.assertTrue(ChannelBuffers.equals(generated, constructed));
+	}
+
+	@Test
+	public void writeAndRead() {
+		MessageCodec<Message1001> codec = MessageCodecs.get(Message1001.MESSAGE_ID);
+		Message1001 message = codec.newMessage();
+		message.setUserid3(7);
+		message.setAccountId(100001);
+		message.setRemark("remark");
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ChannelBuffers.LITTLE_ENDIAN, 64);
+		codec.write(buffer, message);
+
+		Message1001 read = codec.newMessage();
+		codec.read(buffer, read);
+		Assert.assertEquals(0x9000, read.getMessageType());
+		Assert.assertEquals(7, read.getUserid3());
+		Assert.assertEquals(100001, read.getAccountId());
+		Assert.assertEquals("remark", read.getRemark());
+		Assert.assertFalse(buffer.readable());
+	}
+}
@@ -0,0 +1,67 @@
+package com.woniu.network.protocol.codec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.woniu.network.protocol.ProtocolConfig;
+import com.woniu.network.protocol.xmlmodel.XMLModel;
+
+/**
+ * 提交的生成代码须与protocol.xml一致，不一致时执行 mvn -Pcodegen process-classes 重新生成
+ */
+public class ProtocolCodecGeneratorTest {
+
+	// codegen按main下的protocol.xml生成，测试时classpath上优先的是test下的副本，须直接读文件
+	private static final File PROTOCOL_XML = new File("src/main/resources/protocol.xml");
+
+	@Test
+	public void generatedUpToDate() throws Exception {
+		XMLModel xmlModel;
+		InputStream in = new FileInputStream(PROTOCOL_XML);
+		try {
+			xmlModel = ProtocolConfig.getProtocolConfiguration(in);
+		} finally {
+			in.close();
+		}
+		ProtocolCodecGenerator generator = new ProtocolCodecGenerator(xmlModel, ProtocolCodecGenerator.DEFAULT_PACKAGE);
+		Map<String, String> sources = generator.generateSources();
+		File dir = generator.getPackageDir(new File("src/main/java"));
+		Assert.assertTrue("generated dir not found:" + dir.getAbsolutePath(), dir.isDirectory());
+
+		for (Entry<String, String> entry : sources.entrySet()) {
+			File file = new File(dir, entry.getKey() + ".java");
+			Assert.assertTrue("missing generated file:" + file, file.isFile());
+			Assert.assertEquals("stale generated file:" + file, entry.getValue(),
+					Files.toString(file, Charsets.UTF_8));
+		}
+
+		// 已从protocol.xml删除的消息不应留下代码
+		Set<String> committed = new HashSet<String>();
+		for (String name : dir.list()) {
+			committed.add(name.substring(0, name.length() - ".java".length()));
+		}
+		committed.removeAll(sources.keySet());
+		Assert.assertTrue("generated files not in protocol.xml:" + committed, committed.isEmpty());
+	}
+
+	/**
+	 * 其他测试按test下的副本编解码，须与main下的一致
+	 */
+	@Test
+	public void copyUpToDate() throws Exception {
+		Assert.assertEquals("src/test/resources/protocol.xml differs from " + PROTOCOL_XML,
+				Files.toString(PROTOCOL_XML, Charsets.UTF_8),
+				Files.toString(new File("src/test/resources/protocol.xml"), Charsets.UTF_8));
+	}
+}
@@ -1,5 +1,7 @@
 package com.woniu.network.util;
 
+import java.nio.ByteOrder;
+
 import junit.framework.Assert;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -7,6 +9,10 @@ import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.util.CharsetUtil;
 import org.junit.Test;
 
+import com.woniu.network.buffer.PooledChannelBuffer;
+import com.woniu.network.buffer.PooledChannelBufferFactory;
+import com.woniu.network.protocol.ProtocolFieldType;
+
 public class CodecUtilTest {
 
 	@Test
@@ -28,4 +34,85 @@ public class CodecUtilTest {
 		String dist = CodecUtil.decodeW(buffer, CharsetUtil.UTF_16);
 		Assert.assertEquals(source, dist);
 	}
+
+	@Test
+	public void testEncodeToBuffer() {
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(4);
+		CodecUtil.encode(buffer, "Acj好", CharsetUtil.UTF_8);
+		CodecUtil.encode(buffer, "", CharsetUtil.UTF_8);
+		CodecUtil.encodeW(buffer, "Ac好的", CharsetUtil.UTF_16);
+		CodecUtil.encodeW(buffer, null, CharsetUtil.UTF_16);
+
+		Assert.assertEquals("Acj好", CodecUtil.decode(buffer, CharsetUtil.UTF_8));
+		Assert.assertEquals("", CodecUtil.decode(buffer, CharsetUtil.UTF_8));
+		Assert.assertEquals("Ac好的", CodecUtil.decodeW(buffer, CharsetUtil.UTF_16));
+		Assert.assertEquals("", CodecUtil.decodeW(buffer, CharsetUtil.UTF_16));
+		Assert.assertEquals(0, buffer.readableBytes());
+	}
+
+	@Test
+	public void testEncodeToDirectBuffer() {
+		PooledChannelBufferFactory factory = new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN, 1);
+		ChannelBuffer buffer = factory.getBuffer(64);
+		Assert.assertFalse(buffer.hasArray());
+		buffer.writeByte(7);
+		CodecUtil.encode(buffer, "Acj好", CharsetUtil.UTF_8);
+		CodecUtil.encodeW(buffer, "Ac好的", CharsetUtil.UTF_16LE);
+
+		Assert.assertEquals(7, buffer.readByte());
+		Assert.assertEquals("Acj好", CodecUtil.decode(buffer, CharsetUtil.UTF_8));
+		Assert.assertEquals("Ac好的", CodecUtil.decodeW(buffer, CharsetUtil.UTF_16LE));
+		Assert.assertEquals(0, buffer.readableBytes());
+		((PooledChannelBuffer) buffer).release();
+	}
+
+	@Test
+	public void testEstimateLength() {
+		// 按预估长度分配的定长buffer必须能写下，不能依赖越界异常扩容
+		String[] values = { null, "", "A", "Ac好的", "\ud83d\ude00x" };
+		for (String value : values) {
+			ChannelBuffer buffer = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN,
+					ProtocolFieldType.StringType.estimateLength(value));
+			CodecUtil.encode(buffer, value, CharsetUtil.UTF_8);
+			Assert.assertEquals(value == null ? "" : value, CodecUtil.decode(buffer, CharsetUtil.UTF_8));
+
+			buffer = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, ProtocolFieldType.WStringType.estimateLength(value));
+			CodecUtil.encodeW(buffer, value, CharsetUtil.UTF_16);
+			Assert.assertEquals(value == null ? "" : value, CodecUtil.decodeW(buffer, CharsetUtil.UTF_16));
+		}
+	}
+
+	@Test
+	public void testDecodeWAligned() {
+		// UTF-16BE编码为 01 00 01 00 00 00，第3、4字节的两个0未对齐，不能当作结束符
+		String source = "\u0100\u0100";
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(16);
+		buffer.writeByte(1);
+		buffer.skipBytes(1);
+		CodecUtil.encodeW(buffer, source, CharsetUtil.UTF_16BE);
+		buffer.writeByte(9);
+
+		Assert.assertEquals(source, CodecUtil.decodeW(buffer, CharsetUtil.UTF_16BE));
+		Assert.assertEquals(9, buffer.readByte());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testDecodeWithoutTerminator() {
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(16);
+		buffer.writeBytes(new byte[] { 'a', 'b' });
+		CodecUtil.decode(buffer, CharsetUtil.UTF_8);
+	}
+
+	@Test
+	public void testStringCache() {
+		StringCache cache = new StringCache(16);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(16);
+		CodecUtil.encode(buffer, "name", CharsetUtil.UTF_8);
+		CodecUtil.encode(buffer, "name", CharsetUtil.UTF_8);
+
+		String first = cache.get(buffer, 0, 4, CharsetUtil.UTF_8);
+		String second = cache.get(buffer, 5, 4, CharsetUtil.UTF_8);
+		Assert.assertEquals("name", first);
+		Assert.assertSame(first, second);
+	}
 }
@@ -0,0 +1,158 @@
+package com.woniu.network.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class DeepCopierTest {
+
+	enum Color {
+		RED, GREEN
+	}
+
+	static class Node {
+		private final int id;
+		private String name;
+		private long[] values;
+		private Color color;
+		private Node next;
+		private List<Node> children = new ArrayList<Node>();
+		private Map<String, Object> attributes = new HashMap<String, Object>();
+		private transient Object cache = new Object();
+
+		Node(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	static class Attributes extends HashMap<String, Object> {
+		private static final long serialVersionUID = 1L;
+		private String owner;
+	}
+
+	static class Holder {
+		private Attributes attributes = new Attributes();
+		private ArrayDeque<Node> deque = new ArrayDeque<Node>();
+		private PriorityQueue<Integer> queue = new PriorityQueue<Integer>(4, Collections.reverseOrder());
+		private EnumMap<Color, Node> enumMap = new EnumMap<Color, Node>(Color.class);
+		private Map<Node, String> identityMap = new IdentityHashMap<Node, String>();
+		private Date date = new Date(123456789L);
+	}
+
+	@Test
+	public void copy() {
+		Node root = new Node(1, "root");
+		root.values = new long[] { 1, 2, 3 };
+		root.color = Color.GREEN;
+		Node child = new Node(2, "child");
+		root.children.add(child);
+		root.attributes.put("child", child);
+		root.attributes.put("set", new TreeSet<String>(Collections.reverseOrder()));
+
+		Node copy = DeepCopyUtil.deepCopy(root);
+		Assert.assertNotSame(root, copy);
+		Assert.assertEquals(1, copy.id);
+		// 不可变对象直接引用
+		Assert.assertSame(root.name, copy.name);
+		Assert.assertSame(Color.GREEN, copy.color);
+		Assert.assertNotSame(root.values, copy.values);
+		Assert.assertEquals(3, copy.values[2]);
+		Assert.assertNull(copy.cache);
+
+		Node childCopy = copy.children.get(0);
+		Assert.assertNotSame(child, childCopy);
+		Assert.assertEquals("child", childCopy.name);
+		// 同一对象只复制一次
+		Assert.assertSame(childCopy, copy.attributes.get("child"));
+		Assert.assertEquals(Collections.reverseOrder(), ((TreeSet<?>) copy.attributes.get("set")).comparator());
+	}
+
+	@Test
+	public void transientState() {
+		Holder holder = new Holder();
+		holder.attributes.owner = "owner";
+		holder.attributes.put("level", 10);
+		Node node = new Node(1, "a");
+		holder.deque.add(node);
+		holder.deque.add(new Node(2, "b"));
+		holder.queue.add(1);
+		holder.queue.add(3);
+		holder.queue.add(2);
+		holder.enumMap.put(Color.GREEN, node);
+		holder.identityMap.put(node, "a");
+
+		Holder copy = DeepCopyUtil.deepCopy(holder);
+		// HashMap子类：内容在transient字段中，通过序列化复制
+		Assert.assertNotSame(holder.attributes, copy.attributes);
+		Assert.assertEquals(10, copy.attributes.get("level"));
+		Assert.assertEquals("owner", copy.attributes.owner);
+
+		Assert.assertEquals(2, copy.deque.size());
+		Node nodeCopy = copy.deque.getFirst();
+		Assert.assertNotSame(node, nodeCopy);
+		Assert.assertEquals("b", copy.deque.getLast().name);
+
+		Assert.assertEquals(Collections.reverseOrder(), copy.queue.comparator());
+		Assert.assertEquals(3, copy.queue.poll().intValue());
+		Assert.assertEquals(2, copy.queue.poll().intValue());
+		Assert.assertEquals(3, holder.queue.size());
+
+		Assert.assertSame(nodeCopy, copy.enumMap.get(Color.GREEN));
+		copy.enumMap.put(Color.RED, nodeCopy);
+		Assert.assertFalse(holder.enumMap.containsKey(Color.RED));
+
+		Assert.assertTrue(copy.identityMap instanceof IdentityHashMap);
+		Assert.assertEquals("a", copy.identityMap.get(nodeCopy));
+		Assert.assertNull(copy.identityMap.get(node));
+
+		Assert.assertNotSame(holder.date, copy.date);
+		Assert.assertEquals(123456789L, copy.date.getTime());
+	}
+
+	@Test
+	public void emptyEnumMap() {
+		EnumMap<Color, String> map = new EnumMap<Color, String>(Color.class);
+		EnumMap<Color, String> copy = DeepCopyUtil.deepCopy(map);
+		Assert.assertNotSame(map, copy);
+		copy.put(Color.RED, "red");
+		Assert.assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void cycle() {
+		Node a = new Node(1, "a");
+		Node b = new Node(2, "b");
+		a.next = b;
+		b.next = a;
+		a.children.add(a);
+
+		Node copy = DeepCopyUtil.deepCopy(a);
+		Assert.assertNotSame(a, copy);
+		Assert.assertSame(copy, copy.next.next);
+		Assert.assertSame(copy, copy.children.get(0));
+		Assert.assertEquals("b", copy.next.name);
+	}
+
+	@Test
+	public void immutable() {
+		DeepCopier copier = new DeepCopier();
+		Node node = new Node(1, "a");
+		Assert.assertNotSame(node, copier.copy(node));
+		copier.registerImmutable(Node.class);
+		Assert.assertSame(node, copier.copy(node));
+		Assert.assertNull(copier.copy(null));
+	}
+}
@@ -0,0 +1,52 @@
+package com.woniu.network.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class IntDispatchTableTest {
+
+	@Test
+	public void dense() {
+		IntDispatchTable<String> table = IntDispatchTable.empty();
+		table = table.with(0x1001, "a").with(0x1002, "b").with(0x1010, "c");
+		Assert.assertTrue(table.isDense());
+		Assert.assertEquals("a", table.get(0x1001));
+		Assert.assertEquals("b", table.get(0x1002));
+		Assert.assertEquals("c", table.get(0x1010));
+		Assert.assertNull(table.get(0x1000));
+		Assert.assertNull(table.get(0x1011));
+		Assert.assertNull(table.get(-1));
+	}
+
+	@Test
+	public void sparse() {
+		IntDispatchTable<Integer> table = IntDispatchTable.empty();
+		for (int i = 0; i < 100; i++) {
+			table = table.with(i * 100003, i);
+		}
+		table = table.with(Integer.MIN_VALUE, -1).with(Integer.MAX_VALUE, -2);
+		Assert.assertFalse(table.isDense());
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(i, table.get(i * 100003).intValue());
+			Assert.assertNull(table.get(i * 100003 + 1));
+		}
+		Assert.assertEquals(-1, table.get(Integer.MIN_VALUE).intValue());
+		Assert.assertEquals(-2, table.get(Integer.MAX_VALUE).intValue());
+	}
+
+	@Test
+	public void copyOnWrite() {
+		IntDispatchTable<String> old = IntDispatchTable.<String> empty().with(1, "a").with(2, "b");
+		IntDispatchTable<String> replaced = old.with(1, "x");
+		IntDispatchTable<String> removed = old.without(2);
+
+		Assert.assertEquals("a", old.get(1));
+		Assert.assertEquals("b", old.get(2));
+		Assert.assertEquals("x", replaced.get(1));
+		Assert.assertEquals(2, replaced.size());
+		Assert.assertNull(removed.get(2));
+		Assert.assertEquals(1, removed.size());
+		Assert.assertSame(removed, removed.without(3));
+	}
+}
@@ -0,0 +1,51 @@
+package com.woniu.network.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucket() {
+		long[] values = { 0, 1, 255, 256, 257, 1000, 123456, 987654321L, Long.MAX_VALUE / 3 };
+		for (long value : values) {
+			int index = LatencyHistogram.indexOf(value);
+			long highest = LatencyHistogram.highestValueOf(index);
+			Assert.assertTrue(highest >= value);
+			// 相对误差小于 1 / 2^(bits-1)
+			Assert.assertTrue(highest - value <= value >> (LatencyHistogram.SUB_BUCKET_BITS - 1));
+			if (index > 0) {
+				Assert.assertTrue(LatencyHistogram.highestValueOf(index - 1) < value);
+			}
+		}
+	}
+
+	@Test
+	public void percentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000L);
+		}
+		Assert.assertEquals(10000, histogram.getTotalCount());
+		Assert.assertEquals(10000000L, histogram.getMax());
+		long p50 = histogram.getValueAtPercentile(50);
+		Assert.assertTrue(p50 >= 5000000L && p50 < 5000000L * 1.01);
+		long p99 = histogram.getValueAtPercentile(99);
+		Assert.assertTrue(p99 >= 9900000L && p99 < 9900000L * 1.01);
+		Assert.assertEquals(10000000L, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void highestTrackable() {
+		LatencyHistogram histogram = new LatencyHistogram(3600000);
+		histogram.record(10);
+		histogram.record(Long.MAX_VALUE / 2);
+		Assert.assertEquals(10, histogram.getValueAtPercentile(50));
+		Assert.assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+		Assert.assertTrue(histogram.getValueAtPercentile(100) >= 3600000);
+	}
+}
@@ -0,0 +1,42 @@
+package com.woniu.network.util.log;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TimingMetricsTest {
+
+	@Test
+	public void ring() {
+		TimingMetrics metrics = new TimingMetrics(3);
+		Assert.assertNull(metrics.getLatestWindow());
+		Assert.assertEquals("[]", metrics.getRecentJson());
+
+		for (int i = 0; i < 5; i++) {
+			metrics.publish(window(i));
+		}
+		List<TimingWindow> recent = metrics.getRecentWindows();
+		Assert.assertEquals(3, recent.size());
+		Assert.assertEquals(2, recent.get(0).getStartTime());
+		Assert.assertEquals(4, recent.get(2).getStartTime());
+		Assert.assertEquals(4, metrics.getLatestWindow().getStartTime());
+		Assert.assertEquals(3, metrics.getWindowCount());
+	}
+
+	@Test
+	public void json() {
+		TimingMetrics metrics = new TimingMetrics(2);
+		metrics.publish(new TimingWindow(1000, 2000, Collections.singletonList(new TimingWindow.TagStatistics(
+				"a\"b", 2, 1.5, 1, 2, 1, 2, 2))));
+		Assert.assertEquals("[{\"start\":1000,\"stop\":2000,\"tags\":[{\"tag\":\"a\\\"b\",\"count\":2,\"mean\":1.50,"
+				+ "\"min\":1,\"max\":2,\"p50\":1,\"p90\":2,\"p99\":2}]}]", metrics.getRecentJson());
+		Assert.assertEquals(1, metrics.getLatestStatistics().length);
+	}
+
+	private TimingWindow window(long start) {
+		return new TimingWindow(start, start + 1, Collections.<TimingWindow.TagStatistics> emptyList());
+	}
+}
@@ -0,0 +1,79 @@
+package com.woniu.network.netty4;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.handler.cfg.MessageConfiguration;
+
+/**
+ * Netty 4传输的公共配置，从network.properties读取
+ *
+ * <pre>
+ * netty4.epoll           Linux上使用native epoll，不可用时自动退回NIO，默认true
+ * netty4.pooledAllocator 使用PooledByteBufAllocator，默认true
+ * </pre>
+ */
+public class Netty4Transport {
+
+	private static final Logger logger = LoggerFactory.getLogger(Netty4Transport.class);
+
+	private static final boolean EPOLL;
+	private static final ByteBufAllocator ALLOCATOR;
+
+	static {
+		boolean epoll = MessageConfiguration.getBoolean("netty4.epoll", true);
+		if (epoll && !Epoll.isAvailable()) {
+			logger.info("native epoll not available, use nio: {}", String.valueOf(Epoll.unavailabilityCause()));
+			epoll = false;
+		}
+		EPOLL = epoll;
+		ALLOCATOR = MessageConfiguration.getBoolean("netty4.pooledAllocator", true) ? PooledByteBufAllocator.DEFAULT
+				: UnpooledByteBufAllocator.DEFAULT;
+	}
+
+	private Netty4Transport() {
+	}
+
+	public static boolean isEpoll() {
+		return EPOLL;
+	}
+
+	public static ByteBufAllocator getAllocator() {
+		return ALLOCATOR;
+	}
+
+	/**
+	 * @param threads
+	 * @param nameFormat
+	 *            线程名，如netty4-worker-%d
+	 * @return epoll或nio的EventLoopGroup，线程均为daemon
+	 */
+	public static EventLoopGroup newEventLoopGroup(int threads, String nameFormat) {
+		ThreadFactoryBuilder builder = new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat);
+		return EPOLL ? new EpollEventLoopGroup(threads, builder.build()) : new NioEventLoopGroup(threads,
+				builder.build());
+	}
+
+	public static Class<? extends ServerChannel> serverChannelClass() {
+		return EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+	}
+
+	public static Class<? extends Channel> socketChannelClass() {
+		return EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+	}
+}
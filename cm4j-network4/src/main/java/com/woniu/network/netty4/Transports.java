@@ -0,0 +1,46 @@
+package com.woniu.network.netty4;
+
+import com.woniu.network.bootstrap.client.Client;
+import com.woniu.network.bootstrap.client.LongConnectClient;
+import com.woniu.network.bootstrap.server.NetworkServer;
+import com.woniu.network.bootstrap.server.Server;
+import com.woniu.network.bootstrap.server.ServerConfig;
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.netty4.bootstrap.Netty4Client;
+import com.woniu.network.netty4.bootstrap.Netty4Server;
+
+/**
+ * 按network.properties中的network.transport创建服务端和客户端：netty3(默认)或netty4<br>
+ * 两种实现的报文格式相同，可以互相连接，业务代码中的{@link com.woniu.network.handler.server.executor.ProtocolExecutor}无需修改
+ */
+public class Transports {
+
+	public static final String TRANSPORT_KEY = "network.transport";
+	public static final String NETTY3 = "netty3";
+	public static final String NETTY4 = "netty4";
+
+	private Transports() {
+	}
+
+	public static boolean isNetty4() {
+		return NETTY4.equalsIgnoreCase(MessageConfiguration.getOptionalValue(TRANSPORT_KEY));
+	}
+
+	public static NetworkServer newServer() {
+		return newServer(ServerConfig.load());
+	}
+
+	public static NetworkServer newServer(ServerConfig config) {
+		return isNetty4() ? new Netty4Server(config) : new Server(config);
+	}
+
+	/**
+	 * 长连接客户端，断线自动重连
+	 *
+	 * @param address
+	 *            ip:port，多个地址用逗号分隔，连接失败时依次切换
+	 */
+	public static Client newClient(String address) {
+		return isNetty4() ? new Netty4Client(address) : new LongConnectClient(address);
+	}
+}
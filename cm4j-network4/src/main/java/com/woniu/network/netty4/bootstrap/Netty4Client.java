@@ -0,0 +1,198 @@
+package com.woniu.network.netty4.bootstrap;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.bootstrap.client.AbstractClient;
+import com.woniu.network.bootstrap.client.Client;
+import com.woniu.network.exception.ConnectException;
+import com.woniu.network.handler.cfg.MessageConfiguration;
+import com.woniu.network.handler.codec.FrameDecompressor;
+import com.woniu.network.netty4.Netty4Transport;
+import com.woniu.network.netty4.handler.codec.ByteBufFrameDecoder;
+import com.woniu.network.netty4.handler.codec.ByteBufProtocolDecoder;
+import com.woniu.network.netty4.handler.codec.ByteBufProtocolEncoder;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.util.SocketAddressConvertor;
+
+/**
+ * Netty 4实现的长连接客户端，对应{@link com.woniu.network.bootstrap.client.LongConnectClient}<br>
+ * 消息直接写入channel，由Netty的发送缓冲排队；channel不可写(待发送数据超过高水位)或未连接时sendProtocol返回false，写失败时记录日志<br>
+ * 收到的消息按server.maxFrameLength切分并解析为{@link IProtocol}，交给{@link #pipelinePostProcess(ChannelPipeline)}中加入的handler处理<br>
+ * 断线后按1s、2s、4s...(最长30s)的间隔依次尝试各个地址重连
+ */
+public class Netty4Client implements Client {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+	/**
+	 * 所有客户端共享的I/O线程
+	 */
+	static final EventLoopGroup group = Netty4Transport.newEventLoopGroup(
+			Runtime.getRuntime().availableProcessors() * 2, "netty4-client-%d");
+
+	private static final ByteBufProtocolEncoder ENCODER = new ByteBufProtocolEncoder();
+
+	private static final FrameDecompressor FRAME_DECOMPRESSOR = new FrameDecompressor(
+			MessageConfiguration.getMaxFrameLength() * 16);
+
+	private final List<SocketAddress> addresses;
+	private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				logger.error("netty4 client write error:" + future.channel(), future.cause());
+			}
+		}
+	};
+	private final Bootstrap bootstrap;
+	private volatile Channel channel;
+	private volatile boolean reconnect = true;
+	// 以下只在重连任务和其回调中依次访问
+	private int addressIndex;
+	private long reconnectDelay;
+
+	/**
+	 * @param address
+	 *            ip:port，多个地址用逗号分隔，连接失败时依次切换
+	 */
+	public Netty4Client(String address) {
+		this.addresses = SocketAddressConvertor.convertAll(address);
+		this.bootstrap = new Bootstrap().group(group).channel(Netty4Transport.socketChannelClass());
+		bootstrap.option(ChannelOption.TCP_NODELAY, true);
+		bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, AbstractClient.timeout);
+		bootstrap.option(ChannelOption.ALLOCATOR, Netty4Transport.getAllocator());
+		bootstrap.handler(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				addCodec(ch.pipeline());
+				ch.pipeline().addLast("reconnect", new ReconnectHandler());
+				pipelinePostProcess(ch.pipeline());
+			}
+		});
+	}
+
+	/**
+	 * 加入客户端的编码和解码handler，与服务端的报文格式相同
+	 */
+	public static void addCodec(ChannelPipeline pipeline) {
+		pipeline.addLast("encoder", ENCODER);
+		pipeline.addLast("framerDecoder", new ByteBufFrameDecoder(MessageConfiguration.getMaxFrameLength()));
+		pipeline.addLast("protocolDecoder", new ByteBufProtocolDecoder(FRAME_DECOMPRESSOR));
+	}
+
+	/**
+	 * 加入处理收到的消息的handler，默认不处理(由Netty丢弃)
+	 */
+	protected void pipelinePostProcess(ChannelPipeline pipeline) {
+	}
+
+	@Override
+	public void connect() {
+		ChannelFuture future = null;
+		for (int i = 0; i < addresses.size(); i++) {
+			SocketAddress candidate = addresses.get(i);
+			future = bootstrap.connect(candidate).awaitUninterruptibly();
+			if (future.isSuccess()) {
+				addressIndex = i;
+				channel = future.channel();
+				logger.debug("netty4 client connect success:{}", channel);
+				return;
+			}
+			logger.warn("netty4 client connect to {} failed", candidate);
+		}
+		logger.error("netty4 client connect error", future.cause());
+		throw new ConnectException("client connect error", future.cause());
+	}
+
+	@Override
+	public boolean sendProtocol(IProtocol protocol) {
+		Channel current = this.channel;
+		if (current == null || !current.isActive() || !current.isWritable()) {
+			return false;
+		}
+		current.writeAndFlush(protocol).addListener(writeListener);
+		return true;
+	}
+
+	public boolean isConnected() {
+		Channel current = this.channel;
+		return current != null && current.isActive();
+	}
+
+	public void setReconnect(boolean reconnect) {
+		this.reconnect = reconnect;
+	}
+
+	/**
+	 * 关闭连接，不再重连
+	 */
+	public void close() {
+		reconnect = false;
+		Channel current = this.channel;
+		if (current != null) {
+			current.close().awaitUninterruptibly();
+		}
+	}
+
+	private void scheduleReconnect() {
+		reconnectDelay = reconnectDelay == 0 ? 1000 : Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+		group.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (!reconnect) {
+					return;
+				}
+				final SocketAddress candidate = addresses.get(addressIndex);
+				bootstrap.connect(candidate).addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) throws Exception {
+						if (future.isSuccess()) {
+							reconnectDelay = 0;
+							channel = future.channel();
+							logger.info("netty4 client reconnected to {}", candidate);
+						} else if (reconnect) {
+							logger.debug("netty4 client reconnect to {} failed", candidate);
+							addressIndex = (addressIndex + 1) % addresses.size();
+							scheduleReconnect();
+						}
+					}
+				});
+			}
+		}, reconnectDelay, TimeUnit.MILLISECONDS);
+	}
+
+	private class ReconnectHandler extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			if (reconnect && ctx.channel() == channel) {
+				logger.warn("netty4 client disconnected from {}", ctx.channel().remoteAddress());
+				scheduleReconnect();
+			}
+			ctx.fireChannelInactive();
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			logger.error("netty4 client exception", cause);
+			ctx.close();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.woniu.network.netty4.bootstrap;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.woniu.network.bootstrap.server.NetworkServer;
+import com.woniu.network.bootstrap.server.ServerConfig;
+import com.woniu.network.handler.codec.FrameDecompressor;
+import com.woniu.network.netty4.Netty4Transport;
+import com.woniu.network.netty4.handler.codec.ByteBufFrameDecoder;
+import com.woniu.network.netty4.handler.codec.ByteBufProtocolDecoder;
+import com.woniu.network.netty4.handler.codec.ByteBufProtocolEncoder;
+import com.woniu.network.netty4.handler.server.ConnectionLimitHandler;
+import com.woniu.network.netty4.handler.server.IdleCloseHandler;
+import com.woniu.network.netty4.handler.server.ProtocolDispatchHandler;
+
+/**
+ * Netty 4实现的服务端，使用与{@link com.woniu.network.bootstrap.server.Server}相同的{@link ServerConfig}和报文格式<br>
+ * Linux上使用native epoll，发送buffer由PooledByteBufAllocator分配(见{@link Netty4Transport})；
+ * 业务处理在{@link EventExecutorGroup}中执行，同一连接的消息按顺序处理<br>
+ * 未实现发送压缩，server.compressThreshold和server.maxQueuedPerChannel不生效；收到的压缩消息可以正常解压
+ */
+public class Netty4Server implements NetworkServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(Netty4Server.class);
+
+	private final ServerConfig config;
+
+	private final ConnectionLimitHandler connectionLimitHandler;
+	private final IdleCloseHandler idleCloseHandler = new IdleCloseHandler();
+	private final ByteBufProtocolEncoder encoder = new ByteBufProtocolEncoder();
+	private final ProtocolDispatchHandler dispatchHandler = new ProtocolDispatchHandler();
+	private final FrameDecompressor frameDecompressor;
+
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
+	private EventExecutorGroup executorGroup;
+	private final List<Channel> boundChannels = new ArrayList<Channel>();
+
+	public Netty4Server() {
+		this(ServerConfig.load());
+	}
+
+	public Netty4Server(ServerConfig config) {
+		this.config = config;
+		this.connectionLimitHandler = new ConnectionLimitHandler(config.getMaxConnections());
+		this.frameDecompressor = new FrameDecompressor(config.getMaxFrameLength() * 16);
+	}
+
+	@Override
+	public void start() {
+		bossGroup = Netty4Transport.newEventLoopGroup(1, "netty4-server-boss-%d");
+		workerGroup = Netty4Transport.newEventLoopGroup(config.getWorkers(), "netty4-server-worker-%d");
+		executorGroup = new DefaultEventExecutorGroup(config.getExecutorThreads(), new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("netty4-server-executor-%d").build());
+
+		ServerBootstrap bootstrap = new ServerBootstrap().group(bossGroup, workerGroup).channel(
+				Netty4Transport.serverChannelClass());
+		bootstrap.option(ChannelOption.SO_BACKLOG, config.getBacklog());
+		bootstrap.option(ChannelOption.SO_REUSEADDR, true);
+		bootstrap.childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
+		bootstrap.childOption(ChannelOption.SO_KEEPALIVE, config.isKeepAlive());
+		if (config.getReceiveBufferSize() > 0) {
+			bootstrap.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+		}
+		if (config.getSendBufferSize() > 0) {
+			bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+		}
+		bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, config.getWriteBufferHighWaterMark());
+		bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, config.getWriteBufferLowWaterMark());
+		bootstrap.childOption(ChannelOption.ALLOCATOR, Netty4Transport.getAllocator());
+
+		bootstrap.childHandler(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				initPipeline(ch.pipeline(), executorGroup);
+			}
+		});
+
+		for (SocketAddress address : config.getBindAddresses()) {
+			boundChannels.add(bootstrap.bind(address).syncUninterruptibly().channel());
+			logger.debug("netty4 server start at {}, epoll:{}", address, Netty4Transport.isEpoll());
+		}
+	}
+
+	/**
+	 * 加入每个连接的handler
+	 *
+	 * @param executorGroup
+	 *            执行业务处理的线程，为null时在I/O线程中执行
+	 */
+	void initPipeline(ChannelPipeline pipeline, EventExecutorGroup executorGroup) {
+		pipeline.addLast("connectionLimit", connectionLimitHandler);
+		if (config.getReaderIdleSeconds() > 0) {
+			pipeline.addLast("idleState", new IdleStateHandler(config.getReaderIdleSeconds(), 0, 0));
+			pipeline.addLast("idleClose", idleCloseHandler);
+		}
+		pipeline.addLast("encoder", encoder);
+		pipeline.addLast("framerDecoder", new ByteBufFrameDecoder(config.getMaxFrameLength()));
+		pipeline.addLast("protocolDecoder", new ByteBufProtocolDecoder(frameDecompressor));
+		pipeline.addLast(executorGroup, "protocolDispatcher", dispatchHandler);
+	}
+
+	@Override
+	public void stop() {
+		for (Channel channel : boundChannels) {
+			channel.close().awaitUninterruptibly();
+		}
+		boundChannels.clear();
+		if (bossGroup != null) {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+			executorGroup.shutdownGracefully();
+		}
+	}
+
+	public ConnectionLimitHandler getConnectionLimitHandler() {
+		return connectionLimitHandler;
+	}
+
+	public IdleCloseHandler getIdleCloseHandler() {
+		return idleCloseHandler;
+	}
+
+	@Override
+	public ServerConfig getConfig() {
+		return config;
+	}
+}
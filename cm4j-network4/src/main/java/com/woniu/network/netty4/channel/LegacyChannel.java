@@ -0,0 +1,268 @@
+package com.woniu.network.netty4.channel;
+
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.net.SocketAddress;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.DefaultChannelPipeline;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * 以Netty 3的{@link Channel}接口包装Netty 4的channel，使{@link com.woniu.network.handler.server.executor.ProtocolExecutor}
+ * 可以不加修改地在Netty 4传输上使用<br>
+ * write、close等操作同Netty 3一样经过{@link #getPipeline()}向下传递，最后由{@link LegacySink}转给Netty 4的channel；
+ * 收到的消息由Netty 4的pipeline处理，不经过此pipeline<br>
+ * {@link #getConfig()}的buffer factory为小端的heap buffer，{@link #getFactory()}在同一个EventLoop上创建新的客户端连接
+ */
+public class LegacyChannel implements Channel {
+
+	private static final AttributeKey<LegacyChannel> KEY = AttributeKey.valueOf(LegacyChannel.class.getName());
+
+	private static final LegacySink SINK = new LegacySink();
+
+	// identityHashCode可能重复，ChannelGroup等按id区分channel
+	private static final AtomicInteger ID_GENERATOR = new AtomicInteger();
+
+	private final io.netty.channel.Channel channel;
+	private final Integer id;
+	private final ChannelPipeline pipeline;
+	private final ChannelConfig config;
+	private volatile ChannelFuture closeFuture;
+
+	private LegacyChannel(io.netty.channel.Channel channel, ChannelPipeline pipeline) {
+		this.channel = channel;
+		this.id = ID_GENERATOR.incrementAndGet();
+		this.config = new DefaultChannelConfig();
+		config.setBufferFactory(HeapChannelBufferFactory.getInstance(ByteOrder.LITTLE_ENDIAN));
+		config.setConnectTimeoutMillis(channel.config().getConnectTimeoutMillis());
+		this.pipeline = pipeline;
+		pipeline.attach(this, SINK);
+	}
+
+	/**
+	 * 同一个channel始终返回同一个实例
+	 */
+	public static LegacyChannel of(io.netty.channel.Channel channel) {
+		LegacyChannel legacy = channel.attr(KEY).get();
+		return legacy != null ? legacy : of(channel, new DefaultChannelPipeline());
+	}
+
+	/**
+	 * 以指定的pipeline包装，channel已有包装时返回已有的实例
+	 */
+	static LegacyChannel of(io.netty.channel.Channel channel, ChannelPipeline pipeline) {
+		Attribute<LegacyChannel> attr = channel.attr(KEY);
+		LegacyChannel legacy = attr.get();
+		if (legacy == null) {
+			legacy = new LegacyChannel(channel, pipeline);
+			LegacyChannel existing = attr.setIfAbsent(legacy);
+			if (existing != null) {
+				legacy = existing;
+			}
+		}
+		return legacy;
+	}
+
+	/**
+	 * 被包装的Netty 4 channel
+	 */
+	public io.netty.channel.Channel unwrap() {
+		return channel;
+	}
+
+	/**
+	 * Netty 4操作完成时设置Netty 3的future
+	 */
+	private static void complete(io.netty.channel.ChannelFuture future, final ChannelFuture result) {
+		future.addListener(new io.netty.channel.ChannelFutureListener() {
+			@Override
+			public void operationComplete(io.netty.channel.ChannelFuture f) throws Exception {
+				if (f.isSuccess()) {
+					result.setSuccess();
+				} else {
+					result.setFailure(f.cause());
+				}
+			}
+		});
+	}
+
+	@Override
+	public Integer getId() {
+		return id;
+	}
+
+	@Override
+	public ChannelFactory getFactory() {
+		return new LegacyChannelFactory(channel.eventLoop());
+	}
+
+	@Override
+	public Channel getParent() {
+		return channel.parent() == null ? null : of(channel.parent());
+	}
+
+	@Override
+	public ChannelConfig getConfig() {
+		return config;
+	}
+
+	@Override
+	public ChannelPipeline getPipeline() {
+		return pipeline;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public boolean isBound() {
+		return channel.localAddress() != null;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return channel.isActive();
+	}
+
+	@Override
+	public SocketAddress getLocalAddress() {
+		return channel.localAddress();
+	}
+
+	@Override
+	public SocketAddress getRemoteAddress() {
+		return channel.remoteAddress();
+	}
+
+	@Override
+	public ChannelFuture write(Object message) {
+		return Channels.write(this, message);
+	}
+
+	@Override
+	public ChannelFuture write(Object message, SocketAddress remoteAddress) {
+		return write(message);
+	}
+
+	@Override
+	public ChannelFuture bind(SocketAddress localAddress) {
+		return Channels.bind(this, localAddress);
+	}
+
+	@Override
+	public ChannelFuture connect(SocketAddress remoteAddress) {
+		return Channels.connect(this, remoteAddress);
+	}
+
+	@Override
+	public ChannelFuture disconnect() {
+		return Channels.disconnect(this);
+	}
+
+	@Override
+	public ChannelFuture unbind() {
+		return Channels.unbind(this);
+	}
+
+	@Override
+	public ChannelFuture close() {
+		return Channels.close(this);
+	}
+
+	@Override
+	public ChannelFuture getCloseFuture() {
+		if (closeFuture == null) {
+			ChannelFuture future = new DefaultChannelFuture(this, false);
+			complete(channel.closeFuture(), future);
+			closeFuture = future;
+		}
+		return closeFuture;
+	}
+
+	@Override
+	public int getInterestOps() {
+		int ops = channel.config().isAutoRead() ? OP_READ : OP_NONE;
+		return channel.isWritable() ? ops : ops | OP_WRITE;
+	}
+
+	@Override
+	public boolean isReadable() {
+		return channel.config().isAutoRead();
+	}
+
+	@Override
+	public boolean isWritable() {
+		return channel.isWritable();
+	}
+
+	@Override
+	public ChannelFuture setInterestOps(int interestOps) {
+		return Channels.setInterestOps(this, interestOps);
+	}
+
+	@Override
+	public ChannelFuture setReadable(boolean readable) {
+		return setInterestOps(readable ? getInterestOps() | OP_READ : getInterestOps() & ~OP_READ);
+	}
+
+	@Override
+	public int compareTo(Channel o) {
+		return getId().compareTo(o.getId());
+	}
+
+	@Override
+	public String toString() {
+		return channel.toString();
+	}
+
+	/**
+	 * 将经过pipeline的写、关闭等下行事件转给Netty 4的channel
+	 */
+	static class LegacySink extends AbstractChannelSink {
+
+		@Override
+		public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) throws Exception {
+			io.netty.channel.Channel channel = ((LegacyChannel) e.getChannel()).unwrap();
+			ChannelFuture future = e.getFuture();
+			if (e instanceof MessageEvent) {
+				complete(channel.writeAndFlush(((MessageEvent) e).getMessage()), future);
+			} else if (e instanceof ChannelStateEvent) {
+				Object value = ((ChannelStateEvent) e).getValue();
+				switch (((ChannelStateEvent) e).getState()) {
+				case OPEN:
+					if (Boolean.FALSE.equals(value)) {
+						complete(channel.close(), future);
+					}
+					break;
+				case BOUND:
+					complete(value != null ? channel.bind((SocketAddress) value) : channel.close(), future);
+					break;
+				case CONNECTED:
+					complete(value != null ? channel.connect((SocketAddress) value) : channel.disconnect(), future);
+					break;
+				case INTEREST_OPS:
+					channel.config().setAutoRead((((Integer) value) & OP_READ) != 0);
+					future.setSuccess();
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.woniu.network.netty4.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+
+import com.woniu.network.netty4.Netty4Transport;
+import com.woniu.network.netty4.bootstrap.Netty4Client;
+
+/**
+ * {@link LegacyChannel#getFactory()}返回的ChannelFactory，在给定的EventLoopGroup上创建未连接的客户端channel<br>
+ * 新channel带有与{@link Netty4Client}相同的编解码，调用connect后即可收发消息；EventLoopGroup不属于此factory，不会被释放
+ */
+public class LegacyChannelFactory implements ChannelFactory {
+
+	private final Bootstrap bootstrap;
+
+	public LegacyChannelFactory(EventLoopGroup group) {
+		this.bootstrap = new Bootstrap().group(group).channel(Netty4Transport.socketChannelClass());
+		bootstrap.option(ChannelOption.TCP_NODELAY, true);
+		bootstrap.option(ChannelOption.ALLOCATOR, Netty4Transport.getAllocator());
+		bootstrap.handler(new ChannelInitializer<io.netty.channel.Channel>() {
+			@Override
+			protected void initChannel(io.netty.channel.Channel ch) throws Exception {
+				Netty4Client.addCodec(ch.pipeline());
+			}
+		});
+	}
+
+	@Override
+	public Channel newChannel(ChannelPipeline pipeline) {
+		io.netty.channel.ChannelFuture future = bootstrap.register().awaitUninterruptibly();
+		if (!future.isSuccess()) {
+			throw new ChannelException("netty4 channel register failed", future.cause());
+		}
+		return LegacyChannel.of(future.channel(), pipeline);
+	}
+
+	@Override
+	public void releaseExternalResources() {
+		// EventLoopGroup由创建者关闭
+	}
+}
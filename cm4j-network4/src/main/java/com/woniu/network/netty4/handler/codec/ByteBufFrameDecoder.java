@@ -0,0 +1,23 @@
+package com.woniu.network.netty4.handler.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import java.nio.ByteOrder;
+
+/**
+ * 按消息头中的length(小端，不包含length本身)切分frame<br>
+ * 返回原buffer的slice(引用计数+1)，不复制数据，由{@link ByteBufProtocolDecoder}解析后释放
+ */
+public class ByteBufFrameDecoder extends LengthFieldBasedFrameDecoder {
+
+	public ByteBufFrameDecoder(int maxFrameLength) {
+		super(ByteOrder.LITTLE_ENDIAN, maxFrameLength, 0, 4, 0, 0, true);
+	}
+
+	@Override
+	protected ByteBuf extractFrame(ChannelHandlerContext ctx, ByteBuf buffer, int index, int length) {
+		return buffer.slice(index, length).retain();
+	}
+}
@@ -0,0 +1,43 @@
+package com.woniu.network.netty4.handler.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.woniu.network.handler.codec.FrameDecompressor;
+import com.woniu.network.handler.codec.ProtocolDecoder;
+
+/**
+ * 将frame解析为{@link com.woniu.network.protocol.IProtocol}<br>
+ * frame以小端{@link ChannelBuffer}的形式包装(不复制)后交给{@link ProtocolDecoder#decode(ChannelBuffer)}，
+ * 编解码与Netty 3的实现完全相同；压缩过的frame先经{@link FrameDecompressor#decompress(ChannelBuffer)}解压<br>
+ * 持有ProtocolDecoder，不能在channel之间共享
+ */
+public class ByteBufProtocolDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+	private final ProtocolDecoder decoder = new ProtocolDecoder();
+	private final FrameDecompressor decompressor;
+
+	/**
+	 * @param decompressor
+	 *            为null时不处理压缩过的frame
+	 */
+	public ByteBufProtocolDecoder(FrameDecompressor decompressor) {
+		this.decompressor = decompressor;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) throws Exception {
+		ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame.nioBuffer().order(ByteOrder.LITTLE_ENDIAN));
+		if (decompressor != null) {
+			buffer = decompressor.decompress(buffer);
+		}
+		out.add(decoder.decode(buffer));
+	}
+}
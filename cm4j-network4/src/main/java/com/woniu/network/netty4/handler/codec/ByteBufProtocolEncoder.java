@@ -0,0 +1,64 @@
+package com.woniu.network.netty4.handler.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.woniu.network.handler.codec.ProtocolEncoder;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 将{@link IProtocol}或{@link com.woniu.network.protocol.ProtocolBatch}写入从channel的allocator(默认为池化的direct
+ * buffer)分配的ByteBuf<br>
+ * ByteBuf的内存以小端{@link ChannelBuffer}的形式包装后交给{@link ProtocolEncoder#writeFrames(ChannelBuffer, List)}，
+ * 不经过中间拷贝；预估长度不足时改写到可扩容的buffer再复制
+ */
+@Sharable
+public class ByteBufProtocolEncoder extends MessageToMessageEncoder<Object> {
+
+	@Override
+	public boolean acceptOutboundMessage(Object msg) throws Exception {
+		return ProtocolEncoder.toProtocols(msg) != null;
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
+		List<IProtocol> protocols = ProtocolEncoder.toProtocols(msg);
+		int estimateLength = ProtocolEncoder.estimateLength(protocols);
+		ByteBuf buf = ctx.alloc().ioBuffer(estimateLength);
+		try {
+			if (buf.nioBufferCount() == 1) {
+				ByteBuffer memory = buf.nioBuffer(0, buf.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+				ChannelBuffer target = ChannelBuffers.wrappedBuffer(memory);
+				target.clear();
+				try {
+					ProtocolEncoder.writeFrames(target, protocols);
+					buf.writerIndex(target.writerIndex());
+					out.add(buf);
+					buf = null;
+					return;
+				} catch (IndexOutOfBoundsException e) {
+					// 预估长度不足
+				}
+			}
+			ChannelBuffer dynamic = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, estimateLength);
+			ProtocolEncoder.writeFrames(dynamic, protocols);
+			buf.clear();
+			buf.writeBytes(dynamic.toByteBuffer());
+			out.add(buf);
+			buf = null;
+		} finally {
+			if (buf != null) {
+				buf.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.woniu.network.netty4.handler.server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 限制服务端同时存在的连接数，超过时直接关闭新连接，同{@link com.woniu.network.handler.server.ConnectionLimitHandler}<br>
+ * 所有连接共享一个实例
+ */
+@Sharable
+public class ConnectionLimitHandler extends ChannelInboundHandlerAdapter {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final int maxConnections;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param maxConnections
+	 *            0表示不限制
+	 */
+	public ConnectionLimitHandler(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		int count = connections.incrementAndGet();
+		if (maxConnections > 0 && count > maxConnections) {
+			rejected.incrementAndGet();
+			logger.warn("connection limit {} exceeded, close {}", maxConnections, ctx.channel());
+			ctx.close();
+			return;
+		}
+		ctx.fireChannelActive();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		connections.decrementAndGet();
+		ctx.fireChannelInactive();
+	}
+
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+}
@@ -0,0 +1,37 @@
+package com.woniu.network.netty4.handler.server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 关闭{@link io.netty.handler.timeout.IdleStateHandler}检测到的空闲连接
+ */
+@Sharable
+public class IdleCloseHandler extends ChannelInboundHandlerAdapter {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final AtomicLong closed = new AtomicLong();
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent) {
+			closed.incrementAndGet();
+			logger.debug("channel {} idle, close it", ctx.channel());
+			ctx.close();
+			return;
+		}
+		ctx.fireUserEventTriggered(evt);
+	}
+
+	public long getClosedCount() {
+		return closed.get();
+	}
+}
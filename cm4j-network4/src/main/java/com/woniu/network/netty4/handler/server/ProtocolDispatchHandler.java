@@ -0,0 +1,38 @@
+package com.woniu.network.netty4.handler.server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.woniu.network.exception.ExecutorNotFoundException;
+import com.woniu.network.handler.cfg.ProtocolExecutorMatcher;
+import com.woniu.network.handler.server.executor.MessageExecutor;
+import com.woniu.network.netty4.channel.LegacyChannel;
+import com.woniu.network.protocol.IProtocol;
+
+/**
+ * 按messageId从{@link ProtocolExecutorMatcher}找到处理器执行，同{@link com.woniu.network.handler.server.ProtocolMulticasterHandler}<br>
+ * 处理器收到的是{@link LegacyChannel}，已有的处理器无需修改
+ */
+@Sharable
+public class ProtocolDispatchHandler extends SimpleChannelInboundHandler<IProtocol> {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, IProtocol protocol) throws Exception {
+		MessageExecutor executor = ProtocolExecutorMatcher.get(protocol.getMessageId());
+		if (executor == null) {
+			throw new ExecutorNotFoundException("not found corresponding executor,type=" + protocol.getMessageId());
+		}
+		executor.execute(LegacyChannel.of(ctx.channel()), protocol);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		logger.error("server received exception", cause);
+	}
+}
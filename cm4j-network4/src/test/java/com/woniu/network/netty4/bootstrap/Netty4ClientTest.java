@@ -0,0 +1,45 @@
+package com.woniu.network.netty4.bootstrap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.woniu.network.protocol.generated.Message1001;
+
+public class Netty4ClientTest {
+
+	@Test
+	public void encodeSameAsNetty3() {
+		EmbeddedChannel channel = Netty4ServerTest.newClientChannel();
+		Message1001 message = Netty4ServerTest.message(1, "充值");
+		Assert.assertTrue(channel.writeOutbound(message));
+		byte[] actual = Netty4ServerTest.toBytes((ByteBuf) channel.readOutbound());
+		Assert.assertTrue(Arrays.equals(Netty4ServerTest.encode(message), actual));
+	}
+
+	@Test
+	public void decodeReceivedFrames() {
+		EmbeddedChannel channel = Netty4ServerTest.newClientChannel();
+		byte[] bytes = Netty4ServerTest.encode(Netty4ServerTest.message(1, "充值"),
+				Netty4ServerTest.message(2, "remark"));
+		// 第一个frame不完整时不产生消息
+		int split = 10;
+		Assert.assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, 0, split))));
+		Assert.assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, split, bytes.length))));
+
+		Message1001 first = (Message1001) channel.readInbound();
+		Message1001 second = (Message1001) channel.readInbound();
+		Assert.assertEquals(1, first.getAccountId());
+		Assert.assertEquals("充值", first.getRemark());
+		Assert.assertEquals(2, second.getAccountId());
+		Assert.assertEquals("remark", second.getRemark());
+		Assert.assertNull(channel.readInbound());
+		Assert.assertFalse(channel.finish());
+	}
+}
@@ -0,0 +1,139 @@
+package com.woniu.network.netty4.bootstrap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.junit.Test;
+
+import com.woniu.network.bootstrap.server.ServerConfig;
+import com.woniu.network.handler.cfg.ProtocolExecutorMatcher;
+import com.woniu.network.handler.codec.ProtocolEncoder;
+import com.woniu.network.handler.server.executor.MessageExecutor;
+import com.woniu.network.netty4.channel.LegacyChannel;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecs;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class Netty4ServerTest {
+
+	@Test
+	public void dispatchAndReply() {
+		final List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+		final List<org.jboss.netty.channel.Channel> channels = new ArrayList<org.jboss.netty.channel.Channel>();
+		ProtocolExecutorMatcher.register(Message1001.MESSAGE_ID, new MessageExecutor() {
+			@Override
+			public void execute(org.jboss.netty.channel.Channel channel, IProtocol protocol) {
+				channels.add(channel);
+				Message1001 request = (Message1001) protocol;
+				futures.add(channel.write(message(request.getAccountId() + 1, request.getRemark())));
+			}
+		});
+		try {
+			EmbeddedChannel channel = newChannel();
+			// 两个请求，第二个分两次到达
+			byte[] bytes = encode(message(1, "充值"), message(5, "remark"));
+			int split = bytes.length - 3;
+			channel.writeInbound(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, 0, split)));
+			Assert.assertEquals(1, futures.size());
+			channel.writeInbound(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, split, bytes.length)));
+			Assert.assertEquals(2, futures.size());
+
+			EmbeddedChannel client = newClientChannel();
+			for (int i = 0; i < 2; i++) {
+				Assert.assertTrue(futures.get(i).isSuccess());
+				client.writeInbound(channel.readOutbound());
+			}
+			Assert.assertNull(channel.readOutbound());
+
+			Message1001 first = (Message1001) client.readInbound();
+			Message1001 second = (Message1001) client.readInbound();
+			Assert.assertEquals(2, first.getAccountId());
+			Assert.assertEquals("充值", first.getRemark());
+			Assert.assertEquals(6, second.getAccountId());
+			Assert.assertEquals("remark", second.getRemark());
+
+			// 处理器收到的是同一个LegacyChannel，config和pipeline可用
+			LegacyChannel legacy = (LegacyChannel) channels.get(0);
+			Assert.assertSame(legacy, channels.get(1));
+			Assert.assertSame(channel, legacy.unwrap());
+			Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, legacy.getConfig().getBufferFactory().getDefaultOrder());
+			Assert.assertSame(legacy, legacy.getPipeline().getChannel());
+			Assert.assertNotNull(legacy.getFactory());
+
+			legacy.close().awaitUninterruptibly();
+			Assert.assertFalse(channel.isOpen());
+		} finally {
+			ProtocolExecutorMatcher.unregister(Message1001.MESSAGE_ID);
+		}
+	}
+
+	@Test
+	public void suspendReadThroughLegacyChannel() {
+		EmbeddedChannel channel = newChannel();
+		LegacyChannel legacy = LegacyChannel.of(channel);
+		Assert.assertTrue(legacy.isReadable());
+		Assert.assertTrue(legacy.setReadable(false).isSuccess());
+		Assert.assertFalse(channel.config().isAutoRead());
+		Assert.assertTrue(legacy.setReadable(true).isSuccess());
+		Assert.assertTrue(channel.config().isAutoRead());
+	}
+
+	private EmbeddedChannel newChannel() {
+		ServerConfig config = new ServerConfig();
+		config.setReaderIdleSeconds(0);
+		final Netty4Server server = new Netty4Server(config);
+		return new EmbeddedChannel(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				server.initPipeline(ch.pipeline(), null);
+			}
+		});
+	}
+
+	static EmbeddedChannel newClientChannel() {
+		return new EmbeddedChannel(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				Netty4Client.addCodec(ch.pipeline());
+			}
+		});
+	}
+
+	static byte[] encode(IProtocol... protocols) {
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 128);
+		ProtocolEncoder.writeFrames(buffer, Arrays.asList(protocols));
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.readBytes(bytes);
+		return bytes;
+	}
+
+	static byte[] toBytes(ByteBuf buf) {
+		byte[] bytes = new byte[buf.readableBytes()];
+		buf.readBytes(bytes);
+		buf.release();
+		return bytes;
+	}
+
+	static Message1001 message(int accountId, String remark) {
+		MessageCodec<Message1001> codec = MessageCodecs.get(Message1001.MESSAGE_ID);
+		Message1001 message = codec.newMessage();
+		message.setAccountId(accountId);
+		message.setServerId(3);
+		message.setRemark(remark);
+		return message;
+	}
+}
@@ -0,0 +1,73 @@
+package com.woniu.network.netty4.handler.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.woniu.network.handler.codec.ProtocolEncoder;
+import com.woniu.network.protocol.IProtocol;
+import com.woniu.network.protocol.ProtocolBatch;
+import com.woniu.network.protocol.codec.MessageCodec;
+import com.woniu.network.protocol.codec.MessageCodecs;
+import com.woniu.network.protocol.generated.Message1001;
+
+public class ByteBufProtocolCodecTest {
+
+	@Test
+	public void sameBytesAsNetty3() {
+		List<IProtocol> protocols = Arrays.<IProtocol> asList(message(1, "充值"), message(2, "remark"));
+		ChannelBuffer expected = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 128);
+		ProtocolEncoder.writeFrames(expected, protocols);
+
+		ByteBuf encoded = encode(new ProtocolBatch(protocols));
+		byte[] actual = new byte[encoded.readableBytes()];
+		encoded.readBytes(actual);
+		encoded.release();
+		Assert.assertTrue(ChannelBuffers.equals(expected, ChannelBuffers.wrappedBuffer(actual)));
+	}
+
+	@Test
+	public void roundTrip() {
+		ByteBuf encoded = encode(new ProtocolBatch(Arrays.<IProtocol> asList(message(1, "充值"), message(2, "remark"))));
+
+		EmbeddedChannel inbound = new EmbeddedChannel(new ByteBufFrameDecoder(10000), new ByteBufProtocolDecoder(null));
+		// 分两次到达，第一个frame不完整
+		int half = encoded.readableBytes() / 3;
+		inbound.writeInbound(encoded.readSlice(half).retain());
+		Assert.assertNull(inbound.readInbound());
+		inbound.writeInbound(encoded);
+
+		Message1001 first = (Message1001) inbound.readInbound();
+		Message1001 second = (Message1001) inbound.readInbound();
+		Assert.assertEquals(1, first.getAccountId());
+		Assert.assertEquals("充值", first.getRemark());
+		Assert.assertEquals(2, second.getAccountId());
+		Assert.assertEquals("remark", second.getRemark());
+		Assert.assertNull(inbound.readInbound());
+		Assert.assertFalse(inbound.finish());
+	}
+
+	private ByteBuf encode(Object msg) {
+		EmbeddedChannel outbound = new EmbeddedChannel(new ByteBufProtocolEncoder());
+		Assert.assertTrue(outbound.writeOutbound(msg));
+		return (ByteBuf) outbound.readOutbound();
+	}
+
+	private Message1001 message(int accountId, String remark) {
+		MessageCodec<Message1001> codec = MessageCodecs.get(Message1001.MESSAGE_ID);
+		Message1001 message = codec.newMessage();
+		message.setAccountId(accountId);
+		message.setServerId(3);
+		message.setRemark(remark);
+		return message;
+	}
+}